@@ -0,0 +1,100 @@
+#!/bin/bash
+
+# MCP WebSearch Server - stdio startup measurement
+#
+# Launches each available build variant in stdio mode, sends an MCP
+# "initialize" request and records the time until the response arrives
+# (what an MCP client waits for when it opens a session) and the peak RSS.
+#
+# Variants (build the ones you want to compare first):
+#   jar         mvn clean package
+#   fast-start  mvn clean package -Pfast-start      (Spring AOT + AppCDS)
+#   native      mvn clean -Pnative native:compile   (GraalVM native image)
+#
+# Usage: ./measure-startup.sh [runs]
+
+RUNS="${1:-5}"
+JAR_FILE="target/mcp-websearch-1.0.0.jar"
+FAST_START_DIR="target/fast-start"
+NATIVE_BINARY="target/mcp-websearch"
+
+INITIALIZE='{"jsonrpc":"2.0","id":1,"method":"initialize","params":{"protocolVersion":"2024-11-05","capabilities":{},"clientInfo":{"name":"measure-startup","version":"1.0.0"}}}'
+
+# Exactly what an MCP client launches; the stdio profile has no startup warm-up
+APP_ARGS=(--stdio)
+
+# Run one variant RUNS times; prints "<avg ms> <max ms> <avg peak RSS MB>"
+measure() {
+    local total_ms=0 max_ms=0 total_rss=0 rss_samples=0
+
+    for ((run = 1; run <= RUNS; run++)); do
+        local start end elapsed_ms rss_kb line
+
+        start=$(date +%s%N)
+        coproc SERVER { exec "$@" "${APP_ARGS[@]}" 2>/dev/null; }
+        local pid=$SERVER_PID
+
+        echo "$INITIALIZE" >&"${SERVER[1]}"
+        if ! read -r -t 120 line <&"${SERVER[0]}"; then
+            echo "no response" >&2
+            kill "$pid" 2>/dev/null
+            wait "$pid" 2>/dev/null
+            return 1
+        fi
+        end=$(date +%s%N)
+
+        # Peak resident set size so far (Linux only)
+        rss_kb=$(awk '/^VmHWM:/ {print $2}' "/proc/$pid/status" 2>/dev/null)
+
+        kill "$pid" 2>/dev/null
+        wait "$pid" 2>/dev/null
+
+        elapsed_ms=$(( (end - start) / 1000000 ))
+        total_ms=$(( total_ms + elapsed_ms ))
+        (( elapsed_ms > max_ms )) && max_ms=$elapsed_ms
+        if [ -n "$rss_kb" ]; then
+            total_rss=$(( total_rss + rss_kb ))
+            rss_samples=$(( rss_samples + 1 ))
+        fi
+    done
+
+    local rss="n/a"
+    if (( rss_samples > 0 )); then
+        rss=$(( total_rss / rss_samples / 1024 ))
+    fi
+    echo "$(( total_ms / RUNS )) $max_ms $rss"
+}
+
+report() {
+    local name="$1"; shift
+    local result
+    if result=$(measure "$@"); then
+        read -r avg max rss <<< "$result"
+        printf "%-12s %12s %12s %14s\n" "$name" "$avg" "$max" "$rss"
+    else
+        printf "%-12s %12s\n" "$name" "failed"
+    fi
+}
+
+echo "stdio startup: launch to initialize response, $RUNS runs per variant"
+echo ""
+printf "%-12s %12s %12s %14s\n" "variant" "avg ms" "max ms" "peak RSS MB"
+
+if [ -f "$JAR_FILE" ]; then
+    report "jar" java -jar "$JAR_FILE"
+else
+    printf "%-12s %12s\n" "jar" "not built"
+fi
+
+if [ -f "$FAST_START_DIR/application.jsa" ]; then
+    report "fast-start" java -XX:SharedArchiveFile="$FAST_START_DIR/application.jsa" \
+        -Dspring.aot.enabled=true -jar "$FAST_START_DIR/mcp-websearch-1.0.0.jar"
+else
+    printf "%-12s %12s\n" "fast-start" "not built"
+fi
+
+if [ -x "$NATIVE_BINARY" ]; then
+    report "native" "$NATIVE_BINARY"
+else
+    printf "%-12s %12s\n" "native" "not built"
+fi
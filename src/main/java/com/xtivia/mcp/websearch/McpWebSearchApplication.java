@@ -42,8 +42,6 @@ public class McpWebSearchApplication {
         for (String arg : args) {
             if ("--stdio".equals(arg)) {
                 stdioMode = true;
-                // Set Spring AI MCP server transport to stdio
-                System.setProperty("spring.ai.mcp.server.transport", "stdio");
             } else if ("--debug".equals(arg)) {
                 debugMode = true;
                 System.setProperty("websearch.debug", "true");
@@ -61,6 +59,7 @@ public class McpWebSearchApplication {
             System.err.println("═══════════════════════════════════════════════════════════");
             System.err.println("Transport: Standard Input/Output");
             System.err.println("Communication: Direct process IPC");
+            System.err.println("Requests: handled concurrently, responses in completion order");
         } else {
             String port = customPort != null ? customPort : 
                           System.getProperty("server.port", "3000");
@@ -84,6 +83,8 @@ public class McpWebSearchApplication {
             System.err.println("Available Tools:");
             System.err.println("  • web-search-tool - DuckDuckGo/Brave web search");
             System.err.println("  • content-fetch-tool - URL content extraction");
+            System.err.println("  • search-and-read - Search and read top results");
+            System.err.println("  • local-search - Search pages fetched earlier");
             System.err.println("");
             System.err.println("Options:");
             System.err.println("  --stdio          Run in STDIO mode");
@@ -99,7 +100,13 @@ public class McpWebSearchApplication {
         System.err.println("═══════════════════════════════════════════════════════════");
         
         
-        SpringApplication.run(McpWebSearchApplication.class, args);
+        SpringApplication application = new SpringApplication(McpWebSearchApplication.class);
+        if (stdioMode) {
+            // Lean configuration: no web server or CORS filter, logging on stderr,
+            // MCP served by StdioTransport
+            application.setAdditionalProfiles("stdio");
+        }
+        application.run(args);
     }
     
     /**
@@ -1,5 +1,6 @@
 package com.xtivia.mcp.websearch.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
@@ -29,8 +30,11 @@ import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
  *   <li>Browser-based MCP clients</li>
  *   <li>Development tools (e.g., VS Code, Claude Desktop)</li>
  * </ul>
+ * 
+ * <p>Not created in stdio mode, where there is no web server.
  */
 @Configuration
+@ConditionalOnWebApplication
 public class McpCorsConfiguration {
     
     /**
@@ -0,0 +1,99 @@
+package com.xtivia.mcp.websearch.config;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import com.xtivia.mcp.websearch.index.LocalIndex;
+import com.xtivia.mcp.websearch.model.FetchResult;
+import com.xtivia.mcp.websearch.model.LocalSearchResponse;
+import com.xtivia.mcp.websearch.model.PreferredSite;
+import com.xtivia.mcp.websearch.model.SearchAndReadResponse;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.AdaptiveRateLimiter;
+import com.xtivia.mcp.websearch.service.ClientScheduler;
+import com.xtivia.mcp.websearch.service.DocumentCache;
+import com.xtivia.mcp.websearch.service.ExtractionTemplateCache;
+import com.xtivia.mcp.websearch.service.FetchScheduler;
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.MemoryGovernor;
+import com.xtivia.mcp.websearch.service.NegativeCache;
+import com.xtivia.mcp.websearch.service.QueryRefresher;
+import com.xtivia.mcp.websearch.service.SearchResultCache;
+import com.xtivia.mcp.websearch.service.WarmupRunner;
+import com.xtivia.mcp.websearch.state.StateStore;
+import com.xtivia.mcp.websearch.tool.ContentFetchTool;
+import com.xtivia.mcp.websearch.tool.LocalSearchTool;
+import com.xtivia.mcp.websearch.tool.SearchAndReadTool;
+import com.xtivia.mcp.websearch.tool.WebSearchTool;
+
+/**
+ * Reachability metadata for the AOT-processed and native-image builds.
+ *
+ * <p>Jackson reads and writes the tool requests and responses reflectively, and
+ * the bundled resources are loaded by name, so neither is discovered by the
+ * native-image static analysis. Netty and Reactor Netty metadata comes from the
+ * GraalVM reachability metadata repository (enabled in the native profile).
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfiguration.WebSearchRuntimeHints.class)
+public class NativeHintsConfiguration {
+
+    static class WebSearchRuntimeHints implements RuntimeHintsRegistrar {
+
+        /**
+         * Records serialized to or deserialized from JSON
+         */
+        private static final Class<?>[] JSON_TYPES = {
+            SearchResult.class,
+            SearchResponse.class,
+            FetchResult.class,
+            FetchResult.Metadata.class,
+            FetchResult.Paging.class,
+            FetchResult.Section.class,
+            SearchAndReadResponse.class,
+            SearchAndReadResponse.Hit.class,
+            LocalSearchResponse.class,
+            LocalSearchResponse.Hit.class,
+            PreferredSite.class,
+            WebSearchTool.SearchRequest.class,
+            ContentFetchTool.FetchRequest.class,
+            SearchAndReadTool.SearchAndReadRequest.class,
+            LocalSearchTool.LocalSearchRequest.class,
+            ExtractionTemplateCache.Stats.class,
+            HttpTransport.TransferStats.class,
+            NegativeCache.Stats.class,
+            SearchResultCache.Stats.class,
+            SearchResultCache.SharedEntry.class,
+            StateStore.Stats.class,
+            AdaptiveRateLimiter.Stats.class,
+            ClientScheduler.Stats.class,
+            ClientScheduler.ClientStats.class,
+            QueryRefresher.Stats.class,
+            LocalIndex.Stats.class,
+            DocumentCache.Stats.class,
+            FetchScheduler.Stats.class,
+            MemoryGovernor.Stats.class,
+            WarmupRunner.Report.class
+        };
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (Class<?> type : JSON_TYPES) {
+                hints.reflection().registerType(type,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+            }
+
+            hints.resources()
+                .registerPattern("preferred_sites.json")
+                .registerPattern("warmup/*.html")
+                // jsoup entity tables
+                .registerPattern("org/jsoup/nodes/*.properties");
+        }
+    }
+}
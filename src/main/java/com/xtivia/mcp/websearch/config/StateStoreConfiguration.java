@@ -0,0 +1,28 @@
+package com.xtivia.mcp.websearch.config;
+
+import java.util.Locale;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.xtivia.mcp.websearch.state.InMemoryStateStore;
+import com.xtivia.mcp.websearch.state.RedisStateStore;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+/**
+ * Selects the {@link StateStore} implementation named by {@code websearch.state-store.type}.
+ */
+@Configuration
+public class StateStoreConfiguration {
+
+    @Bean
+    public StateStore stateStore(WebSearchProperties properties) {
+        WebSearchProperties.StateStoreProperties config = properties.getStateStore();
+        return switch (config.getType().trim().toLowerCase(Locale.ROOT)) {
+            case "memory" -> new InMemoryStateStore(config.getMaxLocalValues());
+            case "redis" -> new RedisStateStore(config);
+            default -> throw new IllegalArgumentException(
+                "Unknown websearch.state-store.type \"" + config.getType() + "\" (memory or redis)");
+        };
+    }
+}
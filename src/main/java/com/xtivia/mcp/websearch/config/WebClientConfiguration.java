@@ -21,7 +21,8 @@ public class WebClientConfiguration {
         // Configure Netty HTTP client with redirect following
         HttpClient httpClient = HttpClient.create()
             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10_000)
-            .followRedirect(true);  // Enable automatic redirect following
+            .followRedirect(true)   // Enable automatic redirect following
+            .compress(false);       // Bodies arrive as sent; HttpTransport decodes gzip/deflate/br and measures it
         
         // Configure exchange strategies with increased buffer size for large HTML responses
         ExchangeStrategies strategies = ExchangeStrategies.builder()
@@ -1,5 +1,10 @@
 package com.xtivia.mcp.websearch.config;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -43,6 +48,16 @@ public class WebSearchProperties {
      */
     private int fetchResultMaxLength = 5000;
     
+    /**
+     * Time budget of a tool call that does not request its own deadline
+     */
+    private int defaultDeadlineSeconds = 60;
+    
+    /**
+     * Upper bound for deadlines requested by clients
+     */
+    private int maxDeadlineSeconds = 300;
+    
     /**
      * Enable debug mode for detailed logging
      */
@@ -53,10 +68,89 @@ public class WebSearchProperties {
      */
     private String preferredSitesFile = "classpath:preferred_sites.json";
     
+    /**
+     * Query parameters stripped from result and fetch URLs (a trailing * matches a prefix).
+     * application.yml does not repeat this list; configuring the property replaces it.
+     */
+    private List<String> trackingParameters = new ArrayList<>(List.of(
+        "utm_*", "gclid", "gclsrc", "dclid", "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid",
+        "_ga", "_gl", "igshid", "ref_src", "ref_url", "spm", "vero_id", "oly_anon_id", "oly_enc_id"
+    ));
+    
     /**
      * DuckDuckGo-specific settings
      */
     private DuckDuckGoProperties duckduckgo = new DuckDuckGoProperties();
+    
+    /**
+     * search_and_read tool settings
+     */
+    private SearchAndReadProperties searchAndRead = new SearchAndReadProperties();
+    
+    /**
+     * Per-domain content extraction templates
+     */
+    private ExtractionTemplateProperties extractionTemplates = new ExtractionTemplateProperties();
+    
+    /**
+     * Startup warm-up of connections and parsers
+     */
+    private WarmupProperties warmup = new WarmupProperties();
+    
+    /**
+     * stdio transport settings
+     */
+    private StdioProperties stdio = new StdioProperties();
+    
+    /**
+     * Negative caching of failed searches and fetches
+     */
+    private NegativeCacheProperties negativeCache = new NegativeCacheProperties();
+    
+    /**
+     * Cache of recent search responses, with near-duplicate query matching
+     */
+    private QueryCacheProperties queryCache = new QueryCacheProperties();
+    
+    /**
+     * Full-text index of fetched pages (local_search tool)
+     */
+    private LocalIndexProperties localIndex = new LocalIndexProperties();
+    
+    /**
+     * Cache of parsed, segmented pages that content_fetch_tool pages through
+     */
+    private DocumentCacheProperties documentCache = new DocumentCacheProperties();
+    
+    /**
+     * Per-host admission of page fetches
+     */
+    private FetchSchedulerProperties fetchScheduler = new FetchSchedulerProperties();
+    
+    /**
+     * Where provider budgets, suspensions and shared cached responses are kept
+     */
+    private StateStoreProperties stateStore = new StateStoreProperties();
+    
+    /**
+     * Per-provider request rate learned from throttling and latency
+     */
+    private AdaptiveRateProperties adaptiveRate = new AdaptiveRateProperties();
+    
+    /**
+     * Background refresh of the most frequent queries before their cached results expire
+     */
+    private RefreshAheadProperties refreshAhead = new RefreshAheadProperties();
+    
+    /**
+     * Weighted fair sharing of provider request budgets between MCP clients
+     */
+    private ClientFairnessProperties clientFairness = new ClientFairnessProperties();
+    
+    /**
+     * Global budget for the memory of response bodies and parsed documents in flight
+     */
+    private MemoryBudgetProperties memoryBudget = new MemoryBudgetProperties();
 
     // Getters and Setters
     public String getProvider() {
@@ -115,6 +209,22 @@ public class WebSearchProperties {
         this.fetchResultMaxLength = fetchResultMaxLength;
     }
 
+    public int getDefaultDeadlineSeconds() {
+        return defaultDeadlineSeconds;
+    }
+
+    public void setDefaultDeadlineSeconds(int defaultDeadlineSeconds) {
+        this.defaultDeadlineSeconds = defaultDeadlineSeconds;
+    }
+
+    public int getMaxDeadlineSeconds() {
+        return maxDeadlineSeconds;
+    }
+
+    public void setMaxDeadlineSeconds(int maxDeadlineSeconds) {
+        this.maxDeadlineSeconds = maxDeadlineSeconds;
+    }
+
     public boolean isDebug() {
         return debug;
     }
@@ -131,6 +241,14 @@ public class WebSearchProperties {
         this.preferredSitesFile = preferredSitesFile;
     }
 
+    public List<String> getTrackingParameters() {
+        return trackingParameters;
+    }
+
+    public void setTrackingParameters(List<String> trackingParameters) {
+        this.trackingParameters = trackingParameters;
+    }
+
     public DuckDuckGoProperties getDuckduckgo() {
         return duckduckgo;
     }
@@ -139,6 +257,118 @@ public class WebSearchProperties {
         this.duckduckgo = duckduckgo;
     }
     
+    public SearchAndReadProperties getSearchAndRead() {
+        return searchAndRead;
+    }
+
+    public void setSearchAndRead(SearchAndReadProperties searchAndRead) {
+        this.searchAndRead = searchAndRead;
+    }
+    
+    public ExtractionTemplateProperties getExtractionTemplates() {
+        return extractionTemplates;
+    }
+
+    public void setExtractionTemplates(ExtractionTemplateProperties extractionTemplates) {
+        this.extractionTemplates = extractionTemplates;
+    }
+
+    public WarmupProperties getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(WarmupProperties warmup) {
+        this.warmup = warmup;
+    }
+
+    public StdioProperties getStdio() {
+        return stdio;
+    }
+
+    public void setStdio(StdioProperties stdio) {
+        this.stdio = stdio;
+    }
+
+    public NegativeCacheProperties getNegativeCache() {
+        return negativeCache;
+    }
+
+    public void setNegativeCache(NegativeCacheProperties negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    public QueryCacheProperties getQueryCache() {
+        return queryCache;
+    }
+
+    public void setQueryCache(QueryCacheProperties queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public LocalIndexProperties getLocalIndex() {
+        return localIndex;
+    }
+
+    public void setLocalIndex(LocalIndexProperties localIndex) {
+        this.localIndex = localIndex;
+    }
+
+    public DocumentCacheProperties getDocumentCache() {
+        return documentCache;
+    }
+
+    public void setDocumentCache(DocumentCacheProperties documentCache) {
+        this.documentCache = documentCache;
+    }
+
+    public FetchSchedulerProperties getFetchScheduler() {
+        return fetchScheduler;
+    }
+
+    public void setFetchScheduler(FetchSchedulerProperties fetchScheduler) {
+        this.fetchScheduler = fetchScheduler;
+    }
+
+    public StateStoreProperties getStateStore() {
+        return stateStore;
+    }
+
+    public void setStateStore(StateStoreProperties stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    public AdaptiveRateProperties getAdaptiveRate() {
+        return adaptiveRate;
+    }
+
+    public void setAdaptiveRate(AdaptiveRateProperties adaptiveRate) {
+        this.adaptiveRate = adaptiveRate;
+    }
+
+    public RefreshAheadProperties getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(RefreshAheadProperties refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public ClientFairnessProperties getClientFairness() {
+        return clientFairness;
+    }
+
+    public void setClientFairness(ClientFairnessProperties clientFairness) {
+        this.clientFairness = clientFairness;
+    }
+
+    public MemoryBudgetProperties getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(MemoryBudgetProperties memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    
     public static class DuckDuckGoProperties {
         /**
          * Duration in minutes to suspend DuckDuckGo when rate limited
@@ -149,6 +379,21 @@ public class WebSearchProperties {
          * Maximum multiplier for exponential backoff
          */
         private int maxSuspensionMultiplier = 6;
+        
+        /**
+         * Maximum number of result pages to follow for a single query
+         */
+        private int maxPages = 5;
+        
+        /**
+         * Number of queries whose fetched pages are kept for follow-up calls
+         */
+        private int pageCacheSize = 100;
+        
+        /**
+         * Minutes that fetched result pages stay reusable
+         */
+        private int pageCacheTtlMinutes = 10;
 
         public int getSuspensionDurationMinutes() {
             return suspensionDurationMinutes;
@@ -165,5 +410,1178 @@ public class WebSearchProperties {
         public void setMaxSuspensionMultiplier(int maxSuspensionMultiplier) {
             this.maxSuspensionMultiplier = maxSuspensionMultiplier;
         }
+
+        public int getMaxPages() {
+            return maxPages;
+        }
+
+        public void setMaxPages(int maxPages) {
+            this.maxPages = maxPages;
+        }
+
+        public int getPageCacheSize() {
+            return pageCacheSize;
+        }
+
+        public void setPageCacheSize(int pageCacheSize) {
+            this.pageCacheSize = pageCacheSize;
+        }
+
+        public int getPageCacheTtlMinutes() {
+            return pageCacheTtlMinutes;
+        }
+
+        public void setPageCacheTtlMinutes(int pageCacheTtlMinutes) {
+            this.pageCacheTtlMinutes = pageCacheTtlMinutes;
+        }
+    }
+    
+    public static class SearchAndReadProperties {
+        /**
+         * Number of top results to fetch when the caller does not specify one
+         */
+        private int readCount = 3;
+        
+        /**
+         * Overall time budget in seconds for the search and its fetches
+         */
+        private int deadlineSeconds = 30;
+
+        public int getReadCount() {
+            return readCount;
+        }
+
+        public void setReadCount(int readCount) {
+            this.readCount = readCount;
+        }
+
+        public int getDeadlineSeconds() {
+            return deadlineSeconds;
+        }
+
+        public void setDeadlineSeconds(int deadlineSeconds) {
+            this.deadlineSeconds = deadlineSeconds;
+        }
+    }
+    
+    public static class ExtractionTemplateProperties {
+        /**
+         * Learn per-domain content containers and skip selector probing on repeat sites
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum number of domains to keep templates for (least recently used are evicted)
+         */
+        private int maxDomains = 500;
+        
+        /**
+         * Minimum confidence (0-1) before a template is used
+         */
+        private double minConfidence = 0.6;
+        
+        /**
+         * Minutes after which an unconfirmed template's confidence has halved
+         */
+        private int halfLifeMinutes = 1440;
+        
+        /**
+         * Leave out sharing, related-links, comment and cookie widgets found by class name,
+         * and prune the same classes on the domain's later pages
+         */
+        private boolean pruneNoise = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxDomains() {
+            return maxDomains;
+        }
+
+        public void setMaxDomains(int maxDomains) {
+            this.maxDomains = maxDomains;
+        }
+
+        public double getMinConfidence() {
+            return minConfidence;
+        }
+
+        public void setMinConfidence(double minConfidence) {
+            this.minConfidence = minConfidence;
+        }
+
+        public int getHalfLifeMinutes() {
+            return halfLifeMinutes;
+        }
+
+        public void setHalfLifeMinutes(int halfLifeMinutes) {
+            this.halfLifeMinutes = halfLifeMinutes;
+        }
+
+        public boolean isPruneNoise() {
+            return pruneNoise;
+        }
+
+        public void setPruneNoise(boolean pruneNoise) {
+            this.pruneNoise = pruneNoise;
+        }
+    }
+    
+    /**
+     * Startup warm-up of connections and parsers
+     */
+    public static class WarmupProperties {
+        /**
+         * Run the warm-up before the server reports itself ready
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Open pooled connections to the provider endpoints
+         */
+        private boolean preconnect = true;
+        
+        /**
+         * Parser warm-up iterations that always run
+         */
+        private int minIterations = 50;
+        
+        /**
+         * Upper bound on parser warm-up iterations
+         */
+        private int maxIterations = 1000;
+        
+        /**
+         * Overall time budget for the warm-up
+         */
+        private int timeoutSeconds = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isPreconnect() {
+            return preconnect;
+        }
+
+        public void setPreconnect(boolean preconnect) {
+            this.preconnect = preconnect;
+        }
+
+        public int getMinIterations() {
+            return minIterations;
+        }
+
+        public void setMinIterations(int minIterations) {
+            this.minIterations = minIterations;
+        }
+
+        public int getMaxIterations() {
+            return maxIterations;
+        }
+
+        public void setMaxIterations(int maxIterations) {
+            this.maxIterations = maxIterations;
+        }
+
+        public int getTimeoutSeconds() {
+            return timeoutSeconds;
+        }
+
+        public void setTimeoutSeconds(int timeoutSeconds) {
+            this.timeoutSeconds = timeoutSeconds;
+        }
+    }
+    
+    /**
+     * stdio transport settings
+     */
+    public static class StdioProperties {
+        /**
+         * Serve MCP over stdin/stdout (set by the --stdio flag)
+         */
+        private boolean enabled = false;
+        
+        /**
+         * Maximum requests handled concurrently
+         */
+        private int maxInFlight = 8;
+        
+        /**
+         * Responses waiting for the client to read them before handlers block
+         */
+        private int writeQueueCapacity = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        public int getWriteQueueCapacity() {
+            return writeQueueCapacity;
+        }
+
+        public void setWriteQueueCapacity(int writeQueueCapacity) {
+            this.writeQueueCapacity = writeQueueCapacity;
+        }
+    }
+    
+    /**
+     * Negative caching of failed searches and fetches
+     */
+    public static class NegativeCacheProperties {
+        /**
+         * Enable negative caching
+         */
+        private boolean enabled = true;
+        
+        /**
+         * How long a search with no results (or failing on every provider) is remembered
+         */
+        private int searchTtlSeconds = 300;
+        
+        /**
+         * How long a URL that timed out, returned an HTTP error or was too large is remembered
+         */
+        private int urlTtlSeconds = 600;
+        
+        /**
+         * How long an unreachable or throttling host is remembered
+         */
+        private int hostTtlSeconds = 120;
+        
+        /**
+         * Maximum number of remembered failures (LRU eviction); also sizes the Bloom filter
+         */
+        private int maxEntries = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSearchTtlSeconds() {
+            return searchTtlSeconds;
+        }
+
+        public void setSearchTtlSeconds(int searchTtlSeconds) {
+            this.searchTtlSeconds = searchTtlSeconds;
+        }
+
+        public int getUrlTtlSeconds() {
+            return urlTtlSeconds;
+        }
+
+        public void setUrlTtlSeconds(int urlTtlSeconds) {
+            this.urlTtlSeconds = urlTtlSeconds;
+        }
+
+        public int getHostTtlSeconds() {
+            return hostTtlSeconds;
+        }
+
+        public void setHostTtlSeconds(int hostTtlSeconds) {
+            this.hostTtlSeconds = hostTtlSeconds;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+    
+    /**
+     * Cache of recent search responses, with near-duplicate query matching
+     */
+    public static class QueryCacheProperties {
+        /**
+         * Enable the search response cache
+         */
+        private boolean enabled = true;
+        
+        /**
+         * How long a search response is reused
+         */
+        private int ttlMinutes = 10;
+        
+        /**
+         * Maximum number of cached responses (LRU eviction)
+         */
+        private int maxEntries = 1000;
+        
+        /**
+         * Serve responses cached for near-duplicate queries (clients can still ask for exact matches)
+         */
+        private boolean approximate = true;
+        
+        /**
+         * Minimum SimHash similarity (0-1) for a near-duplicate query to be served
+         */
+        private double similarityThreshold = 0.9;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTtlMinutes() {
+            return ttlMinutes;
+        }
+
+        public void setTtlMinutes(int ttlMinutes) {
+            this.ttlMinutes = ttlMinutes;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public boolean isApproximate() {
+            return approximate;
+        }
+
+        public void setApproximate(boolean approximate) {
+            this.approximate = approximate;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+    }
+    
+    /**
+     * Full-text index of fetched pages (local_search tool)
+     */
+    public static class LocalIndexProperties {
+        /**
+         * Index fetched pages and enable the local_search tool
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum number of pages kept (the oldest are evicted first)
+         */
+        private int maxDocuments = 2000;
+        
+        /**
+         * How long a fetched page stays searchable
+         */
+        private int ttlHours = 24;
+        
+        /**
+         * Number of same-sized segments merged at a time
+         */
+        private int mergeFactor = 8;
+        
+        /**
+         * Directory the merged segments are persisted to; empty keeps the index in memory only
+         */
+        private String directory = "";
+        
+        /**
+         * Maximum size of the persisted segments (the oldest are dropped first)
+         */
+        private int maxDiskMegabytes = 64;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxDocuments() {
+            return maxDocuments;
+        }
+
+        public void setMaxDocuments(int maxDocuments) {
+            this.maxDocuments = maxDocuments;
+        }
+
+        public int getTtlHours() {
+            return ttlHours;
+        }
+
+        public void setTtlHours(int ttlHours) {
+            this.ttlHours = ttlHours;
+        }
+
+        public int getMergeFactor() {
+            return mergeFactor;
+        }
+
+        public void setMergeFactor(int mergeFactor) {
+            this.mergeFactor = mergeFactor;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getMaxDiskMegabytes() {
+            return maxDiskMegabytes;
+        }
+
+        public void setMaxDiskMegabytes(int maxDiskMegabytes) {
+            this.maxDiskMegabytes = maxDiskMegabytes;
+        }
+    }
+    
+    /**
+     * Cache of parsed, segmented pages that content_fetch_tool pages through
+     */
+    public static class DocumentCacheProperties {
+        /**
+         * Keep parsed pages so offset/section requests need no new download
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Maximum number of characters extracted and kept per page
+         */
+        private int maxDocumentLength = 100000;
+        
+        /**
+         * Largest slice a single content_fetch_tool call returns
+         */
+        private int maxSliceLength = 20000;
+        
+        /**
+         * Total characters kept across all cached pages (least recently used evicted first)
+         */
+        private long maxTotalCharacters = 5000000;
+        
+        /**
+         * How long a parsed page is served from the cache
+         */
+        private int ttlMinutes = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxDocumentLength() {
+            return maxDocumentLength;
+        }
+
+        public void setMaxDocumentLength(int maxDocumentLength) {
+            this.maxDocumentLength = maxDocumentLength;
+        }
+
+        public int getMaxSliceLength() {
+            return maxSliceLength;
+        }
+
+        public void setMaxSliceLength(int maxSliceLength) {
+            this.maxSliceLength = maxSliceLength;
+        }
+
+        public long getMaxTotalCharacters() {
+            return maxTotalCharacters;
+        }
+
+        public void setMaxTotalCharacters(long maxTotalCharacters) {
+            this.maxTotalCharacters = maxTotalCharacters;
+        }
+
+        public int getTtlMinutes() {
+            return ttlMinutes;
+        }
+
+        public void setTtlMinutes(int ttlMinutes) {
+            this.ttlMinutes = ttlMinutes;
+        }
+    }
+    
+    /**
+     * Per-host admission of page fetches
+     */
+    public static class FetchSchedulerProperties {
+        /**
+         * Maximum page downloads in flight across all hosts
+         */
+        private int maxConcurrentFetches = 16;
+        
+        /**
+         * Maximum concurrent downloads from a single host
+         */
+        private int maxFetchesPerHost = 2;
+        
+        /**
+         * Minimum time between the starts of two downloads from the same host (0 disables spacing)
+         */
+        private long minHostSpacingMillis = 0;
+
+        public int getMaxConcurrentFetches() {
+            return maxConcurrentFetches;
+        }
+
+        public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+            this.maxConcurrentFetches = maxConcurrentFetches;
+        }
+
+        public int getMaxFetchesPerHost() {
+            return maxFetchesPerHost;
+        }
+
+        public void setMaxFetchesPerHost(int maxFetchesPerHost) {
+            this.maxFetchesPerHost = maxFetchesPerHost;
+        }
+
+        public long getMinHostSpacingMillis() {
+            return minHostSpacingMillis;
+        }
+
+        public void setMinHostSpacingMillis(long minHostSpacingMillis) {
+            this.minHostSpacingMillis = minHostSpacingMillis;
+        }
+    }
+    
+    /**
+     * State shared between replicas: provider request budgets, suspensions and the query cache
+     */
+    public static class StateStoreProperties {
+        /**
+         * memory (this process only) or redis (shared by every replica using the same server)
+         */
+        private String type = "memory";
+        
+        /**
+         * Prefix of every key written to a shared store
+         */
+        private String keyPrefix = "mcp-websearch:";
+        
+        /**
+         * Also publish search responses to a shared store, so other replicas start warm
+         */
+        private boolean shareQueryCache = true;
+        
+        /**
+         * Cached values kept locally while a shared store is unreachable
+         */
+        private int maxLocalValues = 1000;
+        
+        /**
+         * Connection to the Redis (or Redis-protocol) server
+         */
+        private RedisProperties redis = new RedisProperties();
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        public boolean isShareQueryCache() {
+            return shareQueryCache;
+        }
+
+        public void setShareQueryCache(boolean shareQueryCache) {
+            this.shareQueryCache = shareQueryCache;
+        }
+
+        public int getMaxLocalValues() {
+            return maxLocalValues;
+        }
+
+        public void setMaxLocalValues(int maxLocalValues) {
+            this.maxLocalValues = maxLocalValues;
+        }
+
+        public RedisProperties getRedis() {
+            return redis;
+        }
+
+        public void setRedis(RedisProperties redis) {
+            this.redis = redis;
+        }
+    }
+    
+    /**
+     * Connection to a Redis-protocol state store
+     */
+    public static class RedisProperties {
+        /**
+         * Server host
+         */
+        private String host = "localhost";
+        
+        /**
+         * Server port
+         */
+        private int port = 6379;
+        
+        /**
+         * ACL user name (empty for the default user)
+         */
+        private String username = "";
+        
+        /**
+         * Password (empty when the server requires none)
+         */
+        private String password = "";
+        
+        /**
+         * Database number
+         */
+        private int database = 0;
+        
+        /**
+         * Connection timeout
+         */
+        private int connectTimeoutMillis = 500;
+        
+        /**
+         * Time to wait for a reply before the store counts as unreachable
+         */
+        private int commandTimeoutMillis = 500;
+        
+        /**
+         * How long local state is used after a failure before the server is tried again
+         */
+        private int retrySeconds = 10;
+
+        public String getHost() {
+            return host;
+        }
+
+        public void setHost(String host) {
+            this.host = host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getDatabase() {
+            return database;
+        }
+
+        public void setDatabase(int database) {
+            this.database = database;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+        }
+
+        public int getCommandTimeoutMillis() {
+            return commandTimeoutMillis;
+        }
+
+        public void setCommandTimeoutMillis(int commandTimeoutMillis) {
+            this.commandTimeoutMillis = commandTimeoutMillis;
+        }
+
+        public int getRetrySeconds() {
+            return retrySeconds;
+        }
+
+        public void setRetrySeconds(int retrySeconds) {
+            this.retrySeconds = retrySeconds;
+        }
+    }
+    
+    /**
+     * Adaptive (AIMD) request rate of the search providers
+     */
+    public static class AdaptiveRateProperties {
+        /**
+         * Learn the rate; when disabled every provider keeps the initial rate
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Rate a provider starts at
+         */
+        private double initialRequestsPerMinute = 10;
+        
+        /**
+         * Floor the rate never drops below
+         */
+        private double minRequestsPerMinute = 2;
+        
+        /**
+         * Ceiling the rate never grows beyond
+         */
+        private double maxRequestsPerMinute = 30;
+        
+        /**
+         * Minimum spacing between two requests at the initial rate (scales inversely with the rate)
+         */
+        private long burstIntervalMillis = 2000;
+        
+        /**
+         * Requests per minute added after a run of successes
+         */
+        private double increaseStep = 1;
+        
+        /**
+         * Consecutive successful requests before the rate is raised
+         */
+        private int increaseAfterSuccesses = 5;
+        
+        /**
+         * Factor the rate is multiplied by when the provider throttles
+         */
+        private double decreaseFactor = 0.5;
+        
+        /**
+         * A response slower than this multiple of the average latency counts as throttling
+         */
+        private double latencySpikeFactor = 3.0;
+        
+        /**
+         * Minimum time between two decreases
+         */
+        private int decreaseCooldownSeconds = 10;
+        
+        /**
+         * File the learned rates are kept in across restarts (empty keeps them in memory only)
+         */
+        private String stateFile = "";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getInitialRequestsPerMinute() {
+            return initialRequestsPerMinute;
+        }
+
+        public void setInitialRequestsPerMinute(double initialRequestsPerMinute) {
+            this.initialRequestsPerMinute = initialRequestsPerMinute;
+        }
+
+        public double getMinRequestsPerMinute() {
+            return minRequestsPerMinute;
+        }
+
+        public void setMinRequestsPerMinute(double minRequestsPerMinute) {
+            this.minRequestsPerMinute = minRequestsPerMinute;
+        }
+
+        public double getMaxRequestsPerMinute() {
+            return maxRequestsPerMinute;
+        }
+
+        public void setMaxRequestsPerMinute(double maxRequestsPerMinute) {
+            this.maxRequestsPerMinute = maxRequestsPerMinute;
+        }
+
+        public long getBurstIntervalMillis() {
+            return burstIntervalMillis;
+        }
+
+        public void setBurstIntervalMillis(long burstIntervalMillis) {
+            this.burstIntervalMillis = burstIntervalMillis;
+        }
+
+        public double getIncreaseStep() {
+            return increaseStep;
+        }
+
+        public void setIncreaseStep(double increaseStep) {
+            this.increaseStep = increaseStep;
+        }
+
+        public int getIncreaseAfterSuccesses() {
+            return increaseAfterSuccesses;
+        }
+
+        public void setIncreaseAfterSuccesses(int increaseAfterSuccesses) {
+            this.increaseAfterSuccesses = increaseAfterSuccesses;
+        }
+
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+
+        public void setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+        }
+
+        public double getLatencySpikeFactor() {
+            return latencySpikeFactor;
+        }
+
+        public void setLatencySpikeFactor(double latencySpikeFactor) {
+            this.latencySpikeFactor = latencySpikeFactor;
+        }
+
+        public int getDecreaseCooldownSeconds() {
+            return decreaseCooldownSeconds;
+        }
+
+        public void setDecreaseCooldownSeconds(int decreaseCooldownSeconds) {
+            this.decreaseCooldownSeconds = decreaseCooldownSeconds;
+        }
+
+        public String getStateFile() {
+            return stateFile;
+        }
+
+        public void setStateFile(String stateFile) {
+            this.stateFile = stateFile;
+        }
+    }
+    
+    /**
+     * Heavy-hitter tracking of web_search queries and refresh-ahead of their cached responses
+     */
+    public static class RefreshAheadProperties {
+        /**
+         * Refresh the hottest queries in the background
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Number of most frequent queries tracked for refreshing
+         */
+        private int topQueries = 20;
+        
+        /**
+         * Estimated requests a query needs before it is refreshed
+         */
+        private int minHits = 3;
+        
+        /**
+         * Refresh a cached response this long before it expires
+         */
+        private int windowSeconds = 60;
+        
+        /**
+         * How often the refresher looks for responses about to expire
+         */
+        private int checkIntervalSeconds = 15;
+        
+        /**
+         * Hard cap on refresh searches, whatever budget the providers have left
+         */
+        private int maxRefreshesPerMinute = 2;
+        
+        /**
+         * Time budget of one refresh search
+         */
+        private int deadlineSeconds = 30;
+        
+        /**
+         * Query counts are halved at this interval, so past popularity fades
+         */
+        private int decayMinutes = 60;
+        
+        /**
+         * Counters per row of the count-min sketch
+         */
+        private int sketchWidth = 2048;
+        
+        /**
+         * Rows (hash functions) of the count-min sketch
+         */
+        private int sketchDepth = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTopQueries() {
+            return topQueries;
+        }
+
+        public void setTopQueries(int topQueries) {
+            this.topQueries = topQueries;
+        }
+
+        public int getMinHits() {
+            return minHits;
+        }
+
+        public void setMinHits(int minHits) {
+            this.minHits = minHits;
+        }
+
+        public int getWindowSeconds() {
+            return windowSeconds;
+        }
+
+        public void setWindowSeconds(int windowSeconds) {
+            this.windowSeconds = windowSeconds;
+        }
+
+        public int getCheckIntervalSeconds() {
+            return checkIntervalSeconds;
+        }
+
+        public void setCheckIntervalSeconds(int checkIntervalSeconds) {
+            this.checkIntervalSeconds = checkIntervalSeconds;
+        }
+
+        public int getMaxRefreshesPerMinute() {
+            return maxRefreshesPerMinute;
+        }
+
+        public void setMaxRefreshesPerMinute(int maxRefreshesPerMinute) {
+            this.maxRefreshesPerMinute = maxRefreshesPerMinute;
+        }
+
+        public int getDeadlineSeconds() {
+            return deadlineSeconds;
+        }
+
+        public void setDeadlineSeconds(int deadlineSeconds) {
+            this.deadlineSeconds = deadlineSeconds;
+        }
+
+        public int getDecayMinutes() {
+            return decayMinutes;
+        }
+
+        public void setDecayMinutes(int decayMinutes) {
+            this.decayMinutes = decayMinutes;
+        }
+
+        public int getSketchWidth() {
+            return sketchWidth;
+        }
+
+        public void setSketchWidth(int sketchWidth) {
+            this.sketchWidth = sketchWidth;
+        }
+
+        public int getSketchDepth() {
+            return sketchDepth;
+        }
+
+        public void setSketchDepth(int sketchDepth) {
+            this.sketchDepth = sketchDepth;
+        }
+    }
+    
+    /**
+     * Weighted fair queuing of provider requests per MCP client, with optional per-client quotas
+     */
+    public static class ClientFairnessProperties {
+        /**
+         * Queue provider requests per client and serve clients in proportion to their weights
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Weight of clients without an entry in weights
+         */
+        private int defaultWeight = 1;
+        
+        /**
+         * Weight per client ID; a client with weight 3 gets three requests for every one of a client with weight 1
+         */
+        private Map<String, Integer> weights = new HashMap<>();
+        
+        /**
+         * Provider requests a client may make per minute when it has no entry in requestsPerMinute (0 for no quota)
+         */
+        private int defaultRequestsPerMinute = 0;
+        
+        /**
+         * Provider request quota per minute per client ID (0 for no quota)
+         */
+        private Map<String, Integer> requestsPerMinute = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getDefaultWeight() {
+            return defaultWeight;
+        }
+
+        public void setDefaultWeight(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        public Map<String, Integer> getWeights() {
+            return weights;
+        }
+
+        public void setWeights(Map<String, Integer> weights) {
+            this.weights = weights;
+        }
+
+        public int getDefaultRequestsPerMinute() {
+            return defaultRequestsPerMinute;
+        }
+
+        public void setDefaultRequestsPerMinute(int defaultRequestsPerMinute) {
+            this.defaultRequestsPerMinute = defaultRequestsPerMinute;
+        }
+
+        public Map<String, Integer> getRequestsPerMinute() {
+            return requestsPerMinute;
+        }
+
+        public void setRequestsPerMinute(Map<String, Integer> requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+        }
+    }
+    
+    /**
+     * Memory reserved for response bodies being read and documents being parsed
+     */
+    public static class MemoryBudgetProperties {
+        /**
+         * Reserve memory before reading response bodies and parsing documents
+         */
+        private boolean enabled = true;
+        
+        /**
+         * Memory all reservations together may hold (0 for a quarter of the maximum heap)
+         */
+        private int maxMegabytes = 0;
+        
+        /**
+         * Longest wait for memory before a fetch is rejected
+         */
+        private long maxWaitMillis = 5000;
+        
+        /**
+         * Memory reserved up front for a body without Content-Length; more is taken as it arrives
+         */
+        private int defaultBodyKilobytes = 512;
+        
+        /**
+         * Memory reserved per character of an HTML page for its DOM while it is parsed
+         */
+        private int domBytesPerChar = 6;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxMegabytes() {
+            return maxMegabytes;
+        }
+
+        public void setMaxMegabytes(int maxMegabytes) {
+            this.maxMegabytes = maxMegabytes;
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis;
+        }
+
+        public void setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public int getDefaultBodyKilobytes() {
+            return defaultBodyKilobytes;
+        }
+
+        public void setDefaultBodyKilobytes(int defaultBodyKilobytes) {
+            this.defaultBodyKilobytes = defaultBodyKilobytes;
+        }
+
+        public int getDomBytesPerChar() {
+            return domBytesPerChar;
+        }
+
+        public void setDomBytesPerChar(int domBytesPerChar) {
+            this.domBytesPerChar = domBytesPerChar;
+        }
     }
 }
@@ -0,0 +1,99 @@
+package com.xtivia.mcp.websearch.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.xtivia.mcp.websearch.index.LocalIndex;
+import com.xtivia.mcp.websearch.service.AdaptiveRateLimiter;
+import com.xtivia.mcp.websearch.service.CallTracker;
+import com.xtivia.mcp.websearch.service.ClientScheduler;
+import com.xtivia.mcp.websearch.service.DocumentCache;
+import com.xtivia.mcp.websearch.service.ExtractionTemplateCache;
+import com.xtivia.mcp.websearch.service.FetchScheduler;
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.MemoryGovernor;
+import com.xtivia.mcp.websearch.service.NegativeCache;
+import com.xtivia.mcp.websearch.service.QueryRefresher;
+import com.xtivia.mcp.websearch.service.SearchResultCache;
+import com.xtivia.mcp.websearch.service.WarmupRunner;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+/**
+ * HTTP endpoint exposing runtime metrics of the server's caches and limiters.
+ */
+@RestController
+@ConditionalOnWebApplication
+@RequestMapping("/stats")
+public class StatsController {
+    
+    private final ExtractionTemplateCache extractionTemplateCache;
+    private final HttpTransport httpTransport;
+    private final CallTracker callTracker;
+    private final WarmupRunner warmupRunner;
+    private final NegativeCache negativeCache;
+    private final SearchResultCache searchResultCache;
+    private final LocalIndex localIndex;
+    private final DocumentCache documentCache;
+    private final FetchScheduler fetchScheduler;
+    private final StateStore stateStore;
+    private final AdaptiveRateLimiter adaptiveRateLimiter;
+    private final QueryRefresher queryRefresher;
+    private final ClientScheduler clientScheduler;
+    private final MemoryGovernor memoryGovernor;
+    
+    public StatsController(ExtractionTemplateCache extractionTemplateCache,
+                           HttpTransport httpTransport,
+                           CallTracker callTracker,
+                           WarmupRunner warmupRunner,
+                           NegativeCache negativeCache,
+                           SearchResultCache searchResultCache,
+                           LocalIndex localIndex,
+                           DocumentCache documentCache,
+                           FetchScheduler fetchScheduler,
+                           StateStore stateStore,
+                           AdaptiveRateLimiter adaptiveRateLimiter,
+                           QueryRefresher queryRefresher,
+                           ClientScheduler clientScheduler,
+                           MemoryGovernor memoryGovernor) {
+        this.extractionTemplateCache = extractionTemplateCache;
+        this.httpTransport = httpTransport;
+        this.callTracker = callTracker;
+        this.warmupRunner = warmupRunner;
+        this.negativeCache = negativeCache;
+        this.searchResultCache = searchResultCache;
+        this.localIndex = localIndex;
+        this.documentCache = documentCache;
+        this.fetchScheduler = fetchScheduler;
+        this.stateStore = stateStore;
+        this.adaptiveRateLimiter = adaptiveRateLimiter;
+        this.queryRefresher = queryRefresher;
+        this.clientScheduler = clientScheduler;
+        this.memoryGovernor = memoryGovernor;
+    }
+    
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("extractionTemplates", extractionTemplateCache.getStats());
+        stats.put("transfer", httpTransport.getStats());
+        stats.put("negativeCache", negativeCache.getStats());
+        stats.put("queryCache", searchResultCache.getStats());
+        stats.put("localIndex", localIndex.getStats());
+        stats.put("documentCache", documentCache.getStats());
+        stats.put("fetchScheduler", fetchScheduler.getStats());
+        stats.put("memory", memoryGovernor.getStats());
+        stats.put("stateStore", stateStore.getStats());
+        stats.put("providerRates", adaptiveRateLimiter.getStats());
+        stats.put("clients", clientScheduler.getStats());
+        stats.put("refreshAhead", queryRefresher.getStats());
+        stats.put("activeCalls", callTracker.getActiveCalls());
+        stats.put("warmup", warmupRunner.getReport());
+        return stats;
+    }
+}
@@ -0,0 +1,30 @@
+package com.xtivia.mcp.websearch.index;
+
+/**
+ * A page stored in the local index
+ *
+ * @param sequence Unique per indexing operation; a re-indexed URL gets a new one
+ *                 and only the highest is live (assigned at load time, not persisted)
+ * @param length Number of indexed terms, with title terms counted by their weight
+ */
+record IndexedDocument(
+    long sequence,
+    String url,
+    String title,
+    String summary,
+    String content,
+    long indexedAt,
+    int length
+) {
+
+    /**
+     * Rough heap footprint, for statistics
+     */
+    long sizeInBytes() {
+        return 64L + 2L * (length(url) + length(title) + length(summary) + length(content));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,527 @@
+package com.xtivia.mcp.websearch.index;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.FetchResult;
+import com.xtivia.mcp.websearch.model.LocalSearchResponse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Full-text index of the pages this server has fetched, searched with BM25.
+ *
+ * <p>Every extracted page is added as a single-document {@link Segment}. In the
+ * background, segments of the same size tier are merged once there are
+ * {@code merge-factor} of them (so a page is re-merged only logarithmically often),
+ * and segments that are mostly dead are rewritten on their own. Merging drops
+ * documents that expired, were evicted or were replaced by a newer fetch of the
+ * same URL; until then those are skipped at query time.
+ *
+ * <p>Memory is bounded by {@code max-documents} (the oldest pages are evicted
+ * first). When a directory is configured, merged segments are also written to
+ * disk and loaded again at startup, bounded by {@code max-disk-megabytes}.
+ */
+@Service
+public class LocalIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalIndex.class);
+
+    /**
+     * BM25 term frequency saturation and length normalization
+     */
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final int SNIPPET_LENGTH = 240;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".idx";
+
+    private static final long FLUSH_WAIT_MS = 5000;
+
+    private final WebSearchProperties properties;
+
+    private final Object lock = new Object();
+
+    /**
+     * Current segments; replaced as a whole so searches can read it without locking
+     */
+    private volatile List<Segment> segments = List.of();
+
+    /**
+     * Latest indexed version of each URL
+     */
+    private final Map<String, IndexedDocument> live = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequences = new AtomicLong();
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicBoolean merging = new AtomicBoolean();
+
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong merges = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public LocalIndex(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Load the segments persisted by an earlier run
+     */
+    @PostConstruct
+    public void load() {
+        Path directory = directory();
+        if (!properties.getLocalIndex().isEnabled() || directory == null) {
+            return;
+        }
+
+        List<Segment> loaded = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(LocalIndex::isSegmentFile).sorted().toList();
+            }
+
+            for (Path file : files) {
+                try {
+                    Segment segment = Segment.readFrom(file, generationOf(file), sequences::incrementAndGet);
+                    loaded.add(segment);
+                    generations.accumulateAndGet(segment.generation(), Math::max);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Skipping unreadable local index segment {}: {}", file.getFileName(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not load the local index from {}: {}", directory, e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            for (Segment segment : loaded) {
+                for (IndexedDocument document : segment.documents()) {
+                    if (!isExpired(document, now)) {
+                        // The newest fetch of a URL wins, whichever segment it is in
+                        live.merge(document.url(), document,
+                            (existing, candidate) -> candidate.indexedAt() > existing.indexedAt() ? candidate : existing);
+                    }
+                }
+            }
+            segments = List.copyOf(loaded);
+            evictOldest();
+        }
+
+        if (!loaded.isEmpty()) {
+            log.info("Loaded local index: {} pages in {} segments", live.size(), loaded.size());
+            scheduleMerge();
+        }
+    }
+
+    /**
+     * Index an extracted page, replacing an earlier version of the same URL
+     */
+    public void add(FetchResult page) {
+        add(page.url(), page.title(), page.summary(), page.content());
+    }
+
+    /**
+     * Index a page's text, replacing an earlier version of the same URL
+     *
+     * @param summary Shown with hits; may be null
+     */
+    public void add(String url, String title, String summary, String content) {
+        if (!properties.getLocalIndex().isEnabled() || content == null || content.isBlank()) {
+            return;
+        }
+
+        // Analysis happens outside the lock; only publishing the segment is serialized
+        Segment segment = Segment.of(generations.incrementAndGet(), sequences.incrementAndGet(),
+            url, title, summary, content, System.currentTimeMillis());
+        IndexedDocument document = segment.document(0);
+
+        synchronized (lock) {
+            List<Segment> next = new ArrayList<>(segments.size() + 1);
+            next.addAll(segments);
+            next.add(segment);
+            segments = List.copyOf(next);
+            live.put(document.url(), document);
+            evictOldest();
+        }
+        added.incrementAndGet();
+
+        if (properties.isDebug()) {
+            log.debug("Indexed {} ({} terms)", document.url(), document.length());
+        }
+        scheduleMerge();
+    }
+
+    /**
+     * Rank the live pages against a query with BM25
+     */
+    public List<LocalSearchResponse.Hit> search(String query, int maxResults) {
+        searches.incrementAndGet();
+        Set<String> queryTerms = new LinkedHashSet<>(TextAnalyzer.terms(query));
+        if (!properties.getLocalIndex().isEnabled() || queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        List<Segment> snapshot = segments;
+        long documents = 0;
+        long totalLength = 0;
+        for (Segment segment : snapshot) {
+            documents += segment.size();
+            totalLength += segment.totalLength();
+        }
+        if (documents == 0) {
+            return List.of();
+        }
+
+        // Collection statistics include dead documents until they are merged away, as in Lucene
+        double averageLength = (double) totalLength / documents;
+        long now = System.currentTimeMillis();
+        Map<IndexedDocument, double[]> scores = new IdentityHashMap<>();
+
+        for (String term : queryTerms) {
+            long documentFrequency = 0;
+            for (Segment segment : snapshot) {
+                Segment.Postings postings = segment.postings(term);
+                documentFrequency += postings != null ? postings.documents().length : 0;
+            }
+            if (documentFrequency == 0) {
+                continue;
+            }
+            double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+            for (Segment segment : snapshot) {
+                Segment.Postings postings = segment.postings(term);
+                if (postings == null) {
+                    continue;
+                }
+                for (int i = 0; i < postings.documents().length; i++) {
+                    IndexedDocument document = segment.document(postings.documents()[i]);
+                    if (!isLive(document, now)) {
+                        continue;
+                    }
+                    int frequency = postings.frequencies()[i];
+                    double norm = K1 * (1 - B + B * document.length() / averageLength);
+                    scores.computeIfAbsent(document, d -> new double[1])[0] +=
+                        idf * frequency * (K1 + 1) / (frequency + norm);
+                }
+            }
+        }
+
+        return scores.entrySet().stream()
+            .sorted(Comparator.comparingDouble((Map.Entry<IndexedDocument, double[]> e) -> e.getValue()[0]).reversed())
+            .limit(maxResults)
+            .map(e -> {
+                IndexedDocument document = e.getKey();
+                return new LocalSearchResponse.Hit(
+                    document.url(),
+                    document.title(),
+                    document.summary(),
+                    snippet(document.content(), queryTerms),
+                    Math.round(e.getValue()[0] * 1000) / 1000.0,
+                    Instant.ofEpochMilli(document.indexedAt()).toString()
+                );
+            })
+            .toList();
+    }
+
+    /**
+     * Number of live pages
+     */
+    public int size() {
+        return live.size();
+    }
+
+    public Stats getStats() {
+        List<Segment> snapshot = segments;
+        long memoryBytes = 0;
+        long diskBytes = 0;
+        int persisted = 0;
+        for (Segment segment : snapshot) {
+            memoryBytes += segment.sizeInBytes();
+            if (segment.file() != null) {
+                persisted++;
+                diskBytes += fileSize(segment.file());
+            }
+        }
+        return new Stats(live.size(), snapshot.size(), persisted, memoryBytes, diskBytes,
+            added.get(), searches.get(), merges.get(), evicted.get());
+    }
+
+    /**
+     * Persist the segments that only exist in memory
+     */
+    @PreDestroy
+    public void flush() {
+        if (!properties.getLocalIndex().isEnabled() || directory() == null) {
+            return;
+        }
+
+        // Take over from a background merge, so no segment is merged twice
+        long waitUntil = System.currentTimeMillis() + FLUSH_WAIT_MS;
+        while (!merging.compareAndSet(false, true)) {
+            if (System.currentTimeMillis() > waitUntil) {
+                log.warn("Local index merge still running, skipping flush");
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        List<Segment> unpersisted = segments.stream().filter(segment -> segment.file() == null).toList();
+        if (!unpersisted.isEmpty()) {
+            replace(unpersisted, Segment.merge(generations.incrementAndGet(), unpersisted, this::isLive));
+        }
+    }
+
+    private void scheduleMerge() {
+        if (merging.compareAndSet(false, true)) {
+            Mono.fromRunnable(this::mergeSegments)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doFinally(signal -> merging.set(false))
+                .subscribe(null, e -> log.warn("Local index merge failed: {}", e.getMessage()));
+        }
+    }
+
+    private void mergeSegments() {
+        List<Segment> selected;
+        while ((selected = selectMerge()) != null) {
+            replace(selected, Segment.merge(generations.incrementAndGet(), selected, this::isLive));
+            merges.incrementAndGet();
+        }
+    }
+
+    /**
+     * Pick the next merge: {@code merge-factor} segments of the same size tier,
+     * or else one segment that is at least half dead
+     *
+     * @return Segments to merge, or null when there is nothing to do
+     */
+    private List<Segment> selectMerge() {
+        long now = System.currentTimeMillis();
+        live.values().removeIf(document -> isExpired(document, now));
+
+        List<Segment> snapshot = segments;
+        int mergeFactor = Math.max(2, properties.getLocalIndex().getMergeFactor());
+
+        Map<Integer, List<Segment>> tiers = new TreeMap<>();
+        for (Segment segment : snapshot) {
+            int tier = segment.size() <= 1 ? 0 : (int) (Math.log(segment.size()) / Math.log(mergeFactor));
+            List<Segment> tierSegments = tiers.computeIfAbsent(tier, t -> new ArrayList<>());
+            tierSegments.add(segment);
+            if (tierSegments.size() >= mergeFactor) {
+                return tierSegments;
+            }
+        }
+
+        for (Segment segment : snapshot) {
+            long liveDocuments = segment.documents().stream().filter(document -> isLive(document, now)).count();
+            if (liveDocuments * 2 < segment.size() || segment.size() == 0) {
+                return List.of(segment);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Swap merged segments for their merge result, persisting it when a directory is configured
+     */
+    private void replace(List<Segment> merged, Segment result) {
+        Path directory = directory();
+        if (directory != null && result.size() > 0) {
+            try {
+                Files.createDirectories(directory);
+                result.writeTo(directory.resolve(String.format("%s%012d%s",
+                    SEGMENT_FILE_PREFIX, result.generation(), SEGMENT_FILE_SUFFIX)));
+            } catch (IOException e) {
+                log.warn("Could not persist local index segment: {}", e.getMessage());
+            }
+        }
+
+        synchronized (lock) {
+            List<Segment> next = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                if (!merged.contains(segment)) {
+                    next.add(segment);
+                }
+            }
+            if (result.size() > 0) {
+                next.add(result);
+            }
+            segments = List.copyOf(next);
+        }
+
+        for (Segment segment : merged) {
+            deleteFile(segment);
+        }
+        enforceDiskLimit();
+    }
+
+    /**
+     * Drop the oldest persisted segments while the index directory is over its limit
+     */
+    private void enforceDiskLimit() {
+        long maxBytes = properties.getLocalIndex().getMaxDiskMegabytes() * 1024L * 1024L;
+        synchronized (lock) {
+            List<Segment> persisted = new ArrayList<>(segments.stream().filter(segment -> segment.file() != null).toList());
+            persisted.sort(Comparator.comparingLong(Segment::generation));
+            long diskBytes = persisted.stream().mapToLong(segment -> fileSize(segment.file())).sum();
+
+            List<Segment> dropped = new ArrayList<>();
+            while (diskBytes > maxBytes && !persisted.isEmpty()) {
+                Segment oldest = persisted.remove(0);
+                diskBytes -= fileSize(oldest.file());
+                dropped.add(oldest);
+                for (IndexedDocument document : oldest.documents()) {
+                    if (live.remove(document.url(), document)) {
+                        evicted.incrementAndGet();
+                    }
+                }
+            }
+
+            if (!dropped.isEmpty()) {
+                segments = segments.stream().filter(segment -> !dropped.contains(segment)).toList();
+                dropped.forEach(this::deleteFile);
+                log.info("Local index over {} MB on disk, dropped {} oldest segment(s)",
+                    properties.getLocalIndex().getMaxDiskMegabytes(), dropped.size());
+            }
+        }
+    }
+
+    /**
+     * Forget the oldest pages while more than {@code max-documents} are live (caller holds the lock)
+     */
+    private void evictOldest() {
+        int maxDocuments = properties.getLocalIndex().getMaxDocuments();
+        while (live.size() > maxDocuments) {
+            live.values().stream()
+                .min(Comparator.comparingLong(IndexedDocument::indexedAt))
+                .ifPresent(oldest -> {
+                    if (live.remove(oldest.url(), oldest)) {
+                        evicted.incrementAndGet();
+                    }
+                });
+        }
+    }
+
+    private boolean isLive(IndexedDocument document) {
+        return isLive(document, System.currentTimeMillis());
+    }
+
+    private boolean isLive(IndexedDocument document, long now) {
+        return live.get(document.url()) == document && !isExpired(document, now);
+    }
+
+    private boolean isExpired(IndexedDocument document, long now) {
+        return now - document.indexedAt() >= properties.getLocalIndex().getTtlHours() * 3_600_000L;
+    }
+
+    /**
+     * The sentence with the most query terms, shortened to the snippet length
+     */
+    private static String snippet(String content, Set<String> queryTerms) {
+        String best = null;
+        int bestMatches = 0;
+        for (String sentence : content.split("(?<=[.!?])\\s+|\\n+")) {
+            int matches = 0;
+            Set<String> sentenceTerms = new LinkedHashSet<>(TextAnalyzer.terms(sentence));
+            for (String term : queryTerms) {
+                if (sentenceTerms.contains(term)) {
+                    matches++;
+                }
+            }
+            if (matches > bestMatches) {
+                best = sentence.trim();
+                bestMatches = matches;
+            }
+        }
+
+        String snippet = best != null ? best : content.trim();
+        return snippet.length() > SNIPPET_LENGTH ? snippet.substring(0, SNIPPET_LENGTH - 3) + "..." : snippet;
+    }
+
+    private Path directory() {
+        String directory = properties.getLocalIndex().getDirectory();
+        return directory == null || directory.isBlank() ? null : Path.of(directory);
+    }
+
+    private void deleteFile(Segment segment) {
+        if (segment.file() != null) {
+            try {
+                Files.deleteIfExists(segment.file());
+            } catch (IOException e) {
+                log.warn("Could not delete local index segment {}: {}", segment.file(), e.getMessage());
+            }
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX);
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length()));
+    }
+
+    /**
+     * Local index metrics
+     *
+     * @param documents Live pages
+     * @param persistedSegments Segments that are also stored on disk
+     * @param memoryBytes Estimated heap used by all segments, including dead documents
+     * @param evicted Pages dropped to stay within the document or disk limit
+     */
+    public record Stats(
+        int documents,
+        int segments,
+        int persistedSegments,
+        long memoryBytes,
+        long diskBytes,
+        long added,
+        long searches,
+        long merges,
+        long evicted
+    ) {}
+}
@@ -0,0 +1,316 @@
+package com.xtivia.mcp.websearch.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable part of the local index: a set of documents and the postings
+ * (document number and term frequency) of every term that occurs in them.
+ *
+ * <p>New pages become single-document segments; segments are combined by
+ * {@link #merge}, which drops documents that are no longer live and renumbers
+ * the postings without re-analyzing any text. Merged segments can be written
+ * to and read from a compressed file.
+ */
+final class Segment {
+
+    /**
+     * Title terms count this many times, so a match in the title outranks one in the body
+     */
+    static final int TITLE_WEIGHT = 3;
+
+    private static final int FILE_MAGIC = 0x4D575349;
+    private static final int FILE_VERSION = 1;
+
+    private final long generation;
+    private final IndexedDocument[] documents;
+    private final Map<String, Postings> postings;
+    private final long totalLength;
+    private volatile Path file;
+
+    private Segment(long generation, IndexedDocument[] documents, Map<String, Postings> postings) {
+        this.generation = generation;
+        this.documents = documents;
+        this.postings = postings;
+        this.totalLength = Arrays.stream(documents).mapToLong(IndexedDocument::length).sum();
+    }
+
+    /**
+     * Analyze one page into a segment of its own
+     */
+    static Segment of(long generation, long sequence, String url, String title, String summary, String content,
+                      long indexedAt) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : TextAnalyzer.terms(title)) {
+            frequencies.merge(term, TITLE_WEIGHT, Integer::sum);
+        }
+        for (String term : TextAnalyzer.terms(content)) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+
+        int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+        IndexedDocument document = new IndexedDocument(sequence, url, title, summary, content, indexedAt, length);
+
+        Map<String, Postings> postings = new HashMap<>(frequencies.size() * 2);
+        frequencies.forEach((term, frequency) -> postings.put(term, new Postings(new int[] {0}, new int[] {frequency})));
+        return new Segment(generation, new IndexedDocument[] {document}, postings);
+    }
+
+    /**
+     * Combine segments into one, keeping only the documents that pass the filter
+     */
+    static Segment merge(long generation, List<Segment> segments, Predicate<IndexedDocument> keep) {
+        List<IndexedDocument> merged = new ArrayList<>();
+        List<int[]> renumbering = new ArrayList<>(segments.size());
+
+        for (Segment segment : segments) {
+            int[] newNumbers = new int[segment.documents.length];
+            for (int i = 0; i < segment.documents.length; i++) {
+                if (keep.test(segment.documents[i])) {
+                    newNumbers[i] = merged.size();
+                    merged.add(segment.documents[i]);
+                } else {
+                    newNumbers[i] = -1;
+                }
+            }
+            renumbering.add(newNumbers);
+        }
+
+        // Segments are visited in order, so each term's document numbers stay ascending
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+        for (int s = 0; s < segments.size(); s++) {
+            int[] newNumbers = renumbering.get(s);
+            for (Map.Entry<String, Postings> entry : segments.get(s).postings.entrySet()) {
+                Postings source = entry.getValue();
+                PostingsBuilder builder = null;
+                for (int i = 0; i < source.documents().length; i++) {
+                    int document = newNumbers[source.documents()[i]];
+                    if (document >= 0) {
+                        if (builder == null) {
+                            builder = builders.computeIfAbsent(entry.getKey(), term -> new PostingsBuilder());
+                        }
+                        builder.add(document, source.frequencies()[i]);
+                    }
+                }
+            }
+        }
+
+        Map<String, Postings> postings = new HashMap<>(builders.size() * 2);
+        builders.forEach((term, builder) -> postings.put(term, builder.build()));
+        return new Segment(generation, merged.toArray(IndexedDocument[]::new), postings);
+    }
+
+    /**
+     * Write the segment to a file (atomically, through a temporary file)
+     */
+    void writeTo(Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(file), 64 * 1024))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+
+            out.writeInt(documents.length);
+            for (IndexedDocument document : documents) {
+                writeString(out, document.url());
+                writeString(out, document.title());
+                writeString(out, document.summary());
+                writeString(out, document.content());
+                out.writeLong(document.indexedAt());
+                out.writeInt(document.length());
+            }
+
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Postings> entry : new TreeMap<>(postings).entrySet()) {
+                writeString(out, entry.getKey());
+                Postings termPostings = entry.getValue();
+                writeVarInt(out, termPostings.documents().length);
+                int previous = 0;
+                for (int i = 0; i < termPostings.documents().length; i++) {
+                    writeVarInt(out, termPostings.documents()[i] - previous);
+                    writeVarInt(out, termPostings.frequencies()[i]);
+                    previous = termPostings.documents()[i];
+                }
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+    }
+
+    /**
+     * Read a segment written by {@link #writeTo}
+     *
+     * @param sequences Source of the documents' sequence numbers
+     */
+    static Segment readFrom(Path source, long generation, LongSupplier sequences) throws IOException {
+        try (InputStream file = Files.newInputStream(source);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(file), 64 * 1024))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a local index segment: " + source);
+            }
+
+            IndexedDocument[] documents = new IndexedDocument[in.readInt()];
+            for (int i = 0; i < documents.length; i++) {
+                String url = readString(in);
+                String title = readString(in);
+                String summary = readString(in);
+                String content = readString(in);
+                documents[i] = new IndexedDocument(sequences.getAsLong(), url, title, summary, content,
+                    in.readLong(), in.readInt());
+            }
+
+            int terms = in.readInt();
+            Map<String, Postings> postings = new HashMap<>(terms * 2);
+            for (int t = 0; t < terms; t++) {
+                String term = readString(in);
+                int count = readVarInt(in);
+                int[] termDocuments = new int[count];
+                int[] frequencies = new int[count];
+                int previous = 0;
+                for (int i = 0; i < count; i++) {
+                    previous += readVarInt(in);
+                    termDocuments[i] = previous;
+                    frequencies[i] = readVarInt(in);
+                }
+                postings.put(term, new Postings(termDocuments, frequencies));
+            }
+
+            Segment segment = new Segment(generation, documents, postings);
+            segment.file = source;
+            return segment;
+        }
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    int size() {
+        return documents.length;
+    }
+
+    long totalLength() {
+        return totalLength;
+    }
+
+    IndexedDocument document(int number) {
+        return documents[number];
+    }
+
+    List<IndexedDocument> documents() {
+        return Arrays.asList(documents);
+    }
+
+    /**
+     * Postings of a term, or null if it does not occur
+     */
+    Postings postings(String term) {
+        return postings.get(term);
+    }
+
+    /**
+     * File the segment was written to or read from, or null if it only exists in memory
+     */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Rough heap footprint, for statistics
+     */
+    long sizeInBytes() {
+        long bytes = 0;
+        for (IndexedDocument document : documents) {
+            bytes += document.sizeInBytes();
+        }
+        for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+            bytes += 48L + 2L * entry.getKey().length() + 8L * entry.getValue().documents().length;
+        }
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Documents containing a term (ascending) and the term's frequency in each
+     */
+    record Postings(int[] documents, int[] frequencies) {}
+
+    private static final class PostingsBuilder {
+
+        private int[] documents = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        Postings build() {
+            return new Postings(Arrays.copyOf(documents, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+}
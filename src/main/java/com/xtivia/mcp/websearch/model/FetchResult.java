@@ -34,13 +34,63 @@ public record FetchResult(
     /**
      * Metadata about the fetch operation
      */
-    Metadata metadata
+    Metadata metadata,
+    
+    /**
+     * Position of {@code content} within the page and the page's section outline
+     */
+    Paging paging
 ) {
     
+    public FetchResult(String url, String title, String content, String summary,
+                       List<String> keywords, Metadata metadata) {
+        this(url, title, content, summary, keywords, metadata, null);
+    }
+    
+    /**
+     * @param transferredBytes Body bytes received on the wire (compressed size)
+     * @param contentEncoding Content-Encoding of the response ("identity" if none)
+     * @param decodeMillis Time spent decompressing the body
+     */
     public record Metadata(
         String domain,
         String contentType,
         Integer contentLength,
-        String lastModified
+        String lastModified,
+        Long transferredBytes,
+        String contentEncoding,
+        Double decodeMillis
+    ) {}
+    
+    /**
+     * Where the returned content sits in the page's extracted text
+     * 
+     * @param offset Character offset of the returned content
+     * @param totalLength Length of the page's extracted text
+     * @param nextOffset Offset to request for the text that follows, or null at the end
+     * @param section Id of the requested section, or null
+     * @param sections Heading outline of the page; request one with its id
+     * @param fromCache Whether the content was served from the parsed-page cache
+     */
+    public record Paging(
+        int offset,
+        int totalLength,
+        Integer nextOffset,
+        String section,
+        List<Section> sections,
+        boolean fromCache
+    ) {}
+    
+    /**
+     * A section of the page, from its heading up to the next heading of the same or a higher level
+     * 
+     * @param level 1-6 for h1-h6, 0 for the text before the first heading
+     */
+    public record Section(
+        String id,
+        String heading,
+        int level,
+        int offset,
+        int length
     ) {}
 }
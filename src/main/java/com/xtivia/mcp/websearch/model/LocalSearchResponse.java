@@ -0,0 +1,48 @@
+package com.xtivia.mcp.websearch.model;
+
+import java.util.List;
+
+/**
+ * Response object for searches of the local index of fetched pages.
+ */
+public record LocalSearchResponse(
+    /**
+     * The query as given
+     */
+    String query,
+    
+    /**
+     * Number of results returned
+     */
+    int totalResults,
+    
+    /**
+     * Number of pages currently in the local index
+     */
+    int indexedPages,
+    
+    /**
+     * Time taken by the search in milliseconds
+     */
+    double elapsedMs,
+    
+    /**
+     * Matching pages, best first
+     */
+    List<Hit> results
+) {
+    
+    /**
+     * @param snippet Sentence of the page that matches the most query terms
+     * @param score BM25 relevance score
+     * @param indexedAt When the page was fetched and indexed (ISO-8601)
+     */
+    public record Hit(
+        String url,
+        String title,
+        String summary,
+        String snippet,
+        double score,
+        String indexedAt
+    ) {}
+}
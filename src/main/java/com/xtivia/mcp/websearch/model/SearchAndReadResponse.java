@@ -0,0 +1,45 @@
+package com.xtivia.mcp.websearch.model;
+
+import java.util.List;
+
+/**
+ * Response object for combined search and read operations.
+ */
+public record SearchAndReadResponse(
+    /**
+     * The original query (or enhanced version)
+     */
+    String query,
+    
+    /**
+     * Search provider used
+     */
+    String searchProvider,
+    
+    /**
+     * Total number of search results returned
+     */
+    int totalResults,
+    
+    /**
+     * Number of results whose content was fetched successfully
+     */
+    int pagesRead,
+    
+    /**
+     * Wall-clock time of the whole operation in milliseconds
+     */
+    long elapsedMs,
+    
+    /**
+     * Search results in rank order, with content attached to the ones that were read
+     */
+    List<Hit> results
+) {
+    
+    public record Hit(
+        SearchResult result,
+        FetchResult content,
+        String error
+    ) {}
+}
@@ -2,6 +2,8 @@ package com.xtivia.mcp.websearch.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Response object for search operations.
  */
@@ -21,9 +23,46 @@ public record SearchResponse(
      */
     String searchProvider,
     
+    /**
+     * Providers that contributed results (more than one for fan-out searches)
+     */
+    List<String> providers,
+    
     /**
      * List of search results
      */
-    List<SearchResult> results
+    List<SearchResult> results,
+    
+    /**
+     * True when the results were cached for a similar, not identical, query
+     */
+    boolean approximate,
+    
+    /**
+     * Query the cached results were searched for (approximate responses only)
+     */
+    String matchedQuery,
+    
+    /**
+     * Similarity between this query and the matched one, 0-1 (approximate responses only)
+     */
+    Double similarity,
+    
+    /**
+     * True when the providers reported that they have no results beyond these,
+     * so a search for more results would return the same ones (not sent to clients)
+     */
+    @JsonIgnore
+    boolean exhausted
 ) {
+    
+    public SearchResponse(String query, int totalResults, String searchProvider, List<String> providers,
+                          List<SearchResult> results) {
+        this(query, totalResults, searchProvider, providers, results, false);
+    }
+    
+    public SearchResponse(String query, int totalResults, String searchProvider, List<String> providers,
+                          List<SearchResult> results, boolean exhausted) {
+        this(query, totalResults, searchProvider, providers, results, false, null, null, exhausted);
+    }
 }
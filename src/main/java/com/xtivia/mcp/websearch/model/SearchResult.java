@@ -2,6 +2,8 @@ package com.xtivia.mcp.websearch.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Represents a single search result.
  */
@@ -24,6 +26,12 @@ public record SearchResult(
     /**
      * Intelligent summary of the result
      */
-    String summary
+    String summary,
+    
+    /**
+     * Snippet shown by the search engine; keywords and summary are derived from it
+     */
+    @JsonIgnore
+    String snippet
 ) {
 }
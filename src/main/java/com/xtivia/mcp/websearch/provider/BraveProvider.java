@@ -3,11 +3,9 @@ package com.xtivia.mcp.websearch.provider;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -16,15 +14,23 @@ import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import com.xtivia.mcp.websearch.config.WebSearchProperties;
 import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.MemoryGovernor;
 import com.xtivia.mcp.websearch.service.RequestManager;
+import com.xtivia.mcp.websearch.service.UrlCanonicalizer;
 
 /**
  * Brave Search provider implementation.
  * Used as fallback when DuckDuckGo is rate limited.
+ * Only the first results page is read; results are exhausted when it holds
+ * fewer than were asked for.
+ * 
+ * <p>Brave's captcha pages are recognized while they stream in and fail the
+ * search with {@link RequestManager.ThrottledException}.
  */
 @Component
 public class BraveProvider implements SearchProvider {
@@ -32,16 +38,22 @@ public class BraveProvider implements SearchProvider {
     private static final Logger log = LoggerFactory.getLogger(BraveProvider.class);
     private static final String BASE_URL = "https://search.brave.com/search";
     
-    private final WebClient.Builder webClientBuilder;
+    private final ResultsPageInspector resultsPageInspector = new ResultsPageInspector(getName(),
+        Set.of(), List.of("pow-captcha", "/search/captcha"));
+    
+    private final HttpTransport httpTransport;
     private final RequestManager requestManager;
     private final WebSearchProperties properties;
+    private final UrlCanonicalizer urlCanonicalizer;
     
-    public BraveProvider(WebClient.Builder webClientBuilder,
+    public BraveProvider(HttpTransport httpTransport,
                         RequestManager requestManager,
-                        WebSearchProperties properties) {
-        this.webClientBuilder = webClientBuilder;
+                        WebSearchProperties properties,
+                        UrlCanonicalizer urlCanonicalizer) {
+        this.httpTransport = httpTransport;
         this.requestManager = requestManager;
         this.properties = properties;
+        this.urlCanonicalizer = urlCanonicalizer;
     }
     
     @Override
@@ -49,44 +61,54 @@ public class BraveProvider implements SearchProvider {
         return "Brave";
     }
     
+    @Override
+    public String getEndpoint() {
+        return BASE_URL;
+    }
+    
     @Override
     public List<SearchResult> search(String query, int maxResults, String dateFilter) {
+        return search(query, maxResults, dateFilter, CallContext.unbounded(), result -> {}).results();
+    }
+    
+    @Override
+    public Results search(String query, int maxResults, String dateFilter,
+                          CallContext context, Consumer<SearchResult> onResult) {
         try {
             // Format query for Brave (handle site: operators)
             String searchQuery = formatQueryForBrave(query);
             String url = buildSearchUrl(searchQuery);
             
             // Wait for rate limiting
-            requestManager.waitForRequest();
-            requestManager.addRandomDelay();
+            requestManager.waitForRequest(getName(), context);
+            requestManager.addRandomDelay(context);
             
             // Execute search
-            String html = webClientBuilder.build()
-                .get()
-                .uri(url)
-                .headers(headers -> {
+            // Compressed transfer is negotiated and decoded by the transport
+            String html = requestManager.track(getName(), httpTransport.getDocument(url, context, headers -> {
                     headers.set("User-Agent", requestManager.getUserAgent());
                     headers.set("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
                     headers.set("Accept-Language", "en-US,en;q=0.5");
-                    // DON'T request compressed response - Spring WebClient has issues with gzip decompression on Windows
-                    // headers.set("Accept-Encoding", "gzip, deflate, br");
                     headers.set("DNT", "1");
                     headers.set("Connection", "keep-alive");
                     headers.set("Upgrade-Insecure-Requests", "1");
-                })
-                .retrieve()
-                .bodyToMono(String.class)
+                }, resultsPageInspector))
+                .map(HttpTransport.Response::body)
                 .blockOptional()
                 .orElseThrow(() -> new RuntimeException("Empty response from Brave"));
             
-            List<SearchResult> results = parseResults(html, maxResults);
+            List<SearchResult> results = parseResults(html, maxResults, onResult);
             
             if (properties.isDebug()) {
                 log.debug("Brave search returned {} results for query: {}", results.size(), query);
             }
             
-            return results;
+            // Only the first page is read, and it held fewer results than asked for
+            return new Results(results, results.size() < maxResults);
             
+        } catch (CallContext.AbortedException | RequestManager.ThrottledException
+                 | MemoryGovernor.BudgetExhaustedException e) {
+            throw e;
         } catch (Exception e) {
             if (properties.isDebug()) {
                 log.error("Brave search failed for query \"{}\": {}", query, e.getMessage());
@@ -112,7 +134,14 @@ public class BraveProvider implements SearchProvider {
         }
     }
     
-    private List<SearchResult> parseResults(String html, int maxResults) {
+    /**
+     * Parse a results page that was obtained elsewhere (used to warm up the parser at startup).
+     */
+    public List<SearchResult> parseResultsPage(String html, int maxResults) {
+        return parseResults(html, maxResults, result -> {});
+    }
+    
+    private List<SearchResult> parseResults(String html, int maxResults, Consumer<SearchResult> onResult) {
         List<SearchResult> results = new ArrayList<>();
         
         try {
@@ -150,9 +179,10 @@ public class BraveProvider implements SearchProvider {
                     String url = titleElement.attr("href");
                     
                     // Clean up relative URLs if needed
-                    if (url.startsWith("/")) {
+                    if (url.startsWith("/") && !url.startsWith("//")) {
                         url = "https://search.brave.com" + url;
                     }
+                    url = urlCanonicalizer.canonicalize(url);
                     
                     // Basic validation
                     if (title.isEmpty() || url.isEmpty() || url.length() < 10) {
@@ -171,15 +201,15 @@ public class BraveProvider implements SearchProvider {
                         }
                     }
                     
-                    // Generate keywords and summary
-                    List<String> keywords = extractKeywords(title, snippet);
-                    String summary = createSummary(title, snippet, url);
                     
                     if (properties.isDebug()) {
                         log.debug("Adding Brave result: {}...", title.substring(0, Math.min(50, title.length())));
                     }
                     
-                    results.add(new SearchResult(title, url, keywords, summary));
+                    // Keywords and summary are derived later, for the fields the caller selects
+                    SearchResult result = new SearchResult(title, url, null, null, snippet);
+                    results.add(result);
+                    onResult.accept(result);
                     
                     foundResults = true;
                 }
@@ -195,72 +225,4 @@ public class BraveProvider implements SearchProvider {
         
         return results;
     }
-    
-    private List<String> extractKeywords(String title, String snippet) {
-        String text = (title + " " + snippet).toLowerCase();
-        String[] words = text.split("\\s+");
-        
-        Set<String> stopWords = Set.of(
-            "the", "and", "for", "are", "but", "not", "you", "all", "can", 
-            "had", "her", "was", "one", "our", "out", "day", "get", "has",
-            "him", "his", "how", "man", "new", "now", "old", "see", "two",
-            "way", "who", "boy", "did", "its", "let", "put", "say", "she",
-            "too", "use"
-        );
-        
-        Map<String, Integer> wordCount = new HashMap<>();
-        for (String word : words) {
-            word = word.replaceAll("[^a-z]", "");
-            if (word.length() >= 3 && !stopWords.contains(word)) {
-                wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
-            }
-        }
-        
-        return wordCount.entrySet().stream()
-            .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-            .limit(5)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-    }
-    
-    private String createSummary(String title, String snippet, String url) {
-        if (snippet == null || snippet.isEmpty()) {
-            return "Content from " + extractDomain(url) + ": " + title;
-        }
-        
-        String summary = snippet.replaceAll("\\s+", " ").trim();
-        
-        if (summary.length() < 50) {
-            summary = title + ": " + summary;
-        }
-        
-        if (summary.length() > 200) {
-            String[] sentences = summary.split("[.!?]+");
-            StringBuilder truncated = new StringBuilder(sentences[0]);
-            
-            for (int i = 1; i < sentences.length; i++) {
-                if ((truncated.length() + sentences[i].length()) <= 180) {
-                    truncated.append(sentences[i]).append(".");
-                } else {
-                    break;
-                }
-            }
-            
-            summary = truncated.length() > 50 ? truncated.toString() : summary.substring(0, 180) + "...";
-        }
-        
-        if (!summary.matches(".*[.!?]$")) {
-            summary += summary.length() < 180 ? "." : "...";
-        }
-        
-        return summary;
-    }
-    
-    private String extractDomain(String url) {
-        try {
-            return java.net.URI.create(url).toURL().getHost().replaceFirst("^www\\.", "");
-        } catch (Exception e) {
-            return "unknown source";
-        }
-    }
 }
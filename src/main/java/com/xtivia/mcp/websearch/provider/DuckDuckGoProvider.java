@@ -3,11 +3,14 @@ package com.xtivia.mcp.websearch.provider;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -15,16 +18,38 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
 
 import com.xtivia.mcp.websearch.config.WebSearchProperties;
 import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.MemoryGovernor;
 import com.xtivia.mcp.websearch.service.RequestManager;
+import com.xtivia.mcp.websearch.service.UrlCanonicalizer;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * DuckDuckGo search provider implementation.
  * Uses HTML search endpoint with intelligent rate limiting.
+ * 
+ * <p>Requests for more results than one page holds follow DuckDuckGo's
+ * "Next" form, prefetching each following page while the current one is parsed.
+ * Fetched pages are cached for follow-up calls; {@linkplain CallContext#isRefresh() refreshes}
+ * do not read that cache but start over from the first page.
+ * Results are reported as {@linkplain Results#exhausted() exhausted} only once a
+ * page without a "Next" form was read. When a follow-up page fails, the results of
+ * the pages already read are returned as not exhausted and cached with the form of
+ * the failed page, so the next call asking for more results retries that page.
+ * 
+ * <p>Anomaly pages (DuckDuckGo's bot challenge, served with status 202) are
+ * recognized while they stream in, and a first page that holds neither results
+ * nor DuckDuckGo's "No results" notice is treated the same way: both fail the
+ * search with {@link RequestManager.ThrottledException} instead of returning
+ * an empty result list.
  */
 @Component
 public class DuckDuckGoProvider implements SearchProvider {
@@ -32,16 +57,38 @@ public class DuckDuckGoProvider implements SearchProvider {
     private static final Logger log = LoggerFactory.getLogger(DuckDuckGoProvider.class);
     private static final String BASE_URL = "https://html.duckduckgo.com/html/";
     
-    private final WebClient.Builder webClientBuilder;
+    /**
+     * Shown in place of results when a query genuinely matches nothing
+     */
+    private static final String NO_RESULTS_NOTICE = ".no-results";
+    
+    private final ResultsPageInspector resultsPageInspector = new ResultsPageInspector(getName(),
+        Set.of(202), List.of("anomaly-modal", "challenge-form", "anomaly.js", "bots use duckduckgo too"));
+    
+    private final HttpTransport httpTransport;
     private final RequestManager requestManager;
     private final WebSearchProperties properties;
+    private final UrlCanonicalizer urlCanonicalizer;
     
-    public DuckDuckGoProvider(WebClient.Builder webClientBuilder, 
+    /**
+     * Pages already fetched per query, so a follow-up call asking for more
+     * results continues from the next page instead of starting over.
+     */
+    private final Map<String, PagedResults> pageCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PagedResults> eldest) {
+            return size() > properties.getDuckduckgo().getPageCacheSize();
+        }
+    };
+    
+    public DuckDuckGoProvider(HttpTransport httpTransport, 
                               RequestManager requestManager,
-                              WebSearchProperties properties) {
-        this.webClientBuilder = webClientBuilder;
+                              WebSearchProperties properties,
+                              UrlCanonicalizer urlCanonicalizer) {
+        this.httpTransport = httpTransport;
         this.requestManager = requestManager;
         this.properties = properties;
+        this.urlCanonicalizer = urlCanonicalizer;
     }
     
     @Override
@@ -49,46 +96,231 @@ public class DuckDuckGoProvider implements SearchProvider {
         return "DuckDuckGo";
     }
     
+    @Override
+    public String getEndpoint() {
+        return BASE_URL;
+    }
+    
     @Override
     public List<SearchResult> search(String query, int maxResults, String dateFilter) {
+        return search(query, maxResults, dateFilter, CallContext.unbounded(), result -> {}).results();
+    }
+    
+    @Override
+    public Results search(String query, int maxResults, String dateFilter,
+                          CallContext context, Consumer<SearchResult> onResult) {
         try {
-            String url = buildSearchUrl(query, dateFilter);
+            String cacheKey = query + "|" + (dateFilter != null ? dateFilter : "");
+            // A refresh must reach DuckDuckGo; its pages replace the cached ones
+            PagedResults cached = context.isRefresh() ? null : getCachedPages(cacheKey);
+            int maxPages = properties.getDuckduckgo().getMaxPages();
+            
+            // Serve from the page cache when earlier calls already fetched enough pages
+            if (cached != null && (cached.results().size() >= maxResults
+                    || cached.nextPageForm() == null || cached.pages() >= maxPages)) {
+                if (properties.isDebug()) {
+                    log.debug("Serving {} DuckDuckGo results for \"{}\" from {} cached pages",
+                        Math.min(maxResults, cached.results().size()), query, cached.pages());
+                }
+                List<SearchResult> results = List.copyOf(
+                    cached.results().subList(0, Math.min(maxResults, cached.results().size())));
+                results.forEach(onResult);
+                return new Results(results,
+                    cached.nextPageForm() == null && cached.results().size() <= maxResults);
+            }
+            
+            List<SearchResult> results = new ArrayList<>();
+            Set<String> seenUrls = new HashSet<>();
+            int pages = 0;
+            CompletableFuture<String> pending;
             
-            // Wait for rate limiting
-            requestManager.waitForRequest();
-            requestManager.addRandomDelay();
+            if (cached != null) {
+                // Continue where the previous call stopped instead of refetching earlier pages
+                results.addAll(cached.results());
+                cached.results().forEach(result -> seenUrls.add(result.url()));
+                results.stream().limit(maxResults).forEach(onResult);
+                pages = cached.pages();
+                pending = fetchNextPage(cached.nextPageForm(), context).toFuture();
+            } else {
+                pending = fetchFirstPage(buildSearchUrl(query, dateFilter), context).toFuture();
+            }
+            
+            Map<String, String> nextPageForm = cached != null ? cached.nextPageForm() : null;
+            boolean pageFailed = false;
             
-            // Execute search - request uncompressed response
-            String html = webClientBuilder.build()
-                .get()
-                .uri(url)
-                .headers(headers -> {
-                    headers.set("User-Agent", requestManager.getUserAgent());
-                    headers.set("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
-                    headers.set("Accept-Language", "en-US,en;q=0.9");
-                    headers.set("DNT", "1");
-                    headers.set("Connection", "keep-alive");
-                    headers.set("Upgrade-Insecure-Requests", "1");
-                    headers.set("Referer", "https://duckduckgo.com/");
-                    requestManager.getRandomHeaders().forEach(headers::set);
-                    // CRITICAL: Set AFTER random headers to override the Accept-Encoding they add
-                    // DuckDuckGo uses Brotli compression which Java can't decompress
-                    headers.set("Accept-Encoding", "identity");
-                })
-                .retrieve()
-                .bodyToMono(String.class)
-                .blockOptional()
-                .orElseThrow(() -> new RuntimeException("Empty response from DuckDuckGo"));
+            while (pending != null) {
+                String html;
+                try {
+                    html = pending.join();
+                } catch (RuntimeException e) {
+                    if (pages == 0) {
+                        throw e;
+                    }
+                    // A follow-up page failed or ran out of time: keep the pages already read,
+                    // and the form of the failed page so a later call can retry it
+                    if (properties.isDebug()) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        log.debug("DuckDuckGo page {} failed for query \"{}\", keeping {} results: {}",
+                            pages + 1, query, results.size(), cause.getMessage());
+                    }
+                    pageFailed = true;
+                    break;
+                }
+                pending = null;
+                pages++;
+                
+                Document doc = Jsoup.parse(html);
+                Elements resultElements = doc.select(".result");
+                nextPageForm = extractNextPageForm(doc);
+                
+                if (resultElements.isEmpty() && results.isEmpty() && doc.selectFirst(NO_RESULTS_NOTICE) == null) {
+                    // A page we cannot read at all: most likely a block page we do not know yet
+                    throw requestManager.throttled(getName(), "results page without results or a no-results notice");
+                }
+                
+                // Pipeline the next page: start its rate-limit wait and download now,
+                // while the results of this page are still being extracted
+                if (nextPageForm != null && pages < maxPages
+                        && results.size() + resultElements.size() < maxResults) {
+                    pending = fetchNextPage(nextPageForm, context).toFuture();
+                }
+                
+                int before = results.size();
+                // Parse the whole page so extra results are cached for follow-up calls
+                parseResultElements(resultElements, results, seenUrls, maxResults, onResult);
+                
+                if (properties.isDebug()) {
+                    log.debug("DuckDuckGo page {} returned {} new results for query: {}",
+                        pages, results.size() - before, query);
+                }
+                
+                // An empty page means there is nothing more to follow
+                if (results.size() == before) {
+                    if (pending != null) {
+                        pending.cancel(true);
+                        pending = null;
+                    }
+                    nextPageForm = null;
+                }
+            }
             
-            List<SearchResult> results = parseResults(html, maxResults);
+            putCachedPages(cacheKey, new PagedResults(List.copyOf(results), nextPageForm, pages,
+                System.currentTimeMillis()));
             
-            return results;
+            // Exhausted only when the last page read had no "Next" form and nothing was cut off;
+            // results that end in a failed page never are, even if no form was left to retry
+            boolean exhausted = !pageFailed && nextPageForm == null && results.size() <= maxResults;
+            return new Results(results.size() > maxResults ? List.copyOf(results.subList(0, maxResults)) : results,
+                exhausted);
             
         } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CallContext.AbortedException aborted) {
+                // The caller gave up or ran out of time; that is not a DuckDuckGo failure
+                throw aborted;
+            }
+            if (cause instanceof RequestManager.ThrottledException throttled) {
+                throw throttled;
+            }
+            if (cause instanceof MemoryGovernor.BudgetExhaustedException exhausted) {
+                throw exhausted;
+            }
             if (properties.isDebug()) {
-                log.error("DuckDuckGo search failed for query \"{}\": {}", query, e.getMessage());
+                log.error("DuckDuckGo search failed for query \"{}\": {}", query, cause.getMessage());
             }
-            throw new RuntimeException("DuckDuckGo search failed: " + e.getMessage(), e);
+            throw new RuntimeException("DuckDuckGo search failed: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * Parse a results page that was obtained elsewhere (used to warm up the parser at startup).
+     */
+    public List<SearchResult> parseResultsPage(String html, int maxResults) {
+        Document doc = Jsoup.parse(html);
+        extractNextPageForm(doc);
+        
+        List<SearchResult> results = new ArrayList<>();
+        parseResultElements(doc.select(".result"), results, new HashSet<>(), maxResults, result -> {});
+        return results;
+    }
+    
+    /**
+     * Fetch the first results page. The rate-limit wait runs on a worker thread
+     * so that it can overlap with parsing done by the caller.
+     */
+    private Mono<String> fetchFirstPage(String url, CallContext context) {
+        return Mono.fromRunnable(() -> waitForRequestSlot(context))
+            .subscribeOn(Schedulers.boundedElastic())
+            .then(requestManager.track(getName(),
+                httpTransport.getDocument(url, context, this::applyRequestHeaders, resultsPageInspector)))
+            .map(HttpTransport.Response::body)
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("Empty response from DuckDuckGo")));
+    }
+    
+    /**
+     * Fetch a follow-up results page by submitting DuckDuckGo's "Next" form.
+     */
+    private Mono<String> fetchNextPage(Map<String, String> form, CallContext context) {
+        return Mono.fromRunnable(() -> waitForRequestSlot(context))
+            .subscribeOn(Schedulers.boundedElastic())
+            .then(requestManager.track(getName(),
+                httpTransport.postFormDocument(BASE_URL, form, context, this::applyRequestHeaders,
+                    resultsPageInspector)))
+            .map(HttpTransport.Response::body)
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("Empty response from DuckDuckGo")));
+    }
+    
+    private void waitForRequestSlot(CallContext context) {
+        // Wait for rate limiting
+        requestManager.waitForRequest(getName(), context);
+        requestManager.addRandomDelay(context);
+    }
+    
+    private void applyRequestHeaders(HttpHeaders headers) {
+        // Accept-Encoding is negotiated by the transport, which decodes gzip, deflate and br
+        headers.set("User-Agent", requestManager.getUserAgent());
+        headers.set("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        headers.set("Accept-Language", "en-US,en;q=0.9");
+        headers.set("DNT", "1");
+        headers.set("Connection", "keep-alive");
+        headers.set("Upgrade-Insecure-Requests", "1");
+        headers.set("Referer", "https://duckduckgo.com/");
+        requestManager.getRandomHeaders().forEach(headers::set);
+    }
+    
+    /**
+     * Extract the hidden inputs of the "Next" pagination form, or null on the last page.
+     */
+    private Map<String, String> extractNextPageForm(Document doc) {
+        for (Element form : doc.select(".nav-link form")) {
+            if (form.selectFirst("input[type=submit][value~=(?i)next]") == null) {
+                continue;
+            }
+            
+            Map<String, String> fields = new LinkedHashMap<>();
+            for (Element input : form.select("input[type=hidden][name]")) {
+                fields.put(input.attr("name"), input.attr("value"));
+            }
+            return fields.isEmpty() ? null : fields;
+        }
+        return null;
+    }
+    
+    private PagedResults getCachedPages(String cacheKey) {
+        long ttl = properties.getDuckduckgo().getPageCacheTtlMinutes() * 60000L;
+        synchronized (pageCache) {
+            PagedResults cached = pageCache.get(cacheKey);
+            if (cached != null && System.currentTimeMillis() - cached.fetchedAt() > ttl) {
+                pageCache.remove(cacheKey);
+                return null;
+            }
+            return cached;
+        }
+    }
+    
+    private void putCachedPages(String cacheKey, PagedResults pagedResults) {
+        synchronized (pageCache) {
+            pageCache.put(cacheKey, pagedResults);
         }
     }
     
@@ -108,26 +340,20 @@ public class DuckDuckGoProvider implements SearchProvider {
         }
     }
     
-    private List<SearchResult> parseResults(String html, int maxResults) {
-        List<SearchResult> results = new ArrayList<>();
-        
+    private void parseResultElements(Elements resultElements, List<SearchResult> results,
+                                     Set<String> seenUrls, int maxResults,
+                                     Consumer<SearchResult> onResult) {
         try {
-            Document doc = Jsoup.parse(html);
-            Elements resultElements = doc.select(".result");
-            
             for (Element element : resultElements) {
-                if (results.size() >= maxResults) {
-                    break;
-                }
-                
                 // Extract title and URL
                 Element titleElement = element.selectFirst(".result__title a");
                 if (titleElement == null) continue;
                 
                 String title = titleElement.text().trim();
-                String url = titleElement.attr("href");
+                // Unwrap the //duckduckgo.com/l/?uddg=... redirect and drop tracking parameters
+                String url = urlCanonicalizer.canonicalize(titleElement.attr("href"));
                 
-                if (title.isEmpty() || url.isEmpty()) {
+                if (title.isEmpty() || url.isEmpty() || !seenUrls.add(url)) {
                     continue;
                 }
                 
@@ -135,85 +361,27 @@ public class DuckDuckGoProvider implements SearchProvider {
                 Element snippetElement = element.selectFirst(".result__snippet");
                 String snippet = snippetElement != null ? snippetElement.text().trim() : "";
                 
-                // Generate keywords and summary
-                List<String> keywords = extractKeywords(title, snippet);
-                String summary = createSummary(title, snippet, url);
+                // Keywords and summary are derived later, for the fields the caller selects
+                SearchResult result = new SearchResult(title, url, null, null, snippet);
+                results.add(result);
                 
-                results.add(new SearchResult(title, url, keywords, summary));
+                if (results.size() <= maxResults) {
+                    onResult.accept(result);
+                }
             }
             
         } catch (Exception e) {
             log.error("Failed to parse DuckDuckGo results", e);
         }
-        
-        return results;
     }
     
-    private List<String> extractKeywords(String title, String snippet) {
-        String text = (title + " " + snippet).toLowerCase();
-        String[] words = text.split("\\s+");
-        
-        Set<String> stopWords = Set.of(
-            "the", "and", "for", "are", "but", "not", "you", "all", "can", 
-            "had", "her", "was", "one", "our", "out", "day", "get", "has",
-            "him", "his", "how", "man", "new", "now", "old", "see", "two",
-            "way", "who", "boy", "did", "its", "let", "put", "say", "she",
-            "too", "use"
-        );
-        
-        Map<String, Integer> wordCount = new HashMap<>();
-        for (String word : words) {
-            word = word.replaceAll("[^a-z]", "");
-            if (word.length() >= 3 && !stopWords.contains(word)) {
-                wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
-            }
-        }
-        
-        return wordCount.entrySet().stream()
-            .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-            .limit(5)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-    }
-    
-    private String createSummary(String title, String snippet, String url) {
-        if (snippet == null || snippet.isEmpty()) {
-            return "Content from " + extractDomain(url) + ": " + title;
-        }
-        
-        String summary = snippet.replaceAll("\\s+", " ").trim();
-        
-        if (summary.length() < 50) {
-            summary = title + ": " + summary;
-        }
-        
-        if (summary.length() > 200) {
-            String[] sentences = summary.split("[.!?]+");
-            StringBuilder truncated = new StringBuilder(sentences[0]);
-            
-            for (int i = 1; i < sentences.length; i++) {
-                if ((truncated.length() + sentences[i].length()) <= 180) {
-                    truncated.append(sentences[i]).append(".");
-                } else {
-                    break;
-                }
-            }
-            
-            summary = truncated.length() > 50 ? truncated.toString() : summary.substring(0, 180) + "...";
-        }
-        
-        if (!summary.matches(".*[.!?]$")) {
-            summary += summary.length() < 180 ? "." : "...";
-        }
-        
-        return summary;
-    }
-    
-    private String extractDomain(String url) {
-        try {
-            return java.net.URI.create(url).toURL().getHost().replaceFirst("^www\\.", "");
-        } catch (Exception e) {
-            return "unknown source";
-        }
-    }
+    /**
+     * Results accumulated across the pages fetched so far for one query.
+     */
+    private record PagedResults(
+        List<SearchResult> results,
+        Map<String, String> nextPageForm,
+        int pages,
+        long fetchedAt
+    ) {}
 }
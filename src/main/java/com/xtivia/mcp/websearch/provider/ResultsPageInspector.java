@@ -0,0 +1,73 @@
+package com.xtivia.mcp.websearch.provider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.http.HttpHeaders;
+
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.RequestManager;
+
+/**
+ * Recognizes the pages a search provider serves instead of results when it
+ * suspects automated traffic (anomaly and challenge pages, captchas, bot
+ * mitigation), from the status, the headers and the first few KB of the body.
+ * 
+ * <p>Such a response fails with {@link RequestManager.ThrottledException} while
+ * it is still streaming, so it is neither downloaded completely nor parsed.
+ */
+final class ResultsPageInspector implements HttpTransport.BodyInspector {
+    
+    /**
+     * Decoded bytes inspected; challenge pages identify themselves in the head or at the top of the body
+     */
+    private static final int PREFIX_BYTES = 8 * 1024;
+    
+    private final String provider;
+    private final Set<Integer> throttlingStatuses;
+    private final List<String> challengeMarkers;
+    
+    /**
+     * @param throttlingStatuses Non-error statuses the provider uses for challenge pages
+     * @param challengeMarkers Lower-case strings that only occur on challenge pages
+     */
+    ResultsPageInspector(String provider, Set<Integer> throttlingStatuses, List<String> challengeMarkers) {
+        this.provider = provider;
+        this.throttlingStatuses = throttlingStatuses;
+        this.challengeMarkers = challengeMarkers;
+    }
+    
+    @Override
+    public String reject(String contentType, byte[] prefix) {
+        // Not called: the transport uses the form that includes status and headers
+        return null;
+    }
+    
+    @Override
+    public String reject(int status, HttpHeaders headers, String contentType, byte[] prefix) {
+        if (prefix == null) {
+            if (throttlingStatuses.contains(status)) {
+                throw new RequestManager.ThrottledException(provider, "HTTP " + status, null);
+            }
+            if ("challenge".equalsIgnoreCase(headers.getFirst("cf-mitigated"))) {
+                throw new RequestManager.ThrottledException(provider, "bot challenge (cf-mitigated)", null);
+            }
+            return null;
+        }
+        
+        String head = new String(prefix, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        for (String marker : challengeMarkers) {
+            if (head.contains(marker)) {
+                throw new RequestManager.ThrottledException(provider, "challenge page (" + marker + ")", null);
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public int prefixBytes() {
+        return PREFIX_BYTES;
+    }
+}
@@ -1,8 +1,10 @@
 package com.xtivia.mcp.websearch.provider;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.CallContext;
 
 /**
  * Interface for search providers (DuckDuckGo, Brave, etc.)
@@ -14,6 +16,11 @@ public interface SearchProvider {
      */
     String getName();
     
+    /**
+     * Endpoint this provider queries; connections to it are opened during warm-up
+     */
+    String getEndpoint();
+    
     /**
      * Perform a search with the given query
      * 
@@ -23,4 +30,33 @@ public interface SearchProvider {
      * @return List of search results
      */
     List<SearchResult> search(String query, int maxResults, String dateFilter);
+    
+    /**
+     * Perform a search, handing each result to a listener as soon as it is parsed,
+     * so callers can start follow-up work before the whole result list is ready.
+     * 
+     * <p>The default implementation reports the results after the search completes
+     * and only checks the call context before starting. It cannot tell whether the
+     * provider has more results, so it never reports the results as exhausted.
+     * 
+     * @param context Deadline and cancellation of the calling tool
+     * @param onResult Receives each result (at most maxResults) in rank order
+     * @return The search results
+     * @throws CallContext.AbortedException if the call is cancelled or runs out of time
+     */
+    default Results search(String query, int maxResults, String dateFilter,
+                           CallContext context, Consumer<SearchResult> onResult) {
+        context.checkActive();
+        List<SearchResult> results = search(query, maxResults, dateFilter);
+        results.forEach(onResult);
+        return new Results(results, false);
+    }
+    
+    /**
+     * Results of one search
+     * 
+     * @param exhausted True only when the provider has no results beyond these, so
+     *                  asking for more would return the same list
+     */
+    record Results(List<SearchResult> results, boolean exhausted) {}
 }
@@ -0,0 +1,328 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Request rate per search provider, learned from how the provider responds
+ * (additive increase, multiplicative decrease).
+ *
+ * <p>Every provider starts at {@code initial-requests-per-minute}. After
+ * {@code increase-after-successes} consecutive successful requests the rate
+ * grows by {@code increase-step}; a throttling response (HTTP 429/503, an
+ * anomaly or challenge page) or a latency spike multiplies it by
+ * {@code decrease-factor}. The rate stays between the configured floor and
+ * ceiling, and decreases are at least {@code decrease-cooldown-seconds} apart,
+ * so one burst of rejected concurrent requests counts once.
+ *
+ * <p>The rate sets both limits of the provider's request budget: requests per
+ * minute, and the spacing between two requests, which is
+ * {@code burst-interval-millis} at the initial rate and shrinks or grows with it.
+ * Learned rates can be kept in a file across restarts; changes are written
+ * by a background thread every {@value #FLUSH_INTERVAL_SECONDS} seconds and
+ * at shutdown, never on the request thread.
+ */
+@Component
+public class AdaptiveRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+
+    private static final long WINDOW_MS = 60000;
+
+    /**
+     * Weight of the newest sample in the latency average
+     */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    /**
+     * Samples needed before latency spikes are recognized
+     */
+    private static final int MIN_LATENCY_SAMPLES = 5;
+
+    /**
+     * Responses faster than this are never spikes, however slow they are relative to the average
+     */
+    private static final long MIN_SPIKE_MILLIS = 1000;
+
+    /**
+     * Seconds between two writes of changed rates to the state file
+     */
+    private static final long FLUSH_INTERVAL_SECONDS = 30;
+
+    private final WebSearchProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ProviderRate> rates = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a rate changed since the state file was last written
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    private ScheduledExecutorService flusher;
+
+    public AdaptiveRateLimiter(WebSearchProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Restore the rates learned by an earlier run and start writing changes back
+     */
+    @PostConstruct
+    public void load() {
+        Path file = stateFile();
+        if (file == null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "rate-state-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            Map<String, Double> saved = objectMapper.readValue(file.toFile(), new TypeReference<Map<String, Double>>() {});
+            saved.forEach((provider, rate) -> rates.computeIfAbsent(provider, name -> new ProviderRate())
+                .restore(rate, properties.getAdaptiveRate()));
+            log.info("Restored learned request rates for {} providers from {}", saved.size(), file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not restore learned request rates from {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Write the learned rates if they changed since the last write
+     */
+    public void flush() {
+        if (dirty.getAndSet(false)) {
+            save();
+        }
+    }
+
+    /**
+     * Write the learned rates to the state file. Writes are serialized, since
+     * they all go through the same temporary file.
+     */
+    public synchronized void save() {
+        Path file = stateFile();
+        if (file == null || rates.isEmpty()) {
+            return;
+        }
+        Map<String, Double> snapshot = new TreeMap<>();
+        rates.forEach((provider, rate) -> snapshot.put(provider, rate.requestsPerMinute()));
+        try {
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), snapshot);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Try again with the next flush
+            dirty.set(true);
+            log.warn("Could not save learned request rates to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Current request budget limits of a provider
+     */
+    public StateStore.RateLimit limitFor(String provider) {
+        WebSearchProperties.AdaptiveRateProperties config = properties.getAdaptiveRate();
+        double rate = config.isEnabled() ? rate(provider).requestsPerMinute() : config.getInitialRequestsPerMinute();
+        long interval = Math.round(config.getBurstIntervalMillis() * config.getInitialRequestsPerMinute() / rate);
+        return new StateStore.RateLimit(interval, Math.max(1, (int) Math.floor(rate)), WINDOW_MS);
+    }
+
+    /**
+     * A request was answered normally
+     *
+     * @param latencyMillis Time from sending the request to the complete response
+     */
+    public void recordSuccess(String provider, long latencyMillis) {
+        if (!properties.getAdaptiveRate().isEnabled()) {
+            return;
+        }
+        Adjustment adjustment = rate(provider).success(latencyMillis, properties.getAdaptiveRate());
+        report(provider, adjustment);
+    }
+
+    /**
+     * The provider throttled a request (429/503, anomaly or challenge page)
+     */
+    public void recordThrottled(String provider, String reason) {
+        if (!properties.getAdaptiveRate().isEnabled()) {
+            return;
+        }
+        Adjustment adjustment = rate(provider).decrease(reason, properties.getAdaptiveRate());
+        report(provider, adjustment);
+    }
+
+    /**
+     * Learned state per provider
+     */
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        rates.forEach((provider, rate) -> stats.put(provider, rate.snapshot(limitFor(provider))));
+        return stats;
+    }
+
+    private ProviderRate rate(String provider) {
+        return rates.computeIfAbsent(provider.toLowerCase(Locale.ROOT), name -> {
+            ProviderRate rate = new ProviderRate();
+            rate.restore(properties.getAdaptiveRate().getInitialRequestsPerMinute(), properties.getAdaptiveRate());
+            return rate;
+        });
+    }
+
+    private void report(String provider, Adjustment adjustment) {
+        if (adjustment == null) {
+            return;
+        }
+        if (adjustment.decreased()) {
+            log.info("{} request rate lowered to {} per minute ({})", provider,
+                String.format(Locale.ROOT, "%.1f", adjustment.requestsPerMinute()), adjustment.reason());
+        } else if (properties.isDebug()) {
+            log.debug("{} request rate raised to {} per minute", provider,
+                String.format(Locale.ROOT, "%.1f", adjustment.requestsPerMinute()));
+        }
+        dirty.set(true);
+    }
+
+    private Path stateFile() {
+        String file = properties.getAdaptiveRate().getStateFile();
+        return file == null || file.isBlank() ? null : Path.of(file);
+    }
+
+    /**
+     * A change of a provider's rate
+     */
+    private record Adjustment(double requestsPerMinute, boolean decreased, String reason) {}
+
+    /**
+     * Learned rate of one provider
+     *
+     * @param requestsPerMinute Current rate
+     * @param minIntervalMillis Current spacing between two requests
+     * @param averageLatencyMillis Moving average of response times
+     * @param successes Successful requests since startup
+     * @param throttles Throttling responses since startup
+     * @param latencySpikes Responses that were much slower than the average
+     */
+    public record Stats(
+        double requestsPerMinute,
+        long minIntervalMillis,
+        double averageLatencyMillis,
+        long successes,
+        long throttles,
+        long latencySpikes
+    ) {}
+
+    private static final class ProviderRate {
+
+        private double requestsPerMinute;
+        private int successStreak;
+        private double averageLatency;
+        private int latencySamples;
+        private long lastDecreaseAt;
+        private long successes;
+        private long throttles;
+        private long latencySpikes;
+
+        synchronized void restore(double rate, WebSearchProperties.AdaptiveRateProperties config) {
+            requestsPerMinute = clamp(rate, config);
+        }
+
+        synchronized double requestsPerMinute() {
+            return requestsPerMinute;
+        }
+
+        synchronized Adjustment success(long latencyMillis, WebSearchProperties.AdaptiveRateProperties config) {
+            successes++;
+            boolean spike = latencySamples >= MIN_LATENCY_SAMPLES && latencyMillis >= MIN_SPIKE_MILLIS
+                && latencyMillis > averageLatency * config.getLatencySpikeFactor();
+            averageLatency = latencySamples == 0 ? latencyMillis :
+                averageLatency + LATENCY_ALPHA * (latencyMillis - averageLatency);
+            latencySamples++;
+
+            if (spike) {
+                latencySpikes++;
+                return decreaseLocked("latency spike: " + latencyMillis + " ms", config);
+            }
+
+            if (++successStreak < config.getIncreaseAfterSuccesses()) {
+                return null;
+            }
+            successStreak = 0;
+            double increased = clamp(requestsPerMinute + config.getIncreaseStep(), config);
+            if (increased == requestsPerMinute) {
+                return null;
+            }
+            requestsPerMinute = increased;
+            return new Adjustment(requestsPerMinute, false, null);
+        }
+
+        synchronized Adjustment decrease(String reason, WebSearchProperties.AdaptiveRateProperties config) {
+            throttles++;
+            return decreaseLocked(reason, config);
+        }
+
+        private Adjustment decreaseLocked(String reason, WebSearchProperties.AdaptiveRateProperties config) {
+            successStreak = 0;
+            long now = System.currentTimeMillis();
+            if (now - lastDecreaseAt < config.getDecreaseCooldownSeconds() * 1000L) {
+                return null;
+            }
+            lastDecreaseAt = now;
+            double decreased = clamp(requestsPerMinute * config.getDecreaseFactor(), config);
+            if (decreased == requestsPerMinute) {
+                return null;
+            }
+            requestsPerMinute = decreased;
+            return new Adjustment(requestsPerMinute, true, reason);
+        }
+
+        synchronized Stats snapshot(StateStore.RateLimit limit) {
+            return new Stats(requestsPerMinute, limit.minIntervalMillis(), averageLatency, successes, throttles,
+                latencySpikes);
+        }
+
+        private static double clamp(double rate, WebSearchProperties.AdaptiveRateProperties config) {
+            return Math.max(config.getMinRequestsPerMinute(), Math.min(config.getMaxRequestsPerMinute(), rate));
+        }
+    }
+}
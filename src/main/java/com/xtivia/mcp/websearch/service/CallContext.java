@@ -0,0 +1,254 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Deadline and cancellation state of a single tool call.
+ *
+ * <p>The context is handed down through rate-limit waits, provider calls and
+ * page fetches. Waits are skipped when the remaining budget cannot cover them,
+ * sleeps wake up as soon as the call is cancelled, and HTTP requests bound to
+ * the context are cancelled (closing their Netty connection) when the caller
+ * disconnects or the deadline passes.
+ *
+ * <p>Background work (see {@link #background(Duration)}) only uses request budget
+ * that is free right away and never waits for a provider slot. Refreshes (see
+ * {@link #refresh(Duration)}) are background work that must reach the provider:
+ * provider-side caches are not read for them.
+ *
+ * <p>Every context belongs to an MCP client, whose ID decides its share of the
+ * provider request budgets (see {@link ClientScheduler}).
+ */
+public final class CallContext implements AutoCloseable {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Client of calls whose client did not identify itself
+     */
+    public static final String ANONYMOUS_CLIENT = "anonymous";
+
+    /**
+     * Client of background work
+     */
+    public static final String BACKGROUND_CLIENT = "background";
+
+    private static final int MAX_CLIENT_ID_LENGTH = 64;
+
+    private final long deadlineNanos;
+    private final boolean background;
+    private final boolean refresh;
+    private final String clientId;
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private final Sinks.Empty<Void> cancellation = Sinks.empty();
+    private volatile String cancelReason;
+    private volatile Runnable onClose;
+
+    private CallContext(long deadlineNanos, boolean background, boolean refresh, String clientId) {
+        this.deadlineNanos = deadlineNanos;
+        this.background = background;
+        this.refresh = refresh;
+        this.clientId = clientId;
+    }
+
+    /**
+     * A context without a deadline that is only ended by {@link #cancel(String)}.
+     */
+    public static CallContext unbounded() {
+        return forClient(ANONYMOUS_CLIENT);
+    }
+
+    /**
+     * A context without a deadline for the requests of one MCP client
+     * (IDs are cut to {@value #MAX_CLIENT_ID_LENGTH} characters).
+     */
+    public static CallContext forClient(String clientId) {
+        if (clientId == null || clientId.isBlank()) {
+            return new CallContext(NO_DEADLINE, false, false, ANONYMOUS_CLIENT);
+        }
+        String id = clientId.strip();
+        return new CallContext(NO_DEADLINE, false, false,
+            id.length() > MAX_CLIENT_ID_LENGTH ? id.substring(0, MAX_CLIENT_ID_LENGTH) : id);
+    }
+
+    /**
+     * A context that expires after the given budget.
+     */
+    public static CallContext withTimeout(Duration budget) {
+        return new CallContext(saturatedDeadline(budget), false, false, ANONYMOUS_CLIENT);
+    }
+
+    /**
+     * A context for work nobody is waiting for, which must never delay tool calls:
+     * it is aborted instead of waiting for a rate-limit slot.
+     */
+    public static CallContext background(Duration budget) {
+        return new CallContext(saturatedDeadline(budget), true, false, BACKGROUND_CLIENT);
+    }
+
+    /**
+     * A {@linkplain #background(Duration) background} context for re-running a search
+     * whose cached response is about to expire. Providers do not answer it from their
+     * own caches, which would only hand the same stale results back.
+     */
+    public static CallContext refresh(Duration budget) {
+        return new CallContext(saturatedDeadline(budget), true, true, BACKGROUND_CLIENT);
+    }
+
+    /**
+     * A child context of the same client with its own (possibly tighter) budget
+     * that is cancelled together with this one.
+     */
+    public CallContext child(Duration budget) {
+        CallContext child = new CallContext(Math.min(deadlineNanos, saturatedDeadline(budget)), background,
+            refresh, clientId);
+        cancellation.asMono().subscribe(ignored -> {}, error -> {}, () -> child.cancel(cancelReason));
+        return child;
+    }
+
+    /**
+     * Time left before the deadline (zero once it has passed)
+     */
+    public Duration remaining() {
+        if (deadlineNanos == NO_DEADLINE) {
+            return Duration.ofNanos(NO_DEADLINE);
+        }
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    public long remainingMillis() {
+        return remaining().toMillis();
+    }
+
+    public boolean isBackground() {
+        return background;
+    }
+
+    /**
+     * Whether the call refreshes cached results, so provider caches must be bypassed
+     */
+    public boolean isRefresh() {
+        return refresh;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+    /**
+     * Cancel the call. Sleeping waits return immediately and bound requests are aborted.
+     */
+    public void cancel(String reason) {
+        if (isCancelled()) {
+            return;
+        }
+        cancelReason = reason != null ? reason : "Call cancelled";
+        cancelled.countDown();
+        cancellation.tryEmitEmpty();
+    }
+
+    /**
+     * Throw if the call was cancelled or its deadline has passed.
+     */
+    public void checkActive() {
+        if (isCancelled()) {
+            throw new AbortedException(cancelReason);
+        }
+        if (deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0) {
+            throw new AbortedException("Deadline exceeded");
+        }
+    }
+
+    /**
+     * Throw instead of starting a step that is expected to take longer than the remaining budget.
+     *
+     * @param expectedMillis Expected duration of the step
+     * @param step Description of the step for the error message
+     */
+    public void ensureBudget(long expectedMillis, String step) {
+        checkActive();
+        long remaining = remainingMillis();
+        if (expectedMillis > remaining) {
+            throw new AbortedException("Deadline too close for " + step + " (needs " + expectedMillis +
+                " ms, " + remaining + " ms left)");
+        }
+    }
+
+    /**
+     * Sleep for the given time, returning early with an exception if the call is cancelled.
+     */
+    public void sleep(long millis, String step) {
+        if (millis <= 0) {
+            checkActive();
+            return;
+        }
+        ensureBudget(millis, step);
+        try {
+            if (cancelled.await(millis, TimeUnit.MILLISECONDS)) {
+                throw new AbortedException(cancelReason);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException("Interrupted during " + step);
+        }
+    }
+
+    /**
+     * Bind a request to this call: it fails when the deadline passes and is
+     * cancelled upstream when the call is cancelled. The remaining budget is
+     * read when the request is subscribed, not when it is assembled.
+     */
+    public <T> Mono<T> bind(Mono<T> request) {
+        return Mono.defer(() -> {
+            checkActive();
+            Mono<T> bounded = deadlineNanos == NO_DEADLINE ? request :
+                request.timeout(remaining(), Mono.error(() -> new AbortedException("Deadline exceeded")));
+            return Mono.firstWithSignal(
+                bounded,
+                cancellation.asMono().then(Mono.error(() -> new AbortedException(cancelReason))));
+        });
+    }
+
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    /**
+     * End the call. Work still bound to it (e.g. fetches nobody waits for any more) is cancelled.
+     */
+    @Override
+    public void close() {
+        cancel("Call completed");
+        Runnable callback = onClose;
+        if (callback != null) {
+            onClose = null;
+            callback.run();
+        }
+    }
+
+    private static long saturatedDeadline(Duration budget) {
+        long nanos = budget.toNanos();
+        long now = System.nanoTime();
+        return nanos >= NO_DEADLINE - Math.max(0, now) ? NO_DEADLINE : now + nanos;
+    }
+
+    /**
+     * Thrown when a call is cancelled by its caller or runs out of time.
+     * Callers should not treat it as a provider failure.
+     */
+    public static class AbortedException extends RuntimeException {
+
+        public AbortedException(String message) {
+            super(message);
+        }
+    }
+}
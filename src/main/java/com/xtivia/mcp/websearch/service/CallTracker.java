@@ -0,0 +1,68 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Creates the {@link CallContext} of each tool call and keeps track of the
+ * calls in flight, so they can be cancelled when the server shuts down
+ * (for example when a stdio client closes the pipe).
+ */
+@Component
+public class CallTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(CallTracker.class);
+
+    private final WebSearchProperties properties;
+    private final Set<CallContext> activeCalls = ConcurrentHashMap.newKeySet();
+
+    public CallTracker(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Start a call with the requested deadline, or the server default when none was given.
+     *
+     * @param parent Cancellation scope of the caller (e.g. the HTTP exchange), or null
+     * @param deadlineSeconds Requested time budget, or null for the default
+     */
+    public CallContext start(CallContext parent, Integer deadlineSeconds) {
+        int seconds = deadlineSeconds != null && deadlineSeconds > 0 ?
+            Math.min(deadlineSeconds, properties.getMaxDeadlineSeconds()) :
+            properties.getDefaultDeadlineSeconds();
+        Duration budget = Duration.ofSeconds(seconds);
+
+        CallContext context = parent != null ? parent.child(budget) : CallContext.withTimeout(budget);
+        activeCalls.add(context);
+        context.onClose(() -> activeCalls.remove(context));
+        return context;
+    }
+
+    public int getActiveCalls() {
+        return activeCalls.size();
+    }
+
+    /**
+     * Cancel every call in flight
+     */
+    public void cancelAll(String reason) {
+        if (!activeCalls.isEmpty()) {
+            log.info("Cancelling {} call(s) in flight: {}", activeCalls.size(), reason);
+        }
+        activeCalls.forEach(context -> context.cancel(reason));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancelAll("Server shutting down");
+    }
+}
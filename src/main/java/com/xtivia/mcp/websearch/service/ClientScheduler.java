@@ -0,0 +1,352 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Weighted fair queuing of provider requests across MCP clients.
+ *
+ * <p>A provider's request budget is handed out one turn at a time: the request
+ * holding the turn reserves its slot and waits for it (see
+ * {@link RequestManager#waitForRequest}), then passes the turn on. Requests
+ * waiting for a turn are served in order of their virtual finish time
+ * (self-clocked fair queuing): a request of a client with weight {@code w}
+ * finishes {@code 1/w} after the later of the provider's virtual clock and the
+ * client's previous request. Waiting clients therefore take turns in proportion
+ * to their weights however many requests each has queued, and a burst from one
+ * client delays the others by a few turns instead of by the whole burst.
+ *
+ * <p>Clients may have a quota of provider requests per minute; requests over
+ * quota are rejected right away with a {@link QuotaExceededException}.
+ * Background work never queues: it only gets a turn nobody is waiting for.
+ * Usage is reported per client; clients idle for an hour are forgotten.
+ */
+@Component
+public class ClientScheduler {
+
+    private static final long WINDOW_MS = 60000;
+
+    private static final long IDLE_CLIENT_MS = 3_600_000;
+
+    private static final Turn NO_TURN = new Turn(null, null);
+
+    private final WebSearchProperties properties;
+
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final Map<String, Client> clients = new HashMap<>();
+    private long sequence;
+    private long lastSweep = System.currentTimeMillis();
+
+    public ClientScheduler(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Wait for the client's turn at a provider's request budget. The turn must be
+     * closed once the request's slot is reserved and waited for.
+     *
+     * @throws QuotaExceededException if the client used up its quota for this minute
+     * @throws CallContext.AbortedException if the call is cancelled or its deadline
+     *         passes while waiting, or it is background work and others are waiting
+     */
+    public Turn acquire(String provider, CallContext context) {
+        context.checkActive();
+        WebSearchProperties.ClientFairnessProperties config = properties.getClientFairness();
+        if (!config.isEnabled()) {
+            return NO_TURN;
+        }
+        long start = System.nanoTime();
+
+        Waiter waiter;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            sweep(now);
+            Lane lane = lanes.computeIfAbsent(provider.toLowerCase(Locale.ROOT), name -> new Lane());
+            Client client = clients.computeIfAbsent(context.getClientId(), Client::new);
+            client.lastSeen = now;
+
+            if (context.isBackground() && (lane.holder != null || !lane.waiting.isEmpty())) {
+                // Background work only takes turns nobody else would use now
+                throw new CallContext.AbortedException("No spare " + provider + " request budget");
+            }
+            int quota = quotaOf(client.id, config);
+            if (quota > 0 && !client.takeQuota(now, quota)) {
+                client.rejected++;
+                throw new QuotaExceededException(client.id, quota);
+            }
+
+            double startTag = Math.max(lane.virtualTime, lane.lastFinish.getOrDefault(client.id, 0.0));
+            double finishTag = startTag + 1.0 / weightOf(client.id, config);
+            lane.lastFinish.put(client.id, finishTag);
+            waiter = new Waiter(lane, client, finishTag, sequence++);
+            lane.waiting.add(waiter);
+            client.waiting++;
+            dispatch(lane);
+        }
+
+        if (!waiter.granted.isDone()) {
+            synchronized (this) {
+                waiter.client.queued++;
+            }
+            try {
+                context.bind(Mono.fromFuture(waiter.granted)).block();
+            } catch (RuntimeException e) {
+                abandon(waiter);
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            waiter.client.granted++;
+            waiter.client.waitNanos += System.nanoTime() - start;
+        }
+        return new Turn(this, waiter.lane);
+    }
+
+    public synchronized Stats getStats() {
+        WebSearchProperties.ClientFairnessProperties config = properties.getClientFairness();
+        long now = System.currentTimeMillis();
+        Map<String, ClientStats> usage = new TreeMap<>();
+        int waiting = 0;
+        for (Client client : clients.values()) {
+            client.expireQuota(now);
+            usage.put(client.id, new ClientStats(
+                weightOf(client.id, config),
+                quotaOf(client.id, config),
+                client.recent.size(),
+                client.waiting,
+                client.granted,
+                client.queued,
+                client.rejected,
+                client.abandoned,
+                client.granted > 0 ? client.waitNanos / client.granted / 1_000_000.0 : 0.0
+            ));
+            waiting += client.waiting;
+        }
+        return new Stats(config.isEnabled(), waiting, usage);
+    }
+
+    /**
+     * Give a free turn to the waiting request with the earliest virtual finish time
+     */
+    private void dispatch(Lane lane) {
+        while (lane.holder == null && !lane.waiting.isEmpty()) {
+            Waiter next = lane.waiting.poll();
+            next.client.waiting--;
+            if (next.granted.complete(null)) {
+                lane.holder = next;
+                lane.virtualTime = next.finishTag;
+                // Clients whose last request finishes before the clock have no credit left to keep
+                lane.lastFinish.values().removeIf(finish -> finish <= lane.virtualTime);
+            }
+        }
+    }
+
+    private synchronized void release(Lane lane) {
+        lane.holder = null;
+        dispatch(lane);
+    }
+
+    /**
+     * Leave the queue after a cancellation, passing on a turn granted meanwhile
+     */
+    private void abandon(Waiter waiter) {
+        boolean granted;
+        synchronized (this) {
+            waiter.client.abandoned++;
+            if (waiter.lane.waiting.remove(waiter)) {
+                waiter.client.waiting--;
+            }
+            granted = !waiter.granted.cancel(false) && !waiter.granted.isCompletedExceptionally();
+        }
+        if (granted) {
+            release(waiter.lane);
+        }
+    }
+
+    /**
+     * Forget idle providers and clients idle for longer than {@link #IDLE_CLIENT_MS}
+     */
+    private void sweep(long now) {
+        if (now - lastSweep < WINDOW_MS) {
+            return;
+        }
+        lastSweep = now;
+        lanes.values().removeIf(lane -> lane.holder == null && lane.waiting.isEmpty() && lane.lastFinish.isEmpty());
+        Iterator<Client> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            Client client = iterator.next();
+            if (client.waiting == 0 && now - client.lastSeen >= IDLE_CLIENT_MS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int weightOf(String clientId, WebSearchProperties.ClientFairnessProperties config) {
+        Integer weight = config.getWeights().get(clientId);
+        return Math.max(1, weight != null ? weight : config.getDefaultWeight());
+    }
+
+    private static int quotaOf(String clientId, WebSearchProperties.ClientFairnessProperties config) {
+        Integer quota = config.getRequestsPerMinute().get(clientId);
+        return Math.max(0, quota != null ? quota : config.getDefaultRequestsPerMinute());
+    }
+
+    /**
+     * The right to reserve the next slot of a provider's request budget; closing
+     * it lets the next waiting request have its turn
+     */
+    public static final class Turn implements AutoCloseable {
+
+        private final ClientScheduler scheduler;
+        private final Lane lane;
+        private boolean closed;
+
+        private Turn(ClientScheduler scheduler, Lane lane) {
+            this.scheduler = scheduler;
+            this.lane = lane;
+        }
+
+        @Override
+        public void close() {
+            if (!closed && lane != null) {
+                closed = true;
+                scheduler.release(lane);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a client has made as many provider requests as its quota allows
+     * within the last minute. Like any abort, it is not a provider failure.
+     */
+    public static class QuotaExceededException extends CallContext.AbortedException {
+
+        public QuotaExceededException(String clientId, int quota) {
+            super("Client '" + clientId + "' used its quota of " + quota + " provider requests per minute");
+        }
+    }
+
+    /**
+     * Client scheduling metrics
+     *
+     * @param enabled Whether provider requests are queued per client
+     * @param waitingRequests Requests currently waiting for a turn
+     * @param clients Usage per client ID
+     */
+    public record Stats(
+        boolean enabled,
+        int waitingRequests,
+        Map<String, ClientStats> clients
+    ) {}
+
+    /**
+     * Provider request usage of one client
+     *
+     * @param weight Configured weight
+     * @param quotaPerMinute Configured quota, 0 for none
+     * @param requestsLastMinute Requests counted against the quota in the last minute
+     * @param waiting Requests waiting for a turn
+     * @param granted Turns granted since the client was first seen
+     * @param queued Requests that had to wait for their turn
+     * @param rejected Requests rejected over quota
+     * @param abandoned Requests cancelled while waiting
+     * @param averageWaitMillis Average time from request to turn
+     */
+    public record ClientStats(
+        int weight,
+        int quotaPerMinute,
+        int requestsLastMinute,
+        int waiting,
+        long granted,
+        long queued,
+        long rejected,
+        long abandoned,
+        double averageWaitMillis
+    ) {}
+
+    /**
+     * Turn-taking state of one provider
+     */
+    private static final class Lane {
+
+        private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.finishTag).thenComparingLong(waiter -> waiter.sequence));
+        private final Map<String, Double> lastFinish = new HashMap<>();
+        private Waiter holder;
+        private double virtualTime;
+    }
+
+    /**
+     * Usage and quota window of one client
+     */
+    private static final class Client {
+
+        private final String id;
+        private final Deque<Long> recent = new ArrayDeque<>();
+        private long lastSeen;
+        private int waiting;
+        private long granted;
+        private long queued;
+        private long rejected;
+        private long abandoned;
+        private long waitNanos;
+
+        Client(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Count a request against the quota
+         *
+         * @return false when the quota for the last minute is used up
+         */
+        boolean takeQuota(long now, int quota) {
+            expireQuota(now);
+            if (recent.size() >= quota) {
+                return false;
+            }
+            recent.addLast(now);
+            return true;
+        }
+
+        void expireQuota(long now) {
+            while (!recent.isEmpty() && now - recent.peekFirst() >= WINDOW_MS) {
+                recent.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * A request waiting for its turn
+     */
+    private static final class Waiter {
+
+        private final Lane lane;
+        private final Client client;
+        private final double finishTag;
+        private final long sequence;
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        Waiter(Lane lane, Client client, double finishTag, long sequence) {
+            this.lane = lane;
+            this.client = client;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+    }
+}
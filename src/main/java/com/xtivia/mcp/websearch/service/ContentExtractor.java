@@ -0,0 +1,584 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+/**
+ * Single-pass extraction of a page's title and main content.
+ *
+ * <p>One traversal of the document replaces the former remove-then-select
+ * approach: boilerplate subtrees (scripts, navigation, ads, ...) are skipped,
+ * the first element matching each content selector gets its own bounded text
+ * accumulator, and title sources are collected on the way. Text is collected
+ * with whitespace already collapsed, and accumulation stops at the maximum
+ * content length. The traversal ends early once the winning content block is
+ * known and full. To know that no higher-priority block is still to come, a
+ * cheap pre-pass over element names, classes and ids (no text) first notes
+ * which selectors match anything at all.
+ *
+ * <p>The result matches the previous behaviour: the first selector (in priority
+ * order) whose element holds more than 100 characters wins, otherwise the body text.
+ *
+ * <p>Headings (h1-h6) inside the content are reported with their offsets in the
+ * extracted text, which gives the page's section outline.
+ *
+ * <p>When asked to, widgets whose class names look like sharing, related-links, comment
+ * or cookie blocks are pruned as well. Their class names are reported with the extraction, so
+ * a per-domain template can prune them by exact name and go straight to the
+ * winning container on later pages ({@link #extractWithTemplate}).
+ */
+final class ContentExtractor implements NodeFilter {
+
+    /**
+     * Content container selectors in priority order
+     */
+    static final String[] CONTENT_SELECTORS = {
+        "main", "article", ".content", ".main-content", ".post-content",
+        ".entry-content", "#content", "#main", ".container"
+    };
+
+    static final String BODY_SELECTOR = "body";
+
+    private static final int MIN_CONTENT_LENGTH = 100;
+
+    private static final Set<String> BOILERPLATE_TAGS = Set.of(
+        "script", "style", "nav", "header", "footer", "aside"
+    );
+
+    private static final Set<String> BOILERPLATE_CLASSES = Set.of(
+        "advertisement", "ads", "sidebar"
+    );
+
+    private static final Pattern NOISE_CLASS = Pattern.compile(
+        "(?:^|[-_])(?:share|sharing|social|related|comments?|cookies?|newsletter|subscribe|promo|breadcrumbs?)(?:$|[-_])"
+    );
+
+    private final int maxLength;
+    /**
+     * Characters collected per candidate: enough to tell whether it passes the
+     * minimum length even when the content kept is shorter
+     */
+    private final int candidateLength;
+    private final boolean collectCandidates;
+    private final Set<String> knownNoiseClasses;
+    private final Set<String> noiseClasses = new LinkedHashSet<>();
+    private final TextAccumulator[] candidates = new TextAccumulator[CONTENT_SELECTORS.length];
+    private final Element[] candidateElements = new Element[CONTENT_SELECTORS.length];
+    private final boolean[] present = new boolean[CONTENT_SELECTORS.length];
+    private TextAccumulator body;
+
+    private String titleText;
+    private String ogTitle;
+    private String twitterTitle;
+    private String firstH1;
+
+    private boolean decisionChanged;
+
+    /**
+     * @param knownNoiseClasses Noise class names to prune by exact match, or null
+     *                          to detect them by pattern
+     */
+    private ContentExtractor(int maxLength, boolean collectCandidates, Set<String> knownNoiseClasses) {
+        this.maxLength = maxLength;
+        this.candidateLength = Math.max(maxLength, MIN_CONTENT_LENGTH + 1);
+        this.collectCandidates = collectCandidates;
+        this.knownNoiseClasses = knownNoiseClasses;
+    }
+
+    /**
+     * Extract the title and main content of a document in one traversal, without noise pruning
+     *
+     * @param maxLength Maximum number of content characters to keep
+     */
+    static Extraction extract(Document doc, int maxLength) {
+        return extract(doc, maxLength, false);
+    }
+
+    /**
+     * Extract the title and main content of a document in one traversal
+     *
+     * @param maxLength Maximum number of content characters to keep
+     * @param pruneNoise Detect noise widgets by class name and leave them out
+     */
+    static Extraction extract(Document doc, int maxLength, boolean pruneNoise) {
+        ContentExtractor extractor = new ContentExtractor(maxLength, true, pruneNoise ? null : Set.of());
+        extractor.findPresentSelectors(doc);
+        NodeTraversor.filter(extractor, doc);
+        return extractor.result(doc);
+    }
+
+    /**
+     * Note which content selectors match an element outside boilerplate, so the
+     * traversal can rule out the others instead of waiting for the end of the page
+     */
+    private void findPresentSelectors(Document doc) {
+        int[] missing = {CONTENT_SELECTORS.length};
+        NodeTraversor.filter((node, depth) -> {
+            if (!(node instanceof Element element)) {
+                return FilterResult.CONTINUE;
+            }
+            if (isBoilerplate(element)) {
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            for (int i = 0; i < CONTENT_SELECTORS.length; i++) {
+                if (!present[i] && matches(element, i)) {
+                    present[i] = true;
+                    missing[0]--;
+                }
+            }
+            return missing[0] == 0 ? FilterResult.STOP : FilterResult.CONTINUE;
+        }, doc);
+    }
+
+    /**
+     * Extract content straight from a known container, skipping selector probing.
+     *
+     * @param contentSelector Container selector learned for the page's domain
+     * @param noiseClasses Class names to prune inside the container (empty to prune none)
+     * @return the extraction, or null if the container is missing or holds too little text
+     */
+    static Extraction extractWithTemplate(Document doc, int maxLength,
+                                          String contentSelector, Set<String> noiseClasses) {
+        ContentExtractor extractor = new ContentExtractor(maxLength, false, noiseClasses);
+        boolean wholeBody = BODY_SELECTOR.equals(contentSelector);
+        Element container = wholeBody ? doc.body() : extractor.firstUnpruned(doc, contentSelector);
+        if (container == null) {
+            return null;
+        }
+
+        extractor.body = new TextAccumulator(wholeBody ? maxLength : extractor.candidateLength);
+        NodeTraversor.filter(extractor, container);
+
+        if (!wholeBody && extractor.body.length() <= MIN_CONTENT_LENGTH) {
+            return null;
+        }
+
+        // Title sources live in <head>; the container walk above never visits it
+        ContentExtractor titleExtractor = new ContentExtractor(0, false, noiseClasses);
+        if (doc.head() != null) {
+            NodeTraversor.filter(titleExtractor, doc.head());
+        }
+        if (extractor.firstH1 != null) {
+            titleExtractor.firstH1 = extractor.firstH1;
+        }
+
+        return new Extraction(titleExtractor.title(doc), extractor.body.text(maxLength), contentSelector,
+            noiseClasses, extractor.body.headings(maxLength));
+    }
+
+    /**
+     * Title from the document's head (title, og:title or twitter:title), or null if it has none
+     */
+    static String headTitle(Document doc) {
+        ContentExtractor extractor = new ContentExtractor(0, false, null);
+        if (doc.head() != null) {
+            NodeTraversor.filter(extractor, doc.head());
+        }
+        return firstNonBlank(extractor.titleText, extractor.ogTitle, extractor.twitterTitle);
+    }
+
+    @Override
+    public FilterResult head(Node node, int depth) {
+        if (node instanceof TextNode textNode) {
+            appendText(textNode.getWholeText());
+            return checkStop();
+        }
+
+        if (!(node instanceof Element element)) {
+            return FilterResult.CONTINUE;
+        }
+
+        String tag = element.normalName();
+
+        // Title sources
+        switch (tag) {
+            case "title" -> {
+                if (titleText == null) {
+                    titleText = element.text();
+                }
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            case "meta" -> {
+                if (ogTitle == null && "og:title".equals(element.attr("property"))) {
+                    ogTitle = element.attr("content");
+                } else if (twitterTitle == null && "twitter:title".equals(element.attr("name"))) {
+                    twitterTitle = element.attr("content");
+                }
+                return FilterResult.SKIP_ENTIRELY;
+            }
+            case "h1" -> {
+                if (firstH1 == null) {
+                    firstH1 = element.text();
+                }
+            }
+            case "body" -> {
+                if (body == null) {
+                    body = new TextAccumulator(maxLength);
+                }
+            }
+            default -> { }
+        }
+
+        if (isBoilerplate(element) || isNoise(element)) {
+            // Headers often hold the only <h1>; keep it as a title source
+            if (firstH1 == null && !"script".equals(tag) && !"style".equals(tag)) {
+                Element h1 = element.selectFirst("h1");
+                if (h1 != null) {
+                    firstH1 = h1.text();
+                }
+            }
+            return FilterResult.SKIP_ENTIRELY;
+        }
+
+        for (int i = 0; collectCandidates && i < CONTENT_SELECTORS.length; i++) {
+            if (candidateElements[i] == null && matches(element, i)) {
+                candidateElements[i] = element;
+                candidates[i] = new TextAccumulator(candidateLength);
+            }
+        }
+
+        if (element.isBlock() || "br".equals(tag)) {
+            softBreak();
+        }
+
+        int headingLevel = headingLevel(tag);
+        if (headingLevel > 0) {
+            markHeading(headingLevel, element.text());
+        }
+
+        return FilterResult.CONTINUE;
+    }
+
+    @Override
+    public FilterResult tail(Node node, int depth) {
+        if (!(node instanceof Element element)) {
+            return FilterResult.CONTINUE;
+        }
+
+        if (element.isBlock()) {
+            softBreak();
+        }
+
+        for (int i = 0; i < CONTENT_SELECTORS.length; i++) {
+            if (candidateElements[i] == element) {
+                candidates[i].close();
+                decisionChanged = true;
+            }
+        }
+
+        return checkStop();
+    }
+
+    /**
+     * Stop the traversal once the outcome can no longer change
+     */
+    private FilterResult checkStop() {
+        if (!collectCandidates) {
+            return body != null && body.isFull() ? FilterResult.STOP : FilterResult.CONTINUE;
+        }
+        if (decisionChanged) {
+            decisionChanged = false;
+            if (winner() >= 0) {
+                return FilterResult.STOP;
+            }
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    private void appendText(String text) {
+        if (body != null) {
+            body.append(text);
+        }
+        for (TextAccumulator candidate : candidates) {
+            if (candidate != null && candidate.append(text) && candidate.isFull()) {
+                decisionChanged = true;
+            }
+        }
+    }
+
+    private void softBreak() {
+        if (body != null) {
+            body.softBreak();
+        }
+        for (TextAccumulator candidate : candidates) {
+            if (candidate != null) {
+                candidate.softBreak();
+            }
+        }
+    }
+
+    private void markHeading(int level, String text) {
+        if (body != null) {
+            body.markHeading(level, text);
+        }
+        for (TextAccumulator candidate : candidates) {
+            if (candidate != null) {
+                candidate.markHeading(level, text);
+            }
+        }
+    }
+
+    /**
+     * Index of the content selector that is certain to win, or -1 while undecided.
+     * A candidate wins once every higher-priority selector has been ruled out and
+     * it either finished with enough text or is already full. A selector is ruled
+     * out when its element finished with too little text or when it matches nothing.
+     */
+    private int winner() {
+        for (int i = 0; i < CONTENT_SELECTORS.length; i++) {
+            TextAccumulator candidate = candidates[i];
+            if (candidate == null) {
+                if (present[i]) {
+                    // The matching element is still to come (or was pruned as noise)
+                    return -1;
+                }
+                continue;
+            }
+            boolean enoughText = candidate.length() > MIN_CONTENT_LENGTH;
+            if (candidate.isOpen()) {
+                return candidate.isFull() && enoughText ? i : -1;
+            }
+            if (enoughText) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Extraction result(Document doc) {
+        String title = title(doc);
+        Set<String> noise = Collections.unmodifiableSet(noiseClasses);
+
+        for (int i = 0; i < CONTENT_SELECTORS.length; i++) {
+            if (candidates[i] != null && candidates[i].length() > MIN_CONTENT_LENGTH) {
+                return new Extraction(title, candidates[i].text(maxLength), CONTENT_SELECTORS[i], noise,
+                    candidates[i].headings(maxLength));
+            }
+        }
+
+        // Fallback to body content
+        return new Extraction(title, body != null ? body.text(maxLength) : "", BODY_SELECTOR, noise,
+            body != null ? body.headings(maxLength) : List.of());
+    }
+
+    private String title(Document doc) {
+        String title = firstNonBlank(titleText, ogTitle, twitterTitle, firstH1);
+        if (title == null) {
+            // Traversal may have stopped before reaching the first <h1>
+            Element h1 = doc.selectFirst("h1");
+            title = h1 != null && !h1.text().isBlank() ? h1.text().trim() : "Untitled Document";
+        }
+        return title;
+    }
+
+    private static boolean matches(Element element, int selectorIndex) {
+        String selector = CONTENT_SELECTORS[selectorIndex];
+        return switch (selector.charAt(0)) {
+            case '.' -> element.hasClass(selector.substring(1));
+            case '#' -> selector.substring(1).equals(element.id());
+            default -> selector.equals(element.normalName());
+        };
+    }
+
+    /**
+     * 1-6 for h1-h6, otherwise 0
+     */
+    private static int headingLevel(String tag) {
+        if (tag.length() == 2 && tag.charAt(0) == 'h') {
+            char level = tag.charAt(1);
+            if (level >= '1' && level <= '6') {
+                return level - '0';
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * First element matching the selector that the full pass would not have pruned:
+     * neither it nor any of its ancestors is boilerplate or noise
+     */
+    private Element firstUnpruned(Document doc, String selector) {
+        for (Element element : doc.select(selector)) {
+            Element ancestor = element;
+            while (ancestor != null && !isBoilerplate(ancestor) && !isNoise(ancestor)) {
+                ancestor = ancestor.parent();
+            }
+            if (ancestor == null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBoilerplate(Element element) {
+        if (BOILERPLATE_TAGS.contains(element.normalName())) {
+            return true;
+        }
+        if (!element.hasAttr("class")) {
+            return false;
+        }
+        for (String className : BOILERPLATE_CLASSES) {
+            if (element.hasClass(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sharing, related-links, comment and cookie widgets, detected by class name
+     * pattern or, with a learned template, by exact class name.
+     */
+    private boolean isNoise(Element element) {
+        if (knownNoiseClasses != null && knownNoiseClasses.isEmpty() || !element.hasAttr("class")) {
+            return false;
+        }
+        for (String className : element.classNames()) {
+            String normalized = className.toLowerCase(Locale.ROOT);
+            if (knownNoiseClasses != null) {
+                if (knownNoiseClasses.contains(normalized)) {
+                    return true;
+                }
+            } else if (NOISE_CLASS.matcher(normalized).find()) {
+                noiseClasses.add(normalized);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String firstNonBlank(String... values) {
+        for (String value : values) {
+            if (value != null && !value.isBlank()) {
+                return value.trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Result of extracting a page
+     *
+     * @param contentSelector Selector of the block the content came from, or "body"
+     * @param noiseClasses Class names of the noise widgets that were pruned
+     * @param headings Headings inside the content, in document order
+     */
+    record Extraction(String title, String content, String contentSelector, Set<String> noiseClasses,
+                      List<Heading> headings) {}
+
+    /**
+     * A heading inside the extracted content
+     *
+     * @param level 1-6 for h1-h6
+     * @param offset Position of the heading text in the extracted content
+     */
+    record Heading(int level, String text, int offset) {}
+
+    /**
+     * Collects whitespace-collapsed text up to a fixed number of characters.
+     */
+    private static final class TextAccumulator {
+
+        private final StringBuilder text = new StringBuilder();
+        private final List<Heading> headings = new ArrayList<>();
+        private final int maxLength;
+        private boolean pendingSpace;
+        private boolean open = true;
+
+        TextAccumulator(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * @return true if any text was accepted
+         */
+        boolean append(String value) {
+            if (!open || isFull()) {
+                return false;
+            }
+
+            boolean appended = false;
+            for (int i = 0; i < value.length() && text.length() < maxLength; i++) {
+                char c = value.charAt(i);
+                if (StringUtil.isActuallyWhitespace(c)) {
+                    pendingSpace = text.length() > 0;
+                    continue;
+                }
+                if (pendingSpace) {
+                    pendingSpace = false;
+                    text.append(' ');
+                    if (text.length() >= maxLength) {
+                        break;
+                    }
+                }
+                text.append(c);
+                appended = true;
+            }
+            return appended;
+        }
+
+        void softBreak() {
+            if (open && text.length() > 0) {
+                pendingSpace = true;
+            }
+        }
+
+        /**
+         * Record a heading whose text is about to be appended
+         */
+        void markHeading(int level, String heading) {
+            if (open && !isFull() && !heading.isBlank()) {
+                int offset = pendingSpace ? text.length() + 1 : text.length();
+                headings.add(new Heading(level, heading.trim(), offset));
+            }
+        }
+
+        /**
+         * Headings that start within the first {@code limit} characters
+         */
+        List<Heading> headings(int limit) {
+            return headings.stream().filter(heading -> heading.offset() < limit).toList();
+        }
+
+        void close() {
+            open = false;
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        boolean isFull() {
+            return text.length() >= maxLength;
+        }
+
+        int length() {
+            return text.length();
+        }
+
+        /**
+         * The text cut to at most {@code limit} characters
+         */
+        String text(int limit) {
+            // Truncation can leave a separator at the very end
+            int end = Math.min(text.length(), limit);
+            while (end > 0 && text.charAt(end - 1) == ' ') {
+                end--;
+            }
+            return text.substring(0, end);
+        }
+    }
+}
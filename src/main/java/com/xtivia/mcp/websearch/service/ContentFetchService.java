@@ -6,21 +6,29 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.index.LocalIndex;
 import com.xtivia.mcp.websearch.model.FetchResult;
 
 /**
  * Service for fetching and parsing web page content.
+ * 
+ * <p>The response's declared content type and first bytes decide how it is read:
+ * binaries (images, PDFs, archives, media) are aborted before their body is
+ * downloaded, HTML goes through the DOM extractor and plain text, Markdown and
+ * JSON through lightweight extractors that skip the DOM.
  */
 @Service
 public class ContentFetchService {
@@ -28,50 +36,151 @@ public class ContentFetchService {
     private static final Logger log = LoggerFactory.getLogger(ContentFetchService.class);
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
     private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final Pattern HEAD_END = Pattern.compile("</head\\s*>", Pattern.CASE_INSENSITIVE);
     
-    private final WebClient.Builder webClientBuilder;
+    private final HttpTransport httpTransport;
     private final WebSearchProperties properties;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final ExtractionTemplateCache templateCache;
+    private final NegativeCache negativeCache;
+    private final LocalIndex localIndex;
+    private final DocumentCache documentCache;
+    private final FetchScheduler fetchScheduler;
+    private final MemoryGovernor memoryGovernor;
+    private final ObjectMapper objectMapper;
     
-    public ContentFetchService(WebClient.Builder webClientBuilder,
-                              WebSearchProperties properties) {
-        this.webClientBuilder = webClientBuilder;
+    public ContentFetchService(HttpTransport httpTransport,
+                              WebSearchProperties properties,
+                              UrlCanonicalizer urlCanonicalizer,
+                              ExtractionTemplateCache templateCache,
+                              NegativeCache negativeCache,
+                              LocalIndex localIndex,
+                              DocumentCache documentCache,
+                              FetchScheduler fetchScheduler,
+                              MemoryGovernor memoryGovernor,
+                              ObjectMapper objectMapper) {
+        this.httpTransport = httpTransport;
         this.properties = properties;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.templateCache = templateCache;
+        this.negativeCache = negativeCache;
+        this.localIndex = localIndex;
+        this.documentCache = documentCache;
+        this.fetchScheduler = fetchScheduler;
+        this.memoryGovernor = memoryGovernor;
+        this.objectMapper = objectMapper;
     }
     
     /**
-     * Fetch content from a URL
+     * Fetch content from a URL.
+     * The URL is canonicalized first, so search-engine redirect wrappers are
+     * skipped and tracking parameters are not sent.
+     * 
+     * <p>URLs (and hosts) that failed recently fail again immediately with the
+     * recorded reason, see {@link NegativeCache}. Downloads wait for a permit
+     * from the {@link FetchScheduler}, which limits fetches per host, and pages
+     * are only parsed with memory reserved from the {@link MemoryGovernor}.
+     * Extracted pages are added to the {@link LocalIndex}.
+     * 
+     * @param context Deadline and cancellation of the calling tool; the fetch is
+     *                aborted when it ends, and parsing is skipped if it ended meanwhile
      */
-    public FetchResult fetchContent(String url) {
+    public FetchResult fetchContent(String requestedUrl, CallContext context) {
+        return fetchContent(requestedUrl, null, FieldSelection.ALL, context);
+    }
+    
+    /**
+     * Fetch part of a page.
+     * The whole extracted page is kept in the {@link DocumentCache}; a slice of a
+     * page fetched recently is served from there without a new download or parse.
+     * 
+     * @param slice Part of the page to return, or null for the beginning (always fetched)
+     * @param fields Fields the caller wants; the summary and keywords are only computed
+     *               when selected, and without content fields only the page's head is parsed
+     */
+    public FetchResult fetchContent(String requestedUrl, Slice slice, FieldSelection fields, CallContext context) {
+        String url = urlCanonicalizer.canonicalize(requestedUrl);
+        
         if (!isValidUrl(url)) {
             throw new IllegalArgumentException("Valid URL parameter is required");
         }
         
+        if (slice != null) {
+            ParsedDocument cached = documentCache.get(url);
+            if (cached != null) {
+                if (properties.isDebug()) {
+                    log.debug("Serving {} from the document cache", url);
+                }
+                return page(cached, slice, fields, true);
+            }
+        }
+        
         try {
+            NegativeCache.Failure knownFailure = negativeCache.checkFetch(url);
+            if (knownFailure != null) {
+                throw new NegativeCache.KnownFailureException(knownFailure);
+            }
+            
             if (properties.isDebug()) {
                 log.debug("Fetching content from: {}", url);
             }
             
-            String html = webClientBuilder.build()
-                .get()
-                .uri(url)
-                .headers(headers -> {
-                    headers.set("User-Agent", USER_AGENT);
-                    headers.set("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
-                    headers.set("Accept-Language", "en-US,en;q=0.5");
-                    headers.set("Accept-Encoding", "gzip, deflate");
-                })
-                .retrieve()
-                .bodyToMono(String.class)
-                .timeout(TIMEOUT)
-                .block();
+            // Compressed transfer is negotiated and decoded by the transport, which
+            // stops reading as soon as the content type or first bytes show a binary.
+            // The host permit covers the download only, not the parse.
+            HttpTransport.Response response;
+            try (FetchScheduler.Permit permit = fetchScheduler.acquire(url, context)) {
+                response = httpTransport.getDocument(url, context, headers -> {
+                        headers.set("User-Agent", USER_AGENT);
+                        headers.set("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+                        headers.set("Accept-Language", "en-US,en;q=0.5");
+                    }, ContentSniffer::reject)
+                    .timeout(TIMEOUT)
+                    .block();
+            }
             
-            if (html == null || html.isEmpty()) {
+            String body = response != null ? response.body() : null;
+            if (body == null || body.isEmpty()) {
+                negativeCache.recordUrlFailure(url, "Empty response");
                 throw new RuntimeException("Empty response from URL");
             }
             
-            return parseHtmlContent(html, url);
+            context.checkActive();
+            
+            ContentSniffer.DocumentType type = ContentSniffer.documentType(response.contentType(), url, body);
+            FetchResult.Metadata metadata = new FetchResult.Metadata(
+                extractDomain(url),
+                response.contentType() != null ? response.contentType() : type.mediaType(),
+                (int) Math.min(response.decodedBytes(), Integer.MAX_VALUE),
+                response.headers().getFirst(HttpHeaders.LAST_MODIFIED),
+                response.transferredBytes(),
+                response.contentEncoding(),
+                response.decodeNanos() / 1_000_000.0
+            );
+            
+            ParsedDocument document;
+            try (MemoryGovernor.Reservation memory = memoryGovernor.acquire(parseFootprint(body, type),
+                    MemoryGovernor.PARSE, context)) {
+                if (!fields.includesAny("content", "summary", "keywords", "paging")) {
+                    String title = type == ContentSniffer.DocumentType.HTML ?
+                        parseTitle(body) : extract(body, url, type, properties.getFetchResultMaxLength()).title();
+                    return new FetchResult(url, title, null, null, null, metadata);
+                }
+                
+                document = parseDocument(body, url, metadata, type, true);
+            }
+            documentCache.put(url, document);
+            
+            // Keep the whole page searchable with local_search, whatever part and fields were asked for
+            localIndex.add(document.url(), document.title(), summary(document), document.content());
+            
+            return page(document, slice, fields, false);
             
+        } catch (CallContext.AbortedException | MemoryGovernor.BudgetExhaustedException e) {
+            // Neither says anything about the URL
+            throw e;
         } catch (Exception e) {
+            negativeCache.recordFetchFailure(url, e);
             if (properties.isDebug()) {
                 log.error("Fetch failed for URL \"{}\": {}", url, e.getMessage());
             }
@@ -92,93 +201,124 @@ public class ContentFetchService {
         }
     }
     
-    private FetchResult parseHtmlContent(String html, String url) {
-        Document doc = Jsoup.parse(html);
-        
-        // Extract title
-        String title = extractTitle(doc);
-        
-        // Extract main content
-        String content = extractMainContent(doc);
-        
-        // Generate keywords
-        List<String> keywords = extractKeywords(title, content);
+    /**
+     * Extract content from HTML that was obtained elsewhere (used to warm up the
+     * extraction path at startup). Extraction templates are neither used nor learned.
+     */
+    public FetchResult parseContent(String html, String url) {
+        FetchResult.Metadata metadata = new FetchResult.Metadata(
+            extractDomain(url), "text/html", html.length(), null, null, null, null);
+        return page(parseDocument(html, url, metadata, ContentSniffer.DocumentType.HTML, false),
+            null, FieldSelection.ALL, false);
+    }
+    
+    private FetchResult page(ParsedDocument document, Slice slice, FieldSelection fields, boolean fromCache) {
+        int maxLength = properties.getFetchResultMaxLength();
         
-        // Create intelligent summary
-        String summary = createIntelligentSummary(title, content, url);
+        // Keywords and summary describe the beginning of the page
+        String summary = fields.includes("summary") ? summary(document) : null;
+        List<String> keywords = fields.includes("keywords") ?
+            document.keywords(page -> extractKeywords(page.title(), page.beginning(maxLength))) :
+            null;
         
-        // Build metadata
-        FetchResult.Metadata metadata = new FetchResult.Metadata(
-            extractDomain(url),
-            "text/html",
-            html.length(),
-            null
-        );
+        return document.page(slice, maxLength,
+            Math.max(maxLength, properties.getDocumentCache().getMaxSliceLength()),
+            summary, keywords, fromCache);
+    }
+    
+    /**
+     * Summary of the beginning of the page, computed once per document
+     */
+    private String summary(ParsedDocument document) {
+        int maxLength = properties.getFetchResultMaxLength();
+        return document.summary(page -> createIntelligentSummary(page.title(), page.beginning(maxLength), page.url()));
+    }
+    
+    /**
+     * Title of a page whose content is not wanted. Only the head is parsed, unless
+     * it has no title and the page's first heading has to stand in.
+     */
+    private String parseTitle(String html) {
+        Matcher headEnd = HEAD_END.matcher(html);
+        if (headEnd.find()) {
+            String title = ContentExtractor.headTitle(Jsoup.parse(html.substring(0, headEnd.start())));
+            if (title != null) {
+                return title;
+            }
+        }
+        return ContentExtractor.extract(Jsoup.parse(html), 0).title();
+    }
+    
+    /**
+     * Memory needed while a body is parsed: a DOM several times the page's size
+     * for HTML, the extracted text for lighter formats
+     */
+    private long parseFootprint(String body, ContentSniffer.DocumentType type) {
+        return type == ContentSniffer.DocumentType.HTML ?
+            (long) body.length() * properties.getMemoryBudget().getDomBytesPerChar() :
+            2L * body.length();
+    }
+    
+    private ParsedDocument parseDocument(String body, String url, FetchResult.Metadata metadata,
+                                         ContentSniffer.DocumentType type, boolean useTemplates) {
+        // Extract title and main content (the whole page when it is cached for paging)
+        int maxLength = properties.getDocumentCache().isEnabled() ?
+            Math.max(properties.getFetchResultMaxLength(), properties.getDocumentCache().getMaxDocumentLength()) :
+            properties.getFetchResultMaxLength();
+        ContentExtractor.Extraction extraction;
+        if (type == ContentSniffer.DocumentType.HTML) {
+            Document doc = Jsoup.parse(body);
+            extraction = useTemplates ?
+                extractContent(doc, extractDomain(url), maxLength) :
+                ContentExtractor.extract(doc, maxLength);
+        } else {
+            extraction = extract(body, url, type, maxLength);
+        }
+        String content = extraction.content();
         
-        return new FetchResult(
+        return new ParsedDocument(
             url,
-            title,
+            extraction.title(),
             content,
-            summary,
-            keywords,
-            metadata
+            metadata,
+            ParsedDocument.outline(extraction.headings(), content.length()),
+            System.currentTimeMillis()
         );
     }
     
-    private String extractTitle(Document doc) {
-        // Try multiple sources for title
-        String[] selectors = {
-            "title",
-            "meta[property=og:title]",
-            "meta[name=twitter:title]",
-            "h1"
+    /**
+     * Extract a document that is not HTML
+     */
+    private ContentExtractor.Extraction extract(String body, String url, ContentSniffer.DocumentType type,
+                                                int maxLength) {
+        return switch (type) {
+            case MARKDOWN -> TextExtractor.markdown(body, url, maxLength);
+            case JSON -> TextExtractor.json(body, url, maxLength, objectMapper.getFactory());
+            default -> TextExtractor.text(body, url, maxLength);
         };
-        
-        for (String selector : selectors) {
-            Element element = doc.selectFirst(selector);
-            if (element != null) {
-                String text = selector.startsWith("meta") ? 
-                    element.attr("content") : element.text();
-                if (!text.trim().isEmpty()) {
-                    return text.trim();
-                }
-            }
-        }
-        
-        return "Untitled Document";
     }
     
-    private String extractMainContent(Document doc) {
-        // Remove unwanted elements
-        doc.select("script, style, nav, header, footer, aside, .advertisement, .ads, .sidebar").remove();
-        
-        // Try to find main content areas
-        String[] contentSelectors = {
-            "main", "article", ".content", ".main-content", ".post-content",
-            ".entry-content", "#content", "#main", ".container"
-        };
+    /**
+     * Use the domain's learned container when there is one, otherwise run the
+     * full single-pass extraction and learn from its outcome.
+     */
+    private ContentExtractor.Extraction extractContent(Document doc, String domain, int maxLength) {
+        ExtractionTemplateCache.Template template = templateCache.lookup(domain);
         
-        for (String selector : contentSelectors) {
-            Element element = doc.selectFirst(selector);
-            if (element != null) {
-                String text = element.text().trim();
-                if (text.length() > 100) {
-                    return cleanText(text);
-                }
+        if (template != null) {
+            ContentExtractor.Extraction extraction = ContentExtractor.extractWithTemplate(
+                doc, maxLength, template.contentSelector(), template.noiseClasses());
+            if (extraction != null) {
+                templateCache.confirm(domain, template);
+                return extraction;
             }
+            templateCache.reject(domain, template);
         }
         
-        // Fallback to body content
-        String bodyText = doc.body().text().trim();
-        return cleanText(bodyText);
-    }
-    
-    private String cleanText(String text) {
-        return text
-            .replaceAll("\\s+", " ")
-            .replaceAll("\\n\\s*\\n", "\n\n")
-            .trim()
-            .substring(0, Math.min(text.length(), properties.getFetchResultMaxLength()));
+        ContentExtractor.Extraction extraction = ContentExtractor.extract(doc, maxLength,
+            properties.getExtractionTemplates().isPruneNoise());
+        templateCache.learn(domain, extraction.contentSelector(), extraction.noiseClasses());
+        return extraction;
     }
     
     private List<String> extractKeywords(String title, String content) {
@@ -306,6 +446,17 @@ public class ContentFetchService {
         return result;
     }
     
+    /**
+     * Part of a page to return: a section of the heading outline, or a character
+     * range of the extracted text. Unset fields fall back to the beginning of the
+     * page and the default result length.
+     * 
+     * @param offset Character offset into the extracted text (ignored when a section is given)
+     * @param length Maximum number of characters to return
+     * @param section Section id from a previous result's outline
+     */
+    public record Slice(Integer offset, Integer length, String section) {}
+    
     private String extractDomain(String url) {
         try {
             java.net.URI uri = java.net.URI.create(url);
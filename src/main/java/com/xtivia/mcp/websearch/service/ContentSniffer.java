@@ -0,0 +1,248 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Works out what a fetched response holds from its declared content type, its
+ * first bytes and its URL.
+ *
+ * <p>{@link #reject} runs in the transport: once on the headers, so declared
+ * images, PDFs, archives and media are never downloaded, and once on the first
+ * bytes of the body, which catches binaries served with a text or missing
+ * content type by their magic numbers. {@link #documentType} then picks the
+ * extractor for a body that passed.
+ */
+final class ContentSniffer {
+
+    /**
+     * Number of leading body bytes inspected
+     */
+    static final int SNIFF_BYTES = 1024;
+
+    private static final Set<String> HTML_TYPES = Set.of(
+        "text/html", "application/xhtml+xml", "application/xml", "text/xml", "application/rss+xml",
+        "application/atom+xml"
+    );
+
+    private static final Set<String> MARKDOWN_TYPES = Set.of("text/markdown", "text/x-markdown");
+
+    private static final Set<String> JSON_TYPES = Set.of("application/json", "text/json", "application/ld+json");
+
+    /**
+     * Declared types that are never worth downloading
+     */
+    private static final Set<String> BINARY_TYPE_PREFIXES = Set.of("image/", "audio/", "video/", "font/", "model/");
+
+    private static final Set<String> BINARY_TYPES = Set.of(
+        "application/pdf", "application/zip", "application/gzip", "application/x-gzip", "application/x-tar",
+        "application/x-7z-compressed", "application/x-rar-compressed", "application/vnd.rar", "application/msword",
+        "application/vnd.ms-excel", "application/vnd.ms-powerpoint", "application/x-msdownload",
+        "application/java-archive", "application/wasm", "application/x-shockwave-flash"
+    );
+
+    /**
+     * Leading bytes of common binary formats
+     */
+    private static final List<Magic> MAGIC_NUMBERS = List.of(
+        new Magic(0, ascii("%PDF-"), "PDF document"),
+        new Magic(0, new byte[] {(byte) 0x89, 'P', 'N', 'G'}, "PNG image"),
+        new Magic(0, new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}, "JPEG image"),
+        new Magic(0, ascii("GIF8"), "GIF image"),
+        new Magic(0, ascii("RIFF"), "RIFF media"),
+        new Magic(4, ascii("ftyp"), "ISO media"),
+        new Magic(0, ascii("OggS"), "Ogg media"),
+        new Magic(0, ascii("fLaC"), "FLAC audio"),
+        new Magic(0, ascii("wOF"), "web font"),
+        new Magic(0, new byte[] {'P', 'K', 0x03, 0x04}, "ZIP archive"),
+        new Magic(0, new byte[] {0x1F, (byte) 0x8B}, "gzip archive"),
+        new Magic(0, ascii("Rar!"), "RAR archive"),
+        new Magic(0, new byte[] {'7', 'z', (byte) 0xBC, (byte) 0xAF}, "7z archive"),
+        new Magic(0, new byte[] {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0}, "Office document"),
+        new Magic(0, new byte[] {0x7F, 'E', 'L', 'F'}, "executable"),
+        new Magic(0, new byte[] {0x00, 'a', 's', 'm'}, "WebAssembly module")
+    );
+
+    /**
+     * Extractor to use for a body
+     */
+    enum DocumentType {
+        HTML("text/html"),
+        TEXT("text/plain"),
+        MARKDOWN("text/markdown"),
+        JSON("application/json");
+
+        private final String mediaType;
+
+        DocumentType(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * Media type reported for bodies of this type that came without one
+         */
+        String mediaType() {
+            return mediaType;
+        }
+    }
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Decide whether a response is worth reading
+     *
+     * @param contentType Declared media type without parameters, or null
+     * @param prefix First bytes of the decoded body, or null when only the headers are known
+     * @return why the response is not supported, or null to keep reading it
+     */
+    static String reject(String contentType, byte[] prefix) {
+        String declared = normalize(contentType);
+        if (declared != null && isBinaryType(declared)) {
+            return "Unsupported content type: " + declared;
+        }
+        if (prefix == null) {
+            return null;
+        }
+
+        String format = binaryFormat(prefix);
+        if (format != null) {
+            return "Unsupported content: " + format + (declared != null ? " (served as " + declared + ")" : "");
+        }
+        if (containsNul(prefix) && !startsWithUtf16Bom(prefix)) {
+            return "Unsupported content: binary data" + (declared != null ? " (served as " + declared + ")" : "");
+        }
+        return null;
+    }
+
+    /**
+     * Pick the extractor for a body that passed {@link #reject}
+     *
+     * @param contentType Declared media type without parameters, or null
+     */
+    static DocumentType documentType(String contentType, String url, String body) {
+        String declared = normalize(contentType);
+        if (declared != null) {
+            if (HTML_TYPES.contains(declared)) {
+                return DocumentType.HTML;
+            }
+            if (MARKDOWN_TYPES.contains(declared)) {
+                return DocumentType.MARKDOWN;
+            }
+            if (JSON_TYPES.contains(declared) || declared.endsWith("+json")) {
+                return DocumentType.JSON;
+            }
+            if (declared.endsWith("+xml")) {
+                return DocumentType.HTML;
+            }
+        }
+
+        // Plain text, a generic type or none at all: go by the URL and the body
+        String start = leadingText(body);
+        if (looksLikeHtml(start)) {
+            return DocumentType.HTML;
+        }
+        String path = path(url);
+        if (path.endsWith(".md") || path.endsWith(".markdown")) {
+            return DocumentType.MARKDOWN;
+        }
+        if (path.endsWith(".json") || (!"text/plain".equals(declared) && (start.startsWith("{") || start.startsWith("[")))) {
+            return DocumentType.JSON;
+        }
+        return DocumentType.TEXT;
+    }
+
+    private static boolean isBinaryType(String type) {
+        if (BINARY_TYPES.contains(type)) {
+            return true;
+        }
+        for (String prefix : BINARY_TYPE_PREFIXES) {
+            if (type.startsWith(prefix) && !"image/svg+xml".equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String binaryFormat(byte[] prefix) {
+        for (Magic magic : MAGIC_NUMBERS) {
+            if (startsWith(prefix, magic.offset(), magic.bytes())) {
+                return magic.format();
+            }
+        }
+        return null;
+    }
+
+    private static boolean looksLikeHtml(String start) {
+        String lower = start.toLowerCase(Locale.ROOT);
+        return lower.startsWith("<!doctype html") || lower.startsWith("<html") || lower.startsWith("<head")
+            || lower.startsWith("<body") || (lower.startsWith("<?xml") && lower.contains("<html"));
+    }
+
+    /**
+     * The start of the body without a byte order mark or leading whitespace
+     */
+    private static String leadingText(String body) {
+        if (body == null) {
+            return "";
+        }
+        int start = 0;
+        int end = Math.min(body.length(), SNIFF_BYTES);
+        while (start < end && (Character.isWhitespace(body.charAt(start)) || body.charAt(start) == '\uFEFF')) {
+            start++;
+        }
+        return body.substring(start, end);
+    }
+
+    private static String path(String url) {
+        try {
+            String path = java.net.URI.create(url).getPath();
+            return path != null ? path.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static String normalize(String contentType) {
+        return contentType == null || contentType.isBlank() ? null : contentType.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean containsNul(byte[] prefix) {
+        for (byte b : prefix) {
+            if (b == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWithUtf16Bom(byte[] prefix) {
+        return prefix.length >= 2 && ((prefix[0] == (byte) 0xFE && prefix[1] == (byte) 0xFF)
+            || (prefix[0] == (byte) 0xFF && prefix[1] == (byte) 0xFE));
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] magic) {
+        if (data.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (data[offset + i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Signature of a binary format
+     *
+     * @param offset Position of the signature in the file
+     */
+    private record Magic(int offset, byte[] bytes, String format) {}
+}
@@ -0,0 +1,122 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Bloom filter whose members are forgotten after one to two periods.
+ *
+ * <p>Two generations are kept: keys are added to the current one and looked up
+ * in both. When a period has passed the current generation becomes the previous
+ * one and the old previous generation is dropped, so the filter never fills up
+ * with stale keys. A negative answer is exact; a positive answer may be a false
+ * positive at roughly the configured rate.
+ */
+final class DecayingBloomFilter {
+
+    private final int bits;
+    private final int hashes;
+    private final long periodMs;
+    private final LongSupplier clock;
+
+    private volatile Generations generations;
+
+    /**
+     * @param expectedKeys Keys expected to be added within one period
+     * @param falsePositiveRate Target false-positive rate at that load
+     * @param periodMs How long a generation receives new keys
+     */
+    DecayingBloomFilter(int expectedKeys, double falsePositiveRate, long periodMs) {
+        this(expectedKeys, falsePositiveRate, periodMs, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Current time in milliseconds
+     */
+    DecayingBloomFilter(int expectedKeys, double falsePositiveRate, long periodMs, LongSupplier clock) {
+        int n = Math.max(1, expectedKeys);
+        double ln2 = Math.log(2);
+        // Optimal size and hash count: m = -n ln p / (ln 2)^2, k = m / n ln 2
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bits = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / n * ln2));
+        this.periodMs = periodMs;
+        this.clock = clock;
+        this.generations = new Generations(newBits(), newBits(), clock.getAsLong());
+    }
+
+    void add(String key) {
+        long hash = Hashing.hash64(key);
+        AtomicLongArray current = currentGenerations().current();
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(hash, i);
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long value;
+            do {
+                value = current.get(word);
+            } while ((value & mask) == 0 && !current.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = Hashing.hash64(key);
+        Generations snapshot = currentGenerations();
+        return contains(snapshot.current(), hash) || contains(snapshot.previous(), hash);
+    }
+
+    /**
+     * Size of one generation in bytes
+     */
+    long sizeInBytes() {
+        return (long) words() * Long.BYTES;
+    }
+
+    private boolean contains(AtomicLongArray generation, long hash) {
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(hash, i);
+            if ((generation.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Generations currentGenerations() {
+        Generations snapshot = generations;
+        long now = clock.getAsLong();
+        if (now - snapshot.startedAt() < periodMs) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = generations;
+            long elapsed = now - snapshot.startedAt();
+            if (elapsed >= 2 * periodMs) {
+                // Idle for two periods: everything has decayed
+                generations = new Generations(newBits(), newBits(), now);
+            } else if (elapsed >= periodMs) {
+                generations = new Generations(newBits(), snapshot.current(), now);
+            }
+            return generations;
+        }
+    }
+
+    /**
+     * i-th bit index by double hashing (Kirsch-Mitzenmacher)
+     */
+    private int index(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+    }
+
+    private AtomicLongArray newBits() {
+        return new AtomicLongArray(words());
+    }
+
+    private int words() {
+        return (bits + 63) >>> 6;
+    }
+
+    private record Generations(AtomicLongArray current, AtomicLongArray previous, long startedAt) {}
+}
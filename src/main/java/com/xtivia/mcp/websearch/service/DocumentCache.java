@@ -0,0 +1,100 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+/**
+ * Recently fetched pages in their parsed, sectioned form, keyed by canonical URL.
+ *
+ * <p>content_fetch_tool requests for an offset or a section of a page are served
+ * from here, so reading further into a long page costs neither a download nor a
+ * parse. The cache is bounded by the total number of characters it holds, with
+ * LRU eviction, and entries expire after the configured time.
+ */
+@Component
+public class DocumentCache {
+
+    private final WebSearchProperties properties;
+
+    private final Map<String, ParsedDocument> documents = new LinkedHashMap<>(16, 0.75f, true);
+    private long characters;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentCache(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Get a page parsed within the time-to-live, or null
+     */
+    ParsedDocument get(String url) {
+        if (!properties.getDocumentCache().isEnabled()) {
+            return null;
+        }
+
+        long maxAge = properties.getDocumentCache().getTtlMinutes() * 60_000L;
+        synchronized (documents) {
+            ParsedDocument document = documents.get(url);
+            if (document != null && System.currentTimeMillis() - document.parsedAt() <= maxAge) {
+                hits.incrementAndGet();
+                return document;
+            }
+            if (document != null) {
+                documents.remove(url);
+                characters -= document.characters();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(String url, ParsedDocument document) {
+        WebSearchProperties.DocumentCacheProperties config = properties.getDocumentCache();
+        if (!config.isEnabled() || document.characters() > config.getMaxTotalCharacters()) {
+            return;
+        }
+
+        synchronized (documents) {
+            ParsedDocument previous = documents.put(url, document);
+            if (previous != null) {
+                characters -= previous.characters();
+            }
+            characters += document.characters();
+
+            Iterator<ParsedDocument> eldest = documents.values().iterator();
+            while (characters > config.getMaxTotalCharacters() && eldest.hasNext()) {
+                characters -= eldest.next().characters();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (documents) {
+            return new Stats(documents.size(), characters, hits.get(), misses.get(), evictions.get());
+        }
+    }
+
+    /**
+     * Parsed-page cache metrics
+     *
+     * @param characters Characters of extracted text held by the cache
+     */
+    public record Stats(
+        int documents,
+        long characters,
+        long hits,
+        long misses,
+        long evictions
+    ) {}
+}
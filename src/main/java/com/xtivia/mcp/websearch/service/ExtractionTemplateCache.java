@@ -0,0 +1,173 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+/**
+ * Per-domain extraction templates learned from earlier fetches.
+ * 
+ * <p>A template records which content container produced good content for a
+ * domain and which noise widgets were pruned inside it. Once a domain has
+ * produced the same container repeatedly, later pages go straight to that
+ * container instead of probing every content selector.
+ * 
+ * <p>Confidence grows with each confirmation, halves when the container fails,
+ * and decays with the time since the template was last confirmed. The cache is
+ * bounded with LRU eviction.
+ */
+@Component
+public class ExtractionTemplateCache {
+    
+    private static final Logger log = LoggerFactory.getLogger(ExtractionTemplateCache.class);
+    
+    private static final double INITIAL_CONFIDENCE = 0.4;
+    private static final double CONFIRMATION_BOOST = 0.25;
+    private static final double FAILURE_PENALTY = 0.5;
+    
+    private final WebSearchProperties properties;
+    
+    private final Map<String, Template> templates = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+            boolean evict = size() > properties.getExtractionTemplates().getMaxDomains();
+            if (evict) {
+                evictions.incrementAndGet();
+            }
+            return evict;
+        }
+    };
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    public ExtractionTemplateCache(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+    
+    /**
+     * Get the template for a domain if it is trusted enough to skip selector probing
+     */
+    public Template lookup(String domain) {
+        if (!properties.getExtractionTemplates().isEnabled()) {
+            return null;
+        }
+        
+        synchronized (templates) {
+            Template template = templates.get(domain);
+            if (template != null && currentConfidence(template) >= properties.getExtractionTemplates().getMinConfidence()) {
+                hits.incrementAndGet();
+                return template;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+    
+    /**
+     * Record the outcome of a full extraction pass for a domain
+     */
+    public void learn(String domain, String contentSelector, Set<String> noiseClasses) {
+        if (!properties.getExtractionTemplates().isEnabled()) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        synchronized (templates) {
+            Template existing = templates.get(domain);
+            Template learned;
+            
+            if (existing != null && existing.contentSelector().equals(contentSelector)) {
+                // Same container again: grow confidence and widen the noise list
+                Set<String> noise = new LinkedHashSet<>(existing.noiseClasses());
+                noise.addAll(noiseClasses);
+                learned = new Template(contentSelector, Set.copyOf(noise),
+                    Math.min(1.0, currentConfidence(existing) + CONFIRMATION_BOOST), now);
+            } else {
+                learned = new Template(contentSelector, Set.copyOf(noiseClasses), INITIAL_CONFIDENCE, now);
+            }
+            
+            templates.put(domain, learned);
+        }
+        
+        if (properties.isDebug()) {
+            log.debug("Learned extraction template for {}: {}", domain, contentSelector);
+        }
+    }
+    
+    /**
+     * The template's container produced good content again
+     */
+    public void confirm(String domain, Template template) {
+        synchronized (templates) {
+            if (templates.get(domain) == template) {
+                templates.put(domain, new Template(template.contentSelector(), template.noiseClasses(),
+                    Math.min(1.0, currentConfidence(template) + CONFIRMATION_BOOST), System.currentTimeMillis()));
+            }
+        }
+    }
+    
+    /**
+     * The template's container was missing or too small; halve its confidence
+     */
+    public void reject(String domain, Template template) {
+        failures.incrementAndGet();
+        synchronized (templates) {
+            if (templates.get(domain) == template) {
+                templates.put(domain, new Template(template.contentSelector(), template.noiseClasses(),
+                    currentConfidence(template) * FAILURE_PENALTY, template.confirmedAt()));
+            }
+        }
+        
+        if (properties.isDebug()) {
+            log.debug("Extraction template for {} ({}) did not match, falling back", domain, template.contentSelector());
+        }
+    }
+    
+    public Stats getStats() {
+        synchronized (templates) {
+            return new Stats(templates.size(), hits.get(), misses.get(), failures.get(), evictions.get());
+        }
+    }
+    
+    private double currentConfidence(Template template) {
+        double halfLifeMs = properties.getExtractionTemplates().getHalfLifeMinutes() * 60000.0;
+        long age = System.currentTimeMillis() - template.confirmedAt();
+        return template.confidence() * Math.pow(0.5, age / halfLifeMs);
+    }
+    
+    /**
+     * Learned extraction template for one domain
+     * 
+     * @param confidence Confidence at the time it was last confirmed
+     */
+    public record Template(
+        String contentSelector,
+        Set<String> noiseClasses,
+        double confidence,
+        long confirmedAt
+    ) {}
+    
+    /**
+     * Template cache metrics
+     * 
+     * @param failures Template lookups whose container no longer produced content
+     */
+    public record Stats(
+        int domains,
+        long hits,
+        long misses,
+        long failures,
+        long evictions
+    ) {}
+}
@@ -0,0 +1,286 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Host-aware admission of page fetches.
+ *
+ * <p>Every download holds a permit for its host while it runs. A host gets at
+ * most {@code maxFetchesPerHost} permits at a time and, when configured,
+ * consecutive downloads from it start at least {@code minHostSpacingMillis}
+ * apart; all hosts together share {@code maxConcurrentFetches} permits. Hosts
+ * with waiting fetches are served round-robin, so a batch against one busy
+ * site queues behind its own limit while fetches for other hosts go ahead.
+ *
+ * <p>Waiting is bound to the caller's {@link CallContext}: a fetch that is
+ * cancelled or runs out of time leaves the queue without taking a permit.
+ * Hosts are only tracked while they have active or waiting fetches (or a
+ * spacing interval still running), so idle hosts hold nothing.
+ */
+@Component
+public class FetchScheduler {
+
+    private final WebSearchProperties properties;
+
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Deque<Host> ready = new ArrayDeque<>();
+    private int active;
+    private long lastSweepNanos = System.nanoTime();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public FetchScheduler(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Wait for a permit to download from the URL's host. The permit must be
+     * closed once the download is complete.
+     *
+     * @throws CallContext.AbortedException if the call is cancelled or its deadline
+     *         passes before the permit is granted
+     */
+    public Permit acquire(String url, CallContext context) {
+        context.checkActive();
+        long start = System.nanoTime();
+
+        Waiter waiter;
+        synchronized (this) {
+            Host host = hosts.computeIfAbsent(hostOf(url), Host::new);
+            waiter = new Waiter(host);
+            host.waiters.addLast(waiter);
+            schedule(host);
+            dispatch();
+        }
+
+        if (!waiter.granted.isDone()) {
+            queued.incrementAndGet();
+            try {
+                context.bind(Mono.fromFuture(waiter.granted)).block();
+            } catch (RuntimeException e) {
+                abandon(waiter);
+                throw e;
+            }
+        }
+
+        Permit permit = new Permit(waiter.host);
+        try {
+            // The slot is reserved; wait out the host's spacing outside the lock
+            context.sleep(waiter.granted.join(), waiter.host.name + " fetch spacing");
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+
+        acquired.incrementAndGet();
+        waitNanos.addAndGet(System.nanoTime() - start);
+        return permit;
+    }
+
+    public synchronized Stats getStats() {
+        int waiting = 0;
+        for (Host host : hosts.values()) {
+            waiting += host.waiters.size();
+        }
+        long count = acquired.get();
+        return new Stats(
+            hosts.size(),
+            active,
+            waiting,
+            count,
+            queued.get(),
+            abandoned.get(),
+            count > 0 ? waitNanos.get() / count / 1_000_000.0 : 0.0
+        );
+    }
+
+    /**
+     * Grant free permits to waiting fetches, one host at a time in turn
+     */
+    private void dispatch() {
+        WebSearchProperties.FetchSchedulerProperties config = properties.getFetchScheduler();
+        int maxActive = Math.max(1, config.getMaxConcurrentFetches());
+        int maxPerHost = Math.max(1, config.getMaxFetchesPerHost());
+        long spacingNanos = Math.max(0, config.getMinHostSpacingMillis()) * 1_000_000L;
+
+        while (active < maxActive && !ready.isEmpty()) {
+            Host host = ready.pollFirst();
+            host.ready = false;
+
+            Waiter waiter = host.waiters.pollFirst();
+            if (waiter == null || host.active >= maxPerHost) {
+                if (waiter != null) {
+                    host.waiters.addFirst(waiter);
+                }
+                continue;
+            }
+
+            long now = System.nanoTime();
+            long startNanos = Math.max(now, host.nextStartNanos);
+            if (waiter.granted.complete((startNanos - now) / 1_000_000L)) {
+                host.active++;
+                host.nextStartNanos = startNanos + spacingNanos;
+                active++;
+            }
+            schedule(host);
+        }
+        sweep(spacingNanos);
+    }
+
+    /**
+     * Put a host with waiting fetches and a free slot in line for the next permit
+     */
+    private void schedule(Host host) {
+        if (!host.ready && !host.waiters.isEmpty()
+                && host.active < Math.max(1, properties.getFetchScheduler().getMaxFetchesPerHost())) {
+            host.ready = true;
+            ready.addLast(host);
+        }
+    }
+
+    private synchronized void release(Host host) {
+        host.active--;
+        active--;
+        if (isIdle(host, System.nanoTime())) {
+            hosts.remove(host.name);
+        } else {
+            schedule(host);
+        }
+        dispatch();
+    }
+
+    /**
+     * Leave the queue after a cancellation, giving back a permit granted meanwhile
+     */
+    private void abandon(Waiter waiter) {
+        abandoned.incrementAndGet();
+        boolean granted;
+        synchronized (this) {
+            waiter.host.waiters.remove(waiter);
+            granted = !waiter.granted.cancel(false) && !waiter.granted.isCompletedExceptionally();
+            if (!granted && isIdle(waiter.host, System.nanoTime())) {
+                hosts.remove(waiter.host.name);
+            }
+        }
+        if (granted) {
+            release(waiter.host);
+        }
+    }
+
+    /**
+     * Forget idle hosts whose spacing interval has passed
+     */
+    private void sweep(long spacingNanos) {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos < Math.max(spacingNanos, 1_000_000_000L)) {
+            return;
+        }
+        lastSweepNanos = now;
+        Iterator<Host> iterator = hosts.values().iterator();
+        while (iterator.hasNext()) {
+            if (isIdle(iterator.next(), now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean isIdle(Host host, long now) {
+        return host.active == 0 && host.waiters.isEmpty() && host.nextStartNanos - now <= 0;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = java.net.URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * Permission to download from one host; closing it lets the next fetch start
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Host host;
+        private boolean closed;
+
+        private Permit(Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(host);
+            }
+        }
+    }
+
+    /**
+     * Fetch scheduler metrics
+     *
+     * @param hosts Hosts with active or waiting fetches
+     * @param activeFetches Downloads currently holding a permit
+     * @param waitingFetches Fetches queued for a permit
+     * @param acquired Permits granted since startup
+     * @param queued Fetches that had to wait for their permit
+     * @param abandoned Fetches cancelled while waiting
+     * @param averageWaitMillis Average time from request to permit, spacing included
+     */
+    public record Stats(
+        int hosts,
+        int activeFetches,
+        int waitingFetches,
+        long acquired,
+        long queued,
+        long abandoned,
+        double averageWaitMillis
+    ) {}
+
+    /**
+     * Admission state of one host
+     */
+    private static final class Host {
+
+        private final String name;
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private int active;
+        private long nextStartNanos = System.nanoTime();
+        private boolean ready;
+
+        Host(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A fetch waiting for its host; completed with the delay until its reserved start
+     */
+    private static final class Waiter {
+
+        private final Host host;
+        private final CompletableFuture<Long> granted = new CompletableFuture<>();
+
+        Waiter(Host host) {
+            this.host = host;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Fields a caller asked a tool to return. Fields that are not selected are
+ * neither computed (where that costs anything) nor serialized.
+ *
+ * @param fields Selected field names, or null for all fields
+ */
+public record FieldSelection(Set<String> fields) {
+
+    public static final FieldSelection ALL = new FieldSelection(null);
+
+    /**
+     * Fields of a search result
+     */
+    public static final Set<String> SEARCH_RESULT_FIELDS = Set.of("title", "url", "keywords", "summary");
+
+    /**
+     * Fields of a fetch result
+     */
+    public static final Set<String> FETCH_RESULT_FIELDS = Set.of(
+        "url", "title", "content", "summary", "keywords", "metadata", "paging");
+
+    /**
+     * Parse the requested field names; the URL is always included
+     *
+     * @param requested Field names, or null/empty for all fields
+     * @param available Names the caller may choose from
+     * @throws IllegalArgumentException for an unknown field name
+     */
+    public static FieldSelection of(List<String> requested, Set<String> available) {
+        if (requested == null || requested.isEmpty()) {
+            return ALL;
+        }
+
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add("url");
+        for (String name : requested) {
+            String field = name != null ? name.trim() : "";
+            if (!available.contains(field)) {
+                throw new IllegalArgumentException("Unknown field \"" + name + "\"; available fields: "
+                    + String.join(", ", available.stream().sorted().toList()));
+            }
+            fields.add(field);
+        }
+        return fields.containsAll(available) ? ALL : new FieldSelection(Set.copyOf(fields));
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public boolean includesAny(String... names) {
+        for (String name : names) {
+            if (includes(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop the fields that were not selected from a serialized result
+     */
+    public JsonNode project(JsonNode node) {
+        if (fields != null && node instanceof ObjectNode object) {
+            object.retain(fields);
+        }
+        return node;
+    }
+}
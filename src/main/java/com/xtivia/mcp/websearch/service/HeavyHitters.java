@@ -0,0 +1,121 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate most frequent keys of a stream (count-min sketch plus top-k).
+ *
+ * <p>Every key is counted in a count-min sketch of {@code depth} rows of
+ * {@code width} counters; its estimated count is the smallest of its counters,
+ * which can only overestimate, and by little while the sketch is wide compared
+ * to the number of distinct keys. Only the {@code k} keys with the highest
+ * estimates are remembered, together with a value for each (the latest one
+ * recorded). Counts are halved every decay period, so keys that stop coming
+ * fall out of the top in favour of new ones.
+ *
+ * @param <V> Value remembered for each top key
+ */
+final class HeavyHitters<V> {
+
+    private final int width;
+    private final int depth;
+    private final int k;
+    private final long decayMs;
+
+    private final int[][] counters;
+    private final Map<String, Hitter<V>> top = new HashMap<>();
+    private long lastDecay = System.currentTimeMillis();
+
+    /**
+     * @param width Counters per row
+     * @param depth Rows, each with its own hash function
+     * @param k Number of top keys remembered
+     * @param decayMs Interval at which all counts are halved
+     */
+    HeavyHitters(int width, int depth, int k, long decayMs) {
+        this.width = Math.max(16, width);
+        this.depth = Math.max(1, depth);
+        this.k = Math.max(1, k);
+        this.decayMs = decayMs;
+        this.counters = new int[this.depth][this.width];
+    }
+
+    /**
+     * Count one occurrence of a key
+     *
+     * @return the key's estimated count, including this occurrence
+     */
+    synchronized int add(String key, V value) {
+        decayIfDue();
+        long hash = Hashing.hash64(key);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int[] counts = counters[row];
+            int column = index(hash, row);
+            if (counts[column] < Integer.MAX_VALUE) {
+                counts[column]++;
+            }
+            estimate = Math.min(estimate, counts[column]);
+        }
+
+        Hitter<V> known = top.get(key);
+        if (known != null || top.size() < k) {
+            top.put(key, new Hitter<>(key, value, estimate));
+            return estimate;
+        }
+
+        Hitter<V> weakest = top.values().stream().min(Comparator.comparingInt(Hitter::count)).orElseThrow();
+        if (estimate > weakest.count()) {
+            top.remove(weakest.key());
+            top.put(key, new Hitter<>(key, value, estimate));
+        }
+        return estimate;
+    }
+
+    /**
+     * Top keys by estimated count, highest first
+     */
+    synchronized List<Hitter<V>> top() {
+        decayIfDue();
+        List<Hitter<V>> hitters = new ArrayList<>(top.values());
+        hitters.sort(Comparator.comparingInt(Hitter<V>::count).reversed());
+        return hitters;
+    }
+
+    synchronized int size() {
+        return top.size();
+    }
+
+    private void decayIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastDecay < decayMs) {
+            return;
+        }
+        lastDecay = now;
+        for (int[] counts : counters) {
+            for (int column = 0; column < width; column++) {
+                counts[column] >>>= 1;
+            }
+        }
+        top.replaceAll((key, hitter) -> new Hitter<>(key, hitter.value(), hitter.count() >>> 1));
+        top.values().removeIf(hitter -> hitter.count() == 0);
+    }
+
+    /**
+     * Column of a key in a row by double hashing (Kirsch-Mitzenmacher)
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    /**
+     * A top key with its latest value and estimated count
+     */
+    record Hitter<V>(String key, V value, int count) {}
+}
@@ -0,0 +1,599 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.decoder.BrotliInputStream;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Shared HTTP transport for provider and fetch traffic.
+ * 
+ * <p>Negotiates compressed responses (gzip, deflate and, when the native
+ * Brotli library is available, br) and decodes them itself rather than relying
+ * on the Netty pipeline. That makes the bytes actually transferred and the
+ * time spent decoding measurable for every request.
+ * 
+ * <p>Every request is bound to the {@link CallContext} of the tool call that
+ * issued it, so it is aborted when the call's deadline passes or its caller goes away.
+ * 
+ * <p>Page fetches ({@link #getDocument}) stream the body and let the caller
+ * reject it from its declared content type before any of it is read, or from
+ * its first bytes; a rejected body is not downloaded any further. Providers
+ * use the same mechanism ({@link #postFormDocument} for form submissions) to
+ * recognize challenge pages without downloading them.
+ * 
+ * <p>Streamed bodies reserve their memory from the {@link MemoryGovernor} before
+ * they are read: the announced Content-Length, or a default that grows as the
+ * body arrives. The reservation also grows before every buffer the decoder
+ * allocates, so a compressed body fails as soon as the budget cannot hold its
+ * decoded text, and it is given back once the response is built.
+ */
+@Component
+public class HttpTransport {
+    
+    private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+    
+    private static final boolean BROTLI_AVAILABLE = isBrotliAvailable();
+    
+    /**
+     * Largest body read, both as transferred and once decoded (the same as the codec limit)
+     */
+    static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    
+    /**
+     * Raw bytes buffered at most while waiting for a compressed body to decode to a full inspection prefix
+     */
+    private static final int MAX_SNIFF_WAIT_BYTES = 64 * 1024;
+    
+    /**
+     * Memory per buffered body byte: the buffer (grown by doubling) and the copy handed to the decoder
+     */
+    private static final int RAW_BYTE_FOOTPRINT = 3;
+    
+    /**
+     * Memory per byte of decoder buffer: the buffer and the String built from it
+     */
+    private static final int DECODED_BYTE_FOOTPRINT = 2;
+    
+    private final WebClient.Builder webClientBuilder;
+    private final WebSearchProperties properties;
+    private final MemoryGovernor memoryGovernor;
+    
+    private final Map<String, EncodingStats> statsByEncoding = new ConcurrentHashMap<>();
+    
+    public HttpTransport(WebClient.Builder webClientBuilder,
+                         WebSearchProperties properties,
+                         MemoryGovernor memoryGovernor) {
+        this.webClientBuilder = webClientBuilder;
+        this.properties = properties;
+        this.memoryGovernor = memoryGovernor;
+    }
+    
+    /**
+     * Issue a GET request for a document whose body is inspected as it arrives
+     * 
+     * @param context Call the request belongs to
+     * @param headers Request headers; Accept-Encoding is always set by the transport
+     * @param inspector Rejects the response from its content type (before the body
+     *                  is read) or from the first bytes of the decoded body
+     * @return the response; fails with {@link UnsupportedContentException} if the
+     *         inspector rejected it, {@link DataBufferLimitException} if the body is too large,
+     *         or {@link MemoryGovernor.BudgetExhaustedException} if there is no memory to read it
+     */
+    public Mono<Response> getDocument(String url, CallContext context, Consumer<HttpHeaders> headers,
+                                      BodyInspector inspector) {
+        return context.bind(Mono.defer(() -> webClientBuilder.build()
+            .get()
+            .uri(url)
+            .headers(h -> applyHeaders(h, headers))
+            .exchangeToMono(response -> readInspected(url, response, inspector))));
+    }
+    
+    /**
+     * Issue a form-encoded POST request whose response body is inspected as it arrives
+     * 
+     * @see #getDocument
+     */
+    public Mono<Response> postFormDocument(String url, Map<String, String> form, CallContext context,
+                                           Consumer<HttpHeaders> headers, BodyInspector inspector) {
+        MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+        form.forEach(formData::add);
+        
+        return context.bind(Mono.defer(() -> webClientBuilder.build()
+            .post()
+            .uri(url)
+            .headers(h -> applyHeaders(h, headers))
+            .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+            .body(BodyInserters.fromFormData(formData))
+            .exchangeToMono(response -> readInspected(url, response, inspector))));
+    }
+    
+    /**
+     * Open a pooled connection to the host of the given URL with a HEAD request,
+     * so the first real request skips DNS, TCP and TLS setup.
+     * 
+     * @return HTTP status of the HEAD response
+     */
+    public Mono<Integer> preconnect(String url, CallContext context) {
+        return context.bind(Mono.defer(() -> webClientBuilder.build()
+            .head()
+            .uri(url)
+            .exchangeToMono(response -> response.releaseBody()
+                .then(Mono.just(response.statusCode().value())))));
+    }
+    
+    /**
+     * Value for the Accept-Encoding request header
+     */
+    public String acceptEncoding() {
+        return BROTLI_AVAILABLE ? "gzip, deflate, br" : "gzip, deflate";
+    }
+    
+    /**
+     * Transfer statistics per content encoding since startup
+     */
+    public Map<String, TransferStats> getStats() {
+        Map<String, TransferStats> stats = new TreeMap<>();
+        statsByEncoding.forEach((encoding, counters) -> stats.put(encoding, counters.snapshot()));
+        return stats;
+    }
+    
+    private void applyHeaders(HttpHeaders target, Consumer<HttpHeaders> headers) {
+        headers.accept(target);
+        // Set last so callers can never ask for an encoding we cannot decode
+        target.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding());
+    }
+    
+    private Mono<Response> readInspected(String url, ClientResponse response, BodyInspector inspector) {
+        if (response.statusCode().isError()) {
+            return response.createError();
+        }
+        
+        int status = response.statusCode().value();
+        HttpHeaders headers = response.headers().asHttpHeaders();
+        String contentType = mediaType(headers.getContentType());
+        RuntimeException rejection;
+        try {
+            String reason = inspector.reject(status, headers, contentType, null);
+            rejection = reason != null ? new UnsupportedContentException(reason) : null;
+        } catch (RuntimeException e) {
+            rejection = e;
+        }
+        if (rejection != null) {
+            return discard(response, rejection);
+        }
+        
+        long announced = headers.getContentLength();
+        long expected = announced >= 0 ? Math.min(announced, MAX_BODY_BYTES) :
+            properties.getMemoryBudget().getDefaultBodyKilobytes() * 1024L;
+        return memoryGovernor.reserve(RAW_BYTE_FOOTPRINT * expected, MemoryGovernor.BODY)
+            .onErrorResume(error -> discard(response, error))
+            .flatMap(memory -> readBody(url, response, status, headers, contentType, inspector, memory)
+                .doFinally(signal -> memory.close()));
+    }
+    
+    private Mono<Response> readBody(String url, ClientResponse response, int status, HttpHeaders headers,
+                                    String contentType, BodyInspector inspector, MemoryGovernor.Reservation memory) {
+        BodyBuffer body = new BodyBuffer(status, headers, contentType,
+            normalizeEncoding(headers.getFirst(HttpHeaders.CONTENT_ENCODING)), inspector, memory);
+        return response.bodyToFlux(DataBuffer.class)
+            .<DataBuffer>handle((chunk, sink) -> {
+                try {
+                    body.append(chunk);
+                } finally {
+                    DataBufferUtils.release(chunk);
+                }
+                if (body.size() > MAX_BODY_BYTES) {
+                    sink.error(new DataBufferLimitException("Response body exceeds " + MAX_BODY_BYTES + " bytes"));
+                    return;
+                }
+                long footprint = RAW_BYTE_FOOTPRINT * (long) body.size();
+                if (!memory.growTo(footprint)) {
+                    sink.error(new MemoryGovernor.BudgetExhaustedException(MemoryGovernor.BODY, footprint));
+                    return;
+                }
+                String reason = body.inspect(false);
+                if (reason != null) {
+                    sink.error(new UnsupportedContentException(reason));
+                }
+            })
+            .then(Mono.fromCallable(() -> {
+                String reason = body.inspect(true);
+                if (reason != null) {
+                    throw new UnsupportedContentException(reason);
+                }
+                return decode(url, status, headers, body.bytes(), memory);
+            }));
+    }
+    
+    /**
+     * Fail a response without reading its body. Cancelling the body unread closes
+     * the connection instead of draining it.
+     */
+    private static <T> Mono<T> discard(ClientResponse response, Throwable error) {
+        return response.bodyToFlux(DataBuffer.class)
+            .take(0)
+            .then(Mono.error(error));
+    }
+    
+    /**
+     * @param memory Reservation grown by the decoder's buffers as the body is decoded
+     */
+    private Response decode(String url, int status, HttpHeaders headers, byte[] raw,
+                            MemoryGovernor.Reservation memory) {
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        String normalizedEncoding = normalizeEncoding(encoding);
+        
+        long start = System.nanoTime();
+        byte[] decoded;
+        try {
+            decoded = decodeBody(raw, normalizedEncoding, MAX_BODY_BYTES, reserver(memory, raw.length));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to decode " + normalizedEncoding + " response: " + e.getMessage(), e);
+        }
+        long decodeNanos = System.nanoTime() - start;
+        
+        MediaType contentType = headers.getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null ?
+            contentType.getCharset() : StandardCharsets.UTF_8;
+        
+        statsByEncoding.computeIfAbsent(normalizedEncoding, key -> new EncodingStats())
+            .record(raw.length, decoded.length, decodeNanos);
+        
+        if (properties.isDebug()) {
+            log.debug("{}: {} bytes transferred ({}), {} bytes decoded in {} µs",
+                url, raw.length, normalizedEncoding, decoded.length, decodeNanos / 1000);
+        }
+        
+        return new Response(
+            status,
+            headers,
+            new String(decoded, charset),
+            mediaType(contentType),
+            normalizedEncoding,
+            raw.length,
+            decoded.length,
+            decodeNanos
+        );
+    }
+    
+    /**
+     * Undo the content codings listed in Content-Encoding, last applied first
+     * 
+     * @param maxBytes Largest decoded size accepted after any coding
+     * @param reserve Called with the decoder buffer bytes held (the input of the
+     *                current coding, if decoded too, and its output buffer) before
+     *                each buffer is allocated; throws to stop decoding
+     * @throws DataBufferLimitException if the body decodes to more than {@code maxBytes}
+     */
+    static byte[] decodeBody(byte[] raw, String contentEncoding, int maxBytes, LongConsumer reserve)
+            throws IOException {
+        String[] codings = contentEncoding.split(",");
+        byte[] body = raw;
+        
+        for (int i = codings.length - 1; i >= 0; i--) {
+            String coding = codings[i].trim();
+            long held = body == raw ? 0 : body.length;
+            LongConsumer stage = capacity -> reserve.accept(held + capacity);
+            body = switch (coding) {
+                case "", "identity" -> body;
+                case "gzip", "x-gzip" -> readFully(new GZIPInputStream(new ByteArrayInputStream(body)), maxBytes, stage);
+                case "deflate" -> inflate(body, maxBytes, stage);
+                case "br" -> readFully(new BrotliInputStream(new ByteArrayInputStream(body)), maxBytes, stage);
+                default -> throw new IOException("Unsupported content encoding: " + coding);
+            };
+        }
+        return body;
+    }
+    
+    /**
+     * Grows a body's reservation to cover its raw bytes and the decoder buffers
+     * 
+     * @throws MemoryGovernor.BudgetExhaustedException when the budget has no room left
+     */
+    private static LongConsumer reserver(MemoryGovernor.Reservation memory, int rawLength) {
+        return decoderBytes -> {
+            long footprint = RAW_BYTE_FOOTPRINT * (long) rawLength + DECODED_BYTE_FOOTPRINT * decoderBytes;
+            if (!memory.growTo(footprint)) {
+                throw new MemoryGovernor.BudgetExhaustedException(MemoryGovernor.BODY, footprint);
+            }
+        };
+    }
+    
+    /**
+     * Decode the start of a body that may not have arrived completely
+     * 
+     * @return up to {@code max} decoded bytes, or null if nothing could be decoded yet
+     *         (or the encoding is stacked, which is only decoded as a whole)
+     */
+    static byte[] decodePrefix(byte[] raw, int length, String contentEncoding, int max) {
+        String coding = contentEncoding.trim();
+        if (coding.isEmpty() || "identity".equals(coding)) {
+            return Arrays.copyOf(raw, Math.min(length, max));
+        }
+        
+        byte[] prefix = new byte[max];
+        int read = 0;
+        try (InputStream in = switch (coding) {
+                case "gzip", "x-gzip" -> new GZIPInputStream(new ByteArrayInputStream(raw, 0, length));
+                case "deflate" -> new InflaterInputStream(new ByteArrayInputStream(raw, 0, length));
+                case "br" -> new BrotliInputStream(new ByteArrayInputStream(raw, 0, length));
+                default -> null;
+            }) {
+            if (in == null) {
+                return null;
+            }
+            int n;
+            while (read < max && (n = in.read(prefix, read, max - read)) > 0) {
+                read += n;
+            }
+        } catch (EOFException e) {
+            // Truncated input: keep what was decoded
+        } catch (IOException e) {
+            if (read == 0) {
+                return null;
+            }
+        }
+        return read > 0 ? Arrays.copyOf(prefix, read) : null;
+    }
+    
+    /**
+     * HTTP "deflate" is zlib-wrapped, but some servers send raw deflate data
+     */
+    private static byte[] inflate(byte[] body, int maxBytes, LongConsumer reserve) throws IOException {
+        try {
+            return readFully(new InflaterInputStream(new ByteArrayInputStream(body)), maxBytes, reserve);
+        } catch (ZipException e) {
+            return readFully(new InflaterInputStream(new ByteArrayInputStream(body), new Inflater(true)), maxBytes,
+                reserve);
+        }
+    }
+    
+    /**
+     * Read a decoding stream to its end, giving up as soon as it yields more than
+     * {@code maxBytes}, so a small compressed body cannot inflate without bound.
+     * Every buffer is reserved before it is allocated: while growing, the old and
+     * the new buffer are both held.
+     */
+    private static byte[] readFully(InputStream in, int maxBytes, LongConsumer reserve) throws IOException {
+        try (in) {
+            reserve.accept(8192);
+            byte[] decoded = new byte[8192];
+            int size = 0;
+            int n;
+            while ((n = in.read(decoded, size, decoded.length - size)) >= 0) {
+                size += n;
+                if (size > maxBytes) {
+                    throw new DataBufferLimitException("Decoded response body exceeds " + maxBytes + " bytes");
+                }
+                if (size == decoded.length) {
+                    int capacity = Math.min(decoded.length * 2, maxBytes + 1);
+                    reserve.accept((long) decoded.length + capacity);
+                    decoded = Arrays.copyOf(decoded, capacity);
+                }
+            }
+            if (size == decoded.length) {
+                return decoded;
+            }
+            reserve.accept((long) decoded.length + size);
+            return Arrays.copyOf(decoded, size);
+        }
+    }
+    
+    private static String normalizeEncoding(String encoding) {
+        return encoding == null || encoding.isBlank() ? "identity" : encoding.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static String mediaType(MediaType contentType) {
+        return contentType != null ? contentType.getType() + "/" + contentType.getSubtype() : null;
+    }
+    
+    private static boolean isBrotliAvailable() {
+        try {
+            Brotli4jLoader.ensureAvailability();
+            return true;
+        } catch (Throwable e) {
+            log.warn("Brotli decoding unavailable, not advertising br: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Decoded response with transfer measurements
+     * 
+     * @param contentType Media type without parameters, or null if the server sent none
+     * @param contentEncoding Content-Encoding as received ("identity" if none)
+     * @param transferredBytes Body bytes received on the wire
+     * @param decodedBytes Body bytes after decoding
+     * @param decodeNanos Time spent decoding the body
+     */
+    public record Response(
+        int status,
+        HttpHeaders headers,
+        String body,
+        String contentType,
+        String contentEncoding,
+        long transferredBytes,
+        long decodedBytes,
+        long decodeNanos
+    ) {}
+    
+    /**
+     * Decides from a response's content type and first bytes whether its body is worth reading.
+     * 
+     * <p>An inspector may also throw a RuntimeException of its own, which fails
+     * the response with that exception instead of {@link UnsupportedContentException}.
+     */
+    @FunctionalInterface
+    public interface BodyInspector {
+        
+        /**
+         * @param contentType Declared media type without parameters, or null
+         * @param prefix First bytes of the decoded body (all of it if shorter), or null
+         *               when only the headers have arrived
+         * @return why the response is rejected, or null to keep reading
+         */
+        String reject(String contentType, byte[] prefix);
+        
+        /**
+         * Form called by the transport, for inspectors that also look at the status
+         * and headers; by default only the content type and prefix are considered
+         */
+        default String reject(int status, HttpHeaders headers, String contentType, byte[] prefix) {
+            return reject(contentType, prefix);
+        }
+        
+        /**
+         * Decoded bytes to collect before the body is inspected
+         */
+        default int prefixBytes() {
+            return ContentSniffer.SNIFF_BYTES;
+        }
+    }
+    
+    /**
+     * A response body was rejected by its {@link BodyInspector}; the rest of it was not downloaded
+     */
+    public static class UnsupportedContentException extends RuntimeException {
+        
+        public UnsupportedContentException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * Aggregated transfer statistics for one content encoding
+     */
+    public record TransferStats(
+        long responses,
+        long transferredBytes,
+        long decodedBytes,
+        double decodeMillis
+    ) {}
+    
+    /**
+     * Raw body bytes received so far, inspected once enough of them decode
+     */
+    private static final class BodyBuffer {
+        
+        private final int status;
+        private final HttpHeaders headers;
+        private final String contentType;
+        private final String contentEncoding;
+        private final BodyInspector inspector;
+        private final MemoryGovernor.Reservation memory;
+        private byte[] bytes = new byte[8192];
+        private int size;
+        private boolean inspected;
+        
+        BodyBuffer(int status, HttpHeaders headers, String contentType, String contentEncoding,
+                   BodyInspector inspector, MemoryGovernor.Reservation memory) {
+            this.status = status;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.inspector = inspector;
+            this.memory = memory;
+        }
+        
+        void append(DataBuffer chunk) {
+            int length = chunk.readableByteCount();
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+            chunk.read(bytes, size, length);
+            size += length;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        byte[] bytes() {
+            return Arrays.copyOf(bytes, size);
+        }
+        
+        /**
+         * Run the inspector once enough of the body has arrived
+         * 
+         * @param complete Whether the whole body has arrived
+         * @return the inspector's rejection, or null
+         */
+        String inspect(boolean complete) {
+            int wanted = inspector.prefixBytes();
+            if (inspected || (!complete && size < wanted)) {
+                return null;
+            }
+            byte[] prefix = decodePrefix(bytes, size, contentEncoding, wanted);
+            if (prefix == null && complete) {
+                try {
+                    byte[] decoded = decodeBody(bytes(), contentEncoding, MAX_BODY_BYTES, reserver(memory, size));
+                    prefix = Arrays.copyOf(decoded, Math.min(decoded.length, wanted));
+                } catch (IOException e) {
+                    // Reported when the body is decoded
+                    return null;
+                }
+            }
+            boolean enough = prefix != null && (prefix.length >= wanted || complete);
+            if (!enough && !complete && size < Math.max(MAX_SNIFF_WAIT_BYTES, wanted)) {
+                return null;
+            }
+            inspected = true;
+            return prefix != null ? inspector.reject(status, headers, contentType, prefix) : null;
+        }
+    }
+    
+    private static final class EncodingStats {
+        
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder transferredBytes = new LongAdder();
+        private final LongAdder decodedBytes = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        
+        void record(long transferred, long decoded, long nanos) {
+            responses.increment();
+            transferredBytes.add(transferred);
+            decodedBytes.add(decoded);
+            decodeNanos.add(nanos);
+        }
+        
+        TransferStats snapshot() {
+            return new TransferStats(responses.sum(), transferredBytes.sum(), decodedBytes.sum(),
+                decodeNanos.sum() / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Global memory budget for response bodies being read and documents being parsed.
+ *
+ * <p>Before a body is read or a page is parsed, its expected memory is reserved
+ * here, and the reservation is closed when the work is done. Reservations that
+ * do not fit wait in arrival order, so a large page is not starved by a stream
+ * of small ones, and are rejected with a {@link BudgetExhaustedException} after
+ * {@code max-wait-millis}. A reservation larger than the whole budget waits
+ * until it has the budget to itself. A body whose size is not announced starts
+ * with a default reservation that grows as the body arrives; growth never waits,
+ * and a body that cannot grow any further is rejected.
+ *
+ * <p>Waiting is asynchronous ({@link #reserve}), so response bodies can wait on
+ * the event loop; {@link #acquire} waits on the calling thread.
+ */
+@Component
+public class MemoryGovernor {
+
+    /**
+     * Kind of a reservation for the response body of a request
+     */
+    public static final String BODY = "body";
+
+    /**
+     * Kind of a reservation for parsing a document
+     */
+    public static final String PARSE = "parse";
+
+    private static final Reservation UNLIMITED = new Reservation(null, "", 0);
+
+    private final WebSearchProperties properties;
+    private final long budget;
+
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private final Map<String, Long> reservedByKind = new TreeMap<>();
+    private long reserved;
+    private long peakReserved;
+    private int active;
+
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public MemoryGovernor(WebSearchProperties properties) {
+        this.properties = properties;
+        int megabytes = properties.getMemoryBudget().getMaxMegabytes();
+        this.budget = megabytes > 0 ? megabytes * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Reserve memory, waiting (without blocking a thread) while the budget is taken.
+     * The reservation must be closed once the memory is no longer needed; cancelling
+     * the returned Mono gives back a reservation granted meanwhile.
+     *
+     * @param kind {@link #BODY} or {@link #PARSE}
+     * @return the reservation; fails with {@link BudgetExhaustedException} when
+     *         the memory did not become free within {@code max-wait-millis}
+     */
+    public Mono<Reservation> reserve(long bytes, String kind) {
+        WebSearchProperties.MemoryBudgetProperties config = properties.getMemoryBudget();
+        if (!config.isEnabled()) {
+            return Mono.just(UNLIMITED);
+        }
+        long wanted = Math.min(Math.max(0, bytes), budget);
+        return Mono.<Reservation>create(sink -> {
+                Waiter waiter = new Waiter(kind, wanted, sink);
+                sink.onCancel(() -> abandon(waiter));
+                List<Waiter> grants;
+                synchronized (this) {
+                    waiting.addLast(waiter);
+                    grants = dispatch();
+                    if (waiter.reservation == null) {
+                        queued.incrementAndGet();
+                    }
+                }
+                handOut(grants);
+            })
+            .timeout(Duration.ofMillis(Math.max(0, config.getMaxWaitMillis())), Mono.error(() -> {
+                rejected.incrementAndGet();
+                return new BudgetExhaustedException(kind, wanted);
+            }));
+    }
+
+    /**
+     * Reserve memory on the calling thread
+     *
+     * @throws BudgetExhaustedException if the memory did not become free in time
+     * @throws CallContext.AbortedException if the call is cancelled or runs out of time first
+     */
+    public Reservation acquire(long bytes, String kind, CallContext context) {
+        return context.bind(reserve(bytes, kind)).block();
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(
+            properties.getMemoryBudget().isEnabled(),
+            budget,
+            reserved,
+            peakReserved,
+            new TreeMap<>(reservedByKind),
+            active,
+            waiting.size(),
+            granted.get(),
+            queued.get(),
+            rejected.get()
+        );
+    }
+
+    /**
+     * Grant waiting reservations in arrival order as long as they fit
+     *
+     * @return the waiters granted, to be notified outside the lock
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> grants = List.of();
+        while (!waiting.isEmpty() && reserved + waiting.peekFirst().bytes <= budget) {
+            Waiter waiter = waiting.pollFirst();
+            Reservation reservation = new Reservation(this, waiter.kind, 0);
+            take(reservation, waiter.bytes);
+            active++;
+            waiter.reservation = reservation;
+            granted.incrementAndGet();
+            if (grants.isEmpty()) {
+                grants = new ArrayList<>();
+            }
+            grants.add(waiter);
+        }
+        return grants;
+    }
+
+    /**
+     * Hand out granted reservations; the work waiting for them may start on this thread
+     */
+    private static void handOut(List<Waiter> grants) {
+        for (Waiter waiter : grants) {
+            waiter.sink.success(waiter.reservation);
+        }
+    }
+
+    private void take(Reservation reservation, long bytes) {
+        reservation.bytes += bytes;
+        reserved += bytes;
+        peakReserved = Math.max(peakReserved, reserved);
+        reservedByKind.merge(reservation.kind, bytes, Long::sum);
+    }
+
+    private synchronized boolean grow(Reservation reservation, long bytes) {
+        if (reservation.closed) {
+            return false;
+        }
+        long extra = bytes - reservation.bytes;
+        if (extra <= 0) {
+            return true;
+        }
+        if (reserved + extra > budget) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        take(reservation, extra);
+        return true;
+    }
+
+    private void release(Reservation reservation) {
+        List<Waiter> grants;
+        synchronized (this) {
+            if (reservation.closed) {
+                return;
+            }
+            reservation.closed = true;
+            reserved -= reservation.bytes;
+            reservedByKind.computeIfPresent(reservation.kind,
+                (kind, bytes) -> bytes - reservation.bytes > 0 ? bytes - reservation.bytes : null);
+            active--;
+            grants = dispatch();
+        }
+        handOut(grants);
+    }
+
+    /**
+     * Leave the queue after a cancellation, giving back memory granted meanwhile
+     */
+    private void abandon(Waiter waiter) {
+        Reservation reservation;
+        synchronized (this) {
+            waiting.remove(waiter);
+            reservation = waiter.reservation;
+        }
+        if (reservation != null) {
+            reservation.close();
+        }
+    }
+
+    /**
+     * Memory held by one body or parse; closing it gives the memory back
+     */
+    public static final class Reservation implements AutoCloseable {
+
+        private final MemoryGovernor governor;
+        private final String kind;
+        private long bytes;
+        private boolean closed;
+
+        private Reservation(MemoryGovernor governor, String kind, long bytes) {
+            this.governor = governor;
+            this.kind = kind;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Grow the reservation to the given size without waiting
+         *
+         * @return false when the budget has no room for the growth
+         */
+        public boolean growTo(long bytes) {
+            return governor == null || governor.grow(this, bytes);
+        }
+
+        @Override
+        public void close() {
+            if (governor != null) {
+                governor.release(this);
+            }
+        }
+    }
+
+    /**
+     * The memory budget stayed taken for longer than a fetch may wait, or a body
+     * outgrew what was left of it.
+     *
+     * <p>Not an {@link CallContext.AbortedException}: the call itself goes on, so a
+     * search fails over to the next provider. It says nothing about the provider or
+     * the URL either, so neither is suspended or negative-cached for it.
+     */
+    public static class BudgetExhaustedException extends RuntimeException {
+
+        public BudgetExhaustedException(String kind, long bytes) {
+            super("Memory budget exhausted (" + kind + " needs " + bytes / 1024 + " KB)");
+        }
+    }
+
+    /**
+     * Memory budget metrics
+     *
+     * @param enabled Whether memory is reserved at all
+     * @param budgetBytes Memory all reservations together may hold
+     * @param reservedBytes Memory currently reserved
+     * @param peakReservedBytes Most memory reserved at once since startup
+     * @param reservedBytesByKind Memory currently reserved for bodies and for parses
+     * @param activeReservations Reservations currently held
+     * @param waitingReservations Reservations waiting for memory
+     * @param granted Reservations granted since startup
+     * @param queued Reservations that had to wait for memory
+     * @param rejected Reservations or growths refused for lack of memory
+     */
+    public record Stats(
+        boolean enabled,
+        long budgetBytes,
+        long reservedBytes,
+        long peakReservedBytes,
+        Map<String, Long> reservedBytesByKind,
+        int activeReservations,
+        int waitingReservations,
+        long granted,
+        long queued,
+        long rejected
+    ) {}
+
+    /**
+     * A reservation waiting for memory
+     */
+    private static final class Waiter {
+
+        private final String kind;
+        private final long bytes;
+        private final MonoSink<Reservation> sink;
+        private Reservation reservation;
+
+        Waiter(String kind, long bytes, MonoSink<Reservation> sink) {
+            this.kind = kind;
+            this.bytes = bytes;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+/**
+ * Short-lived memory of searches and fetches that failed, so repeating them
+ * fails fast with the original reason instead of paying for rate-limit waits
+ * and network timeouts again.
+ *
+ * <p>Three kinds of keys are remembered, each with its own TTL:
+ * <ul>
+ *   <li>searches that returned no results or failed on every provider in a way a
+ *       retry would repeat, keyed by the normalized query, date filter, mode and providers</li>
+ *   <li>URLs that timed out, returned an HTTP error, exceeded the size limit or hold unsupported content</li>
+ *   <li>hosts that could not be reached at all, or answered 429/503</li>
+ * </ul>
+ *
+ * <p>Lookups go through a time-decaying Bloom filter first. Almost every key
+ * asked about has never failed, and the filter answers those without touching
+ * the (locked) failure table; only filter hits look up the recorded reason.
+ */
+@Component
+public class NegativeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NegativeCache.class);
+
+    private static final double FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    private final WebSearchProperties properties;
+    private final DecayingBloomFilter filter;
+
+    private final Map<String, Failure> failures = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+            return size() > properties.getNegativeCache().getMaxEntries();
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong filterRejections = new AtomicLong();
+    private final AtomicLong filterFalsePositives = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+
+    public NegativeCache(WebSearchProperties properties) {
+        this.properties = properties;
+        WebSearchProperties.NegativeCacheProperties settings = properties.getNegativeCache();
+        // A key must outlive its longest TTL in the filter, and members survive at least one period
+        long longestTtlSeconds = Math.max(settings.getSearchTtlSeconds(),
+            Math.max(settings.getUrlTtlSeconds(), settings.getHostTtlSeconds()));
+        this.filter = new DecayingBloomFilter(settings.getMaxEntries(), FILTER_FALSE_POSITIVE_RATE,
+            Math.max(1, longestTtlSeconds) * 1000);
+    }
+
+    /**
+     * Key for a search: the enhanced query with case and whitespace normalized,
+     * plus everything else that changes which results come back
+     */
+    public static String searchKey(String enhancedQuery, String dateFilter, String mode, List<String> providers) {
+        String normalizedQuery = enhancedQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        String normalizedProviders = providers == null ? "" :
+            String.join(",", providers.stream().map(p -> p.toLowerCase(Locale.ROOT)).sorted().toList());
+        return "search:" + normalizedQuery + "|" + (dateFilter != null ? dateFilter : "")
+            + "|" + (mode != null ? mode.toLowerCase(Locale.ROOT) : "fallback") + "|" + normalizedProviders;
+    }
+
+    /**
+     * Recorded failure of a search, or null
+     */
+    public Failure checkSearch(String searchKey) {
+        return lookup(searchKey);
+    }
+
+    /**
+     * Remember that a search returned nothing or failed everywhere
+     */
+    public void recordSearchFailure(String searchKey, String reason) {
+        record(searchKey, reason, properties.getNegativeCache().getSearchTtlSeconds());
+    }
+
+    /**
+     * Remember a failed search if retrying it would fail the same way: the provider
+     * rejected the request itself (an HTTP 4xx status), or its response is too large
+     * or not a results page. Throttling, timeouts, unreachable providers, cancelled
+     * calls and unclassified errors pass on their own and are not recorded.
+     */
+    public void recordSearchFailure(String searchKey, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof CallContext.AbortedException || cause instanceof KnownFailureException
+                    || cause instanceof RequestManager.ThrottledException
+                    || cause instanceof MemoryGovernor.BudgetExhaustedException) {
+                return;
+            }
+            if (cause instanceof WebClientResponseException response) {
+                int status = response.getStatusCode().value();
+                // 403 is how providers block clients they consider too fast, 408 and 429 pass as well
+                if (status >= 400 && status < 500 && status != 403 && status != 408 && status != 429) {
+                    recordSearchFailure(searchKey, error.getMessage());
+                }
+                return;
+            }
+            if (cause instanceof DataBufferLimitException || cause instanceof HttpTransport.UnsupportedContentException) {
+                recordSearchFailure(searchKey, error.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recorded failure of the URL or its host, or null
+     *
+     * @param url Canonical URL
+     */
+    public Failure checkFetch(String url) {
+        Failure failure = lookup("url:" + url);
+        if (failure == null) {
+            String host = host(url);
+            failure = host != null ? lookup("host:" + host) : null;
+        }
+        return failure;
+    }
+
+    /**
+     * Remember a failed fetch if the error says something about the URL or host.
+     * Errors that do not (parsing bugs, cancelled calls, memory pressure) are not recorded.
+     *
+     * @param url Canonical URL
+     */
+    public void recordFetchFailure(String url, Throwable error) {
+        WebSearchProperties.NegativeCacheProperties settings = properties.getNegativeCache();
+
+        for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof CallContext.AbortedException || cause instanceof KnownFailureException
+                    || cause instanceof MemoryGovernor.BudgetExhaustedException) {
+                return;
+            }
+            if (cause instanceof WebClientResponseException response) {
+                int status = response.getStatusCode().value();
+                if (status == 429 || status == 503) {
+                    // The host is throttling or down, not just this page
+                    recordHost(url, "HTTP " + status, settings.getHostTtlSeconds());
+                } else {
+                    record("url:" + url, "HTTP " + status, settings.getUrlTtlSeconds());
+                }
+                return;
+            }
+            if (cause instanceof UnknownHostException || cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException) {
+                recordHost(url, "Host unreachable (" + cause.getClass().getSimpleName() + ")",
+                    settings.getHostTtlSeconds());
+                return;
+            }
+            if (cause instanceof TimeoutException) {
+                record("url:" + url, "Timed out", settings.getUrlTtlSeconds());
+                return;
+            }
+            if (cause instanceof DataBufferLimitException) {
+                record("url:" + url, "Response exceeds size limit", settings.getUrlTtlSeconds());
+                return;
+            }
+            if (cause instanceof HttpTransport.UnsupportedContentException) {
+                record("url:" + url, cause.getMessage(), settings.getUrlTtlSeconds());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remember a fetch failure the caller has already classified (for example an empty body)
+     */
+    public void recordUrlFailure(String url, String reason) {
+        record("url:" + url, reason, properties.getNegativeCache().getUrlTtlSeconds());
+    }
+
+    public Stats getStats() {
+        synchronized (failures) {
+            return new Stats(failures.size(), hits.get(), filterRejections.get(), filterFalsePositives.get(),
+                recorded.get(), filter.sizeInBytes());
+        }
+    }
+
+    private Failure lookup(String key) {
+        if (!properties.getNegativeCache().isEnabled()) {
+            return null;
+        }
+        if (!filter.mightContain(key)) {
+            filterRejections.incrementAndGet();
+            return null;
+        }
+
+        Failure failure;
+        synchronized (failures) {
+            failure = failures.get(key);
+            if (failure != null && failure.expiresAt() <= System.currentTimeMillis()) {
+                failures.remove(key);
+                failure = null;
+            }
+        }
+
+        if (failure == null) {
+            // Expired, evicted, or a false positive of the filter
+            filterFalsePositives.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return failure;
+    }
+
+    private void recordHost(String url, String reason, int ttlSeconds) {
+        String host = host(url);
+        if (host != null) {
+            record("host:" + host, reason, ttlSeconds);
+        }
+    }
+
+    private void record(String key, String reason, int ttlSeconds) {
+        if (!properties.getNegativeCache().isEnabled() || ttlSeconds <= 0) {
+            return;
+        }
+
+        Failure failure = new Failure(reason, System.currentTimeMillis() + ttlSeconds * 1000L);
+        synchronized (failures) {
+            failures.put(key, failure);
+        }
+        filter.add(key);
+        recorded.incrementAndGet();
+
+        if (properties.isDebug()) {
+            log.debug("Negative-cached {} for {} s: {}", key, ttlSeconds, reason);
+        }
+    }
+
+    private static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * A remembered failure
+     *
+     * @param reason Why the original attempt failed
+     * @param expiresAt When the failure is forgotten (epoch millis)
+     */
+    public record Failure(
+        String reason,
+        long expiresAt
+    ) {
+
+        public long retryInSeconds() {
+            return Math.max(0, (expiresAt - System.currentTimeMillis() + 999) / 1000);
+        }
+
+        public String describe() {
+            return reason + " (recently failed, retry in " + retryInSeconds() + " s)";
+        }
+    }
+
+    /**
+     * Thrown instead of repeating an operation that recently failed
+     */
+    public static class KnownFailureException extends RuntimeException {
+
+        public KnownFailureException(Failure failure) {
+            super(failure.describe());
+        }
+    }
+
+    /**
+     * Negative cache metrics
+     *
+     * @param hits Lookups answered with a remembered failure
+     * @param filterRejections Lookups the Bloom filter answered without the failure table
+     * @param filterFalsePositives Filter hits with no live entry (expired, evicted or false positive)
+     * @param recorded Failures recorded since startup
+     * @param filterBytes Size of one filter generation
+     */
+    public record Stats(
+        int entries,
+        long hits,
+        long filterRejections,
+        long filterFalsePositives,
+        long recorded,
+        long filterBytes
+    ) {}
+}
@@ -0,0 +1,197 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.xtivia.mcp.websearch.model.FetchResult;
+
+/**
+ * A fetched page after extraction, kept whole and split into sections by its
+ * heading outline, so any slice of it can be served without parsing it again.
+ *
+ * <p>The summary and keywords are derived on first use and then kept, so pages
+ * fetched without those fields never compute them.
+ */
+final class ParsedDocument {
+
+    /**
+     * Sections listed in a response; longer outlines are cut off
+     */
+    private static final int MAX_OUTLINE = 100;
+
+    /**
+     * How far back a slice end may move to avoid splitting a word
+     */
+    private static final int WORD_BOUNDARY_SLACK = 80;
+
+    private final String url;
+    private final String title;
+    private final String content;
+    private final FetchResult.Metadata metadata;
+    private final List<FetchResult.Section> sections;
+    private final long parsedAt;
+
+    private volatile String summary;
+    private volatile List<String> keywords;
+
+    /**
+     * @param content The page's whole extracted text (up to the document length limit)
+     * @param sections Heading outline; section {@code s0} is the text before the first heading
+     * @param parsedAt When the page was fetched and parsed
+     */
+    ParsedDocument(String url, String title, String content, FetchResult.Metadata metadata,
+                   List<FetchResult.Section> sections, long parsedAt) {
+        this.url = url;
+        this.title = title;
+        this.content = content;
+        this.metadata = metadata;
+        this.sections = sections;
+        this.parsedAt = parsedAt;
+    }
+
+    /**
+     * Build the section outline from the headings found in the content
+     */
+    static List<FetchResult.Section> outline(List<ContentExtractor.Heading> headings, int totalLength) {
+        List<FetchResult.Section> sections = new ArrayList<>();
+
+        int firstHeading = headings.isEmpty() ? totalLength : Math.min(headings.get(0).offset(), totalLength);
+        if (firstHeading > 0) {
+            sections.add(new FetchResult.Section("s0", null, 0, 0, firstHeading));
+        }
+
+        for (int i = 0; i < headings.size(); i++) {
+            ContentExtractor.Heading heading = headings.get(i);
+            if (heading.offset() >= totalLength) {
+                break;
+            }
+            int end = totalLength;
+            for (int j = i + 1; j < headings.size(); j++) {
+                if (headings.get(j).level() <= heading.level()) {
+                    end = Math.min(headings.get(j).offset(), totalLength);
+                    break;
+                }
+            }
+            sections.add(new FetchResult.Section("s" + (i + 1), heading.text(), heading.level(),
+                heading.offset(), end - heading.offset()));
+        }
+        return List.copyOf(sections);
+    }
+
+    /**
+     * Cut a slice of the page into a fetch result
+     *
+     * @param slice Requested part of the page, or null for the beginning
+     * @param defaultLength Length of the slice if none is requested
+     * @param maxLength Largest slice returned
+     * @param summary Summary to include, or null
+     * @param keywords Keywords to include, or null
+     * @param fromCache Whether the page was served from the cache
+     */
+    FetchResult page(ContentFetchService.Slice slice, int defaultLength, int maxLength,
+                     String summary, List<String> keywords, boolean fromCache) {
+        int total = content.length();
+        int length = slice != null && slice.length() != null ?
+            Math.max(1, Math.min(slice.length(), maxLength)) : defaultLength;
+
+        String sectionId = slice != null ? slice.section() : null;
+        int start;
+        int limit;
+        if (sectionId != null) {
+            FetchResult.Section section = section(sectionId);
+            start = section.offset();
+            limit = section.offset() + section.length();
+        } else {
+            start = slice != null && slice.offset() != null ? Math.max(0, Math.min(slice.offset(), total)) : 0;
+            limit = total;
+        }
+
+        int end = Math.min(limit, start + length);
+        if (end < limit && !Character.isWhitespace(content.charAt(end))) {
+            int space = content.lastIndexOf(' ', end);
+            if (space > start && end - space <= WORD_BOUNDARY_SLACK) {
+                end = space;
+            }
+        }
+        while (start < end && Character.isWhitespace(content.charAt(start))) {
+            start++;
+        }
+
+        FetchResult.Paging paging = new FetchResult.Paging(
+            start,
+            total,
+            end < total ? end : null,
+            sectionId,
+            sections.size() > MAX_OUTLINE ? sections.subList(0, MAX_OUTLINE) : sections,
+            fromCache
+        );
+        return new FetchResult(url, title, content.substring(start, end).trim(), summary, keywords, metadata, paging);
+    }
+
+    /**
+     * Summary of the page, computed by the summarizer on first use
+     */
+    String summary(Function<ParsedDocument, String> summarizer) {
+        String result = summary;
+        if (result == null) {
+            result = summarizer.apply(this);
+            summary = result;
+        }
+        return result;
+    }
+
+    /**
+     * Keywords of the page, computed by the extractor on first use
+     */
+    List<String> keywords(Function<ParsedDocument, List<String>> extractor) {
+        List<String> result = keywords;
+        if (result == null) {
+            result = extractor.apply(this);
+            keywords = result;
+        }
+        return result;
+    }
+
+    /**
+     * The first characters of the page's text
+     */
+    String beginning(int length) {
+        return content.length() > length ? content.substring(0, length) : content;
+    }
+
+    String url() {
+        return url;
+    }
+
+    String title() {
+        return title;
+    }
+
+    /**
+     * The page's whole extracted text
+     */
+    String content() {
+        return content;
+    }
+
+    long parsedAt() {
+        return parsedAt;
+    }
+
+    /**
+     * Rough heap footprint in characters, for the cache budget
+     */
+    long characters() {
+        return content.length() + (title != null ? title.length() : 0);
+    }
+
+    private FetchResult.Section section(String id) {
+        for (FetchResult.Section section : sections) {
+            if (section.id().equals(id)) {
+                return section;
+            }
+        }
+        throw new IllegalArgumentException("Unknown section \"" + id + "\"; the page's sections are listed in paging.sections");
+    }
+}
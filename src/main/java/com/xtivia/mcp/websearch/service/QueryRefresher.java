@@ -0,0 +1,220 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps the responses of the most frequent web_search queries fresh.
+ *
+ * <p>Every search is counted in a {@link HeavyHitters} sketch. A low-priority
+ * background thread regularly checks the hottest queries and re-runs those whose
+ * cached response expires within {@code window-seconds}, so their callers keep
+ * getting cache hits instead of waiting for the rate limiter and the provider.
+ *
+ * <p>Refreshes never delay tool calls: at most {@code max-refreshes-per-minute} of
+ * them run, each with a {@linkplain CallContext#refresh refresh} context. Like any
+ * background work it only takes a provider's request slot when no tool call is
+ * queued for it and the slot is free right away, and gives up otherwise
+ * (see {@link ClientScheduler} and {@link RequestManager#waitForRequest}).
+ * The refresh context also keeps providers from answering out of their own
+ * caches, so a refresh really fetches new results.
+ */
+@Component
+public class QueryRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryRefresher.class);
+
+    private final SearchService searchService;
+    private final SearchResultCache searchResultCache;
+    private final WebSearchProperties properties;
+
+    private final HeavyHitters<Search> hotQueries;
+
+    /**
+     * Start times of the refreshes in the last minute
+     */
+    private final Deque<Long> recentRefreshes = new ArrayDeque<>();
+
+    private final AtomicLong searchesCounted = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong skippedNoBudget = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+    private volatile CallContext running;
+
+    public QueryRefresher(SearchService searchService,
+                          SearchResultCache searchResultCache,
+                          WebSearchProperties properties) {
+        this.searchService = searchService;
+        this.searchResultCache = searchResultCache;
+        this.properties = properties;
+        WebSearchProperties.RefreshAheadProperties config = properties.getRefreshAhead();
+        this.hotQueries = new HeavyHitters<>(config.getSketchWidth(), config.getSketchDepth(), config.getTopQueries(),
+            config.getDecayMinutes() * 60000L);
+    }
+
+    @PostConstruct
+    public void start() {
+        WebSearchProperties.RefreshAheadProperties config = properties.getRefreshAhead();
+        if (!config.isEnabled() || !properties.getQueryCache().isEnabled()) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "query-refresher");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = Math.max(1, config.getCheckIntervalSeconds());
+        executor.scheduleWithFixedDelay(this::refreshExpiring, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        CallContext context = running;
+        if (context != null) {
+            context.cancel("Server shutting down");
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Count a search a client asked for, whether or not it was answered from the cache
+     */
+    public void record(Search search) {
+        if (executor == null) {
+            return;
+        }
+        searchesCounted.incrementAndGet();
+        hotQueries.add(SearchResultCache.exactKey(search.cacheContext(), search.enhancedQuery()), search);
+    }
+
+    public Stats getStats() {
+        return new Stats(hotQueries.size(), searchesCounted.get(), refreshes.get(), skippedNoBudget.get(),
+            failures.get());
+    }
+
+    /**
+     * Refresh the hot queries whose responses are about to expire, as far as the caps allow
+     */
+    void refreshExpiring() {
+        WebSearchProperties.RefreshAheadProperties config = properties.getRefreshAhead();
+        try {
+            for (HeavyHitters.Hitter<Search> hot : hotQueries.top()) {
+                if (hot.count() < config.getMinHits()) {
+                    // Sorted by count, so no other query qualifies either
+                    return;
+                }
+                Search search = hot.value();
+                Long expiresIn = searchResultCache.expiresIn(search.cacheContext(), search.enhancedQuery());
+                if (expiresIn == null || expiresIn > config.getWindowSeconds() * 1000L) {
+                    continue;
+                }
+                if (!takeRefreshSlot(config.getMaxRefreshesPerMinute())) {
+                    return;
+                }
+                refresh(search, hot.count(), config);
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next round tries again
+            log.warn("Query refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void refresh(Search search, int hits, WebSearchProperties.RefreshAheadProperties config) {
+        try (CallContext context = CallContext.refresh(Duration.ofSeconds(config.getDeadlineSeconds()))) {
+            running = context;
+            SearchResponse response = search.fanOut() ?
+                searchService.fanOut(search.query(), search.enhancedQuery(), search.maxResults(),
+                    search.dateFilter(), search.providers(), context) :
+                searchService.search(search.query(), search.enhancedQuery(), search.maxResults(),
+                    search.dateFilter(), context);
+            searchResultCache.store(search.cacheContext(), search.enhancedQuery(), search.maxResults(), response);
+            refreshes.incrementAndGet();
+            if (properties.isDebug()) {
+                log.debug("Refreshed \"{}\" (about {} requests) ahead of expiry", search.query(), hits);
+            }
+        } catch (CallContext.AbortedException e) {
+            skippedNoBudget.incrementAndGet();
+            if (properties.isDebug()) {
+                log.debug("Refresh of \"{}\" skipped: {}", search.query(), e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            if (properties.isDebug()) {
+                log.debug("Refresh of \"{}\" failed: {}", search.query(), e.getMessage());
+            }
+        } finally {
+            running = null;
+        }
+    }
+
+    /**
+     * Count a refresh against the per-minute cap
+     *
+     * @return false when the cap is reached
+     */
+    private boolean takeRefreshSlot(int maxPerMinute) {
+        long now = System.currentTimeMillis();
+        while (!recentRefreshes.isEmpty() && now - recentRefreshes.peekFirst() >= 60000) {
+            recentRefreshes.pollFirst();
+        }
+        if (recentRefreshes.size() >= maxPerMinute) {
+            return false;
+        }
+        recentRefreshes.addLast(now);
+        return true;
+    }
+
+    /**
+     * A web_search request as needed to run it again
+     *
+     * @param cacheContext Query cache context of the search
+     * @param providers Providers of a fan-out search, or null
+     */
+    public record Search(
+        String query,
+        String enhancedQuery,
+        int maxResults,
+        String dateFilter,
+        boolean fanOut,
+        List<String> providers,
+        String cacheContext
+    ) {}
+
+    /**
+     * Refresh-ahead metrics
+     *
+     * @param trackedQueries Queries currently among the most frequent
+     * @param searchesCounted Searches counted since startup
+     * @param refreshes Responses refreshed before they expired
+     * @param skippedNoBudget Refreshes abandoned because a provider had no request slot free
+     * @param failures Refreshes whose search failed
+     */
+    public record Stats(
+        int trackedQueries,
+        long searchesCounted,
+        long refreshes,
+        long skippedNoBudget,
+        long failures
+    ) {}
+}
@@ -1,21 +1,39 @@
 package com.xtivia.mcp.websearch.service;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.xtivia.mcp.websearch.state.StateStore;
+
+import reactor.core.publisher.Mono;
 
 /**
  * Request manager to help prevent rate limiting.
  * Implements intelligent request spacing and header rotation.
+ * 
+ * <p>Each provider has its own request budget, so a wait for one provider
+ * never delays requests to another. Callers reserve the next free slot and then
+ * sleep outside the lock; a call whose remaining deadline cannot cover the wait
+ * is rejected without taking a slot. Budgets are kept in the {@link StateStore},
+ * so replicas sharing one (and one egress IP) also share the provider's budget.
+ * 
+ * <p>Requests of different MCP clients take turns at each budget in proportion
+ * to the clients' weights (see {@link ClientScheduler}), so one client's burst
+ * does not queue ahead of everybody else.
+ * 
+ * <p>The limits of each budget come from the {@link AdaptiveRateLimiter}, which
+ * providers keep informed by sending their requests through {@link #track}.
+ * Throttling, whether an HTTP status or a challenge page, surfaces as a
+ * {@link ThrottledException} so callers can fail over without guessing.
  */
 @Service
 public class RequestManager {
     
-    private static final long MIN_DELAY_MS = 2000; // 2 seconds minimum between requests
-    private static final int MAX_REQUESTS_PER_MINUTE = 10;
-    
     private static final List<String> USER_AGENTS = List.of(
         "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
         "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.0.0 Safari/537.36",
@@ -26,54 +44,95 @@ public class RequestManager {
     
     private final Random random = new Random();
     
-    private long lastRequestTime = 0;
-    private int requestCount = 0;
-    private final List<Long> requestTimes = new ArrayList<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final StateStore stateStore;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final ClientScheduler clientScheduler;
+    
+    public RequestManager(StateStore stateStore, AdaptiveRateLimiter rateLimiter, ClientScheduler clientScheduler) {
+        this.stateStore = stateStore;
+        this.rateLimiter = rateLimiter;
+        this.clientScheduler = clientScheduler;
+    }
     
     /**
-     * Wait for appropriate delay before making request
+     * Wait for appropriate delay before making a request to the given provider
+     * 
+     * @throws CallContext.AbortedException if the call is cancelled or cannot afford the wait,
+     *         or is background work and the provider has no slot free right now
+     * @throws ClientScheduler.QuotaExceededException if the call's client used up its quota
      */
-    public synchronized void waitForRequest() {
-        long now = System.currentTimeMillis();
-        
-        // Clean old request times (older than 1 minute)
-        long oneMinuteAgo = now - 60000;
-        requestTimes.removeIf(time -> time < oneMinuteAgo);
-        
-        // Check if we're exceeding rate limits
-        if (requestTimes.size() >= MAX_REQUESTS_PER_MINUTE) {
-            long oldestRequest = requestTimes.get(0);
-            long waitTime = oneMinuteAgo - oldestRequest + 1000;
-            sleep(waitTime);
+    public void waitForRequest(String provider, CallContext context) {
+        // The turn is held until the slot arrives, so queued clients are served fairly
+        try (ClientScheduler.Turn turn = clientScheduler.acquire(provider, context)) {
+            StateStore.Reservation reservation = stateStore.reserve(provider.toLowerCase(Locale.ROOT),
+                rateLimiter.limitFor(provider), context.isBackground() ? 0 : context.remainingMillis());
+            if (!reservation.granted() && context.isBackground()) {
+                // Background work only takes slots nobody else would use now
+                throw new CallContext.AbortedException("No spare " + provider + " request budget");
+            }
+            if (!reservation.granted()) {
+                // Rejected because the remaining budget cannot cover the wait
+                context.ensureBudget(reservation.delayMillis(), provider + " rate-limit wait");
+            }
+            context.sleep(reservation.delayMillis(), provider + " rate-limit wait");
         }
-        
-        // Ensure minimum delay between requests
-        long timeSinceLastRequest = now - lastRequestTime;
-        if (timeSinceLastRequest < MIN_DELAY_MS) {
-            long delayNeeded = MIN_DELAY_MS - timeSinceLastRequest;
-            sleep(delayNeeded);
+        requestCount.incrementAndGet();
+    }
+    
+    /**
+     * Report the outcome of a provider request to the adaptive rate limiter: its
+     * latency when it succeeds, throttling when the provider answers 429 or 503
+     * or the request failed with a {@link ThrottledException} (a challenge page).
+     * The latency is measured from subscription, i.e. after the rate-limit wait.
+     * 
+     * @return the request, failing with {@link ThrottledException} when it was throttled
+     */
+    public <T> Mono<T> track(String provider, Mono<T> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request
+                .doOnSuccess(response -> rateLimiter.recordSuccess(provider, (System.nanoTime() - start) / 1_000_000))
+                .onErrorMap(RequestManager::isThrottlingStatus, error -> new ThrottledException(provider,
+                    "HTTP " + ((WebClientResponseException) error).getStatusCode().value(), error))
+                .doOnError(ThrottledException.class,
+                    throttled -> rateLimiter.recordThrottled(provider, throttled.getReason()));
+        });
+    }
+    
+    /**
+     * Report throttling recognized after a response was read (for example a
+     * results page that turns out to hold neither results nor a "no results" notice)
+     * 
+     * @return the exception to throw
+     */
+    public ThrottledException throttled(String provider, String reason) {
+        rateLimiter.recordThrottled(provider, reason);
+        return new ThrottledException(provider, reason, null);
+    }
+    
+    private static boolean isThrottlingStatus(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status == 503;
         }
-        
-        // Record this request
-        lastRequestTime = System.currentTimeMillis();
-        requestTimes.add(lastRequestTime);
-        requestCount++;
+        return false;
     }
     
     /**
      * Add random jitter to make requests appear more human-like
      */
-    public void addRandomDelay() {
-        // Add 0-3 second random delay
-        long randomDelay = random.nextInt(3000);
-        sleep(randomDelay);
+    public void addRandomDelay(CallContext context) {
+        // Add 0-3 second random delay, but never spend more than half the remaining budget on it
+        long randomDelay = Math.min(random.nextInt(3000), context.remainingMillis() / 2);
+        context.sleep(randomDelay, "request jitter");
     }
     
     /**
      * Get a rotated user agent to vary requests
      */
     public String getUserAgent() {
-        int index = requestCount % USER_AGENTS.size();
+        int index = requestCount.get() % USER_AGENTS.size();
         return USER_AGENTS.get(index);
     }
     
@@ -104,11 +163,27 @@ public class RequestManager {
         return headers;
     }
     
-    private void sleep(long ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * A provider refused to serve a request because it considers the client
+     * too fast: an HTTP 429/503, or an anomaly, challenge or captcha page
+     */
+    public static class ThrottledException extends RuntimeException {
+        
+        private final String provider;
+        private final String reason;
+        
+        public ThrottledException(String provider, String reason, Throwable cause) {
+            super(provider + " rate limited: " + reason, cause);
+            this.provider = provider;
+            this.reason = reason;
+        }
+        
+        public String getProvider() {
+            return provider;
+        }
+        
+        public String getReason() {
+            return reason;
         }
     }
 }
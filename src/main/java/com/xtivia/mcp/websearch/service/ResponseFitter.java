@@ -0,0 +1,248 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serializes tool responses, fitting them into the token budget a client asks
+ * for ({@code maxTokens}) and reporting their size in tokens.
+ *
+ * <p>Responses are measured as they are sent, pretty-printed, with
+ * {@link TokenEstimator}. A response over budget gives up its least valuable
+ * parts first: a search response shortens result summaries and then drops
+ * results from the bottom of the ranking; a fetch result shortens its content
+ * (moving {@code paging.nextOffset} so the rest can still be read), then its
+ * summary, keywords and section outline. Every response carries its estimated
+ * size in {@code tokens}, and a trimmed one is flagged with {@code truncated}.
+ */
+@Component
+public class ResponseFitter {
+
+    /**
+     * Summaries are not shortened below this; results are dropped instead
+     */
+    private static final int MIN_SUMMARY_LENGTH = 80;
+
+    /**
+     * Content is shortened down to this before summary, keywords and outline go
+     */
+    private static final int MIN_CONTENT_LENGTH = 500;
+
+    /**
+     * Tokens kept free for the "tokens" and "truncated" fields added at the end
+     */
+    private static final int RESERVED_TOKENS = 16;
+
+    private final ObjectMapper objectMapper;
+
+    public ResponseFitter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Fit a serialized search response
+     *
+     * @param maxTokens Token budget, or null for none
+     */
+    public String fitSearchResponse(ObjectNode response, Integer maxTokens) throws JsonProcessingException {
+        Budget budget = new Budget(response, maxTokens);
+        JsonNode results = response.path("results");
+
+        if (!budget.fits() && results instanceof ArrayNode ranked && ranked.size() > 0) {
+            List<String> summaries = texts(ranked, "summary");
+            int longest = summaries.stream().mapToInt(summary -> summary != null ? summary.length() : 0).max().orElse(0);
+            if (longest > MIN_SUMMARY_LENGTH) {
+                budget.shrink(MIN_SUMMARY_LENGTH, longest, length -> {
+                    for (int i = 0; i < ranked.size(); i++) {
+                        setText(ranked.get(i), "summary", abbreviate(summaries.get(i), length));
+                    }
+                });
+            }
+
+            while (!budget.fits() && ranked.size() > 1) {
+                ranked.remove(ranked.size() - 1);
+                budget.truncated = true;
+            }
+            if (response.has("totalResults")) {
+                response.put("totalResults", ranked.size());
+            }
+
+            if (!budget.fits() && ranked.get(0) instanceof ObjectNode top) {
+                top.remove("keywords");
+                top.remove("summary");
+            }
+        }
+        return budget.finish();
+    }
+
+    /**
+     * Fit a serialized fetch result
+     *
+     * @param maxTokens Token budget, or null for none
+     */
+    public String fitFetchResult(ObjectNode result, Integer maxTokens) throws JsonProcessingException {
+        Budget budget = new Budget(result, maxTokens);
+        String content = result.path("content").textValue();
+
+        if (!budget.fits()) {
+            JsonNode paging = result.path("paging");
+            JsonNode nextOffset = paging.path("nextOffset");
+            IntConsumer cutContent = length -> {
+                String kept = cut(content, length);
+                result.put("content", kept);
+                if (paging instanceof ObjectNode page) {
+                    if (kept.length() < content.length()) {
+                        page.put("nextOffset", page.path("offset").asInt() + kept.length());
+                    } else if (nextOffset.isMissingNode()) {
+                        page.remove("nextOffset");
+                    } else {
+                        page.set("nextOffset", nextOffset);
+                    }
+                }
+            };
+
+            if (content != null && content.length() > MIN_CONTENT_LENGTH) {
+                budget.shrink(MIN_CONTENT_LENGTH, content.length(), cutContent);
+            }
+
+            String summary = result.path("summary").textValue();
+            if (!budget.fits() && summary != null && summary.length() > MIN_SUMMARY_LENGTH) {
+                budget.shrink(MIN_SUMMARY_LENGTH, summary.length(),
+                    length -> result.put("summary", abbreviate(summary, length)));
+            }
+
+            if (!budget.fits()) {
+                result.remove("keywords");
+                if (paging instanceof ObjectNode page) {
+                    page.remove("sections");
+                }
+                budget.truncated = true;
+            }
+
+            if (!budget.fits() && content != null) {
+                budget.shrink(0, Math.min(content.length(), MIN_CONTENT_LENGTH), cutContent);
+            }
+        }
+        return budget.finish();
+    }
+
+    private static List<String> texts(ArrayNode array, String field) {
+        List<String> texts = new ArrayList<>(array.size());
+        for (JsonNode element : array) {
+            texts.add(element.path(field).textValue());
+        }
+        return texts;
+    }
+
+    private static void setText(JsonNode node, String field, String text) {
+        if (text != null && node instanceof ObjectNode object) {
+            object.put(field, text);
+        }
+    }
+
+    /**
+     * The text up to the last word boundary within {@code length} characters
+     */
+    static String cut(String text, int length) {
+        if (text.length() <= length) {
+            return text;
+        }
+        int end = text.lastIndexOf(' ', length);
+        return text.substring(0, end > length / 2 ? end : length);
+    }
+
+    /**
+     * The text shortened to at most {@code length} characters, ending in "..."
+     */
+    static String abbreviate(String text, int length) {
+        if (text == null || text.length() <= length) {
+            return text;
+        }
+        return length <= 3 ? "" : cut(text, length - 3).stripTrailing() + "...";
+    }
+
+    /**
+     * A response being fitted into a budget
+     */
+    private final class Budget {
+
+        private final ObjectNode response;
+        private final int maxTokens;
+        private boolean truncated;
+
+        Budget(ObjectNode response, Integer maxTokens) {
+            this.response = response;
+            this.maxTokens = maxTokens != null && maxTokens > 0 ? maxTokens : 0;
+        }
+
+        boolean fits() {
+            return maxTokens == 0 || measure() + RESERVED_TOKENS <= maxTokens;
+        }
+
+        /**
+         * Apply the largest value in [min, max) for which the response fits, or
+         * {@code min} if none does; the response is known not to fit at {@code max}
+         */
+        void shrink(int min, int max, IntConsumer apply) {
+            truncated = true;
+            int fitting = min;
+            int tooLarge = max;
+            apply.accept(min);
+            if (fits()) {
+                while (tooLarge - fitting > 1) {
+                    int middle = (fitting + tooLarge) >>> 1;
+                    apply.accept(middle);
+                    if (fits()) {
+                        fitting = middle;
+                    } else {
+                        tooLarge = middle;
+                    }
+                }
+            }
+            apply.accept(fitting);
+        }
+
+        /**
+         * Serialize with the size fields, whose own tokens count towards the size
+         */
+        String finish() throws JsonProcessingException {
+            if (truncated) {
+                response.put("truncated", true);
+            }
+            // The count's digits are tokens too. A larger count never has fewer digit
+            // tokens, so raising the count to the last measurement settles on the
+            // exact size within a couple of rounds
+            int tokens = 0;
+            while (true) {
+                response.put("tokens", tokens);
+                String json = serialize();
+                int measured = TokenEstimator.estimate(json);
+                if (measured <= tokens) {
+                    return json;
+                }
+                tokens = measured;
+            }
+        }
+
+        private int measure() {
+            try {
+                return TokenEstimator.estimate(serialize());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Response cannot be serialized: " + e.getMessage(), e);
+            }
+        }
+
+        private String serialize() throws JsonProcessingException {
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+/**
+ * Recent search responses, found by exact or near-duplicate query.
+ *
+ * <p>Queries are normalized to lowercase terms without punctuation, stop words or
+ * plural endings and fingerprinted with a 64-bit SimHash of those terms. Rephrasings that keep
+ * the same terms in another order ("spring webflux timeout" / "webflux timeout
+ * spring") get the same fingerprint; adding or replacing a term moves it by many
+ * bits. Similarity is 1 - hammingDistance / 64.
+ *
+ * <p>Near-duplicates are found with a banded LSH index: the fingerprint is split
+ * into {@code maxDistance + 1} bands and every entry is indexed under each band.
+ * Two fingerprints within {@code maxDistance} bits must agree on at least one band,
+ * so every entry above the similarity threshold is found without scanning the cache.
+ *
+ * <p>Only entries searched with the same mode, date filter and providers are
+ * considered, and only if they were asked for at least as many results or the
+ * providers reported their results as {@linkplain SearchResponse#exhausted() exhausted}.
+ *
+ * <p>With a shared {@link StateStore}, responses are also published there under
+ * their exact key, and a local miss is looked up in the store before searching,
+ * so a replica answers what any other replica searched recently. Near-duplicate
+ * matching stays local.
+ */
+@Component
+public class SearchResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchResultCache.class);
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "in", "is", "it",
+        "of", "on", "or", "the", "to", "what", "when", "where", "which", "who", "why", "with"
+    );
+
+    private final WebSearchProperties properties;
+    private final StateStore stateStore;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            boolean evict = size() > properties.getQueryCache().getMaxEntries();
+            if (evict) {
+                unindex(eldest.getKey(), eldest.getValue());
+            }
+            return evict;
+        }
+    };
+
+    /**
+     * LSH buckets: context, band number and band bits to the exact keys of the entries in it
+     */
+    private final Map<String, Set<String>> buckets = new HashMap<>();
+
+    private final int bands;
+    private final int maxDistance;
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong approximateHits = new AtomicLong();
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SearchResultCache(WebSearchProperties properties, StateStore stateStore, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.stateStore = stateStore;
+        this.objectMapper = objectMapper;
+        double threshold = Math.min(1.0, Math.max(0.0, properties.getQueryCache().getSimilarityThreshold()));
+        this.maxDistance = Math.min(63, (int) Math.floor((1.0 - threshold) * 64 + 1e-9));
+        this.bands = maxDistance + 1;
+    }
+
+    /**
+     * Lookup context for a search: everything besides the query that changes its results
+     *
+     * @param providers Providers selected for a fan-out search, or null
+     */
+    public static String context(String mode, String dateFilter, List<String> providers) {
+        String normalizedProviders = providers == null ? "" :
+            String.join(",", providers.stream().map(p -> p.toLowerCase(Locale.ROOT)).sorted().toList());
+        return mode.toLowerCase(Locale.ROOT) + "|" + (dateFilter != null ? dateFilter : "") + "|" + normalizedProviders;
+    }
+
+    /**
+     * Look up a cached response
+     *
+     * @param context See {@link #context(String, String, List)}
+     * @param allowApproximate Whether near-duplicate queries may be served
+     * @return The cached match, or null
+     */
+    public Match lookup(String context, String query, int maxResults, boolean allowApproximate) {
+        if (!properties.getQueryCache().isEnabled()) {
+            return null;
+        }
+
+        List<String> terms = terms(query);
+        String exactKey = exactKey(context, query);
+        long now = System.currentTimeMillis();
+
+        synchronized (entries) {
+            Entry exact = entries.get(exactKey);
+            if (exact != null && isUsable(exact, maxResults, now)) {
+                exactHits.incrementAndGet();
+                return new Match(exact.response(), exact.query(), 1.0, false);
+            }
+
+            if (allowApproximate && !terms.isEmpty()) {
+                long fingerprint = simHash(terms);
+                Entry best = null;
+                int bestDistance = Integer.MAX_VALUE;
+
+                for (String candidateKey : candidates(context, fingerprint)) {
+                    Entry candidate = entries.get(candidateKey);
+                    if (candidate == null || !isUsable(candidate, maxResults, now)) {
+                        continue;
+                    }
+                    int distance = Long.bitCount(candidate.fingerprint() ^ fingerprint);
+                    if (distance <= maxDistance && distance < bestDistance) {
+                        best = candidate;
+                        bestDistance = distance;
+                    }
+                }
+
+                if (best != null) {
+                    approximateHits.incrementAndGet();
+                    double similarity = 1.0 - bestDistance / 64.0;
+                    if (properties.isDebug()) {
+                        log.debug("Query \"{}\" served from cached \"{}\" (similarity {})", query, best.query(), similarity);
+                    }
+                    return new Match(best.response(), best.query(), similarity, true);
+                }
+            }
+        }
+
+        Entry shared = lookupShared(context, exactKey, maxResults, now);
+        if (shared != null) {
+            sharedHits.incrementAndGet();
+            return new Match(shared.response(), shared.query(), 1.0, false);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Remember a response. Empty responses are left to the negative cache.
+     *
+     * @param maxResults Number of results the search asked for
+     */
+    public void store(String context, String query, int maxResults, SearchResponse response) {
+        if (!properties.getQueryCache().isEnabled() || response.totalResults() == 0) {
+            return;
+        }
+
+        String exactKey = exactKey(context, query);
+        Entry entry = new Entry(context, query, simHash(terms(query)), maxResults, response.exhausted(), response,
+            System.currentTimeMillis());
+        insert(exactKey, entry);
+
+        if (isSharing()) {
+            try {
+                List<String> snippets = response.results().stream().map(SearchResult::snippet).toList();
+                stateStore.put(sharedKey(exactKey), objectMapper.writeValueAsString(
+                        new SharedEntry(query, maxResults, response.exhausted(), entry.storedAt(), response, snippets)),
+                    properties.getQueryCache().getTtlMinutes() * 60000L);
+            } catch (JsonProcessingException e) {
+                log.warn("Could not share cached response for \"{}\": {}", query, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Time until the locally cached response of exactly this search expires
+     *
+     * @return milliseconds (negative once expired), or null if the search is not cached
+     */
+    public Long expiresIn(String context, String query) {
+        synchronized (entries) {
+            // Moves the entry up the LRU order; only hot queries are checked, and those are in use anyway
+            Entry entry = entries.get(exactKey(context, query));
+            if (entry == null) {
+                return null;
+            }
+            return entry.storedAt() + properties.getQueryCache().getTtlMinutes() * 60000L - System.currentTimeMillis();
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (entries) {
+            return new Stats(entries.size(), exactHits.get(), approximateHits.get(), sharedHits.get(),
+                misses.get(), bands);
+        }
+    }
+
+    private void insert(String exactKey, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(exactKey, entry);
+            if (previous != null) {
+                unindex(exactKey, previous);
+            }
+            for (int band = 0; band < bands; band++) {
+                buckets.computeIfAbsent(bucketKey(entry.context(), band, entry.fingerprint()), key -> new HashSet<>())
+                    .add(exactKey);
+            }
+        }
+    }
+
+    private boolean isSharing() {
+        return stateStore.isShared() && properties.getStateStore().isShareQueryCache();
+    }
+
+    /**
+     * Look up the exact query in the shared store, keeping a usable response locally
+     */
+    private Entry lookupShared(String context, String exactKey, int maxResults, long now) {
+        if (!isSharing()) {
+            return null;
+        }
+
+        String json = stateStore.get(sharedKey(exactKey));
+        if (json == null) {
+            return null;
+        }
+
+        try {
+            SharedEntry shared = objectMapper.readValue(json, SharedEntry.class);
+            // The key is a hash; make sure it is the same search
+            if (!exactKey(context, shared.query()).equals(exactKey)) {
+                return null;
+            }
+            Entry entry = new Entry(context, shared.query(), simHash(terms(shared.query())), shared.maxResults(),
+                shared.exhausted(), shared.toResponse(), shared.storedAt());
+            if (!isUsable(entry, maxResults, now)) {
+                return null;
+            }
+            insert(exactKey, entry);
+            return entry;
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring unreadable shared cache entry: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String sharedKey(String exactKey) {
+        return "query:" + Long.toHexString(Hashing.hash64(exactKey));
+    }
+
+    private boolean isUsable(Entry entry, int maxResults, long now) {
+        long ttlMs = properties.getQueryCache().getTtlMinutes() * 60000L;
+        // Results the providers reported as exhausted cover any larger request too
+        return now - entry.storedAt() < ttlMs && (entry.maxResults() >= maxResults || entry.exhausted());
+    }
+
+    private Set<String> candidates(String context, long fingerprint) {
+        Set<String> candidates = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            Set<String> bucket = buckets.get(bucketKey(context, band, fingerprint));
+            if (bucket != null) {
+                candidates.addAll(bucket);
+            }
+        }
+        return candidates;
+    }
+
+    private void unindex(String exactKey, Entry entry) {
+        for (int band = 0; band < bands; band++) {
+            String bucketKey = bucketKey(entry.context(), band, entry.fingerprint());
+            Set<String> bucket = buckets.get(bucketKey);
+            if (bucket != null) {
+                bucket.remove(exactKey);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bucketKey);
+                }
+            }
+        }
+    }
+
+    private String bucketKey(String context, int band, long fingerprint) {
+        // Bands split the 64 bits into nearly equal ranges
+        int from = band * 64 / bands;
+        int to = (band + 1) * 64 / bands;
+        long mask = to - from == 64 ? -1L : ((1L << (to - from)) - 1) << from;
+        return context + "#" + band + "#" + Long.toHexString(fingerprint & mask);
+    }
+
+    static String exactKey(String context, String query) {
+        return context + "#" + query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Lowercase terms without punctuation, stop words and plural s, in their original order
+     */
+    static List<String> terms(String query) {
+        List<String> terms = new ArrayList<>();
+        for (String token : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}:.+#_-]+")) {
+            String term = token.replaceAll("^[.:_-]+|[.:_-]+$", "");
+            if (term.isEmpty() || STOP_WORDS.contains(term)) {
+                continue;
+            }
+            // Light plural folding: "timeouts" and "timeout" are the same term
+            if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+                term = term.substring(0, term.length() - 1);
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    /**
+     * 64-bit SimHash over the distinct terms, each weighted equally
+     */
+    static long simHash(List<String> terms) {
+        int[] weights = new int[64];
+        for (String term : new TreeSet<>(terms)) {
+            long hash = Hashing.hash64(term);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) != 0 ? 1 : -1;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * A response as published to the shared store. Snippets and the exhausted
+     * flag are not part of the response JSON, so they travel separately.
+     */
+    public record SharedEntry(
+        String query,
+        int maxResults,
+        boolean exhausted,
+        long storedAt,
+        SearchResponse response,
+        List<String> snippets
+    ) {
+
+        SearchResponse toResponse() {
+            List<SearchResult> results = new ArrayList<>();
+            for (int i = 0; i < response.results().size(); i++) {
+                SearchResult result = response.results().get(i);
+                String snippet = snippets != null && i < snippets.size() ? snippets.get(i) : null;
+                results.add(new SearchResult(result.title(), result.url(), result.keywords(), result.summary(), snippet));
+            }
+            return new SearchResponse(response.query(), response.totalResults(), response.searchProvider(),
+                response.providers(), results, response.approximate(), response.matchedQuery(), response.similarity(),
+                exhausted);
+        }
+    }
+
+    /**
+     * @param maxResults Number of results the search asked for
+     * @param exhausted Whether the providers had no more results than the response holds
+     */
+    private record Entry(
+        String context,
+        String query,
+        long fingerprint,
+        int maxResults,
+        boolean exhausted,
+        SearchResponse response,
+        long storedAt
+    ) {}
+
+    /**
+     * A cached response for a lookup
+     *
+     * @param query Query the response was originally searched for
+     * @param similarity SimHash similarity between the two queries (1.0 for exact matches)
+     * @param approximate Whether the queries differ after normalization
+     */
+    public record Match(
+        SearchResponse response,
+        String query,
+        double similarity,
+        boolean approximate
+    ) {}
+
+    /**
+     * Query cache metrics
+     *
+     * @param sharedHits Local misses answered from the shared state store
+     * @param bands LSH bands the fingerprints are indexed under
+     */
+    public record Stats(
+        int entries,
+        long exactHits,
+        long approximateHits,
+        long sharedHits,
+        long misses,
+        int bands
+    ) {}
+}
@@ -0,0 +1,123 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+
+/**
+ * Derives keywords and a summary for search results from their snippets.
+ *
+ * <p>Providers return results with only the title, URL and snippet; enrichment
+ * runs after the query cache, for the fields the caller selected, so cached
+ * results serve every field selection and unrequested fields cost nothing.
+ *
+ * <p>Summaries are capped at {@code websearch.search-result-max-length} characters.
+ */
+@Component
+public class SearchResultEnricher {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "the", "and", "for", "are", "but", "not", "you", "all", "can",
+        "had", "her", "was", "one", "our", "out", "day", "get", "has",
+        "him", "his", "how", "man", "new", "now", "old", "see", "two",
+        "way", "who", "boy", "did", "its", "let", "put", "say", "she",
+        "too", "use"
+    );
+
+    private final WebSearchProperties properties;
+
+    public SearchResultEnricher(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Copy of the response whose results carry the selected enrichment fields
+     */
+    public SearchResponse enrich(SearchResponse response, FieldSelection fields) {
+        boolean keywords = fields.includes("keywords");
+        boolean summary = fields.includes("summary");
+        if (!keywords && !summary) {
+            return response;
+        }
+
+        List<SearchResult> results = response.results().stream()
+            .map(result -> new SearchResult(
+                result.title(),
+                result.url(),
+                keywords ? extractKeywords(result.title(), result.snippet()) : null,
+                summary ? createSummary(result.title(), result.snippet(), result.url()) : null,
+                result.snippet()))
+            .toList();
+        return new SearchResponse(response.query(), response.totalResults(), response.searchProvider(),
+            response.providers(), results, response.approximate(), response.matchedQuery(), response.similarity(),
+            response.exhausted());
+    }
+
+    private List<String> extractKeywords(String title, String snippet) {
+        String text = (title + " " + snippet).toLowerCase();
+        String[] words = text.split("\\s+");
+
+        Map<String, Integer> wordCount = new HashMap<>();
+        for (String word : words) {
+            word = word.replaceAll("[^a-z]", "");
+            if (word.length() >= 3 && !STOP_WORDS.contains(word)) {
+                wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
+            }
+        }
+
+        return wordCount.entrySet().stream()
+            .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
+            .limit(5)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    private String createSummary(String title, String snippet, String url) {
+        if (snippet == null || snippet.isEmpty()) {
+            return "Content from " + extractDomain(url) + ": " + title;
+        }
+
+        String summary = snippet.replaceAll("\\s+", " ").trim();
+
+        if (summary.length() < 50) {
+            summary = title + ": " + summary;
+        }
+
+        if (summary.length() > 200) {
+            String[] sentences = summary.split("[.!?]+");
+            StringBuilder truncated = new StringBuilder(sentences[0]);
+
+            for (int i = 1; i < sentences.length; i++) {
+                if ((truncated.length() + sentences[i].length()) <= 180) {
+                    truncated.append(sentences[i]).append(".");
+                } else {
+                    break;
+                }
+            }
+
+            summary = truncated.length() > 50 ? truncated.toString() : summary.substring(0, 180) + "...";
+        }
+
+        if (!summary.matches(".*[.!?]$")) {
+            summary += summary.length() < 180 ? "." : "...";
+        }
+
+        return ResponseFitter.abbreviate(summary, properties.getSearchResultMaxLength());
+    }
+
+    private String extractDomain(String url) {
+        try {
+            return java.net.URI.create(url).toURL().getHost().replaceFirst("^www\\.", "");
+        } catch (Exception e) {
+            return "unknown source";
+        }
+    }
+}
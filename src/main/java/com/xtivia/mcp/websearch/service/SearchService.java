@@ -0,0 +1,367 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.provider.BraveProvider;
+import com.xtivia.mcp.websearch.provider.DuckDuckGoProvider;
+import com.xtivia.mcp.websearch.provider.SearchProvider;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs searches against the configured providers.
+ * 
+ * <p>Two modes are supported:
+ * <ul>
+ *   <li>fallback - DuckDuckGo first, Brave when DuckDuckGo fails or is suspended</li>
+ *   <li>fan-out - all selected providers in parallel, merged with reciprocal-rank fusion</li>
+ * </ul>
+ * 
+ * <p>A call that is cancelled or runs out of time is not counted as a provider
+ * failure: it neither suspends DuckDuckGo nor falls back to Brave. A search that
+ * fails because the {@link MemoryGovernor} budget is exhausted falls back to Brave
+ * (or leaves the other fan-out providers' results) without suspending DuckDuckGo.
+ * 
+ * <p>DuckDuckGo suspensions are kept in the {@link StateStore}, so with a shared
+ * store a replica that gets throttled takes every replica off DuckDuckGo.
+ * Providers report throttling (status codes, anomaly and challenge pages) as
+ * {@link RequestManager.ThrottledException}, so an anomaly page suspends
+ * DuckDuckGo and fails over to Brave rather than passing for an empty result.
+ * 
+ * <p>Searches that return no results, or fail on every provider in a way a retry
+ * would repeat, are remembered for a short time ({@link NegativeCache}); repeating
+ * one answers immediately instead of waiting for the rate limiter again.
+ */
+@Service
+public class SearchService {
+    
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+    
+    /**
+     * Rank constant for reciprocal-rank fusion (score = sum of 1 / (k + rank))
+     */
+    private static final int RRF_K = 60;
+    
+    private static final String NO_RESULTS = "No results";
+    
+    private static final String DUCKDUCKGO = "duckduckgo";
+    
+    private final DuckDuckGoProvider duckDuckGoProvider;
+    private final BraveProvider braveProvider;
+    private final List<SearchProvider> providers;
+    private final WebSearchProperties properties;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final NegativeCache negativeCache;
+    private final StateStore stateStore;
+    
+    public SearchService(DuckDuckGoProvider duckDuckGoProvider,
+                         BraveProvider braveProvider,
+                         List<SearchProvider> providers,
+                         WebSearchProperties properties,
+                         UrlCanonicalizer urlCanonicalizer,
+                         NegativeCache negativeCache,
+                         StateStore stateStore) {
+        this.duckDuckGoProvider = duckDuckGoProvider;
+        this.braveProvider = braveProvider;
+        this.providers = providers;
+        this.properties = properties;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.negativeCache = negativeCache;
+        this.stateStore = stateStore;
+    }
+    
+    /**
+     * Search DuckDuckGo, falling back to Brave when DuckDuckGo fails or is suspended.
+     */
+    public SearchResponse search(String query, String enhancedQuery, int maxResults, String dateFilter,
+                                 CallContext context) {
+        return search(query, enhancedQuery, maxResults, dateFilter, context, result -> {});
+    }
+    
+    /**
+     * Fallback search that hands each result to a listener as soon as the provider parses it.
+     * Results from a failed DuckDuckGo attempt are followed by {@link ResultListener#onFallback}
+     * and then Brave's results.
+     */
+    public SearchResponse search(String query, String enhancedQuery, int maxResults, String dateFilter,
+                                 CallContext context, ResultListener onResult) {
+        String searchKey = NegativeCache.searchKey(enhancedQuery, dateFilter, "fallback", null);
+        return withNegativeCache(searchKey, query, enhancedQuery,
+            () -> fallbackSearch(query, enhancedQuery, maxResults, dateFilter, context, onResult));
+    }
+    
+    private SearchResponse fallbackSearch(String query, String enhancedQuery, int maxResults, String dateFilter,
+                                          CallContext context, ResultListener onResult) {
+        String displayQuery = displayQuery(query, enhancedQuery);
+        
+        // Try DuckDuckGo first (unless suspended)
+        if (!isDuckDuckGoSuspended()) {
+            try {
+                SearchProvider.Results results = duckDuckGoProvider.search(enhancedQuery, maxResults, dateFilter,
+                    context, onResult);
+                
+                // Reset suspension count on successful DuckDuckGo search
+                resetSuspensionCount();
+                
+                return new SearchResponse(
+                    displayQuery,
+                    results.results().size(),
+                    duckDuckGoProvider.getName(),
+                    List.of(duckDuckGoProvider.getName()),
+                    results.results(),
+                    results.exhausted()
+                );
+                
+            } catch (CallContext.AbortedException aborted) {
+                throw aborted;
+            } catch (Exception ddgError) {
+                if (properties.isDebug()) {
+                    log.debug("DuckDuckGo {}, falling back to Brave: {}",
+                        ddgError instanceof RequestManager.ThrottledException ? "throttled" : "failed",
+                        ddgError.getMessage());
+                }
+                // Fall back to Brave; suspend DuckDuckGo unless the failure was our own memory pressure
+                if (!(ddgError instanceof MemoryGovernor.BudgetExhaustedException)) {
+                    suspendDuckDuckGo();
+                }
+                onResult.onFallback(duckDuckGoProvider.getName());
+                SearchProvider.Results results = braveProvider.search(enhancedQuery, maxResults, null, context, onResult);
+                
+                return new SearchResponse(
+                    displayQuery,
+                    results.results().size(),
+                    braveProvider.getName(),
+                    List.of(braveProvider.getName()),
+                    results.results(),
+                    results.exhausted()
+                );
+            }
+        }
+        
+        // DuckDuckGo is suspended, go straight to Brave
+        SearchProvider.Results results = braveProvider.search(enhancedQuery, maxResults, null, context, onResult);
+        
+        return new SearchResponse(
+            displayQuery,
+            results.results().size(),
+            "Brave (DDG suspended)",
+            List.of(braveProvider.getName()),
+            results.results(),
+            results.exhausted()
+        );
+    }
+    
+    /**
+     * Query the selected providers in parallel and merge their results with
+     * reciprocal-rank fusion, removing duplicates by canonical URL.
+     * 
+     * <p>Each provider waits on its own rate budget, so the call takes as long as
+     * the slowest provider rather than the sum of all of them.
+     * 
+     * @param providerNames Providers to query, or null/empty for all of them
+     */
+    public SearchResponse fanOut(String query, String enhancedQuery, int maxResults,
+                                 String dateFilter, List<String> providerNames, CallContext context) {
+        String searchKey = NegativeCache.searchKey(enhancedQuery, dateFilter, "fanout", providerNames);
+        return withNegativeCache(searchKey, query, enhancedQuery,
+            () -> fanOutSearch(query, enhancedQuery, maxResults, dateFilter, providerNames, context));
+    }
+    
+    private SearchResponse fanOutSearch(String query, String enhancedQuery, int maxResults,
+                                        String dateFilter, List<String> providerNames, CallContext context) {
+        List<SearchProvider> selected = selectProviders(providerNames);
+        
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("No search providers available for fan-out search");
+        }
+        
+        Map<SearchProvider, CompletableFuture<SearchProvider.Results>> pending = new LinkedHashMap<>();
+        for (SearchProvider provider : selected) {
+            // Brave does not support DuckDuckGo's date filter codes
+            String providerDateFilter = provider == duckDuckGoProvider ? dateFilter : null;
+            pending.put(provider, Mono.fromCallable(() -> provider.search(enhancedQuery, maxResults, providerDateFilter,
+                    context, result -> {}))
+                .subscribeOn(Schedulers.boundedElastic())
+                .toFuture());
+        }
+        
+        Map<String, List<SearchResult>> resultsByProvider = new LinkedHashMap<>();
+        // Stays true only if every selected provider answered and had no more results
+        boolean allExhausted = true;
+        Exception lastError = null;
+        
+        for (Map.Entry<SearchProvider, CompletableFuture<SearchProvider.Results>> entry : pending.entrySet()) {
+            SearchProvider provider = entry.getKey();
+            try {
+                SearchProvider.Results results = entry.getValue().join();
+                resultsByProvider.put(provider.getName(), results.results());
+                allExhausted &= results.exhausted();
+                
+                if (provider == duckDuckGoProvider) {
+                    resetSuspensionCount();
+                }
+            } catch (Exception e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof CallContext.AbortedException aborted) {
+                    pending.values().forEach(future -> future.cancel(true));
+                    throw aborted;
+                }
+                lastError = e;
+                allExhausted = false;
+                if (provider == duckDuckGoProvider && !(cause instanceof MemoryGovernor.BudgetExhaustedException)) {
+                    suspendDuckDuckGo();
+                }
+                if (properties.isDebug()) {
+                    log.debug("Fan-out provider {} failed: {}", provider.getName(), e.getMessage());
+                }
+            }
+        }
+        
+        if (resultsByProvider.isEmpty()) {
+            throw new RuntimeException("All providers failed: " + lastError.getMessage(), lastError);
+        }
+        
+        List<SearchResult> merged = fuseResults(resultsByProvider.values(), maxResults);
+        List<String> contributors = new ArrayList<>(resultsByProvider.keySet());
+        
+        return new SearchResponse(
+            displayQuery(query, enhancedQuery),
+            merged.size(),
+            String.join(" + ", contributors),
+            contributors,
+            merged,
+            // Below maxResults nothing was cut off in fusion
+            allExhausted && merged.size() < maxResults
+        );
+    }
+    
+    /**
+     * Answer from the negative cache when the same search failed or came back
+     * empty recently; otherwise run it and remember such an outcome.
+     */
+    private SearchResponse withNegativeCache(String searchKey, String query, String enhancedQuery,
+                                             Supplier<SearchResponse> search) {
+        NegativeCache.Failure knownFailure = negativeCache.checkSearch(searchKey);
+        if (knownFailure != null) {
+            if (properties.isDebug()) {
+                log.debug("Search answered from negative cache: {}", knownFailure.describe());
+            }
+            if (NO_RESULTS.equals(knownFailure.reason())) {
+                return new SearchResponse(displayQuery(query, enhancedQuery), 0,
+                    "None (" + knownFailure.describe() + ")", List.of(), List.of());
+            }
+            throw new NegativeCache.KnownFailureException(knownFailure);
+        }
+        
+        SearchResponse response;
+        try {
+            response = search.get();
+        } catch (CallContext.AbortedException aborted) {
+            throw aborted;
+        } catch (IllegalArgumentException invalid) {
+            throw invalid;
+        } catch (RuntimeException e) {
+            // Only failures a retry would repeat; throttling and timeouts pass
+            negativeCache.recordSearchFailure(searchKey, e);
+            throw e;
+        }
+        
+        if (response.totalResults() == 0) {
+            negativeCache.recordSearchFailure(searchKey, NO_RESULTS);
+        }
+        return response;
+    }
+    
+    private List<SearchProvider> selectProviders(List<String> providerNames) {
+        boolean ddgSuspended = isDuckDuckGoSuspended();
+        
+        return providers.stream()
+            .filter(provider -> providerNames == null || providerNames.isEmpty()
+                || providerNames.stream().anyMatch(name -> name.equalsIgnoreCase(provider.getName())))
+            .filter(provider -> !(ddgSuspended && provider == duckDuckGoProvider))
+            .toList();
+    }
+    
+    /**
+     * Reciprocal-rank fusion: every result scores 1 / (k + rank) per list it appears in.
+     */
+    private List<SearchResult> fuseResults(Iterable<List<SearchResult>> rankedLists, int maxResults) {
+        Map<String, FusedResult> fused = new LinkedHashMap<>();
+        
+        for (List<SearchResult> ranked : rankedLists) {
+            for (int rank = 0; rank < ranked.size(); rank++) {
+                SearchResult result = ranked.get(rank);
+                double score = 1.0 / (RRF_K + rank + 1);
+                
+                fused.merge(urlCanonicalizer.identityKey(result.url()), new FusedResult(result, score, rank),
+                    (existing, added) -> new FusedResult(
+                        // Keep the copy the providers ranked highest
+                        added.bestRank() < existing.bestRank() ? added.result() : existing.result(),
+                        existing.score() + added.score(),
+                        Math.min(existing.bestRank(), added.bestRank())));
+            }
+        }
+        
+        return fused.values().stream()
+            .sorted(Comparator.comparingDouble(FusedResult::score).reversed())
+            .limit(maxResults)
+            .map(FusedResult::result)
+            .toList();
+    }
+    
+    private String displayQuery(String query, String enhancedQuery) {
+        return enhancedQuery.equals(query) ? 
+            query : query + " (enhanced: " + enhancedQuery + ")";
+    }
+    
+    private boolean isDuckDuckGoSuspended() {
+        return stateStore.suspendedFor(DUCKDUCKGO) > 0;
+    }
+    
+    private void resetSuspensionCount() {
+        stateStore.resetSuspensions(DUCKDUCKGO);
+    }
+    
+    private void suspendDuckDuckGo() {
+        // Exponential backoff: 20 minutes, 40 minutes, 80 minutes, max 120 minutes
+        long suspensionDuration = stateStore.suspend(DUCKDUCKGO,
+            properties.getDuckduckgo().getSuspensionDurationMinutes() * 60000L,
+            properties.getDuckduckgo().getMaxSuspensionMultiplier());
+        
+        if (properties.isDebug()) {
+            log.debug("DuckDuckGo suspended for {} minutes", suspensionDuration / 60000);
+        }
+    }
+    
+    private record FusedResult(SearchResult result, double score, int bestRank) {}
+    
+    /**
+     * Receives the results of a fallback search as providers parse them
+     */
+    public interface ResultListener extends Consumer<SearchResult> {
+        
+        /**
+         * The provider whose results were passed so far failed; the results of
+         * the next provider follow and replace them
+         */
+        default void onFallback(String failedProvider) {
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Extraction of documents that are not HTML: plain text, Markdown and JSON.
+ *
+ * <p>Each is a single pass over the body without building a DOM. Paragraphs are
+ * kept apart by blank lines, Markdown headings are reported like HTML headings
+ * (so the section outline works the same) and JSON is flattened into one
+ * "path: value" line per scalar.
+ */
+final class TextExtractor {
+
+    private static final int MAX_TITLE_LENGTH = 150;
+
+    private static final Pattern ATX_HEADING = Pattern.compile("^ {0,3}(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(```|~~~).*");
+    private static final Pattern THEMATIC_BREAK = Pattern.compile("^ {0,3}([-*_])(\\s*\\1){2,}\\s*$");
+    private static final Pattern LIST_ITEM = Pattern.compile("^\\s*(?:[-*+]|\\d{1,9}[.)])\\s+(.*)$");
+    private static final Pattern FRONT_MATTER_TITLE = Pattern.compile("^title:\\s*[\"']?(.*?)[\"']?\\s*$");
+    private static final Pattern IMAGE = Pattern.compile("!\\[([^\\]]*)\\]\\([^)]*\\)");
+    private static final Pattern LINK = Pattern.compile("\\[([^\\]]*)\\]\\([^)]*\\)");
+    private static final Pattern EMPHASIS = Pattern.compile("(\\*\\*|__|`)");
+
+    private static final Set<String> JSON_TITLE_FIELDS = Set.of("title", "name", "headline");
+
+    private TextExtractor() {
+    }
+
+    /**
+     * Plain text: hard-wrapped lines are joined into paragraphs
+     */
+    static ContentExtractor.Extraction text(String body, String url, int maxLength) {
+        Output output = new Output(maxLength);
+        String firstLine = null;
+
+        for (String line : body.split("\\R", -1)) {
+            if (output.isFull()) {
+                break;
+            }
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                output.paragraphBreak();
+                continue;
+            }
+            if (firstLine == null) {
+                firstLine = trimmed;
+            }
+            output.appendWords(trimmed);
+        }
+
+        String title = firstLine != null && firstLine.length() <= MAX_TITLE_LENGTH ? firstLine : fileName(url);
+        return output.extraction(title, "text");
+    }
+
+    /**
+     * Markdown: headings become the outline, inline markup is reduced to its text
+     */
+    static ContentExtractor.Extraction markdown(String body, String url, int maxLength) {
+        Output output = new Output(maxLength);
+        String[] lines = body.split("\\R", -1);
+        String title = null;
+        String firstTopHeading = null;
+        String firstHeading = null;
+        String firstLine = null;
+        boolean inCode = false;
+        int i = 0;
+
+        // YAML front matter
+        if (lines.length > 0 && lines[0].strip().equals("---")) {
+            for (int j = 1; j < lines.length; j++) {
+                if (lines[j].strip().equals("---")) {
+                    i = j + 1;
+                    break;
+                }
+                Matcher frontTitle = FRONT_MATTER_TITLE.matcher(lines[j].strip());
+                if (title == null && frontTitle.matches() && !frontTitle.group(1).isBlank()) {
+                    title = frontTitle.group(1);
+                }
+            }
+            if (i == 0) {
+                title = null;
+            }
+        }
+
+        for (; i < lines.length && !output.isFull(); i++) {
+            String line = lines[i];
+
+            if (FENCE.matcher(line).matches()) {
+                inCode = !inCode;
+                output.paragraphBreak();
+                continue;
+            }
+            if (inCode) {
+                output.appendLine(line.stripTrailing());
+                continue;
+            }
+
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || THEMATIC_BREAK.matcher(line).matches()) {
+                output.paragraphBreak();
+                continue;
+            }
+
+            Matcher heading = ATX_HEADING.matcher(line);
+            if (heading.matches()) {
+                String text = inline(heading.group(2));
+                int level = heading.group(1).length();
+                if (!text.isEmpty()) {
+                    if (firstHeading == null) {
+                        firstHeading = text;
+                    }
+                    if (level == 1 && firstTopHeading == null) {
+                        firstTopHeading = text;
+                    }
+                    output.heading(level, text);
+                }
+                continue;
+            }
+
+            Matcher item = LIST_ITEM.matcher(line);
+            if (item.matches()) {
+                output.lineBreak();
+                trimmed = item.group(1);
+            } else if (trimmed.startsWith(">")) {
+                trimmed = trimmed.replaceFirst("^>+\\s?", "");
+            }
+
+            String text = inline(trimmed);
+            if (firstLine == null && !text.isEmpty()) {
+                firstLine = text;
+            }
+            output.appendWords(text);
+        }
+
+        if (title == null) {
+            title = firstTopHeading != null ? firstTopHeading : firstHeading;
+        }
+        if (title == null) {
+            title = firstLine != null && firstLine.length() <= MAX_TITLE_LENGTH ? firstLine : fileName(url);
+        }
+        return output.extraction(title, "markdown");
+    }
+
+    /**
+     * JSON: one "path: value" line per scalar; the title is the first top-level
+     * title, name or headline. Invalid JSON is extracted as plain text.
+     */
+    static ContentExtractor.Extraction json(String body, String url, int maxLength, JsonFactory jsonFactory) {
+        Output output = new Output(maxLength);
+        String title = null;
+        Deque<String> path = new ArrayDeque<>();
+        String field = null;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token;
+            while (!output.isFull() && (token = parser.nextToken()) != null) {
+                switch (token) {
+                    case FIELD_NAME -> field = parser.currentName();
+                    case START_OBJECT, START_ARRAY -> {
+                        path.addLast(field != null ? field : "");
+                        field = null;
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        path.pollLast();
+                        field = null;
+                    }
+                    case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE -> {
+                        String value = parser.getText();
+                        if (title == null && token == JsonToken.VALUE_STRING && path.size() <= 2
+                                && field != null && JSON_TITLE_FIELDS.contains(field) && !value.isBlank()) {
+                            title = value.strip();
+                        }
+                        String label = label(path, field);
+                        output.lineBreak();
+                        output.appendWords(label.isEmpty() ? value : label + ": " + value);
+                        field = null;
+                    }
+                    default -> field = null;
+                }
+            }
+        } catch (IOException e) {
+            return text(body, url, maxLength);
+        }
+
+        if (title == null || title.length() > MAX_TITLE_LENGTH) {
+            title = fileName(url);
+        }
+        return output.extraction(title, "json");
+    }
+
+    private static String label(Deque<String> path, String field) {
+        StringBuilder label = new StringBuilder();
+        for (String name : path) {
+            if (!name.isEmpty()) {
+                label.append(label.length() > 0 ? "." : "").append(name);
+            }
+        }
+        if (field != null) {
+            label.append(label.length() > 0 ? "." : "").append(field);
+        }
+        return label.toString();
+    }
+
+    private static String inline(String text) {
+        String result = IMAGE.matcher(text).replaceAll("$1");
+        result = LINK.matcher(result).replaceAll("$1");
+        return EMPHASIS.matcher(result).replaceAll("").strip();
+    }
+
+    private static String fileName(String url) {
+        try {
+            String path = java.net.URI.create(url).getPath();
+            if (path != null) {
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (!name.isBlank()) {
+                    return name;
+                }
+            }
+        } catch (Exception e) {
+            // Fall through to the default title
+        }
+        return "Untitled Document";
+    }
+
+    /**
+     * Bounded text with whitespace collapsed inside paragraphs and the offsets of headings
+     */
+    private static final class Output {
+
+        private final StringBuilder text = new StringBuilder();
+        private final List<ContentExtractor.Heading> headings = new ArrayList<>();
+        private final int maxLength;
+        private String pendingBreak = "";
+
+        Output(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        boolean isFull() {
+            return text.length() >= maxLength;
+        }
+
+        void paragraphBreak() {
+            if (text.length() > 0) {
+                pendingBreak = "\n\n";
+            }
+        }
+
+        void lineBreak() {
+            if (text.length() > 0 && pendingBreak.isEmpty()) {
+                pendingBreak = "\n";
+            }
+        }
+
+        void heading(int level, String heading) {
+            paragraphBreak();
+            flushBreak();
+            if (!isFull()) {
+                headings.add(new ContentExtractor.Heading(level, heading, text.length()));
+            }
+            append(heading);
+            paragraphBreak();
+        }
+
+        /**
+         * Append a line verbatim (code blocks)
+         */
+        void appendLine(String line) {
+            lineBreak();
+            flushBreak();
+            append(line);
+        }
+
+        /**
+         * Append text, separated from the previous text in the paragraph by a space
+         */
+        void appendWords(String words) {
+            if (words.isEmpty()) {
+                return;
+            }
+            if (pendingBreak.isEmpty() && text.length() > 0) {
+                pendingBreak = " ";
+            }
+            flushBreak();
+            append(words.replaceAll("\\s+", " "));
+        }
+
+        private void flushBreak() {
+            if (!pendingBreak.isEmpty() && text.length() > 0) {
+                append(pendingBreak);
+            }
+            pendingBreak = "";
+        }
+
+        private void append(String value) {
+            int room = maxLength - text.length();
+            if (room > 0) {
+                text.append(value, 0, Math.min(room, value.length()));
+            }
+        }
+
+        ContentExtractor.Extraction extraction(String title, String selector) {
+            return new ContentExtractor.Extraction(title, text.toString().strip(), selector, Set.of(),
+                List.copyOf(headings));
+        }
+    }
+}
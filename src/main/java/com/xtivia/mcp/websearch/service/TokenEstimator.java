@@ -0,0 +1,63 @@
+package com.xtivia.mcp.websearch.service;
+
+/**
+ * Fast approximate token count of text returned to LLM clients.
+ *
+ * <p>Follows the way byte-pair-encoding tokenizers split text, without their
+ * vocabularies: a word of up to six letters, together with the space before it,
+ * is one token and longer words take another token per six letters; digits go in
+ * groups of three; every punctuation character and every run of line breaks or
+ * indentation is a token of its own; ideographs and other characters without
+ * spaces between words count one token each. One pass, no allocation.
+ */
+final class TokenEstimator {
+
+    private static final int LETTERS_PER_TOKEN = 6;
+    private static final int DIGITS_PER_TOKEN = 3;
+
+    private TokenEstimator() {
+    }
+
+    static int estimate(CharSequence text) {
+        int tokens = 0;
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (c == ' ') {
+                // A single space belongs to the following word; longer runs are indentation
+                int start = i;
+                while (i < length && text.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i - start > 1 || i == length) {
+                    tokens++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                tokens++;
+            } else if (c < 0x3000 && Character.isLetter(c)) {
+                int start = i;
+                while (i < length && text.charAt(i) < 0x3000 && Character.isLetter(text.charAt(i))) {
+                    i++;
+                }
+                tokens += 1 + (i - start - 1) / LETTERS_PER_TOKEN;
+            } else if (c >= '0' && c <= '9') {
+                int start = i;
+                while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    i++;
+                }
+                tokens += 1 + (i - start - 1) / DIGITS_PER_TOKEN;
+            } else {
+                // Punctuation, symbols, ideographs; a surrogate pair is one character
+                tokens++;
+                i += Character.isHighSurrogate(c) && i + 1 < length ? 2 : 1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,186 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+/**
+ * Normalizes URLs returned by search providers and passed to content fetching.
+ * 
+ * <p>Canonicalization:
+ * <ul>
+ *   <li>Unwraps DuckDuckGo redirect links (//duckduckgo.com/l/?uddg=...)</li>
+ *   <li>Lower-cases scheme and host, drops default ports and fragments</li>
+ *   <li>Upper-cases percent-encoding and gives empty paths a "/"</li>
+ *   <li>Removes configured tracking parameters (utm_*, gclid, ...)</li>
+ * </ul>
+ * 
+ * <p>URLs that cannot be parsed are returned trimmed but otherwise unchanged.
+ */
+@Component
+public class UrlCanonicalizer {
+    
+    private static final Pattern PERCENT_ENCODING = Pattern.compile("%[0-9a-fA-F]{2}");
+    
+    private final WebSearchProperties properties;
+    
+    public UrlCanonicalizer(WebSearchProperties properties) {
+        this.properties = properties;
+    }
+    
+    /**
+     * Return the canonical form of a URL
+     */
+    public String canonicalize(String url) {
+        if (url == null || url.isBlank()) {
+            return url;
+        }
+        
+        String candidate = url.trim();
+        
+        // Protocol-relative and site-relative links as emitted by the DuckDuckGo HTML endpoint
+        if (candidate.startsWith("//")) {
+            candidate = "https:" + candidate;
+        } else if (candidate.startsWith("/l/?")) {
+            candidate = "https://duckduckgo.com" + candidate;
+        }
+        
+        try {
+            URI uri = URI.create(candidate);
+            
+            String target = unwrapRedirect(uri);
+            if (target != null) {
+                return canonicalize(target);
+            }
+            
+            String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : null;
+            String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : null;
+            
+            if (scheme == null || host == null) {
+                return candidate;
+            }
+            
+            StringBuilder canonical = new StringBuilder(candidate.length());
+            canonical.append(scheme).append("://");
+            
+            if (uri.getRawUserInfo() != null) {
+                canonical.append(uri.getRawUserInfo()).append('@');
+            }
+            
+            canonical.append(host);
+            
+            int port = uri.getPort();
+            if (port != -1 && !isDefaultPort(scheme, port)) {
+                canonical.append(':').append(port);
+            }
+            
+            String path = uri.getRawPath();
+            canonical.append(path == null || path.isEmpty() ? "/" : normalizePercentEncoding(path));
+            
+            String query = stripTrackingParameters(uri.getRawQuery());
+            if (query != null && !query.isEmpty()) {
+                canonical.append('?').append(normalizePercentEncoding(query));
+            }
+            
+            // Fragments are never sent to the server, so they are dropped
+            return canonical.toString();
+            
+        } catch (Exception e) {
+            return candidate;
+        }
+    }
+    
+    /**
+     * Looser key for recognizing the same page across providers: the canonical
+     * URL without scheme, a leading "www." or a trailing slash.
+     */
+    public String identityKey(String url) {
+        String canonical = canonicalize(url);
+        if (canonical == null) {
+            return "";
+        }
+        return canonical
+            .replaceFirst("^[a-z][a-z0-9+.-]*://", "")
+            .replaceFirst("^www\\.", "")
+            .replaceFirst("/+(?=\\?|$)", "");
+    }
+    
+    /**
+     * Extract the destination of a DuckDuckGo redirect link, or null if the URL is not one
+     */
+    private String unwrapRedirect(URI uri) {
+        String host = uri.getHost();
+        if (host == null || !(host.equalsIgnoreCase("duckduckgo.com") || host.toLowerCase(Locale.ROOT).endsWith(".duckduckgo.com"))) {
+            return null;
+        }
+        if (uri.getRawPath() == null || !uri.getRawPath().startsWith("/l/") || uri.getRawQuery() == null) {
+            return null;
+        }
+        
+        for (String parameter : uri.getRawQuery().split("&")) {
+            if (parameter.startsWith("uddg=")) {
+                String target = URLDecoder.decode(parameter.substring(5), StandardCharsets.UTF_8);
+                return target.isEmpty() ? null : target;
+            }
+        }
+        return null;
+    }
+    
+    private String stripTrackingParameters(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return rawQuery;
+        }
+        
+        List<String> kept = new ArrayList<>();
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = URLDecoder.decode(equals >= 0 ? parameter.substring(0, equals) : parameter,
+                StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+            if (!isTrackingParameter(name)) {
+                kept.add(parameter);
+            }
+        }
+        return String.join("&", kept);
+    }
+    
+    private boolean isTrackingParameter(String name) {
+        for (String pattern : properties.getTrackingParameters()) {
+            String normalized = pattern.toLowerCase(Locale.ROOT);
+            if (normalized.endsWith("*")
+                    ? name.startsWith(normalized.substring(0, normalized.length() - 1))
+                    : name.equals(normalized)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isDefaultPort(String scheme, int port) {
+        return ("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443);
+    }
+    
+    private String normalizePercentEncoding(String value) {
+        if (value.indexOf('%') < 0) {
+            return value;
+        }
+        Matcher matcher = PERCENT_ENCODING.matcher(value);
+        StringBuilder normalized = new StringBuilder(value.length());
+        while (matcher.find()) {
+            matcher.appendReplacement(normalized, matcher.group().toUpperCase(Locale.ROOT));
+        }
+        matcher.appendTail(normalized);
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package com.xtivia.mcp.websearch.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.provider.BraveProvider;
+import com.xtivia.mcp.websearch.provider.DuckDuckGoProvider;
+import com.xtivia.mcp.websearch.provider.SearchProvider;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Startup warm-up, run before the server reports itself ready.
+ *
+ * <p>Opens pooled connections to every provider endpoint (DNS, TCP and TLS setup)
+ * and, while those are in flight, runs the DuckDuckGo and Brave result parsers
+ * and the content extractor over bundled HTML fixtures. Parsing repeats until the
+ * JIT compiler spends only a small share of each batch compiling (or the
+ * iteration/time limits are reached), so the first real request does not run in
+ * the interpreter. The compilation time is JVM-wide and background compilation of
+ * unrelated code never quite stops, so a quiet batch is one with little new
+ * compilation, not none.
+ *
+ * <p>Connections are opened with background request budget: a provider's
+ * preconnect takes a rate-limit slot like any request, and is skipped when the
+ * provider has no slot to spare.
+ *
+ * <p>Readiness is set to REFUSING_TRAFFIC while the warm-up runs and to
+ * ACCEPTING_TRAFFIC once it is done.
+ *
+ * <p>Only runs in HTTP mode. A stdio session is a short-lived process for one
+ * client that nobody probes for readiness; there the preconnects would only use
+ * up provider request budget and the parser runs would only delay the session.
+ */
+@Component
+@ConditionalOnWebApplication
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+
+    private static final String FIXTURE_DIR = "classpath:warmup/";
+    private static final String FIXTURE_ARTICLE_URL = "https://example.org/articles/tuning-java-services";
+
+    /**
+     * Iterations between two readings of the JIT compilation time
+     */
+    private static final int BATCH_SIZE = 10;
+
+    /**
+     * Share of a batch's duration the compiler may spend for the batch to count as quiet
+     */
+    private static final double QUIET_COMPILATION_SHARE = 0.05;
+
+    /**
+     * Consecutive quiet batches after which the parse paths count as compiled
+     */
+    private static final int STABLE_BATCHES = 3;
+
+    private final DuckDuckGoProvider duckDuckGoProvider;
+    private final BraveProvider braveProvider;
+    private final List<SearchProvider> providers;
+    private final ContentFetchService contentFetchService;
+    private final SearchResultEnricher searchResultEnricher;
+    private final PreferredSitesManager preferredSitesManager;
+    private final HttpTransport httpTransport;
+    private final RequestManager requestManager;
+    private final ResourceLoader resourceLoader;
+    private final ApplicationContext applicationContext;
+    private final WebSearchProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private volatile Report report;
+
+    public WarmupRunner(DuckDuckGoProvider duckDuckGoProvider,
+                        BraveProvider braveProvider,
+                        List<SearchProvider> providers,
+                        ContentFetchService contentFetchService,
+                        SearchResultEnricher searchResultEnricher,
+                        PreferredSitesManager preferredSitesManager,
+                        HttpTransport httpTransport,
+                        RequestManager requestManager,
+                        ResourceLoader resourceLoader,
+                        ApplicationContext applicationContext,
+                        WebSearchProperties properties,
+                        ObjectMapper objectMapper) {
+        this.duckDuckGoProvider = duckDuckGoProvider;
+        this.braveProvider = braveProvider;
+        this.providers = providers;
+        this.contentFetchService = contentFetchService;
+        this.searchResultEnricher = searchResultEnricher;
+        this.preferredSitesManager = preferredSitesManager;
+        this.httpTransport = httpTransport;
+        this.requestManager = requestManager;
+        this.resourceLoader = resourceLoader;
+        this.applicationContext = applicationContext;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        WebSearchProperties.WarmupProperties settings = properties.getWarmup();
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        AvailabilityChangeEvent.publish(applicationContext, ReadinessState.REFUSING_TRAFFIC);
+        long startTime = System.currentTimeMillis();
+
+        try (CallContext context = CallContext.withTimeout(Duration.ofSeconds(settings.getTimeoutSeconds()))) {
+            // Connection setup is network-bound, so it overlaps with the CPU-bound parsing below
+            Map<String, CompletableFuture<String>> connections = settings.isPreconnect() ?
+                preconnect(context) : Map.of();
+
+            int iterations = warmUpParsers(settings, context);
+
+            Map<String, String> connectionResults = new LinkedHashMap<>();
+            connections.forEach((endpoint, connection) -> connectionResults.put(endpoint, connection.join()));
+
+            report = new Report(iterations, connectionResults, System.currentTimeMillis() - startTime);
+            log.info("Warm-up finished in {} ms: {} parser iterations, connections {}",
+                report.elapsedMs(), iterations, connectionResults);
+
+        } catch (Exception e) {
+            // A failed warm-up only costs latency; never keep the server from starting
+            log.warn("Warm-up failed: {}", e.getMessage());
+        } finally {
+            AvailabilityChangeEvent.publish(applicationContext, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    /**
+     * Outcome of the last warm-up, or null if it has not run
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    private Map<String, CompletableFuture<String>> preconnect(CallContext context) {
+        Map<String, CompletableFuture<String>> connections = new LinkedHashMap<>();
+        // The HEAD request counts against the provider's budget, but must not delay real requests
+        CallContext budget = CallContext.background(Duration.ofMillis(context.remainingMillis()));
+        for (SearchProvider provider : providers) {
+            connections.put(provider.getName(), Mono.fromRunnable(
+                    () -> requestManager.waitForRequest(provider.getName(), budget))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(httpTransport.preconnect(provider.getEndpoint(), context))
+                .map(status -> "HTTP " + status)
+                .onErrorResume(CallContext.AbortedException.class, e -> Mono.just("skipped: " + e.getMessage()))
+                .onErrorResume(e -> Mono.just("failed: " + e.getMessage()))
+                .toFuture());
+        }
+        return connections;
+    }
+
+    /**
+     * Parse the fixtures until compilation settles
+     *
+     * @return Number of iterations run
+     */
+    private int warmUpParsers(WebSearchProperties.WarmupProperties settings, CallContext context) throws IOException {
+        String duckDuckGoHtml = readFixture("duckduckgo.html");
+        String braveHtml = readFixture("brave.html");
+        String articleHtml = readFixture("article.html");
+
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean canObserveCompiler = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        long lastCompilationTime = canObserveCompiler ? compiler.getTotalCompilationTime() : 0;
+        int stableBatches = 0;
+        int iterations = 0;
+
+        while (iterations < settings.getMaxIterations() && context.remainingMillis() > 0) {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                runOnce(duckDuckGoHtml, braveHtml, articleHtml);
+            }
+            iterations += BATCH_SIZE;
+
+            if (canObserveCompiler) {
+                long batchMillis = Math.max(1, (System.nanoTime() - batchStart) / 1_000_000);
+                long compilationTime = compiler.getTotalCompilationTime();
+                boolean quiet = compilationTime - lastCompilationTime <= batchMillis * QUIET_COMPILATION_SHARE;
+                stableBatches = quiet ? stableBatches + 1 : 0;
+                lastCompilationTime = compilationTime;
+            }
+
+            if (iterations >= settings.getMinIterations()
+                    && (!canObserveCompiler || stableBatches >= STABLE_BATCHES)) {
+                break;
+            }
+        }
+
+        if (properties.isDebug()) {
+            log.debug("Parser warm-up ran {} iterations (compiler {})", iterations,
+                canObserveCompiler ? "settled after " + stableBatches + " quiet batches" : "not observable");
+        }
+        return iterations;
+    }
+
+    private void runOnce(String duckDuckGoHtml, String braveHtml, String articleHtml) {
+        List<SearchResult> results = duckDuckGoProvider.parseResultsPage(duckDuckGoHtml, 10);
+        braveProvider.parseResultsPage(braveHtml, 10);
+        contentFetchService.parseContent(articleHtml, FIXTURE_ARTICLE_URL);
+
+        // Query enhancement, result enrichment and response serialization sit on the same request path
+        String enhancedQuery = preferredSitesManager.enhanceQuery("java spring performance");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(searchResultEnricher.enrich(
+                new SearchResponse(enhancedQuery, results.size(), duckDuckGoProvider.getName(),
+                    List.of(duckDuckGoProvider.getName()), results),
+                FieldSelection.ALL));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize warm-up response", e);
+        }
+    }
+
+    private String readFixture(String name) throws IOException {
+        try (InputStream input = resourceLoader.getResource(FIXTURE_DIR + name).getInputStream()) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param iterations Parser warm-up iterations that were run
+     * @param connections Outcome of the connection pre-establishment per provider
+     * @param elapsedMs Duration of the whole warm-up
+     */
+    public record Report(
+        int iterations,
+        Map<String, String> connections,
+        long elapsedMs
+    ) {}
+}
@@ -0,0 +1,163 @@
+package com.xtivia.mcp.websearch.state;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State kept in this process only. The default for a single server, and the
+ * fallback of {@link RedisStateStore} while Redis is unreachable.
+ */
+public class InMemoryStateStore implements StateStore {
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final Map<String, Suspension> suspensions = new ConcurrentHashMap<>();
+
+    private final int maxValues;
+    private final Map<String, Value> values;
+
+    private final AtomicLong operations = new AtomicLong();
+
+    /**
+     * @param maxValues Maximum cached values kept (least recently used evicted first)
+     */
+    public InMemoryStateStore(int maxValues) {
+        this.maxValues = maxValues;
+        this.values = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Value> eldest) {
+                return size() > InMemoryStateStore.this.maxValues;
+            }
+        };
+    }
+
+    @Override
+    public Reservation reserve(String budget, RateLimit limit, long maxWaitMillis) {
+        operations.incrementAndGet();
+        return budgets.computeIfAbsent(budget, name -> new Budget()).reserve(limit, maxWaitMillis);
+    }
+
+    @Override
+    public long suspend(String provider, long baseMillis, int maxMultiplier) {
+        operations.incrementAndGet();
+        return suspensions.computeIfAbsent(provider, name -> new Suspension()).suspend(baseMillis, maxMultiplier);
+    }
+
+    @Override
+    public long suspendedFor(String provider) {
+        operations.incrementAndGet();
+        Suspension suspension = suspensions.get(provider);
+        return suspension != null ? suspension.remaining() : 0;
+    }
+
+    @Override
+    public void resetSuspensions(String provider) {
+        operations.incrementAndGet();
+        Suspension suspension = suspensions.get(provider);
+        if (suspension != null) {
+            suspension.reset();
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        operations.incrementAndGet();
+        synchronized (values) {
+            Value value = values.get(key);
+            if (value == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= value.expiresAt()) {
+                values.remove(key);
+                return null;
+            }
+            return value.value();
+        }
+    }
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        operations.incrementAndGet();
+        synchronized (values) {
+            values.put(key, new Value(value, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats("memory", true, operations.get(), 0, 0);
+    }
+
+    private record Value(String value, long expiresAt) {}
+
+    /**
+     * Request spacing state of one budget
+     */
+    private static class Budget {
+
+        private long lastRequestTime = 0;
+        private final List<Long> requestTimes = new ArrayList<>();
+
+        /**
+         * Reserved slots may lie in the future, so concurrent callers queue up behind each other
+         */
+        synchronized Reservation reserve(RateLimit limit, long maxWaitMillis) {
+            long now = System.currentTimeMillis();
+
+            // Forget requests that left the window
+            long windowStart = now - limit.windowMillis();
+            requestTimes.removeIf(time -> time < windowStart);
+
+            // Ensure minimum delay between requests
+            long slot = Math.max(now, lastRequestTime + limit.minIntervalMillis());
+
+            // Wait for the oldest request in a full window to leave it
+            if (requestTimes.size() >= limit.maxRequests()) {
+                long oldest = requestTimes.get(requestTimes.size() - limit.maxRequests());
+                slot = Math.max(slot, oldest + limit.windowMillis() + 1000);
+            }
+
+            // Reject before taking the slot so the caller doesn't delay others for nothing
+            if (slot - now > maxWaitMillis) {
+                return new Reservation(false, slot - now);
+            }
+
+            lastRequestTime = slot;
+            requestTimes.add(slot);
+            return new Reservation(true, slot - now);
+        }
+    }
+
+    /**
+     * Suspension state of one provider
+     */
+    private static class Suspension {
+
+        private long suspendedUntil;
+        private int count;
+
+        synchronized long suspend(long baseMillis, int maxMultiplier) {
+            count++;
+            // Exponential backoff: base, 2x base, 4x base, ... up to maxMultiplier x base
+            long duration = baseMillis * Math.min((long) Math.pow(2, count - 1), maxMultiplier);
+            suspendedUntil = System.currentTimeMillis() + duration;
+            return duration;
+        }
+
+        synchronized long remaining() {
+            return Math.max(0, suspendedUntil - System.currentTimeMillis());
+        }
+
+        synchronized void reset() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.xtivia.mcp.websearch.state;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+/**
+ * State shared through a Redis server (or anything speaking its protocol, such
+ * as Valkey, KeyDB or a local stand-in).
+ *
+ * <p>Budgets and suspensions are updated by Lua scripts, so each operation is a
+ * single atomic round trip timed by the server's clock. Keys of one budget or
+ * suspension share a hash tag and work with Redis Cluster. Operations are few
+ * (a handful per search), so one connection is shared and commands are
+ * serialized on it.
+ *
+ * <p>When Redis cannot be reached or answers with an error, the operation is
+ * served from an {@link InMemoryStateStore} instead and Redis is not tried
+ * again for {@code retry-seconds}; searches keep working on local budgets and
+ * suspensions until it is back.
+ */
+public class RedisStateStore implements StateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisStateStore.class);
+
+    private static final String SERVER_TIME =
+        "local t = redis.call('TIME') " +
+        "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) ";
+
+    /**
+     * KEYS: last slot, slot set. ARGV: interval, max requests, window, max wait, slot id.
+     * Returns {granted, delay}.
+     */
+    private static final Script RESERVE = new Script(SERVER_TIME +
+        "local interval, max, window, maxWait = tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4]) " +
+        "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', '(' .. (now - window)) " +
+        "local slot = math.max(now, (tonumber(redis.call('GET', KEYS[1])) or 0) + interval) " +
+        "local count = redis.call('ZCARD', KEYS[2]) " +
+        "if count >= max then " +
+        "  local oldest = redis.call('ZRANGE', KEYS[2], count - max, count - max, 'WITHSCORES') " +
+        "  slot = math.max(slot, tonumber(oldest[2]) + window + 1000) " +
+        "end " +
+        "local delay = slot - now " +
+        "if delay > maxWait then return {0, delay} end " +
+        "redis.call('SET', KEYS[1], slot, 'PX', delay + interval + 1000) " +
+        "redis.call('ZADD', KEYS[2], slot, slot .. ':' .. ARGV[5]) " +
+        "redis.call('PEXPIRE', KEYS[2], delay + window + 1000) " +
+        "return {1, delay}");
+
+    /**
+     * KEYS: suspension hash. ARGV: base duration, max multiplier. Returns the duration.
+     */
+    private static final Script SUSPEND = new Script(SERVER_TIME +
+        "local count = redis.call('HINCRBY', KEYS[1], 'count', 1) " +
+        "local duration = tonumber(ARGV[1]) * math.min(2 ^ (count - 1), tonumber(ARGV[2])) " +
+        "redis.call('HSET', KEYS[1], 'until', now + duration) " +
+        "redis.call('PEXPIRE', KEYS[1], duration + 86400000) " +
+        "return duration");
+
+    /**
+     * KEYS: suspension hash. Returns the time left.
+     */
+    private static final Script SUSPENDED_FOR = new Script(
+        "local untilMs = tonumber(redis.call('HGET', KEYS[1], 'until')) " +
+        "if not untilMs then return 0 end " +
+        SERVER_TIME +
+        "return math.max(0, untilMs - now)");
+
+    private final WebSearchProperties.RedisProperties config;
+    private final String keyPrefix;
+    private final InMemoryStateStore fallback;
+
+    /**
+     * Distinguishes this replica's entries in the shared slot sets
+     */
+    private final String replicaId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong slotIds = new AtomicLong();
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+    private volatile long unavailableUntil;
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong fallbackOperations = new AtomicLong();
+
+    public RedisStateStore(WebSearchProperties.StateStoreProperties properties) {
+        this.config = properties.getRedis();
+        this.keyPrefix = properties.getKeyPrefix();
+        this.fallback = new InMemoryStateStore(properties.getMaxLocalValues());
+    }
+
+    @Override
+    public Reservation reserve(String budget, RateLimit limit, long maxWaitMillis) {
+        String tag = keyPrefix + "{budget:" + budget + "}";
+        return call(() -> {
+            List<?> reply = (List<?>) eval(RESERVE, List.of(tag + ":last", tag + ":slots"),
+                String.valueOf(limit.minIntervalMillis()),
+                String.valueOf(limit.maxRequests()),
+                String.valueOf(limit.windowMillis()),
+                String.valueOf(Math.min(maxWaitMillis, Long.MAX_VALUE / 2)),
+                replicaId + "-" + slotIds.incrementAndGet());
+            return new Reservation((Long) reply.get(0) == 1, (Long) reply.get(1));
+        }, () -> fallback.reserve(budget, limit, maxWaitMillis));
+    }
+
+    @Override
+    public long suspend(String provider, long baseMillis, int maxMultiplier) {
+        return call(() -> (Long) eval(SUSPEND, List.of(suspensionKey(provider)),
+                String.valueOf(baseMillis), String.valueOf(maxMultiplier)),
+            () -> fallback.suspend(provider, baseMillis, maxMultiplier));
+    }
+
+    @Override
+    public long suspendedFor(String provider) {
+        return call(() -> (Long) eval(SUSPENDED_FOR, List.of(suspensionKey(provider))),
+            () -> fallback.suspendedFor(provider));
+    }
+
+    @Override
+    public void resetSuspensions(String provider) {
+        call(() -> execute("HDEL", suspensionKey(provider), "count"),
+            () -> {
+                fallback.resetSuspensions(provider);
+                return null;
+            });
+    }
+
+    @Override
+    public String get(String key) {
+        return call(() -> (String) execute("GET", keyPrefix + "cache:" + key), () -> fallback.get(key));
+    }
+
+    @Override
+    public void put(String key, String value, long ttlMillis) {
+        call(() -> execute("SET", keyPrefix + "cache:" + key, value, "PX", String.valueOf(Math.max(1, ttlMillis))),
+            () -> {
+                fallback.put(key, value, ttlMillis);
+                return null;
+            });
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public Stats getStats() {
+        return new Stats("redis", System.currentTimeMillis() >= unavailableUntil,
+            operations.get(), failures.get(), fallbackOperations.get());
+    }
+
+    @Override
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private String suspensionKey(String provider) {
+        return keyPrefix + "{suspension:" + provider + "}";
+    }
+
+    /**
+     * Run an operation against Redis, or against local state while Redis is unavailable
+     */
+    private <T> T call(RemoteOperation<T> remote, Supplier<T> local) {
+        if (System.currentTimeMillis() < unavailableUntil) {
+            fallbackOperations.incrementAndGet();
+            return local.get();
+        }
+
+        try {
+            T result = remote.run();
+            operations.incrementAndGet();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            boolean wasAvailable = System.currentTimeMillis() >= unavailableUntil;
+            unavailableUntil = System.currentTimeMillis() + config.getRetrySeconds() * 1000L;
+            if (wasAvailable) {
+                log.warn("State store {}:{} unavailable ({}); using local state for {} s",
+                    config.getHost(), config.getPort(), e.getMessage(), config.getRetrySeconds());
+            }
+            fallbackOperations.incrementAndGet();
+            return local.get();
+        }
+    }
+
+    /**
+     * Run a script by its digest, sending the source only if the server does not know it yet
+     */
+    private Object eval(Script script, List<String> keys, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("EVALSHA");
+        command.add(script.sha1());
+        command.add(String.valueOf(keys.size()));
+        command.addAll(keys);
+        command.addAll(List.of(args));
+
+        synchronized (this) {
+            Object reply = send(command);
+            if (reply instanceof RedisException error && error.getMessage().startsWith("NOSCRIPT")) {
+                command.set(0, "EVAL");
+                command.set(1, script.source());
+                reply = send(command);
+            }
+            if (reply instanceof RedisException error) {
+                throw error;
+            }
+            return reply;
+        }
+    }
+
+    private synchronized Object execute(String... command) throws IOException {
+        Object reply = send(List.of(command));
+        if (reply instanceof RedisException error) {
+            throw error;
+        }
+        return reply;
+    }
+
+    /**
+     * Send a command and read its reply; error replies are returned, not thrown
+     */
+    private Object send(List<String> command) throws IOException {
+        try {
+            connect();
+            writeCommand(out, command);
+            out.flush();
+            return readReply(in);
+        } catch (IOException | RuntimeException e) {
+            // The connection is out of step with the protocol; start over on a new one
+            disconnect();
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        if (socket != null) {
+            return;
+        }
+
+        Socket connection = new Socket();
+        try {
+            connection.connect(new InetSocketAddress(config.getHost(), config.getPort()), config.getConnectTimeoutMillis());
+            connection.setSoTimeout(config.getCommandTimeoutMillis());
+            connection.setTcpNoDelay(true);
+            socket = connection;
+            in = new BufferedInputStream(connection.getInputStream());
+            out = new BufferedOutputStream(connection.getOutputStream());
+
+            if (!config.getPassword().isEmpty()) {
+                handshake(config.getUsername().isEmpty() ?
+                    List.of("AUTH", config.getPassword()) :
+                    List.of("AUTH", config.getUsername(), config.getPassword()));
+            }
+            if (config.getDatabase() != 0) {
+                handshake(List.of("SELECT", String.valueOf(config.getDatabase())));
+            }
+            log.info("Connected to state store {}:{}", config.getHost(), config.getPort());
+        } catch (IOException | RedisException e) {
+            disconnect();
+            connection.close();
+            throw e;
+        }
+    }
+
+    private void handshake(List<String> command) throws IOException {
+        writeCommand(out, command);
+        out.flush();
+        if (readReply(in) instanceof RedisException error) {
+            throw error;
+        }
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    /**
+     * Encode a command as a RESP array of bulk strings
+     */
+    static void writeCommand(OutputStream out, List<String> command) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        buffer.write(('*' + String.valueOf(command.size()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String argument : command) {
+            byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+            buffer.write(('$' + String.valueOf(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            buffer.write(bytes);
+            buffer.write('\r');
+            buffer.write('\n');
+        }
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Decode one RESP reply: a String, Long, List, null, or a {@link RedisException} for errors
+     */
+    static Object readReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new EOFException("Connection closed by server");
+        }
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new RedisException(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length < length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("Truncated bulk reply");
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(readReply(in));
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unexpected reply type '" + (char) type + "'");
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException("Connection closed by server");
+            }
+            line.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed reply line");
+        }
+        return line.toString();
+    }
+
+    @FunctionalInterface
+    private interface RemoteOperation<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * A Lua script with its SHA-1 digest for EVALSHA
+     */
+    private record Script(String source, String sha1) {
+
+        Script(String source) {
+            this(source, sha1(source));
+        }
+
+        private static String sha1(String source) {
+            try {
+                return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * An error reply from the server
+     */
+    static class RedisException extends RuntimeException {
+
+        RedisException(String message) {
+            super(message);
+        }
+    }
+}
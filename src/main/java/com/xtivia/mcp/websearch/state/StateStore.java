@@ -0,0 +1,94 @@
+package com.xtivia.mcp.websearch.state;
+
+/**
+ * State that replicas of the server behind one egress IP have to share: the
+ * request budgets of the search providers, provider suspensions and cached
+ * search responses.
+ *
+ * <p>Every operation is atomic within the store, so concurrent replicas never
+ * hand out the same request slot or lose a suspension. Times are measured by
+ * the store (for a shared store, its server clock), so replicas with skewed
+ * clocks still agree. Implementations are selected with
+ * {@code websearch.state-store.type}.
+ */
+public interface StateStore extends AutoCloseable {
+
+    /**
+     * Reserve the earliest request slot a budget allows. The slot is only
+     * taken when it is no further away than {@code maxWaitMillis}.
+     *
+     * @param budget Name of the budget (one per provider)
+     * @return the delay until the slot, and whether it was taken
+     */
+    Reservation reserve(String budget, RateLimit limit, long maxWaitMillis);
+
+    /**
+     * Suspend a provider. Consecutive suspensions without a {@link #resetSuspensions}
+     * in between double the duration, up to {@code maxMultiplier} times the base.
+     *
+     * @return how long the provider is suspended for, in milliseconds
+     */
+    long suspend(String provider, long baseMillis, int maxMultiplier);
+
+    /**
+     * Time left on a provider's suspension in milliseconds, or 0 when it is not suspended
+     */
+    long suspendedFor(String provider);
+
+    /**
+     * Forget a provider's consecutive suspensions after it answered successfully
+     */
+    void resetSuspensions(String provider);
+
+    /**
+     * Cached value, or null when absent or expired
+     */
+    String get(String key);
+
+    void put(String key, String value, long ttlMillis);
+
+    /**
+     * Whether other replicas see this store's state
+     */
+    boolean isShared();
+
+    Stats getStats();
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Limits of a request budget
+     *
+     * @param minIntervalMillis Minimum time between two requests
+     * @param maxRequests Maximum requests within one window
+     * @param windowMillis Length of the sliding window
+     */
+    record RateLimit(long minIntervalMillis, int maxRequests, long windowMillis) {}
+
+    /**
+     * Outcome of {@link #reserve}
+     *
+     * @param granted Whether the slot was taken (false when it lies beyond the allowed wait)
+     * @param delayMillis Time until the slot
+     */
+    record Reservation(boolean granted, long delayMillis) {}
+
+    /**
+     * State store metrics
+     *
+     * @param type Configured implementation
+     * @param available Whether the store is currently reachable (always true for local state)
+     * @param operations Operations served by the store
+     * @param failures Operations that failed because the store was unreachable or returned an error
+     * @param fallbackOperations Operations served from local state while the store was unavailable
+     */
+    record Stats(
+        String type,
+        boolean available,
+        long operations,
+        long failures,
+        long fallbackOperations
+    ) {}
+}
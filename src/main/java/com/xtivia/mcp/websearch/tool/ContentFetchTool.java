@@ -1,5 +1,6 @@
 package com.xtivia.mcp.websearch.tool;
 
+import java.util.List;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -7,12 +8,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.xtivia.mcp.websearch.config.WebSearchProperties;
 import com.xtivia.mcp.websearch.model.FetchResult;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.CallTracker;
 import com.xtivia.mcp.websearch.service.ContentFetchService;
+import com.xtivia.mcp.websearch.service.FieldSelection;
+import com.xtivia.mcp.websearch.service.ResponseFitter;
 
 /**
  * MCP tool for fetching and extracting web page content.
+ * 
+ * <p>With {@code maxTokens} the result is trimmed to the caller's token budget
+ * ({@link ResponseFitter}); trimmed content continues at {@code paging.nextOffset}.
  */
 @Component
 public class ContentFetchTool implements Function<ContentFetchTool.FetchRequest, String> {
@@ -20,20 +29,35 @@ public class ContentFetchTool implements Function<ContentFetchTool.FetchRequest,
     private static final Logger log = LoggerFactory.getLogger(ContentFetchTool.class);
     
     private final ContentFetchService contentFetchService;
+    private final CallTracker callTracker;
+    private final ResponseFitter responseFitter;
     private final WebSearchProperties properties;
     private final ObjectMapper objectMapper;
     
     public ContentFetchTool(ContentFetchService contentFetchService,
+                           CallTracker callTracker,
+                           ResponseFitter responseFitter,
                            WebSearchProperties properties,
                            ObjectMapper objectMapper) {
         this.contentFetchService = contentFetchService;
+        this.callTracker = callTracker;
+        this.responseFitter = responseFitter;
         this.properties = properties;
         this.objectMapper = objectMapper;
     }
     
     @Override
     public String apply(FetchRequest request) {
-        try {
+        return apply(request, null);
+    }
+    
+    /**
+     * Fetch within the caller's cancellation scope
+     * 
+     * @param caller Cancelled when the client disconnects, or null
+     */
+    public String apply(FetchRequest request, CallContext caller) {
+        try (CallContext context = callTracker.start(caller, request.deadlineSeconds())) {
             String url = request.url();
             
             if (url == null || url.trim().isEmpty()) {
@@ -44,18 +68,36 @@ public class ContentFetchTool implements Function<ContentFetchTool.FetchRequest,
                 log.debug("Fetching content from: {}", url);
             }
             
-            FetchResult result = contentFetchService.fetchContent(url);
+            FieldSelection fields = FieldSelection.of(request.fields(), FieldSelection.FETCH_RESULT_FIELDS);
+            ContentFetchService.Slice slice = request.offset() != null || request.length() != null || request.section() != null ?
+                new ContentFetchService.Slice(request.offset(), request.length(), request.section()) : null;
+            
+            FetchResult result = contentFetchService.fetchContent(url, slice, fields, context);
+            
+            ObjectNode json = objectMapper.valueToTree(result);
+            fields.project(json);
             
-            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
+            return responseFitter.fitFetchResult(json, request.maxTokens());
             
         } catch (Exception e) {
             log.error("Fetch failed: {}", e.getMessage(), e);
-            return "{\"error\": \"Fetch failed: " + e.getMessage() + "\"}";
+            // Messages may quote user input (e.g. an unknown section id), so let Jackson escape them
+            return objectMapper.createObjectNode().put("error", "Fetch failed: " + e.getMessage()).toString();
         }
     }
     
     /**
      * Fetch request record
+     * 
+     * @param deadlineSeconds Time budget for the fetch (default from configuration)
+     * @param offset Character offset to read from, e.g. a previous result's paging.nextOffset
+     * @param length Maximum number of characters to return
+     * @param section Section id from a previous result's paging.sections
+     * @param fields Result fields to return (default: all); with only url, title and
+     *               metadata the page's content is not extracted at all
+     * @param maxTokens Token budget for the result; content, summary, keywords and the
+     *                  section outline are trimmed to fit (default: no budget)
      */
-    public record FetchRequest(String url) {}
+    public record FetchRequest(String url, Integer deadlineSeconds, Integer offset, Integer length, String section,
+                               List<String> fields, Integer maxTokens) {}
 }
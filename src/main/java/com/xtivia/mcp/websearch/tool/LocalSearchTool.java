@@ -0,0 +1,79 @@
+package com.xtivia.mcp.websearch.tool;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.index.LocalIndex;
+import com.xtivia.mcp.websearch.model.LocalSearchResponse;
+
+/**
+ * MCP tool searching the pages this server has already fetched.
+ * 
+ * <p>Answers from the local index only: no upstream requests and no rate-limit waits.
+ */
+@Component
+public class LocalSearchTool implements Function<LocalSearchTool.LocalSearchRequest, String> {
+    
+    private static final Logger log = LoggerFactory.getLogger(LocalSearchTool.class);
+    
+    private final LocalIndex localIndex;
+    private final WebSearchProperties properties;
+    private final ObjectMapper objectMapper;
+    
+    public LocalSearchTool(LocalIndex localIndex,
+                           WebSearchProperties properties,
+                           ObjectMapper objectMapper) {
+        this.localIndex = localIndex;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+    
+    @Override
+    public String apply(LocalSearchRequest request) {
+        try {
+            String query = request.query();
+            int maxResults = request.maxResults() != null ? request.maxResults() : properties.getSearchResultsCount();
+            
+            if (query == null || query.trim().isEmpty()) {
+                throw new IllegalArgumentException("Query parameter is required and cannot be empty");
+            }
+            
+            if (maxResults < 1 || maxResults > 50) {
+                throw new IllegalArgumentException("maxResults must be between 1 and 50");
+            }
+            
+            long startTime = System.nanoTime();
+            List<LocalSearchResponse.Hit> hits = localIndex.search(query, maxResults);
+            double elapsedMs = (System.nanoTime() - startTime) / 1_000_000.0;
+            
+            if (properties.isDebug()) {
+                log.debug("Local search \"{}\": {} hits in {} ms", query, hits.size(), elapsedMs);
+            }
+            
+            LocalSearchResponse response = new LocalSearchResponse(
+                query,
+                hits.size(),
+                localIndex.size(),
+                elapsedMs,
+                hits
+            );
+            
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response);
+            
+        } catch (Exception e) {
+            log.error("Local search failed: {}", e.getMessage(), e);
+            return objectMapper.createObjectNode().put("error", "Local search failed: " + e.getMessage()).toString();
+        }
+    }
+    
+    /**
+     * Local search request record
+     */
+    public record LocalSearchRequest(String query, Integer maxResults) {}
+}
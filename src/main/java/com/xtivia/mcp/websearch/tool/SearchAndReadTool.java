@@ -0,0 +1,204 @@
+package com.xtivia.mcp.websearch.tool;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.FetchResult;
+import com.xtivia.mcp.websearch.model.SearchAndReadResponse;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.CallTracker;
+import com.xtivia.mcp.websearch.service.ContentFetchService;
+import com.xtivia.mcp.websearch.service.FieldSelection;
+import com.xtivia.mcp.websearch.service.PreferredSitesManager;
+import com.xtivia.mcp.websearch.service.SearchResultEnricher;
+import com.xtivia.mcp.websearch.service.SearchService;
+import com.xtivia.mcp.websearch.service.UrlCanonicalizer;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * MCP tool that searches and reads the top results in one call.
+ * 
+ * <p>Fetching starts as soon as the provider parses each of the top results,
+ * so page downloads overlap with the rest of the search. Fetches are limited
+ * per host by the {@link com.xtivia.mcp.websearch.service.FetchScheduler} and
+ * the whole call is bounded by a deadline; results that are not read in time
+ * are returned without content.
+ */
+@Component
+public class SearchAndReadTool implements Function<SearchAndReadTool.SearchAndReadRequest, String> {
+    
+    private static final Logger log = LoggerFactory.getLogger(SearchAndReadTool.class);
+    
+    private final SearchService searchService;
+    private final SearchResultEnricher searchResultEnricher;
+    private final ContentFetchService contentFetchService;
+    private final PreferredSitesManager preferredSitesManager;
+    private final UrlCanonicalizer urlCanonicalizer;
+    private final CallTracker callTracker;
+    private final WebSearchProperties properties;
+    private final ObjectMapper objectMapper;
+    
+    public SearchAndReadTool(SearchService searchService,
+                             SearchResultEnricher searchResultEnricher,
+                             ContentFetchService contentFetchService,
+                             PreferredSitesManager preferredSitesManager,
+                             UrlCanonicalizer urlCanonicalizer,
+                             CallTracker callTracker,
+                             WebSearchProperties properties,
+                             ObjectMapper objectMapper) {
+        this.searchService = searchService;
+        this.searchResultEnricher = searchResultEnricher;
+        this.contentFetchService = contentFetchService;
+        this.preferredSitesManager = preferredSitesManager;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.callTracker = callTracker;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+    
+    @Override
+    public String apply(SearchAndReadRequest request) {
+        return apply(request, null);
+    }
+    
+    /**
+     * Search and read within the caller's cancellation scope
+     * 
+     * @param caller Cancelled when the client disconnects, or null
+     */
+    public String apply(SearchAndReadRequest request, CallContext caller) {
+        WebSearchProperties.SearchAndReadProperties settings = properties.getSearchAndRead();
+        int deadlineSeconds = request.deadlineSeconds() != null ?
+            request.deadlineSeconds() : settings.getDeadlineSeconds();
+        
+        try (CallContext context = callTracker.start(caller, deadlineSeconds)) {
+            long startTime = System.currentTimeMillis();
+            
+            String query = request.query();
+            int readCount = request.readCount() != null ? request.readCount() : settings.getReadCount();
+            int maxResults = request.maxResults() != null ? request.maxResults() : Math.max(readCount, 5);
+            
+            if (query == null || query.trim().isEmpty()) {
+                throw new IllegalArgumentException("Query parameter is required and cannot be empty");
+            }
+            
+            if (maxResults > 50) {
+                throw new IllegalArgumentException("Maximum results cannot exceed 50");
+            }
+            
+            if (readCount < 1 || readCount > 10) {
+                throw new IllegalArgumentException("readCount must be between 1 and 10");
+            }
+            
+            String enhancedQuery = preferredSitesManager.enhanceQuery(query);
+            
+            // Start fetching each top result as soon as the provider hands it over
+            Map<String, CompletableFuture<FetchResult>> fetches = new LinkedHashMap<>();
+            Set<String> seen = new HashSet<>();
+            
+            SearchResponse searchResponse = searchService.search(query, enhancedQuery, maxResults,
+                request.dateFilter(), context, new SearchService.ResultListener() {
+                    @Override
+                    public void accept(SearchResult result) {
+                        if (fetches.size() < readCount && seen.add(urlCanonicalizer.identityKey(result.url()))) {
+                            fetches.put(result.url(), startFetch(result.url(), context));
+                        }
+                    }
+                    
+                    @Override
+                    public void onFallback(String failedProvider) {
+                        // The fallback provider's results replace these; read those instead
+                        fetches.values().forEach(fetch -> fetch.cancel(true));
+                        fetches.clear();
+                        seen.clear();
+                    }
+                });
+            searchResponse = searchResultEnricher.enrich(searchResponse, FieldSelection.ALL);
+            
+            List<SearchAndReadResponse.Hit> hits = new ArrayList<>();
+            int pagesRead = 0;
+            
+            for (SearchResult result : searchResponse.results()) {
+                CompletableFuture<FetchResult> fetch = fetches.remove(result.url());
+                if (fetch == null) {
+                    hits.add(new SearchAndReadResponse.Hit(result, null, null));
+                    continue;
+                }
+                
+                try {
+                    FetchResult content = fetch.get(context.remainingMillis(), TimeUnit.MILLISECONDS);
+                    hits.add(new SearchAndReadResponse.Hit(result, content, null));
+                    pagesRead++;
+                } catch (TimeoutException e) {
+                    fetch.cancel(true);
+                    hits.add(new SearchAndReadResponse.Hit(result, null, "Deadline exceeded before content was read"));
+                } catch (ExecutionException e) {
+                    String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    hits.add(new SearchAndReadResponse.Hit(result, null, message));
+                }
+            }
+            
+            // Fetches for results the final ranking does not include are no longer needed
+            fetches.values().forEach(fetch -> fetch.cancel(true));
+            
+            if (properties.isDebug()) {
+                log.debug("search_and_read read {} of {} results for \"{}\" in {} ms",
+                    pagesRead, hits.size(), query, System.currentTimeMillis() - startTime);
+            }
+            
+            SearchAndReadResponse response = new SearchAndReadResponse(
+                searchResponse.query(),
+                searchResponse.searchProvider(),
+                searchResponse.totalResults(),
+                pagesRead,
+                System.currentTimeMillis() - startTime,
+                hits
+            );
+            
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response);
+            
+        } catch (Exception e) {
+            log.error("Search and read failed: {}", e.getMessage(), e);
+            return objectMapper.createObjectNode().put("error", "Search and read failed: " + e.getMessage()).toString();
+        }
+    }
+    
+    private CompletableFuture<FetchResult> startFetch(String url, CallContext context) {
+        return Mono.fromCallable(() -> contentFetchService.fetchContent(url, context))
+            .subscribeOn(Schedulers.boundedElastic())
+            .toFuture();
+    }
+    
+    /**
+     * Search and read request record
+     * 
+     * @param readCount Number of top results to fetch (default from configuration)
+     * @param deadlineSeconds Overall time budget for search and fetches
+     */
+    public record SearchAndReadRequest(
+        String query,
+        Integer maxResults,
+        Integer readCount,
+        String dateFilter,
+        Integer deadlineSeconds
+    ) {}
+}
@@ -7,47 +7,82 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.xtivia.mcp.websearch.config.WebSearchProperties;
 import com.xtivia.mcp.websearch.model.SearchResponse;
 import com.xtivia.mcp.websearch.model.SearchResult;
-import com.xtivia.mcp.websearch.provider.BraveProvider;
-import com.xtivia.mcp.websearch.provider.DuckDuckGoProvider;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.CallTracker;
+import com.xtivia.mcp.websearch.service.FieldSelection;
 import com.xtivia.mcp.websearch.service.PreferredSitesManager;
+import com.xtivia.mcp.websearch.service.QueryRefresher;
+import com.xtivia.mcp.websearch.service.ResponseFitter;
+import com.xtivia.mcp.websearch.service.SearchResultCache;
+import com.xtivia.mcp.websearch.service.SearchResultEnricher;
+import com.xtivia.mcp.websearch.service.SearchService;
 
 /**
  * MCP tool for web search with DuckDuckGo and Brave fallback.
+ * 
+ * <p>Recent responses are reused, also for rephrasings of a query with (nearly)
+ * the same terms; those are flagged as approximate unless the caller asks for
+ * exact matches only.
+ * 
+ * <p>Keywords and summaries are derived only for the fields the caller selects,
+ * and only selected fields are returned. With {@code maxTokens} the response is
+ * trimmed to the caller's token budget ({@link ResponseFitter}).
+ * 
+ * <p>Every search is counted for the {@link QueryRefresher}, which keeps the
+ * responses of the most frequent ones from expiring.
  */
 @Component
 public class WebSearchTool implements Function<WebSearchTool.SearchRequest, String> {
     
     private static final Logger log = LoggerFactory.getLogger(WebSearchTool.class);
     
-    private final DuckDuckGoProvider duckDuckGoProvider;
-    private final BraveProvider braveProvider;
+    private final SearchService searchService;
     private final PreferredSitesManager preferredSitesManager;
+    private final CallTracker callTracker;
+    private final SearchResultCache searchResultCache;
+    private final SearchResultEnricher searchResultEnricher;
+    private final ResponseFitter responseFitter;
+    private final QueryRefresher queryRefresher;
     private final WebSearchProperties properties;
     private final ObjectMapper objectMapper;
     
-    // Suspension tracking for DuckDuckGo
-    private static long duckDuckGoSuspendedUntil = 0;
-    private static int suspensionCount = 0;
-    
-    public WebSearchTool(DuckDuckGoProvider duckDuckGoProvider,
-                        BraveProvider braveProvider,
+    public WebSearchTool(SearchService searchService,
                         PreferredSitesManager preferredSitesManager,
+                        CallTracker callTracker,
+                        SearchResultCache searchResultCache,
+                        SearchResultEnricher searchResultEnricher,
+                        ResponseFitter responseFitter,
+                        QueryRefresher queryRefresher,
                         WebSearchProperties properties,
                         ObjectMapper objectMapper) {
-        this.duckDuckGoProvider = duckDuckGoProvider;
-        this.braveProvider = braveProvider;
+        this.searchService = searchService;
         this.preferredSitesManager = preferredSitesManager;
+        this.callTracker = callTracker;
+        this.searchResultCache = searchResultCache;
+        this.searchResultEnricher = searchResultEnricher;
+        this.responseFitter = responseFitter;
+        this.queryRefresher = queryRefresher;
         this.properties = properties;
         this.objectMapper = objectMapper;
     }
     
     @Override
     public String apply(SearchRequest request) {
-        try {
+        return apply(request, null);
+    }
+    
+    /**
+     * Run a search within the caller's cancellation scope
+     * 
+     * @param caller Cancelled when the client disconnects, or null
+     */
+    public String apply(SearchRequest request, CallContext caller) {
+        try (CallContext context = callTracker.start(caller, request.deadlineSeconds())) {
             String query = request.query();
             int maxResults = request.maxResults() != null ? request.maxResults() : properties.getSearchResultsCount();
             String dateFilter = request.dateFilter();
@@ -60,105 +95,82 @@ public class WebSearchTool implements Function<WebSearchTool.SearchRequest, Stri
                 throw new IllegalArgumentException("Maximum results cannot exceed 50");
             }
             
+            String mode = request.mode() != null && !request.mode().isBlank() ? request.mode() : "fallback";
+            if (!"fallback".equalsIgnoreCase(mode) && !"fanout".equalsIgnoreCase(mode)) {
+                throw new IllegalArgumentException("Unknown mode '" + mode + "': use fallback or fanout");
+            }
+            boolean fanOut = "fanout".equalsIgnoreCase(mode);
+            
+            FieldSelection fields = FieldSelection.of(request.fields(), FieldSelection.SEARCH_RESULT_FIELDS);
+            
             // Enhance query with preferred sites
             String enhancedQuery = preferredSitesManager.enhanceQuery(query);
             
-            // Check if DuckDuckGo is currently suspended
-            long now = System.currentTimeMillis();
-            boolean isDuckDuckGoSuspended = now < duckDuckGoSuspendedUntil;
+            String cacheContext = SearchResultCache.context(fanOut ? "fanout" : "fallback", dateFilter,
+                fanOut ? request.providers() : null);
+            boolean allowApproximate = properties.getQueryCache().isApproximate()
+                && !Boolean.TRUE.equals(request.exactMatch());
+            queryRefresher.record(new QueryRefresher.Search(query, enhancedQuery, maxResults, dateFilter, fanOut,
+                fanOut ? request.providers() : null, cacheContext));
             
+            SearchResultCache.Match cached = searchResultCache.lookup(cacheContext, enhancedQuery, maxResults, allowApproximate);
             SearchResponse searchResponse;
-            
-            // Try DuckDuckGo first (unless suspended)
-            if (!isDuckDuckGoSuspended) {
-                try {
-                    List<SearchResult> results = duckDuckGoProvider.search(enhancedQuery, maxResults, dateFilter);
-                    
-                    // Check if DuckDuckGo results seem valid (not rate limited)
-                    if (results.isEmpty() && isLikelyRateLimited(enhancedQuery)) {
-                        suspendDuckDuckGo();
-                        throw new RuntimeException("DuckDuckGo rate limited");
-                    }
-                    
-                    String displayQuery = enhancedQuery.equals(query) ? 
-                        query : query + " (enhanced: " + enhancedQuery + ")";
-                    
-                    searchResponse = new SearchResponse(
-                        displayQuery,
-                        results.size(),
-                        "DuckDuckGo",
-                        results
-                    );
-                    
-                    // Reset suspension count on successful DuckDuckGo search
-                    if (suspensionCount > 0) {
-                        suspensionCount = 0;
-                    }
-                    
-                } catch (Exception ddgError) {
-                    // Suspend DuckDuckGo and fall back to Brave
-                    suspendDuckDuckGo();
-                    List<SearchResult> results = braveProvider.search(enhancedQuery, maxResults, null);
-                    
-                    String displayQuery = enhancedQuery.equals(query) ? 
-                        query : query + " (enhanced: " + enhancedQuery + ")";
-                    
-                    searchResponse = new SearchResponse(
-                        displayQuery,
-                        results.size(),
-                        "Brave",
-                        results
-                    );
-                }
+            if (cached != null) {
+                searchResponse = fromCache(query, cached, maxResults);
             } else {
-                // DuckDuckGo is suspended, go straight to Brave
-                List<SearchResult> results = braveProvider.search(enhancedQuery, maxResults, null);
-                
-                String displayQuery = enhancedQuery.equals(query) ? 
-                    query : query + " (enhanced: " + enhancedQuery + ")";
-                
-                searchResponse = new SearchResponse(
-                    displayQuery,
-                    results.size(),
-                    "Brave (DDG suspended)",
-                    results
-                );
+                searchResponse = fanOut ?
+                    searchService.fanOut(query, enhancedQuery, maxResults, dateFilter, request.providers(), context) :
+                    searchService.search(query, enhancedQuery, maxResults, dateFilter, context);
+                searchResultCache.store(cacheContext, enhancedQuery, maxResults, searchResponse);
             }
             
-            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(searchResponse);
+            searchResponse = searchResultEnricher.enrich(searchResponse, fields);
+            
+            ObjectNode json = objectMapper.valueToTree(searchResponse);
+            json.path("results").forEach(fields::project);
+            
+            return responseFitter.fitSearchResponse(json, request.maxTokens());
             
         } catch (Exception e) {
             log.error("Search failed: {}", e.getMessage(), e);
-            return "{\"error\": \"Search failed on all providers: " + e.getMessage() + "\"}";
+            return objectMapper.createObjectNode().put("error", "Search failed on all providers: " + e.getMessage()).toString();
         }
     }
     
-    private boolean isLikelyRateLimited(String query) {
-        // Don't suspend DuckDuckGo just because it returned 0 results
-        // Only suspend if we get an actual exception indicating rate limiting
-        // Let the catch block handle real failures
-        return false;
-    }
-    
-    private void suspendDuckDuckGo() {
-        long now = System.currentTimeMillis();
-        suspensionCount++;
-        
-        // Exponential backoff: 20 minutes, 40 minutes, 80 minutes, max 120 minutes
-        int backoffMultiplier = Math.min((int) Math.pow(2, suspensionCount - 1), 
-            properties.getDuckduckgo().getMaxSuspensionMultiplier());
-        long suspensionDuration = properties.getDuckduckgo().getSuspensionDurationMinutes() * 
-            60000L * backoffMultiplier;
+    private SearchResponse fromCache(String query, SearchResultCache.Match cached, int maxResults) {
+        SearchResponse response = cached.response();
+        List<SearchResult> results = response.results().size() > maxResults ?
+            response.results().subList(0, maxResults) : response.results();
+        boolean exhausted = response.exhausted() && results.size() == response.results().size();
         
-        duckDuckGoSuspendedUntil = now + suspensionDuration;
+        if (!cached.approximate()) {
+            return new SearchResponse(response.query(), results.size(), response.searchProvider(),
+                response.providers(), results, exhausted);
+        }
+        return new SearchResponse(query, results.size(), response.searchProvider(), response.providers(), results,
+            true, response.query(), cached.similarity(), exhausted);
     }
     
     /**
      * Search request record
+     * 
+     * @param mode "fallback" (default) or "fanout" to query providers in parallel
+     * @param providers Providers to query in fan-out mode (default: all)
+     * @param deadlineSeconds Time budget for the whole search (default from configuration)
+     * @param exactMatch Only reuse cached results of the same query, not of similar ones
+     * @param fields Result fields to return (title, url, keywords, summary; default: all)
+     * @param maxTokens Token budget for the response; summaries and the lowest-ranked
+     *                  results are trimmed to fit (default: no budget)
      */
     public record SearchRequest(
         String query,
         Integer maxResults,
-        String dateFilter
+        String dateFilter,
+        String mode,
+        List<String> providers,
+        Integer deadlineSeconds,
+        Boolean exactMatch,
+        List<String> fields,
+        Integer maxTokens
     ) {}
 }
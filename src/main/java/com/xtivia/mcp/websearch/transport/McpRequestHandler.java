@@ -0,0 +1,267 @@
+package com.xtivia.mcp.websearch.transport;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.tool.ContentFetchTool;
+import com.xtivia.mcp.websearch.tool.LocalSearchTool;
+import com.xtivia.mcp.websearch.tool.SearchAndReadTool;
+import com.xtivia.mcp.websearch.tool.WebSearchTool;
+
+/**
+ * Transport-independent handling of MCP JSON-RPC 2.0 messages, shared by the
+ * HTTP endpoint and the stdio transport.
+ */
+@Component
+public class McpRequestHandler {
+    
+    private static final Logger log = LoggerFactory.getLogger(McpRequestHandler.class);
+    
+    private final WebSearchTool webSearchTool;
+    private final ContentFetchTool contentFetchTool;
+    private final SearchAndReadTool searchAndReadTool;
+    private final LocalSearchTool localSearchTool;
+    private final ObjectMapper objectMapper;
+    
+    public McpRequestHandler(WebSearchTool webSearchTool,
+                             ContentFetchTool contentFetchTool,
+                             SearchAndReadTool searchAndReadTool,
+                             LocalSearchTool localSearchTool,
+                             ObjectMapper objectMapper) {
+        this.webSearchTool = webSearchTool;
+        this.contentFetchTool = contentFetchTool;
+        this.searchAndReadTool = searchAndReadTool;
+        this.localSearchTool = localSearchTool;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * Handle a raw JSON-RPC message
+     * 
+     * @return Response JSON, or null for notifications (which get no response)
+     */
+    public String handle(String message, CallContext exchange) {
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(message);
+        } catch (Exception e) {
+            return createErrorResponse(null, -32700, "Parse error: " + e.getMessage());
+        }
+        return handle(request, exchange);
+    }
+    
+    /**
+     * Handle a parsed JSON-RPC message
+     * 
+     * @param exchange Cancelled when the client goes away before the response is delivered
+     * @return Response JSON, or null for notifications (which get no response)
+     */
+    public String handle(JsonNode request, CallContext exchange) {
+        Object id = request.has("id") ? request.get("id") : null;
+        
+        try {
+            String method = request.get("method").asText();
+            
+            log.debug("MCP method: {}, id: {}", method, id);
+            
+            if (id == null && method.startsWith("notifications/")) {
+                return null;
+            }
+            
+            // Handle different MCP methods
+            return switch (method) {
+                case "tools/list" -> handleToolsList(id);
+                case "tools/call" -> handleToolsCall(request, id, exchange);
+                case "initialize" -> handleInitialize(request, id);
+                case "ping" -> objectMapper.writeValueAsString(Map.of(
+                    "jsonrpc", "2.0",
+                    "result", Map.of(),
+                    "id", id
+                ));
+                default -> createErrorResponse(id, -32601, "Method not found: " + method);
+            };
+            
+        } catch (Exception e) {
+            log.error("Error processing MCP request", e);
+            return createErrorResponse(id, -32603, "Internal error: " + e.getMessage());
+        }
+    }
+    
+    private String handleToolsList(Object id) throws Exception {
+        var tools = new Object[] {
+            Map.of(
+                "name", "web_search_tool",
+                "description", "Intelligent web search using DuckDuckGo with Brave Search fallback. " +
+                              "Supports query enhancement, rate limiting protection, and automatic fallback.",
+                "inputSchema", Map.of(
+                    "type", "object",
+                    "properties", Map.of(
+                        "query", Map.of("type", "string", "description", "Search query"),
+                        "maxResults", Map.of("type", "integer", "description", "Maximum results (1-50)", "default", 10),
+                        "dateFilter", Map.of("type", "string", "description", "Date filter (d=day, w=week, m=month, y=year)"),
+                        "mode", Map.of("type", "string", "enum", new String[] {"fallback", "fanout"},
+                                       "description", "fallback (default): DuckDuckGo then Brave; " +
+                                                      "fanout: query providers in parallel and merge results",
+                                       "default", "fallback"),
+                        "providers", Map.of("type", "array", "items", Map.of("type", "string"),
+                                            "description", "Providers for fanout mode (DuckDuckGo, Brave); default all"),
+                        "deadlineSeconds", Map.of("type", "integer", "description", "Overall time budget in seconds",
+                                                  "default", 60),
+                        "exactMatch", Map.of("type", "boolean", "description",
+                                             "Only reuse cached results of this exact query, not of similar rephrasings",
+                                             "default", false),
+                        "fields", Map.of("type", "array",
+                                         "items", Map.of("type", "string",
+                                                         "enum", new String[] {"title", "url", "keywords", "summary"}),
+                                         "description", "Result fields to return (default: all)"),
+                        "maxTokens", Map.of("type", "integer", "description",
+                                            "Token budget for the response; summaries and the lowest-ranked " +
+                                            "results are trimmed to fit. The response reports its size in tokens.")
+                    ),
+                    "required", new String[] {"query"}
+                )
+            ),
+            Map.of(
+                "name", "content_fetch_tool",
+                "description", "Fetch and extract content from a URL. Returns clean text content with metadata " +
+                              "and the page's section outline. Pass offset or section to read further into a " +
+                              "page fetched recently without downloading it again.",
+                "inputSchema", Map.of(
+                    "type", "object",
+                    "properties", Map.of(
+                        "url", Map.of("type", "string", "description", "URL to fetch content from"),
+                        "deadlineSeconds", Map.of("type", "integer", "description", "Overall time budget in seconds",
+                                                  "default", 60),
+                        "offset", Map.of("type", "integer", "description", "Character offset to read from " +
+                                         "(paging.nextOffset of the previous result)"),
+                        "length", Map.of("type", "integer", "description", "Maximum number of characters to return"),
+                        "section", Map.of("type", "string", "description", "Section id from paging.sections to read"),
+                        "fields", Map.of("type", "array",
+                                         "items", Map.of("type", "string",
+                                                         "enum", new String[] {"url", "title", "content", "summary",
+                                                                               "keywords", "metadata", "paging"}),
+                                         "description", "Fields to return (default: all); with only url, title " +
+                                                        "and metadata the page content is not extracted"),
+                        "maxTokens", Map.of("type", "integer", "description",
+                                            "Token budget for the result; content is trimmed to fit and continues " +
+                                            "at paging.nextOffset. The result reports its size in tokens.")
+                    ),
+                    "required", new String[] {"url"}
+                )
+            ),
+            Map.of(
+                "name", "search_and_read",
+                "description", "Search the web and fetch the content of the top results in one call. " +
+                              "Fetches start while the search is still being parsed.",
+                "inputSchema", Map.of(
+                    "type", "object",
+                    "properties", Map.of(
+                        "query", Map.of("type", "string", "description", "Search query"),
+                        "maxResults", Map.of("type", "integer", "description", "Maximum search results (1-50)", "default", 5),
+                        "readCount", Map.of("type", "integer", "description", "Number of top results to fetch (1-10)", "default", 3),
+                        "dateFilter", Map.of("type", "string", "description", "Date filter (d=day, w=week, m=month, y=year)"),
+                        "deadlineSeconds", Map.of("type", "integer", "description", "Overall time budget in seconds", "default", 30)
+                    ),
+                    "required", new String[] {"query"}
+                )
+            ),
+            Map.of(
+                "name", "local_search",
+                "description", "Search the pages this server has already fetched (full-text, BM25). " +
+                              "Answers in milliseconds without contacting any search provider.",
+                "inputSchema", Map.of(
+                    "type", "object",
+                    "properties", Map.of(
+                        "query", Map.of("type", "string", "description", "Search query"),
+                        "maxResults", Map.of("type", "integer", "description", "Maximum results (1-50)", "default", 10)
+                    ),
+                    "required", new String[] {"query"}
+                )
+            )
+        };
+        
+        return objectMapper.writeValueAsString(Map.of(
+            "jsonrpc", "2.0",
+            "result", Map.of("tools", tools),
+            "id", id
+        ));
+    }
+    
+    private String handleToolsCall(JsonNode request, Object id, CallContext exchange) throws Exception {
+        JsonNode params = request.get("params");
+        String toolName = params.get("name").asText();
+        JsonNode arguments = params.get("arguments");
+        
+        log.debug("Calling tool: {} with arguments: {}", toolName, arguments);
+        
+        String result = switch (toolName) {
+            case "web_search_tool" -> {
+                var searchRequest = objectMapper.treeToValue(arguments, WebSearchTool.SearchRequest.class);
+                yield webSearchTool.apply(searchRequest, exchange);
+            }
+            case "content_fetch_tool" -> {
+                var fetchRequest = objectMapper.treeToValue(arguments, ContentFetchTool.FetchRequest.class);
+                yield contentFetchTool.apply(fetchRequest, exchange);
+            }
+            case "search_and_read" -> {
+                var searchAndReadRequest = objectMapper.treeToValue(arguments, SearchAndReadTool.SearchAndReadRequest.class);
+                yield searchAndReadTool.apply(searchAndReadRequest, exchange);
+            }
+            case "local_search" -> {
+                var localSearchRequest = objectMapper.treeToValue(arguments, LocalSearchTool.LocalSearchRequest.class);
+                yield localSearchTool.apply(localSearchRequest);
+            }
+            default -> throw new IllegalArgumentException("Unknown tool: " + toolName);
+        };
+        
+        return objectMapper.writeValueAsString(Map.of(
+            "jsonrpc", "2.0",
+            "result", Map.of(
+                "content", new Object[] {
+                    Map.of("type", "text", "text", result)
+                }
+            ),
+            "id", id
+        ));
+    }
+    
+    private String handleInitialize(JsonNode request, Object id) throws Exception {
+        return objectMapper.writeValueAsString(Map.of(
+            "jsonrpc", "2.0",
+            "result", Map.of(
+                "protocolVersion", "2024-11-05",
+                "serverInfo", Map.of(
+                    "name", "mcp-websearch-server",
+                    "version", "1.0.0"
+                ),
+                "capabilities", Map.of(
+                    "tools", Map.of()
+                )
+            ),
+            "id", id
+        ));
+    }
+    
+    String createErrorResponse(Object id, int code, String message) {
+        try {
+            Map<String, Object> response = new java.util.HashMap<>();
+            response.put("jsonrpc", "2.0");
+            response.put("error", Map.of(
+                "code", code,
+                "message", message
+            ));
+            response.put("id", id); // Allow null id
+            
+            return objectMapper.writeValueAsString(response);
+        } catch (Exception e) {
+            log.error("Error creating error response", e);
+            return "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error\"},\"id\":null}";
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.xtivia.mcp.websearch.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.service.CallContext;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * MCP transport over stdin/stdout with newline-delimited JSON-RPC messages.
+ *
+ * <p>Requests are read continuously and handled concurrently, up to
+ * {@code websearch.stdio.max-in-flight} at a time. Responses are written in
+ * completion order (JSON-RPC ids let the client match them) by a single writer
+ * thread that batches whatever is ready before flushing.
+ *
+ * <p>Backpressure: when the client reads slowly, the writer blocks on stdout and
+ * the bounded response queue fills up. Finished calls then wait to enqueue while
+ * holding their in-flight slot, so the reader stops taking new requests from stdin
+ * until the client catches up. Once writing stdout has failed, responses are dropped
+ * instead of queued, so no call waits for a writer that is gone.
+ *
+ * <p>A {@code notifications/cancelled} message cancels the named request. When stdin
+ * is closed every request in flight is cancelled and the application exits.
+ */
+@Component
+@ConditionalOnProperty(prefix = "websearch.stdio", name = "enabled", havingValue = "true")
+public class StdioTransport implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(StdioTransport.class);
+
+    /**
+     * Queued after the last response to stop the writer
+     */
+    private static final String END_OF_OUTPUT = new String("<end of output>");
+
+    private static final long SHUTDOWN_GRACE_MS = 5000;
+
+    /**
+     * How often a call waiting for room in the response queue checks that the writer is still there
+     */
+    private static final long ENQUEUE_POLL_MS = 100;
+
+    private final McpRequestHandler requestHandler;
+    private final ObjectMapper objectMapper;
+    private final WebSearchProperties properties;
+    private final ApplicationContext applicationContext;
+
+    private final Map<String, CallContext> inFlight = new ConcurrentHashMap<>();
+
+    private Semaphore permits;
+    private BlockingQueue<String> outbox;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean outputClosed;
+
+    public StdioTransport(McpRequestHandler requestHandler,
+                          ObjectMapper objectMapper,
+                          WebSearchProperties properties,
+                          ApplicationContext applicationContext) {
+        this.requestHandler = requestHandler;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void start() {
+        OutputStream stdout = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024);
+        // stdout belongs to the protocol from now on; stray prints go to stderr
+        System.setOut(System.err);
+
+        start(new FileInputStream(FileDescriptor.in), stdout);
+    }
+
+    /**
+     * Serve the client connected to the given streams
+     */
+    void start(InputStream input, OutputStream output) {
+        WebSearchProperties.StdioProperties settings = properties.getStdio();
+        permits = new Semaphore(settings.getMaxInFlight());
+        outbox = new ArrayBlockingQueue<>(settings.getWriteQueueCapacity());
+
+        running = true;
+        writer = new Thread(() -> writeLoop(output), "mcp-stdio-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Non-daemon: keeps the JVM alive while the client is connected
+        new Thread(() -> readLoop(input), "mcp-stdio-reader").start();
+
+        log.info("stdio transport started (max {} requests in flight)", settings.getMaxInFlight());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        inFlight.values().forEach(context -> context.cancel("Server shutting down"));
+        outbox.offer(END_OF_OUTPUT);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void readLoop(InputStream input) {
+        try (BufferedReader stdin = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while (running && (line = stdin.readLine()) != null) {
+                if (!line.isBlank()) {
+                    dispatch(line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Reading stdin failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (running) {
+            onClientClosed();
+        }
+    }
+
+    private void dispatch(String line) throws InterruptedException {
+        JsonNode message;
+        try {
+            message = objectMapper.readTree(line);
+        } catch (Exception e) {
+            enqueue(requestHandler.handle(line, CallContext.unbounded()));
+            return;
+        }
+
+        if ("notifications/cancelled".equals(message.path("method").asText())) {
+            CallContext cancelled = inFlight.get(message.path("params").path("requestId").toString());
+            if (cancelled != null) {
+                cancelled.cancel("Cancelled by client");
+            }
+            return;
+        }
+
+        // Blocks while the in-flight limit is reached, which stops reading stdin
+        permits.acquire();
+
+        CallContext exchange = CallContext.unbounded();
+        String id = message.has("id") ? message.get("id").toString() : null;
+        if (id != null) {
+            inFlight.put(id, exchange);
+        }
+
+        Mono.fromRunnable(() -> {
+            try {
+                String response = requestHandler.handle(message, exchange);
+                // The client is not waiting for the response to a request it cancelled
+                if (response != null && !exchange.isCancelled()) {
+                    enqueue(response);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (id != null) {
+                    inFlight.remove(id, exchange);
+                }
+                permits.release();
+            }
+        }).subscribeOn(Schedulers.boundedElastic()).subscribe();
+    }
+
+    private void enqueue(String response) throws InterruptedException {
+        // One message per line: raw newlines can only be whitespace between JSON tokens
+        String frame = response.indexOf('\n') >= 0 || response.indexOf('\r') >= 0 ?
+            response.replace("\r", "").replace("\n", "") : response;
+        // Wait for room while the client reads slowly, but not once nobody writes any more
+        while (!outputClosed) {
+            if (outbox.offer(frame, ENQUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private void writeLoop(OutputStream stdout) {
+        try {
+            while (true) {
+                String message = outbox.take();
+                // Write everything that is ready, then flush once
+                while (message != null) {
+                    if (message == END_OF_OUTPUT) {
+                        stdout.flush();
+                        return;
+                    }
+                    stdout.write(message.getBytes(StandardCharsets.UTF_8));
+                    stdout.write('\n');
+                    message = outbox.poll();
+                }
+                stdout.flush();
+            }
+        } catch (IOException e) {
+            log.warn("Writing stdout failed: {}", e.getMessage());
+            outputClosed = true;
+            outbox.clear();
+            if (running) {
+                new Thread(this::onClientClosed, "mcp-stdio-shutdown").start();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            outputClosed = true;
+        }
+    }
+
+    /**
+     * The client closed the pipe: cancel outstanding work, flush what is left and exit.
+     */
+    private void onClientClosed() {
+        running = false;
+        if (!inFlight.isEmpty()) {
+            log.info("stdin closed, cancelling {} request(s) in flight", inFlight.size());
+        }
+        inFlight.values().forEach(context -> context.cancel("Client disconnected"));
+
+        try {
+            int maxInFlight = properties.getStdio().getMaxInFlight();
+            if (permits.tryAcquire(maxInFlight, SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                permits.release(maxInFlight);
+            }
+            outbox.offer(END_OF_OUTPUT, SHUTDOWN_GRACE_MS, TimeUnit.MILLISECONDS);
+            writer.join(SHUTDOWN_GRACE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        exit();
+    }
+
+    /**
+     * End the application; the client is gone
+     */
+    void exit() {
+        System.exit(SpringApplication.exit(applicationContext));
+    }
+}
@@ -0,0 +1,138 @@
+package com.xtivia.mcp.websearch.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.FetchResult;
+import com.xtivia.mcp.websearch.model.LocalSearchResponse;
+
+class LocalIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    @Test
+    void pagesAreRankedWithBm25() {
+        LocalIndex index = index();
+        index.add(page("https://example.org/jit", "JIT compilation",
+            "Hot methods are compiled. Garbage left behind by the compiler is small."));
+        index.add(page("https://example.org/gc", "Garbage collection tuning",
+            "Garbage collection pauses grow with the live set. Tune the collection of old garbage first."));
+        index.add(page("https://example.org/css", "Stylesheets", "Selectors and cascading rules for layouts."));
+
+        List<LocalSearchResponse.Hit> hits = index.search("garbage collection", 10);
+
+        assertEquals(List.of("https://example.org/gc", "https://example.org/jit"), urls(hits));
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+        assertTrue(hits.get(0).snippet().contains("Garbage collection"));
+    }
+
+    @Test
+    void replacedPageIsOnlyFoundByItsNewText() {
+        LocalIndex index = index();
+        index.add(page("https://example.org/a", "Release notes", "Version alpha removes the legacy client."));
+        index.add(page("https://example.org/a", "Release notes", "Version beta adds a streaming client."));
+
+        assertEquals(List.of(), urls(index.search("alpha", 10)));
+        assertEquals(List.of("https://example.org/a"), urls(index.search("beta", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void mergeDropsReplacedPages() throws IOException {
+        properties.getLocalIndex().setDirectory(directory.toString());
+        LocalIndex index = index();
+        index.add(page("https://example.org/a", "Release notes", "Version alpha removes the legacy client."));
+        index.add(page("https://example.org/b", "Upgrade guide", "Move the configuration before upgrading."));
+        index.add(page("https://example.org/a", "Release notes", "Version beta adds a streaming client."));
+
+        index.flush();
+
+        List<IndexedDocument> persisted = persistedDocuments();
+        assertEquals(2, persisted.size());
+        assertEquals(List.of("https://example.org/a", "https://example.org/b"),
+            persisted.stream().map(IndexedDocument::url).sorted().toList());
+        assertTrue(persisted.stream().noneMatch(document -> document.content().contains("alpha")));
+    }
+
+    @Test
+    void mergeDropsExpiredPages() throws IOException {
+        properties.getLocalIndex().setDirectory(directory.toString());
+        properties.getLocalIndex().setTtlHours(0);
+        LocalIndex index = index();
+        index.add(page("https://example.org/a", "Release notes", "Version beta adds a streaming client."));
+
+        assertEquals(List.of(), urls(index.search("beta", 10)));
+        index.flush();
+
+        assertEquals(List.of(), persistedDocuments());
+    }
+
+    @Test
+    void persistedPagesAreLoadedAgain() {
+        properties.getLocalIndex().setDirectory(directory.toString());
+        LocalIndex index = index();
+        index.add(page("https://example.org/a", "Release notes", "Version beta adds a streaming client."));
+        index.add(page("https://example.org/b", "Upgrade guide", "Move the configuration before upgrading."));
+        index.flush();
+
+        LocalIndex restarted = index();
+
+        assertEquals(2, restarted.size());
+        assertEquals(List.of("https://example.org/b"), urls(restarted.search("upgrading configuration", 10)));
+        assertEquals(1, restarted.getStats().persistedSegments());
+    }
+
+    @Test
+    void oldestSegmentsAreDroppedOverTheDiskLimit() throws IOException {
+        properties.getLocalIndex().setDirectory(directory.toString());
+        properties.getLocalIndex().setMaxDiskMegabytes(0);
+        LocalIndex index = index();
+        index.add(page("https://example.org/a", "Release notes", "Version beta adds a streaming client."));
+
+        index.flush();
+
+        assertEquals(0, index.size());
+        assertEquals(1, index.getStats().evicted());
+        assertEquals(List.of(), persistedDocuments());
+    }
+
+    private LocalIndex index() {
+        LocalIndex index = new LocalIndex(properties);
+        index.load();
+        return index;
+    }
+
+    private List<IndexedDocument> persistedDocuments() throws IOException {
+        List<IndexedDocument> documents = new ArrayList<>();
+        AtomicLong sequences = new AtomicLong();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(".idx")).toList()) {
+                documents.addAll(Segment.readFrom(file, 0, sequences::incrementAndGet).documents());
+            }
+        }
+        return documents;
+    }
+
+    private static FetchResult page(String url, String title, String content) {
+        return new FetchResult(url, title, content, null, List.of(), null);
+    }
+
+    private static List<String> urls(List<LocalSearchResponse.Hit> hits) {
+        return hits.stream().map(LocalSearchResponse.Hit::url).toList();
+    }
+}
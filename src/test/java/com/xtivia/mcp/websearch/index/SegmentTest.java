@@ -0,0 +1,96 @@
+package com.xtivia.mcp.websearch.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong sequences = new AtomicLong();
+
+    @Test
+    void writtenSegmentReadsBackTheSame() throws IOException {
+        Segment segment = Segment.merge(7, List.of(
+            page("https://example.org/gc", "Garbage collection", "Collection pauses grow with the heap."),
+            page("https://example.org/jit", "Compilation", "The JIT compiles hot methods; über-fast code.")),
+            document -> true);
+        Path file = directory.resolve("segment-000000000007.idx");
+
+        segment.writeTo(file);
+        Segment read = Segment.readFrom(file, 7, sequences::incrementAndGet);
+
+        assertEquals(file, read.file());
+        assertEquals(7, read.generation());
+        assertEquals(segment.size(), read.size());
+        assertEquals(segment.totalLength(), read.totalLength());
+        for (int i = 0; i < segment.size(); i++) {
+            IndexedDocument written = segment.document(i);
+            IndexedDocument loaded = read.document(i);
+            assertEquals(written.url(), loaded.url());
+            assertEquals(written.title(), loaded.title());
+            assertEquals(written.content(), loaded.content());
+            assertNull(loaded.summary());
+            assertEquals(written.indexedAt(), loaded.indexedAt());
+            assertEquals(written.length(), loaded.length());
+        }
+        for (String term : List.of("garbage", "collection", "pause", "jit", "über")) {
+            assertArrayEquals(segment.postings(term).documents(), read.postings(term).documents());
+            assertArrayEquals(segment.postings(term).frequencies(), read.postings(term).frequencies());
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void fileOfAnotherFormatIsRejected() throws IOException {
+        Path file = directory.resolve("segment-000000000001.idx");
+        Files.write(file, "not a segment".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> Segment.readFrom(file, 1, sequences::incrementAndGet));
+    }
+
+    @Test
+    void titleTermsOutweighBodyTerms() {
+        Segment segment = page("https://example.org/gc", "Garbage", "garbage");
+
+        assertArrayEquals(new int[] {Segment.TITLE_WEIGHT + 1}, segment.postings("garbage").frequencies());
+        assertEquals(Segment.TITLE_WEIGHT + 1, segment.totalLength());
+    }
+
+    @Test
+    void mergeDropsDocumentsThatAreNotKeptAndRenumbersPostings() {
+        Segment first = page("https://example.org/a", "Heap sizing", "Shared notes on the heap.");
+        Segment replaced = page("https://example.org/b", "Old version", "Outdated shared text.");
+        Segment last = page("https://example.org/c", "Thread pools", "Shared pools of threads.");
+
+        Segment merged = Segment.merge(4, List.of(first, replaced, last),
+            document -> !document.url().endsWith("/b"));
+
+        assertEquals(2, merged.size());
+        assertEquals("https://example.org/a", merged.document(0).url());
+        assertEquals("https://example.org/c", merged.document(1).url());
+        assertArrayEquals(new int[] {0, 1}, merged.postings("shared").documents());
+        assertNull(merged.postings("outdated"));
+        assertEquals(first.totalLength() + last.totalLength(), merged.totalLength());
+    }
+
+    private Segment page(String url, String title, String content) {
+        return Segment.of(1, sequences.incrementAndGet(), url, title, null, content, 1_700_000_000_000L);
+    }
+}
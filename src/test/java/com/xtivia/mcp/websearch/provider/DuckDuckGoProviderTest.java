@@ -0,0 +1,237 @@
+package com.xtivia.mcp.websearch.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.service.AdaptiveRateLimiter;
+import com.xtivia.mcp.websearch.service.CallContext;
+import com.xtivia.mcp.websearch.service.ClientScheduler;
+import com.xtivia.mcp.websearch.service.HttpTransport;
+import com.xtivia.mcp.websearch.service.MemoryGovernor;
+import com.xtivia.mcp.websearch.service.RequestManager;
+import com.xtivia.mcp.websearch.service.UrlCanonicalizer;
+import com.xtivia.mcp.websearch.state.InMemoryStateStore;
+
+import io.netty.handler.codec.http.HttpMethod;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Runs the provider against a local server that stands in for DuckDuckGo's HTML endpoint
+ */
+class DuckDuckGoProviderTest {
+
+    private static final int RESULTS_PER_PAGE = 10;
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    /**
+     * Requests the stub server answered
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Pages the stub server answers with an error
+     */
+    private final Set<Integer> failingPages = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Part of every result URL, so results of later requests can be told apart
+     */
+    private volatile String generation = "first";
+
+    private DisposableServer server;
+
+    @BeforeEach
+    void setUp() {
+        // No spacing between requests, so tests only wait for the request jitter
+        properties.getAdaptiveRate().setBurstIntervalMillis(0);
+        properties.getAdaptiveRate().setInitialRequestsPerMinute(60);
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        server = HttpServer.create()
+            .host(host)
+            .port(0)
+            .handle((request, response) -> {
+                Mono<Integer> page = HttpMethod.POST.equals(request.method())
+                    ? request.receive().aggregate().asString().map(DuckDuckGoProviderTest::pageOf)
+                    : Mono.just(0);
+                return page.flatMap(number -> {
+                    requests.incrementAndGet();
+                    if (failingPages.contains(number)) {
+                        return response.status(500).send();
+                    }
+                    return response.header("Content-Type", "text/html; charset=UTF-8")
+                        .sendString(Mono.just(resultsPage(number, 3)))
+                        .then();
+                });
+            })
+            .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void repeatedSearchIsServedFromThePageCache() {
+        DuckDuckGoProvider provider = provider();
+
+        provider.search("spring webflux", 5, null, context(), result -> { });
+        generation = "second";
+        List<SearchResult> repeated = provider.search("spring webflux", 5, null, context(), result -> { }).results();
+
+        assertEquals(1, requests.get());
+        assertEquals("https://example.org/first/0", repeated.get(0).url());
+    }
+
+    @Test
+    void refreshReachesDuckDuckGoDespiteThePageCache() {
+        DuckDuckGoProvider provider = provider();
+        provider.search("spring webflux", 5, null, context(), result -> { });
+        generation = "second";
+
+        List<SearchResult> refreshed;
+        try (CallContext refresh = CallContext.refresh(Duration.ofSeconds(10))) {
+            refreshed = provider.search("spring webflux", 5, null, refresh, result -> { }).results();
+        }
+        List<SearchResult> repeated = provider.search("spring webflux", 5, null, context(), result -> { }).results();
+
+        assertEquals(2, requests.get());
+        assertEquals("https://example.org/second/0", refreshed.get(0).url());
+        // The refreshed pages replaced the cached ones
+        assertEquals("https://example.org/second/0", repeated.get(0).url());
+    }
+
+    @Test
+    void resultsAreExhaustedOnlyAfterTheLastPage() {
+        DuckDuckGoProvider provider = provider();
+
+        SearchProvider.Results firstPages = provider.search("spring webflux", 15, null, context(), result -> { });
+        SearchProvider.Results allPages = provider.search("spring webflux", 40, null, context(), result -> { });
+
+        assertEquals(15, firstPages.results().size());
+        assertFalse(firstPages.exhausted());
+        assertEquals(30, allPages.results().size());
+        assertTrue(allPages.exhausted());
+        // The second call continued after the two cached pages
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void resultsCutShortByAFailedPageAreNotExhaustedAndResumeThere() {
+        DuckDuckGoProvider provider = provider();
+        failingPages.add(1);
+
+        SearchProvider.Results partial = provider.search("spring webflux", 25, null, context(), result -> { });
+        failingPages.clear();
+        SearchProvider.Results resumed = provider.search("spring webflux", 25, null, context(), result -> { });
+
+        assertEquals(10, partial.results().size());
+        assertFalse(partial.exhausted());
+        assertEquals(25, resumed.results().size());
+        assertEquals("https://example.org/first/24", resumed.results().get(24).url());
+        // First page, failed second page, then the second and third page without the first again
+        assertEquals(4, requests.get());
+    }
+
+    private DuckDuckGoProvider provider() {
+        ClientScheduler clientScheduler = new ClientScheduler(properties);
+        RequestManager requestManager = new RequestManager(new InMemoryStateStore(100),
+            new AdaptiveRateLimiter(properties, new ObjectMapper()), clientScheduler);
+        return new DuckDuckGoProvider(new LocalTransport(), requestManager, properties,
+            new UrlCanonicalizer(properties));
+    }
+
+    private static CallContext context() {
+        return CallContext.withTimeout(Duration.ofSeconds(10));
+    }
+
+    /**
+     * Page number of a "Next" form submission
+     */
+    private static int pageOf(String form) {
+        for (String field : form.split("&")) {
+            if (field.startsWith("page=")) {
+                return Integer.parseInt(field.substring("page=".length()));
+            }
+        }
+        throw new IllegalArgumentException("No page in form " + form);
+    }
+
+    /**
+     * A results page in DuckDuckGo's HTML layout, with a "Next" form unless it is the last page
+     *
+     * @param number Zero-based page number
+     * @param pages Number of pages the query has
+     */
+    private String resultsPage(int number, int pages) {
+        StringBuilder html = new StringBuilder("<html><body><div id=\"links\" class=\"results\">");
+        for (int i = number * RESULTS_PER_PAGE; i < (number + 1) * RESULTS_PER_PAGE; i++) {
+            html.append("<div class=\"result\"><h2 class=\"result__title\"><a class=\"result__a\" href=\"")
+                .append("https://example.org/").append(generation).append('/').append(i)
+                .append("\">Result ").append(i).append("</a></h2>")
+                .append("<a class=\"result__snippet\">Snippet of result ").append(i).append("</a></div>");
+        }
+        html.append("</div>");
+        if (number + 1 < pages) {
+            html.append("<div class=\"nav-link\"><form action=\"/html/\" method=\"post\">")
+                .append("<input type=\"submit\" class=\"btn\" value=\"Next\">")
+                .append("<input type=\"hidden\" name=\"q\" value=\"spring webflux\">")
+                .append("<input type=\"hidden\" name=\"page\" value=\"").append(number + 1).append("\">")
+                .append("</form></div>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    /**
+     * Sends DuckDuckGo's requests to the stub server
+     */
+    private class LocalTransport extends HttpTransport {
+
+        LocalTransport() {
+            super(WebClient.builder(), properties, new MemoryGovernor(properties));
+        }
+
+        @Override
+        public Mono<Response> getDocument(String url, CallContext context, Consumer<HttpHeaders> headers,
+                                          BodyInspector inspector) {
+            return super.getDocument(local(url), context, headers, inspector);
+        }
+
+        @Override
+        public Mono<Response> postFormDocument(String url, Map<String, String> form, CallContext context,
+                                               Consumer<HttpHeaders> headers, BodyInspector inspector) {
+            return super.postFormDocument(local(url), form, context, headers, inspector);
+        }
+
+        private String local(String url) {
+            URI uri = URI.create(url);
+            return "http://" + server.host() + ":" + server.port() + uri.getRawPath()
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        }
+    }
+}
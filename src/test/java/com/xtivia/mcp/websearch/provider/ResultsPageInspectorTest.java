@@ -0,0 +1,62 @@
+package com.xtivia.mcp.websearch.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import com.xtivia.mcp.websearch.service.RequestManager;
+
+class ResultsPageInspectorTest {
+
+    private final ResultsPageInspector inspector = new ResultsPageInspector("DuckDuckGo",
+        Set.of(202), List.of("anomaly-modal", "challenge-form"));
+
+    @Test
+    void challengeStatusIsRejectedBeforeTheBody() {
+        RequestManager.ThrottledException throttled = assertThrows(RequestManager.ThrottledException.class,
+            () -> inspector.reject(202, new HttpHeaders(), "text/html", null));
+
+        assertEquals("DuckDuckGo", throttled.getProvider());
+        assertEquals("HTTP 202", throttled.getReason());
+    }
+
+    @Test
+    void mitigationHeaderIsRejectedBeforeTheBody() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("cf-mitigated", "Challenge");
+
+        RequestManager.ThrottledException throttled = assertThrows(RequestManager.ThrottledException.class,
+            () -> inspector.reject(200, headers, "text/html", null));
+
+        assertEquals("bot challenge (cf-mitigated)", throttled.getReason());
+    }
+
+    @Test
+    void challengeMarkerInTheBodyIsRejectedWhateverItsCase() {
+        byte[] prefix = "<html><body><div class=\"Anomaly-Modal\">Unfortunately, bots use DuckDuckGo too."
+            .getBytes(StandardCharsets.UTF_8);
+
+        RequestManager.ThrottledException throttled = assertThrows(RequestManager.ThrottledException.class,
+            () -> inspector.reject(200, new HttpHeaders(), "text/html", prefix));
+
+        assertEquals("challenge page (anomaly-modal)", throttled.getReason());
+    }
+
+    @Test
+    void resultsPageIsAccepted() {
+        byte[] prefix = "<html><body><div class=\"result\"><a class=\"result__a\" href=\"https://example.org\">"
+            .getBytes(StandardCharsets.UTF_8);
+
+        assertNull(inspector.reject(200, new HttpHeaders(), "text/html", null));
+        assertNull(inspector.reject(200, new HttpHeaders(), "text/html", prefix));
+        // The status is only judged before the body arrives
+        assertNull(inspector.reject(202, new HttpHeaders(), "text/html", prefix));
+    }
+}
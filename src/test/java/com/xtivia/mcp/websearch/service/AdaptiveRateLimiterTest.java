@@ -0,0 +1,112 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.state.StateStore;
+
+class AdaptiveRateLimiterTest {
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(properties, new ObjectMapper());
+
+    @Test
+    void rateGrowsByOneStepAfterEnoughSuccesses() {
+        for (int i = 0; i < 4; i++) {
+            limiter.recordSuccess("Brave", 100);
+        }
+        assertEquals(10, rateOf("brave"));
+
+        limiter.recordSuccess("Brave", 100);
+
+        assertEquals(11, rateOf("brave"));
+        StateStore.RateLimit limit = limiter.limitFor("Brave");
+        // Spacing shrinks with the rate: 2000 ms at 10 per minute
+        assertEquals(1818, limit.minIntervalMillis());
+        assertEquals(11, limit.maxRequests());
+    }
+
+    @Test
+    void rateStaysBelowTheCeiling() {
+        properties.getAdaptiveRate().setMaxRequestsPerMinute(12);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.recordSuccess("Brave", 100);
+        }
+
+        assertEquals(12, rateOf("brave"));
+    }
+
+    @Test
+    void burstOfThrottlesLowersTheRateOnce() {
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+
+        assertEquals(5, rateOf("duckduckgo"));
+        assertEquals(3, limiter.getStats().get("duckduckgo").throttles());
+        assertEquals(4000, limiter.limitFor("DuckDuckGo").minIntervalMillis());
+    }
+
+    @Test
+    void rateDropsAgainAfterTheCooldownDownToTheFloor() throws InterruptedException {
+        properties.getAdaptiveRate().setDecreaseCooldownSeconds(1);
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+
+        Thread.sleep(1100);
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+        assertEquals(2.5, rateOf("duckduckgo"));
+
+        Thread.sleep(1100);
+        limiter.recordThrottled("DuckDuckGo", "HTTP 429");
+        assertEquals(2, rateOf("duckduckgo"));
+    }
+
+    @Test
+    void throttleRestartsTheSuccessStreak() {
+        properties.getAdaptiveRate().setDecreaseCooldownSeconds(0);
+        for (int i = 0; i < 4; i++) {
+            limiter.recordSuccess("Brave", 100);
+        }
+        limiter.recordThrottled("Brave", "HTTP 503");
+
+        for (int i = 0; i < 4; i++) {
+            limiter.recordSuccess("Brave", 100);
+        }
+
+        assertEquals(5, rateOf("brave"));
+    }
+
+    @Test
+    void latencySpikeLowersTheRate() {
+        // Enough samples for an average, and one increase to 11 per minute
+        for (int i = 0; i < 5; i++) {
+            limiter.recordSuccess("Brave", 100);
+        }
+
+        // Slow relative to the average, but under the one second any response may take
+        limiter.recordSuccess("Brave", 900);
+        assertEquals(11, rateOf("brave"));
+        limiter.recordSuccess("Brave", 5000);
+
+        assertEquals(5.5, rateOf("brave"));
+        assertEquals(1, limiter.getStats().get("brave").latencySpikes());
+    }
+
+    @Test
+    void disabledLimiterKeepsTheInitialRate() {
+        properties.getAdaptiveRate().setEnabled(false);
+
+        limiter.recordThrottled("Brave", "HTTP 429");
+
+        assertEquals(10, limiter.limitFor("Brave").maxRequests());
+        assertEquals(2000, limiter.limitFor("Brave").minIntervalMillis());
+    }
+
+    private double rateOf(String provider) {
+        return limiter.getStats().get(provider).requestsPerMinute();
+    }
+}
@@ -0,0 +1,131 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+
+class CallContextTest {
+
+    @Test
+    void deadlinePassesAfterTheBudget() throws InterruptedException {
+        CallContext context = CallContext.withTimeout(Duration.ofMillis(100));
+        assertTrue(context.remainingMillis() > 0 && context.remainingMillis() <= 100);
+        context.checkActive();
+
+        Thread.sleep(150);
+
+        assertEquals(0, context.remainingMillis());
+        CallContext.AbortedException aborted = assertThrows(CallContext.AbortedException.class, context::checkActive);
+        assertEquals("Deadline exceeded", aborted.getMessage());
+    }
+
+    @Test
+    void hugeBudgetMeansNoDeadline() {
+        CallContext context = CallContext.withTimeout(Duration.ofNanos(Long.MAX_VALUE));
+
+        context.checkActive();
+        assertEquals(CallContext.unbounded().remaining(), context.remaining());
+    }
+
+    @Test
+    void stepLongerThanTheRemainingBudgetIsNotStarted() {
+        CallContext context = CallContext.withTimeout(Duration.ofSeconds(1));
+
+        CallContext.AbortedException aborted = assertThrows(CallContext.AbortedException.class,
+            () -> context.sleep(5000, "rate-limit wait"));
+
+        assertTrue(aborted.getMessage().startsWith("Deadline too close for rate-limit wait (needs 5000 ms"),
+            aborted.getMessage());
+        context.ensureBudget(10, "short step");
+    }
+
+    @Test
+    void sleepEndsWhenTheCallIsCancelled() {
+        CallContext context = CallContext.withTimeout(Duration.ofSeconds(30));
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            context.cancel("Client disconnected");
+        }).start();
+
+        long start = System.nanoTime();
+        CallContext.AbortedException aborted = assertThrows(CallContext.AbortedException.class,
+            () -> context.sleep(10_000, "fetch spacing"));
+
+        assertEquals("Client disconnected", aborted.getMessage());
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+    }
+
+    @Test
+    void childKeepsTheTighterDeadlineAndEndsWithItsParent() {
+        CallContext parent = CallContext.refresh(Duration.ofMillis(500));
+
+        CallContext child = parent.child(Duration.ofSeconds(30));
+        CallContext tighter = parent.child(Duration.ofMillis(50));
+
+        assertTrue(child.remainingMillis() <= 500);
+        assertTrue(tighter.remainingMillis() <= 50);
+        assertTrue(child.isBackground());
+        assertTrue(child.isRefresh());
+        assertEquals(CallContext.BACKGROUND_CLIENT, child.getClientId());
+
+        parent.cancel("Server shutting down");
+
+        assertTrue(child.isCancelled());
+        assertEquals("Server shutting down", assertThrows(CallContext.AbortedException.class, child::checkActive).getMessage());
+    }
+
+    @Test
+    void boundRequestFailsAtTheDeadline() {
+        CallContext context = CallContext.withTimeout(Duration.ofMillis(100));
+
+        CallContext.AbortedException aborted = assertThrows(CallContext.AbortedException.class,
+            () -> context.bind(Mono.never()).block());
+
+        assertEquals("Deadline exceeded", aborted.getMessage());
+    }
+
+    @Test
+    void boundRequestFailsWhenTheCallIsCancelled() {
+        CallContext context = CallContext.unbounded();
+        Mono<Object> request = context.bind(Mono.never());
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            context.cancel("Cancelled by client");
+        }).start();
+
+        CallContext.AbortedException aborted = assertThrows(CallContext.AbortedException.class, request::block);
+
+        assertEquals("Cancelled by client", aborted.getMessage());
+    }
+
+    @Test
+    void closeCancelsAndRunsTheCallbackOnce() {
+        CallContext context = CallContext.forClient("  agent-" + "x".repeat(100) + "  ");
+        AtomicInteger closed = new AtomicInteger();
+        context.onClose(closed::incrementAndGet);
+
+        context.close();
+        context.close();
+
+        assertEquals(1, closed.get());
+        assertTrue(context.isCancelled());
+        assertEquals(64, context.getClientId().length());
+        assertFalse(CallContext.forClient(" ").getClientId().isBlank());
+    }
+}
@@ -0,0 +1,178 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+class ClientSchedulerTest {
+
+    private static final String PROVIDER = "DuckDuckGo";
+    private static final long TIMEOUT_MS = 5000;
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final ClientScheduler scheduler = new ClientScheduler(properties);
+
+    /**
+     * Client IDs in the order their requests got the turn
+     */
+    private final List<String> granted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> threads = new ArrayList<>();
+
+    @AfterEach
+    void stopWaiters() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    @Test
+    void lightClientIsNotQueuedBehindABurst() throws Exception {
+        ClientScheduler.Turn busy = scheduler.acquire(PROVIDER, CallContext.forClient("burst"));
+        for (int i = 0; i < 10; i++) {
+            enqueue("burst");
+        }
+        CompletableFuture<Void> light = enqueue("light");
+
+        busy.close();
+        light.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        awaitGranted(11);
+
+        // The burst's first queued request and the light request finish at the same virtual time
+        assertTrue(granted.indexOf("light") <= 1, "light client got turn " + granted.indexOf("light"));
+    }
+
+    @Test
+    void turnsAreSharedInProportionToWeights() throws Exception {
+        properties.getClientFairness().getWeights().put("heavy", 3);
+        ClientScheduler.Turn busy = scheduler.acquire(PROVIDER, CallContext.forClient("other"));
+        for (int i = 0; i < 8; i++) {
+            enqueue("heavy");
+        }
+        for (int i = 0; i < 8; i++) {
+            enqueue("light");
+        }
+
+        busy.close();
+        awaitGranted(16);
+
+        assertEquals(6, Collections.frequency(granted.subList(0, 8), "heavy"), "first turns: " + granted);
+        assertEquals(3, scheduler.getStats().clients().get("heavy").weight());
+    }
+
+    @Test
+    void requestsOverQuotaAreRejected() {
+        properties.getClientFairness().getRequestsPerMinute().put("limited", 2);
+        for (int i = 0; i < 2; i++) {
+            scheduler.acquire(PROVIDER, CallContext.forClient("limited")).close();
+        }
+
+        assertThrows(ClientScheduler.QuotaExceededException.class,
+            () -> scheduler.acquire(PROVIDER, CallContext.forClient("limited")));
+        scheduler.acquire(PROVIDER, CallContext.forClient("unlimited")).close();
+
+        ClientScheduler.ClientStats limited = scheduler.getStats().clients().get("limited");
+        assertEquals(2, limited.requestsLastMinute());
+        assertEquals(1, limited.rejected());
+        assertEquals(2, limited.granted());
+    }
+
+    @Test
+    void cancelledWaiterPassesTheTurnOn() throws Exception {
+        ClientScheduler.Turn busy = scheduler.acquire(PROVIDER, CallContext.forClient("holder"));
+        CallContext cancelled = CallContext.forClient("impatient");
+        CompletableFuture<Void> impatient = enqueue(cancelled);
+        CompletableFuture<Void> next = enqueue("next");
+
+        synchronized (scheduler) {
+            // The turn is released while the cancelled waiter is still on its way out of the queue
+            cancelled.cancel("Client went away");
+            Thread leaving = threads.get(0);
+            await(() -> leaving.getState() == Thread.State.BLOCKED);
+            busy.close();
+        }
+
+        next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        ExecutionException failure = assertThrows(ExecutionException.class,
+            () -> impatient.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(failure.getCause() instanceof CallContext.AbortedException);
+        assertEquals(List.of("next"), granted);
+        assertEquals(1, scheduler.getStats().clients().get("impatient").abandoned());
+
+        // Nobody holds the turn any more
+        scheduler.acquire(PROVIDER, CallContext.forClient("later")).close();
+    }
+
+    @Test
+    void backgroundWorkDoesNotQueue() {
+        ClientScheduler.Turn busy = scheduler.acquire(PROVIDER, CallContext.forClient("holder"));
+
+        assertThrows(CallContext.AbortedException.class,
+            () -> scheduler.acquire(PROVIDER, CallContext.background(Duration.ofSeconds(10))));
+        // Other providers have their own turns
+        scheduler.acquire("Brave", CallContext.background(Duration.ofSeconds(10))).close();
+
+        busy.close();
+        scheduler.acquire(PROVIDER, CallContext.background(Duration.ofSeconds(10))).close();
+    }
+
+    @Test
+    void disabledSchedulerNeverWaits() {
+        properties.getClientFairness().setEnabled(false);
+        ClientScheduler.Turn first = scheduler.acquire(PROVIDER, CallContext.forClient("a"));
+
+        scheduler.acquire(PROVIDER, CallContext.forClient("b")).close();
+        first.close();
+    }
+
+    private CompletableFuture<Void> enqueue(String clientId) {
+        return enqueue(CallContext.forClient(clientId));
+    }
+
+    /**
+     * Start a request that takes its turn and passes it on right away; returns once it is queued
+     */
+    private CompletableFuture<Void> enqueue(CallContext context) {
+        int waiting = scheduler.getStats().waitingRequests();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try (ClientScheduler.Turn turn = scheduler.acquire(PROVIDER, context)) {
+                granted.add(context.getClientId());
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+        await(() -> scheduler.getStats().waitingRequests() > waiting);
+        return done;
+    }
+
+    private void awaitGranted(int count) {
+        await(() -> granted.size() >= count);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not reached within " + TIMEOUT_MS + " ms");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
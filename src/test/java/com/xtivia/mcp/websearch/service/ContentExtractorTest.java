@@ -0,0 +1,120 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+class ContentExtractorTest {
+
+    private static final String PARAGRAPH =
+        "<p>The garbage collector reclaims <b>unreachable</b> objects; tuning it trades pause time for throughput.</p>";
+
+    private static final String TEXT = PARAGRAPH.repeat(6);
+
+    private static final String[] PAGES = {
+        // Winner first, more content after it
+        "<main>" + TEXT + "</main><article>" + TEXT + "</article><div class=\"container\">" + TEXT + "</div>",
+        // Too little text in the first selector
+        "<main><p>Short</p></main><div>" + TEXT + "</div><article>" + TEXT + "</article>",
+        // Higher-priority block after a lower-priority one
+        "<div class=\"container\">" + TEXT + "</div><div id=\"content\">" + TEXT + "</div><article>" + TEXT + "</article>",
+        // Nested blocks
+        "<div class=\"container\"><div class=\"post-content\">" + TEXT + "</div>" + TEXT + "</div>",
+        // Only match pruned with the header
+        "<header><main>" + TEXT + "</main></header><div id=\"main\">" + TEXT + "</div>",
+        // Boilerplate inside the winner
+        "<article><script>var x = 1;</script>" + TEXT + "<aside>Related</aside>" + TEXT + "</article>",
+        // No selector matches
+        "<div><h1>Heading</h1>" + TEXT + "</div><div>" + TEXT + "</div>",
+        "<p>Too short everywhere</p>"
+    };
+
+    private static final String PAGE_WITH_WIDGETS = "<html><head><title>Tuning</title></head><body><article>"
+        + TEXT
+        + "<div class=\"share-buttons\">Share on every network</div>"
+        + "<section class=\"related_posts\">Five more articles on tuning</section>"
+        + "<p class=\"Newsletter\">Subscribe to the weekly digest</p>"
+        + "</article></body></html>";
+
+    @Test
+    void contentMatchesSelectorBasedExtraction() {
+        for (int maxLength : new int[] {50, 150, 5000}) {
+            for (String body : PAGES) {
+                String html = "<html><head><title>Tuning</title></head><body>" + body + "</body></html>";
+
+                ContentExtractor.Extraction extraction = ContentExtractor.extract(Jsoup.parse(html), maxLength);
+
+                assertEquals(selectorBasedContent(html, maxLength), extraction.content(), body + " at " + maxLength);
+                assertEquals("Tuning", extraction.title());
+            }
+        }
+    }
+
+    @Test
+    void widgetsAreKeptWithoutNoisePruning() {
+        ContentExtractor.Extraction extraction = ContentExtractor.extract(Jsoup.parse(PAGE_WITH_WIDGETS), 5000);
+
+        assertTrue(extraction.content().contains("Share on every network"));
+        assertTrue(extraction.content().contains("Subscribe to the weekly digest"));
+        assertTrue(extraction.noiseClasses().isEmpty());
+        assertEquals(selectorBasedContent(PAGE_WITH_WIDGETS, 5000), extraction.content());
+    }
+
+    @Test
+    void noisePruningLeavesOutWidgetsAndReportsTheirClasses() {
+        ContentExtractor.Extraction extraction =
+            ContentExtractor.extract(Jsoup.parse(PAGE_WITH_WIDGETS), 5000, true);
+
+        assertEquals("article", extraction.contentSelector());
+        assertFalse(extraction.content().contains("Share on every network"));
+        assertFalse(extraction.content().contains("Five more articles"));
+        assertFalse(extraction.content().contains("Subscribe to the weekly digest"));
+        assertEquals(Set.of("share-buttons", "related_posts", "newsletter"), extraction.noiseClasses());
+    }
+
+    @Test
+    void templatePrunesOnlyTheLearnedClasses() {
+        ContentExtractor.Extraction extraction = ContentExtractor.extractWithTemplate(
+            Jsoup.parse(PAGE_WITH_WIDGETS), 5000, "article", Set.of("share-buttons"));
+
+        assertEquals("Tuning", extraction.title());
+        assertFalse(extraction.content().contains("Share on every network"));
+        assertTrue(extraction.content().contains("Five more articles on tuning"));
+    }
+
+    @Test
+    void templateWithoutNoiseClassesPrunesNothing() {
+        ContentExtractor.Extraction extraction = ContentExtractor.extractWithTemplate(
+            Jsoup.parse(PAGE_WITH_WIDGETS), 5000, "article", Set.of());
+
+        assertEquals(ContentExtractor.extract(Jsoup.parse(PAGE_WITH_WIDGETS), 5000).content(), extraction.content());
+    }
+
+    /**
+     * The extraction this class replaced: remove boilerplate, then take the first
+     * selector whose text is long enough
+     */
+    private static String selectorBasedContent(String html, int maxLength) {
+        Document doc = Jsoup.parse(html);
+        doc.select("script, style, nav, header, footer, aside, .advertisement, .ads, .sidebar").remove();
+        for (String selector : ContentExtractor.CONTENT_SELECTORS) {
+            Element element = doc.selectFirst(selector);
+            if (element != null && element.text().trim().length() > 100) {
+                return truncate(element.text(), maxLength);
+            }
+        }
+        return truncate(doc.body().text(), maxLength);
+    }
+
+    private static String truncate(String text, int maxLength) {
+        String collapsed = text.replaceAll("\\s+", " ").trim();
+        return collapsed.substring(0, Math.min(collapsed.length(), maxLength)).stripTrailing();
+    }
+}
@@ -0,0 +1,79 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ContentSnifferTest {
+
+    @Test
+    void binaryFormatsAreRecognizedByTheirMagicBytes() {
+        assertRejectedAs("PDF document", ascii("%PDF-1.7\n"));
+        assertRejectedAs("PNG image", bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+        assertRejectedAs("JPEG image", bytes(0xFF, 0xD8, 0xFF, 0xE0));
+        assertRejectedAs("GIF image", ascii("GIF89a"));
+        assertRejectedAs("ISO media", bytes(0x00, 0x00, 0x00, 0x20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'));
+        assertRejectedAs("ZIP archive", bytes('P', 'K', 0x03, 0x04, 0x14, 0x00));
+        assertRejectedAs("gzip archive", bytes(0x1F, 0x8B, 0x08, 0x00));
+        assertRejectedAs("7z archive", bytes('7', 'z', 0xBC, 0xAF, 0x27, 0x1C));
+        assertRejectedAs("Office document", bytes(0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1));
+        assertRejectedAs("executable", bytes(0x7F, 'E', 'L', 'F', 0x02));
+        assertRejectedAs("WebAssembly module", bytes(0x00, 'a', 's', 'm', 0x01, 0x00, 0x00, 0x00));
+    }
+
+    @Test
+    void binaryServedAsTextIsRejectedWithItsDeclaredType() {
+        assertEquals("Unsupported content: PDF document (served as text/html)",
+            ContentSniffer.reject("text/html", ascii("%PDF-1.4")));
+        assertEquals("Unsupported content: binary data (served as text/plain)",
+            ContentSniffer.reject("text/plain", bytes('a', 'b', 0x00, 'c')));
+    }
+
+    @Test
+    void declaredBinaryTypeIsRejectedBeforeTheBody() {
+        assertEquals("Unsupported content type: application/pdf", ContentSniffer.reject("Application/PDF", null));
+        assertEquals("Unsupported content type: image/png", ContentSniffer.reject("image/png", null));
+        // SVG is text
+        assertNull(ContentSniffer.reject("image/svg+xml", null));
+    }
+
+    @Test
+    void textIsKept() {
+        assertNull(ContentSniffer.reject("text/html", ascii("<!DOCTYPE html><html>")));
+        assertNull(ContentSniffer.reject(null, ascii("{\"name\": \"value\"}")));
+        // Too short for a signature
+        assertNull(ContentSniffer.reject(null, ascii("%P")));
+        // UTF-16 text holds NUL bytes
+        assertNull(ContentSniffer.reject(null, "\uFEFFplain text".getBytes(StandardCharsets.UTF_16BE)));
+    }
+
+    @Test
+    void documentTypeFollowsTheDeclaredTypeThenTheUrlAndBody() {
+        assertEquals(ContentSniffer.DocumentType.HTML, ContentSniffer.documentType("text/html", "https://e.org/a.json", "{}"));
+        assertEquals(ContentSniffer.DocumentType.JSON, ContentSniffer.documentType("application/vnd.api+json", "https://e.org/a", "{}"));
+        assertEquals(ContentSniffer.DocumentType.HTML, ContentSniffer.documentType(null, "https://e.org/a", " <!doctype html><p>x"));
+        assertEquals(ContentSniffer.DocumentType.MARKDOWN, ContentSniffer.documentType("text/plain", "https://e.org/README.md", "# Title"));
+        assertEquals(ContentSniffer.DocumentType.JSON, ContentSniffer.documentType(null, "https://e.org/data", "[1, 2]"));
+        // Declared plain text is only taken for JSON by its URL
+        assertEquals(ContentSniffer.DocumentType.TEXT, ContentSniffer.documentType("text/plain", "https://e.org/data", "[1, 2]"));
+    }
+
+    private static void assertRejectedAs(String format, byte[] prefix) {
+        assertEquals("Unsupported content: " + format, ContentSniffer.reject(null, prefix));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,65 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class DecayingBloomFilterTest {
+
+    private static final long PERIOD_MS = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final DecayingBloomFilter filter = new DecayingBloomFilter(1000, 0.01, PERIOD_MS, now::get);
+
+    @Test
+    void addedKeysAreAlwaysFoundWithinAPeriod() {
+        for (int i = 0; i < 1000; i++) {
+            filter.add("url:https://example.org/" + i);
+        }
+        now.addAndGet(PERIOD_MS - 1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("url:https://example.org/" + i), "key " + i);
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearTheConfiguredRate() {
+        for (int i = 0; i < 1000; i++) {
+            filter.add("url:https://example.org/" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("url:https://example.com/other/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, falsePositives + " false positives in 10000 lookups");
+    }
+
+    @Test
+    void keysSurviveOneRotationAndDecayWithTheNext() {
+        filter.add("host:example.org");
+
+        now.addAndGet(PERIOD_MS);
+        assertTrue(filter.mightContain("host:example.org"), "kept in the previous generation");
+
+        filter.add("host:example.com");
+        now.addAndGet(PERIOD_MS);
+        assertFalse(filter.mightContain("host:example.org"), "dropped with the previous generation");
+        assertTrue(filter.mightContain("host:example.com"), "added after the first rotation");
+    }
+
+    @Test
+    void filterIdleForTwoPeriodsForgetsEverything() {
+        filter.add("host:example.org");
+
+        now.addAndGet(2 * PERIOD_MS);
+
+        assertFalse(filter.mightContain("host:example.org"));
+    }
+}
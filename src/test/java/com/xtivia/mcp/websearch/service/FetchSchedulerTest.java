@@ -0,0 +1,100 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+class FetchSchedulerTest {
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final FetchScheduler scheduler = new FetchScheduler(properties);
+
+    @Test
+    void hostsWithWaitingFetchesTakeTurns() throws InterruptedException {
+        properties.getFetchScheduler().setMaxConcurrentFetches(1);
+        properties.getFetchScheduler().setMaxFetchesPerHost(2);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        FetchScheduler.Permit first = scheduler.acquire("https://busy.example/0", context());
+
+        // Three fetches for the busy host queue up before one for another host
+        List<Thread> fetches = new ArrayList<>();
+        fetches.add(queueFetch("https://busy.example/1", order, 1));
+        fetches.add(queueFetch("https://busy.example/2", order, 2));
+        fetches.add(queueFetch("https://busy.example/3", order, 3));
+        fetches.add(queueFetch("https://other.example/1", order, 4));
+        first.close();
+        for (Thread fetch : fetches) {
+            fetch.join(5000);
+        }
+
+        assertEquals(List.of("https://busy.example/1", "https://other.example/1",
+            "https://busy.example/2", "https://busy.example/3"), order);
+        assertEquals(0, scheduler.getStats().activeFetches());
+        assertEquals(4, scheduler.getStats().queued());
+    }
+
+    @Test
+    void busyHostDoesNotHoldUpOtherHosts() throws InterruptedException {
+        properties.getFetchScheduler().setMaxFetchesPerHost(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        FetchScheduler.Permit busy = scheduler.acquire("https://busy.example/0", context());
+        Thread waiting = queueFetch("https://busy.example/1", order, 1);
+
+        try (FetchScheduler.Permit other = scheduler.acquire("https://other.example/0", context())) {
+            assertEquals(2, scheduler.getStats().activeFetches());
+            assertEquals(1, scheduler.getStats().waitingFetches());
+        }
+        busy.close();
+        waiting.join(5000);
+
+        assertEquals(List.of("https://busy.example/1"), order);
+    }
+
+    @Test
+    void fetchThatRunsOutOfTimeLeavesTheQueue() {
+        properties.getFetchScheduler().setMaxFetchesPerHost(1);
+        FetchScheduler.Permit busy = scheduler.acquire("https://busy.example/0", context());
+
+        assertThrows(CallContext.AbortedException.class, () ->
+            scheduler.acquire("https://busy.example/1", CallContext.withTimeout(Duration.ofMillis(100))));
+
+        assertEquals(0, scheduler.getStats().waitingFetches());
+        assertEquals(1, scheduler.getStats().abandoned());
+        busy.close();
+        // The abandoned fetch took no permit with it
+        try (FetchScheduler.Permit next = scheduler.acquire("https://busy.example/2", context())) {
+            assertEquals(1, scheduler.getStats().activeFetches());
+        }
+    }
+
+    /**
+     * Start a fetch that records when it gets its permit, once it is queued as the given waiter
+     */
+    private Thread queueFetch(String url, List<String> order, int waiting) throws InterruptedException {
+        Thread fetch = new Thread(() -> {
+            try (FetchScheduler.Permit permit = scheduler.acquire(url, context())) {
+                order.add(url);
+            }
+        });
+        fetch.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getStats().waitingFetches() < waiting && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(scheduler.getStats().waitingFetches() >= waiting, url + " did not queue");
+        return fetch;
+    }
+
+    private static CallContext context() {
+        return CallContext.withTimeout(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,68 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class FieldSelectionTest {
+
+    @Test
+    void noRequestedFieldsSelectsAll() {
+        assertSame(FieldSelection.ALL, FieldSelection.of(null, FieldSelection.SEARCH_RESULT_FIELDS));
+        assertSame(FieldSelection.ALL, FieldSelection.of(List.of(), FieldSelection.SEARCH_RESULT_FIELDS));
+        assertTrue(FieldSelection.ALL.includes("anything"));
+    }
+
+    @Test
+    void urlIsAlwaysIncluded() {
+        FieldSelection selection = FieldSelection.of(List.of(" title "), FieldSelection.SEARCH_RESULT_FIELDS);
+
+        assertEquals(Set.of("url", "title"), selection.fields());
+        assertTrue(selection.includes("url"));
+        assertFalse(selection.includes("summary"));
+        assertTrue(selection.includesAny("keywords", "title"));
+        assertFalse(selection.includesAny("keywords", "summary"));
+    }
+
+    @Test
+    void everyAvailableFieldCollapsesToAll() {
+        assertSame(FieldSelection.ALL,
+            FieldSelection.of(List.of("title", "keywords", "summary"), FieldSelection.SEARCH_RESULT_FIELDS));
+    }
+
+    @Test
+    void unknownFieldIsRejectedWithTheAvailableOnes() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+            () -> FieldSelection.of(List.of("title", "content"), FieldSelection.SEARCH_RESULT_FIELDS));
+        assertEquals("Unknown field \"content\"; available fields: keywords, summary, title, url", error.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> FieldSelection.of(Arrays.asList("title", null), FieldSelection.SEARCH_RESULT_FIELDS));
+    }
+
+    @Test
+    void projectionKeepsOnlySelectedFields() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode result = objectMapper.createObjectNode()
+            .put("title", "Tuning").put("url", "https://example.org").put("summary", "How to tune");
+
+        FieldSelection.of(List.of("title"), FieldSelection.SEARCH_RESULT_FIELDS).project(result);
+
+        assertEquals(objectMapper.createObjectNode().put("title", "Tuning").put("url", "https://example.org"), result);
+        // All fields leave the result untouched
+        ObjectNode untouched = result.deepCopy();
+        FieldSelection.ALL.project(untouched);
+        assertEquals(result, untouched);
+    }
+}
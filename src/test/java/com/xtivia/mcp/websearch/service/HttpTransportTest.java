@@ -0,0 +1,228 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+class HttpTransportTest {
+
+    private static final String TEXT =
+        "<html><body><p>" + "Page text with a non-ASCII character: é. ".repeat(400) + "</p></body></html>";
+
+    private static final byte[] TEXT_BYTES = TEXT.getBytes(StandardCharsets.UTF_8);
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    private DisposableServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void gzipBodyIsDecoded() throws IOException {
+        assertFetched("gzip", gzip(TEXT_BYTES));
+    }
+
+    @Test
+    void zlibDeflateBodyIsDecoded() throws IOException {
+        assertFetched("deflate", deflate(TEXT_BYTES, false));
+    }
+
+    @Test
+    void rawDeflateBodyIsDecoded() throws IOException {
+        assertFetched("deflate", deflate(TEXT_BYTES, true));
+    }
+
+    @Test
+    void brotliBodyIsDecoded() throws IOException {
+        Brotli4jLoader.ensureAvailability();
+        assertFetched("br", Encoder.compress(TEXT_BYTES));
+    }
+
+    @Test
+    void stackedCodingsAreUndoneLastAppliedFirst() throws IOException {
+        assertFetched("deflate, gzip", gzip(deflate(TEXT_BYTES, false)));
+    }
+
+    @Test
+    void identityBodyIsPassedThrough() {
+        HttpTransport transport = transport();
+
+        HttpTransport.Response response = fetch(transport, serve(null, TEXT_BYTES));
+
+        assertEquals(TEXT, response.body());
+        assertEquals("identity", response.contentEncoding());
+        assertEquals(TEXT_BYTES.length, response.transferredBytes());
+        assertEquals(TEXT_BYTES.length, response.decodedBytes());
+        assertEquals(1, transport.getStats().get("identity").responses());
+    }
+
+    @Test
+    void fetchedBodyDecodingPastTheCapIsRejected() throws IOException {
+        // Leave the cap, not the memory budget, to stop the body
+        properties.getMemoryBudget().setEnabled(false);
+        byte[] bomb = gzip(new byte[HttpTransport.MAX_BODY_BYTES + 1]);
+        String url = serve("gzip", bomb);
+
+        assertTrue(bomb.length < 100_000, "compressed to " + bomb.length);
+        assertThrows(DataBufferLimitException.class, () -> fetch(transport(), url));
+    }
+
+    @Test
+    void everyCodingIsDecodedWithoutAServer() throws IOException {
+        assertArrayEquals(TEXT_BYTES, decode(TEXT_BYTES, "identity"));
+        assertArrayEquals(TEXT_BYTES, decode(gzip(TEXT_BYTES), "gzip"));
+        assertArrayEquals(TEXT_BYTES, decode(gzip(TEXT_BYTES), "x-gzip"));
+        assertArrayEquals(TEXT_BYTES, decode(deflate(TEXT_BYTES, false), "deflate"));
+        assertArrayEquals(TEXT_BYTES, decode(deflate(TEXT_BYTES, true), "deflate"));
+        assertArrayEquals(TEXT_BYTES, decode(gzip(deflate(TEXT_BYTES, true)), "deflate, gzip"));
+        assertArrayEquals(TEXT_BYTES, decode(gzip(TEXT_BYTES), "identity, gzip"));
+        assertThrows(IOException.class, () -> decode(TEXT_BYTES, "compress"));
+    }
+
+    @Test
+    void bodyOfExactlyTheCapIsAccepted() throws IOException {
+        byte[] body = new byte[64 * 1024];
+
+        byte[] decoded = HttpTransport.decodeBody(gzip(body), "gzip", body.length, bytes -> { });
+
+        assertEquals(body.length, decoded.length);
+    }
+
+    @Test
+    void decodingStopsOnceTheCapIsPassed() throws IOException {
+        int cap = 64 * 1024;
+        byte[] bomb = gzip(new byte[16 * cap]);
+        AtomicLong largestReservation = new AtomicLong();
+
+        assertThrows(DataBufferLimitException.class, () ->
+            HttpTransport.decodeBody(bomb, "gzip", cap, bytes -> largestReservation.accumulateAndGet(bytes, Math::max)));
+
+        // Never more than the cap (plus the byte that detects passing it) in old and new buffer together
+        assertTrue(largestReservation.get() <= 2L * cap + 1, "reserved " + largestReservation.get());
+    }
+
+    @Test
+    void eachCodingOfAStackIsCapped() throws IOException {
+        int cap = 64 * 1024;
+        // The outer gzip decodes to a few hundred bytes, the inner one far past the cap
+        byte[] stacked = gzip(gzip(new byte[16 * cap]));
+
+        assertThrows(DataBufferLimitException.class, () -> HttpTransport.decodeBody(stacked, "gzip, gzip", cap, bytes -> { }));
+    }
+
+    @Test
+    void decodingStopsWhenTheReservationIsRefused() throws IOException {
+        byte[] body = gzip(new byte[1024 * 1024]);
+        long allowed = 256 * 1024;
+
+        assertThrows(MemoryGovernor.BudgetExhaustedException.class, () ->
+            HttpTransport.decodeBody(body, "gzip", HttpTransport.MAX_BODY_BYTES, bytes -> {
+                if (bytes > allowed) {
+                    throw new MemoryGovernor.BudgetExhaustedException(MemoryGovernor.BODY, bytes);
+                }
+            }));
+    }
+
+    private void assertFetched(String contentEncoding, byte[] body) {
+        HttpTransport transport = transport();
+
+        HttpTransport.Response response = fetch(transport, serve(contentEncoding, body));
+
+        assertEquals(TEXT, response.body());
+        assertEquals("text/html", response.contentType());
+        assertEquals(contentEncoding, response.contentEncoding());
+        assertEquals(body.length, response.transferredBytes());
+        assertEquals(TEXT_BYTES.length, response.decodedBytes());
+        HttpTransport.TransferStats stats = transport.getStats().get(contentEncoding);
+        assertEquals(1, stats.responses());
+        assertEquals(body.length, stats.transferredBytes());
+        assertEquals(TEXT_BYTES.length, stats.decodedBytes());
+    }
+
+    private HttpTransport transport() {
+        return new HttpTransport(WebClient.builder(), properties, new MemoryGovernor(properties));
+    }
+
+    private static HttpTransport.Response fetch(HttpTransport transport, String url) {
+        return transport.getDocument(url, CallContext.withTimeout(Duration.ofSeconds(10)), headers -> { },
+                (contentType, prefix) -> null)
+            .block();
+    }
+
+    /**
+     * Serve the body as it is, with the given Content-Encoding (none when null)
+     */
+    private String serve(String contentEncoding, byte[] body) {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        server = HttpServer.create()
+            .host(host)
+            .port(0)
+            .handle((request, response) -> {
+                if (contentEncoding != null) {
+                    response.header("Content-Encoding", contentEncoding);
+                }
+                return response
+                    .header("Content-Type", "text/html; charset=UTF-8")
+                    .header("Content-Length", String.valueOf(body.length))
+                    .sendByteArray(Mono.just(body));
+            })
+            .bindNow();
+        return "http://" + host + ":" + server.port() + "/page";
+    }
+
+    private static byte[] decode(byte[] body, String contentEncoding) throws IOException {
+        return HttpTransport.decodeBody(body, contentEncoding, HttpTransport.MAX_BODY_BYTES, bytes -> { });
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param raw Leave out the zlib wrapper, as some servers do
+     */
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+            out.write(data);
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,150 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+class NegativeCacheTest {
+
+    private static final String URL = "https://example.org/articles/1";
+    private static final String OTHER_URL_ON_HOST = "https://example.org/articles/2";
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    @Test
+    void throttlingIsRememberedForTheWholeHost() {
+        NegativeCache cache = new NegativeCache(properties);
+
+        cache.recordFetchFailure(URL, httpError(429));
+        cache.recordFetchFailure("https://example.com/page", new RuntimeException(httpError(503)));
+
+        assertEquals("HTTP 429", cache.checkFetch(OTHER_URL_ON_HOST).reason());
+        assertEquals("HTTP 503", cache.checkFetch("https://EXAMPLE.com/other").reason());
+    }
+
+    @Test
+    void unreachableHostIsRememberedForTheWholeHost() {
+        NegativeCache cache = new NegativeCache(properties);
+
+        cache.recordFetchFailure(URL, new RuntimeException(new UnknownHostException("example.org")));
+
+        assertNotNull(cache.checkFetch(OTHER_URL_ON_HOST));
+    }
+
+    @Test
+    void pageErrorsAndTimeoutsAreRememberedForTheUrlOnly() {
+        NegativeCache cache = new NegativeCache(properties);
+
+        cache.recordFetchFailure(URL, httpError(404));
+        cache.recordFetchFailure("https://example.com/slow", new RuntimeException(new TimeoutException()));
+
+        assertEquals("HTTP 404", cache.checkFetch(URL).reason());
+        assertNull(cache.checkFetch(OTHER_URL_ON_HOST));
+        assertEquals("Timed out", cache.checkFetch("https://example.com/slow").reason());
+        assertNull(cache.checkFetch("https://example.com/fast"));
+    }
+
+    @Test
+    void abortsAndUnclassifiedErrorsAreNotRecorded() {
+        NegativeCache cache = new NegativeCache(properties);
+
+        cache.recordFetchFailure(URL, new CallContext.AbortedException("Deadline exceeded"));
+        // Aborts of our own making, such as a client over its quota, say nothing about the URL
+        cache.recordFetchFailure(URL, new RuntimeException(new ClientScheduler.QuotaExceededException("a", 1)));
+        cache.recordFetchFailure(URL, new IllegalStateException("Parser bug"));
+        // Memory pressure is ours, not the URL's
+        cache.recordFetchFailure(URL, new MemoryGovernor.BudgetExhaustedException(MemoryGovernor.BODY, 1024));
+
+        assertNull(cache.checkFetch(URL));
+        assertEquals(0, cache.getStats().recorded());
+    }
+
+    @Test
+    void failuresExpireAfterTheirTtl() throws InterruptedException {
+        properties.getNegativeCache().setUrlTtlSeconds(1);
+        properties.getNegativeCache().setHostTtlSeconds(1);
+        properties.getNegativeCache().setSearchTtlSeconds(1);
+        NegativeCache cache = new NegativeCache(properties);
+        cache.recordUrlFailure(URL, "Empty body");
+        assertNotNull(cache.checkFetch(URL));
+
+        Thread.sleep(1100);
+
+        assertNull(cache.checkFetch(URL));
+        assertEquals(0, cache.getStats().entries());
+    }
+
+    @Test
+    void searchFailuresAreOnlyRememberedWhenARetryWouldRepeatThem() {
+        NegativeCache cache = new NegativeCache(properties);
+        String rejected = NegativeCache.searchKey("rejected", null, null, null);
+        String oversized = NegativeCache.searchKey("oversized", null, null, null);
+        String throttled = NegativeCache.searchKey("throttled", null, null, null);
+        String blocked = NegativeCache.searchKey("blocked", null, null, null);
+        String slow = NegativeCache.searchKey("slow", null, null, null);
+        String aborted = NegativeCache.searchKey("aborted", null, null, null);
+
+        cache.recordSearchFailure(rejected, new RuntimeException("Brave search failed: HTTP 400", httpError(400)));
+        cache.recordSearchFailure(oversized, new RuntimeException("All providers failed: too large",
+            new DataBufferLimitException("too large")));
+        cache.recordSearchFailure(throttled, new RuntimeException("All providers failed",
+            new RequestManager.ThrottledException("DuckDuckGo", "anomaly page", null)));
+        cache.recordSearchFailure(blocked, new RuntimeException(httpError(403)));
+        cache.recordSearchFailure(slow, new RuntimeException("All providers failed", new TimeoutException()));
+        cache.recordSearchFailure(aborted, new CallContext.AbortedException("Deadline exceeded"));
+
+        assertEquals("Brave search failed: HTTP 400", cache.checkSearch(rejected).reason());
+        assertNotNull(cache.checkSearch(oversized));
+        assertNull(cache.checkSearch(throttled));
+        assertNull(cache.checkSearch(blocked));
+        assertNull(cache.checkSearch(slow));
+        assertNull(cache.checkSearch(aborted));
+        assertEquals(2, cache.getStats().recorded());
+    }
+
+    @Test
+    void keysThatNeverFailedAreAnsweredByTheFilter() {
+        NegativeCache cache = new NegativeCache(properties);
+        cache.recordSearchFailure(NegativeCache.searchKey("java streams", null, null, List.of()), "No results");
+
+        for (int i = 0; i < 100; i++) {
+            assertNull(cache.checkSearch(NegativeCache.searchKey("kotlin flows " + i, null, null, List.of())));
+        }
+
+        assertTrue(cache.getStats().filterRejections() >= 90, cache.getStats().toString());
+        assertEquals(0, cache.getStats().hits());
+    }
+
+    @Test
+    void searchKeysIgnoreCaseSpacingAndProviderOrder() {
+        assertEquals(
+            NegativeCache.searchKey("java streams", null, "fallback", List.of("brave", "duckduckgo")),
+            NegativeCache.searchKey("  Java   STREAMS ", null, null, List.of("DuckDuckGo", "Brave")));
+    }
+
+    @Test
+    void disabledCacheRecordsNothing() {
+        properties.getNegativeCache().setEnabled(false);
+        NegativeCache cache = new NegativeCache(properties);
+
+        cache.recordUrlFailure(URL, "Empty body");
+
+        assertNull(cache.checkFetch(URL));
+        assertEquals(0, cache.getStats().recorded());
+    }
+
+    private static WebClientResponseException httpError(int status) {
+        return new WebClientResponseException(status, "Error", null, null, null);
+    }
+}
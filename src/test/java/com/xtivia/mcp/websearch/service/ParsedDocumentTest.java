@@ -0,0 +1,107 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.model.FetchResult;
+
+class ParsedDocumentTest {
+
+    private static final String GUIDE = "Read this first. "
+        + "Install Download the archive and unpack it. "
+        + "Linux Use the tarball. "
+        + "Usage Start the server with the default profile.";
+
+    @Test
+    void followingNextOffsetReadsTheWholeTextOnce() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("word").append(i).append(' ');
+        }
+        String content = text.toString().trim();
+        ParsedDocument document = document(content, List.of());
+
+        List<String> pages = new ArrayList<>();
+        Integer offset = 0;
+        while (offset != null) {
+            FetchResult page = document.page(new ContentFetchService.Slice(offset, 100, null), 100, 500, null, null, false);
+            assertEquals(content.length(), page.paging().totalLength());
+            assertTrue(page.content().length() <= 100, page.content());
+            // Pages end between words
+            assertTrue(page.content().matches("word\\d+( word\\d+)*"), page.content());
+            pages.add(page.content());
+            offset = page.paging().nextOffset();
+        }
+
+        assertEquals(content, String.join(" ", pages));
+    }
+
+    @Test
+    void sliceLengthIsCappedAndOffsetClamped() {
+        ParsedDocument document = document(GUIDE, List.of());
+
+        FetchResult capped = document.page(new ContentFetchService.Slice(0, 10_000, null), 20, 30, null, null, false);
+        FetchResult past = document.page(new ContentFetchService.Slice(10_000, null, null), 20, 30, null, null, true);
+
+        assertTrue(capped.content().length() <= 30);
+        assertEquals("", past.content());
+        assertEquals(GUIDE.length(), past.paging().offset());
+        assertNull(past.paging().nextOffset());
+        assertTrue(past.paging().fromCache());
+    }
+
+    @Test
+    void outlineNestsSectionsUnderTheirHeadings() {
+        List<FetchResult.Section> sections = ParsedDocument.outline(headings(), GUIDE.length());
+
+        assertEquals(List.of("s0", "s1", "s2", "s3"), sections.stream().map(FetchResult.Section::id).toList());
+        assertEquals(new FetchResult.Section("s0", null, 0, 0, GUIDE.indexOf("Install")), sections.get(0));
+        // Install runs up to the next level-2 heading, over its Linux subsection
+        FetchResult.Section install = sections.get(1);
+        assertEquals("Install", install.heading());
+        assertEquals(GUIDE.indexOf("Usage") - GUIDE.indexOf("Install"), install.length());
+        assertEquals(GUIDE.length(), sections.get(3).offset() + sections.get(3).length());
+    }
+
+    @Test
+    void sectionIsServedUpToItsEnd() {
+        ParsedDocument document = document(GUIDE, ParsedDocument.outline(headings(), GUIDE.length()));
+
+        FetchResult install = document.page(new ContentFetchService.Slice(null, null, "s1"), 1000, 1000, null, null, false);
+        FetchResult usage = document.page(new ContentFetchService.Slice(null, null, "s3"), 1000, 1000, null, null, false);
+
+        assertEquals("Install Download the archive and unpack it. Linux Use the tarball.", install.content());
+        assertEquals("s1", install.paging().section());
+        assertEquals(Integer.valueOf(GUIDE.indexOf("Usage")), install.paging().nextOffset());
+        assertEquals("Usage Start the server with the default profile.", usage.content());
+        assertNull(usage.paging().nextOffset());
+    }
+
+    @Test
+    void unknownSectionIsRejected() {
+        ParsedDocument document = document(GUIDE, ParsedDocument.outline(headings(), GUIDE.length()));
+
+        assertThrows(IllegalArgumentException.class, () ->
+            document.page(new ContentFetchService.Slice(null, null, "s9"), 1000, 1000, null, null, false));
+    }
+
+    private static List<ContentExtractor.Heading> headings() {
+        return List.of(
+            new ContentExtractor.Heading(2, "Install", GUIDE.indexOf("Install")),
+            new ContentExtractor.Heading(3, "Linux", GUIDE.indexOf("Linux")),
+            new ContentExtractor.Heading(2, "Usage", GUIDE.indexOf("Usage")));
+    }
+
+    private static ParsedDocument document(String content, List<FetchResult.Section> sections) {
+        return new ParsedDocument("https://example.org/guide", "Guide", content,
+            new FetchResult.Metadata("example.org", "text/html", content.length(), null, null, null, null),
+            sections, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,123 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+class ResponseFitterTest {
+
+    private static final String SUMMARY = "How to measure and tune the latency of Java services.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ResponseFitter fitter = new ResponseFitter(objectMapper);
+
+    @Test
+    void responseWithoutBudgetIsLeftWhole() throws Exception {
+        ObjectNode response = searchResponse(5);
+
+        String json = fitter.fitSearchResponse(response, null);
+        JsonNode fitted = objectMapper.readTree(json);
+
+        assertEquals(5, fitted.path("results").size());
+        assertFalse(fitted.has("truncated"));
+        assertEquals(TokenEstimator.estimate(json), fitted.path("tokens").asInt());
+    }
+
+    @Test
+    void fittedSearchResponseStaysWithinBudget() throws Exception {
+        for (int maxTokens : new int[] {300, 600, 1000, 2500}) {
+            String json = fitter.fitSearchResponse(searchResponse(20), maxTokens);
+            JsonNode fitted = objectMapper.readTree(json);
+
+            int tokens = fitted.path("tokens").asInt();
+            assertEquals(TokenEstimator.estimate(json), tokens, "reported size of the response sent");
+            assertTrue(tokens <= maxTokens, tokens + " tokens over a budget of " + maxTokens);
+            assertTrue(fitted.path("truncated").asBoolean());
+        }
+    }
+
+    @Test
+    void lowestRankedResultsAreDroppedFirst() throws Exception {
+        String json = fitter.fitSearchResponse(searchResponse(20), 600);
+        JsonNode results = objectMapper.readTree(json).path("results");
+
+        assertTrue(results.size() > 0 && results.size() < 20, "kept " + results.size() + " results");
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("Result " + i, results.get(i).path("title").asText());
+        }
+        assertEquals(results.size(), objectMapper.readTree(json).path("totalResults").asInt());
+    }
+
+    @Test
+    void cutContentIsContinuedFromNextOffset() throws Exception {
+        String content = article(3000);
+        for (int offset : new int[] {0, 12000}) {
+            String json = fitter.fitFetchResult(fetchResult(content, offset), 1500);
+            JsonNode fitted = objectMapper.readTree(json);
+
+            String kept = fitted.path("content").asText();
+            assertTrue(kept.length() < content.length());
+            assertTrue(content.startsWith(kept));
+            assertEquals(offset + kept.length(), fitted.path("paging").path("nextOffset").asInt());
+            assertTrue(fitted.path("tokens").asInt() <= 1500);
+            assertEquals(TokenEstimator.estimate(json), fitted.path("tokens").asInt());
+        }
+    }
+
+    @Test
+    void contentIsShortenedBeforeSummaryAndKeywords() throws Exception {
+        String json = fitter.fitFetchResult(fetchResult(article(3000), 0), 1500);
+        JsonNode fitted = objectMapper.readTree(json);
+
+        assertTrue(fitted.has("keywords"));
+        assertEquals(SUMMARY, fitted.path("summary").asText());
+    }
+
+    private ObjectNode searchResponse(int results) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("query", "java performance tuning");
+        response.put("totalResults", results);
+        ArrayNode ranked = response.putArray("results");
+        for (int i = 0; i < results; i++) {
+            ranked.addObject()
+                .put("title", "Result " + i)
+                .put("url", "https://example.org/articles/" + i)
+                .put("summary", article(60))
+                .putArray("keywords").add("java").add("performance");
+        }
+        return response;
+    }
+
+    private ObjectNode fetchResult(String content, int offset) {
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("url", "https://example.org/articles/tuning");
+        result.put("title", "Tuning Java services");
+        result.put("summary", SUMMARY);
+        result.putArray("keywords").add("java").add("latency");
+        result.put("content", content);
+        ObjectNode paging = result.putObject("paging");
+        paging.put("offset", offset);
+        paging.putArray("sections").addObject().put("title", "Measuring").put("offset", 0);
+        return result;
+    }
+
+    private static String article(int words) {
+        String[] vocabulary = {"the", "service", "latency", "measures", "garbage", "collection", "pauses", "and",
+            "throughput", "under", "load"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(i % 12 == 0 ? ". " : " ");
+            }
+            text.append(vocabulary[(i * 7) % vocabulary.length]);
+        }
+        return text.toString();
+    }
+}
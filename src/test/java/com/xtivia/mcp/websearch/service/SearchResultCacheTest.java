@@ -0,0 +1,170 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.state.InMemoryStateStore;
+
+class SearchResultCacheTest {
+
+    private static final String CONTEXT = SearchResultCache.context("fallback", null, null);
+
+    private static final List<String> VOCABULARY = List.of(
+        "spring", "webflux", "timeout", "netty", "reactor", "java", "kotlin", "gradle", "maven", "docker",
+        "kubernetes", "helm", "postgres", "redis", "kafka", "jackson", "jsoup", "http2", "tls", "grpc",
+        "graalvm", "native", "image", "startup", "memory", "heap", "thread", "pool", "virtual", "loom");
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    @Test
+    void stopWordsPluralsAndOrderDoNotChangeTheFingerprint() {
+        long fingerprint = SearchResultCache.simHash(SearchResultCache.terms("spring webflux timeout fix"));
+
+        assertEquals(fingerprint, SearchResultCache.simHash(SearchResultCache.terms("How to fix Spring WebFlux timeouts?")));
+        assertEquals(fingerprint, SearchResultCache.simHash(SearchResultCache.terms("timeout fix for webflux, spring")));
+        assertEquals(List.of("spring", "webflux", "timeout", "fix"),
+            SearchResultCache.terms("The Spring WebFlux timeouts: a fix"));
+    }
+
+    @Test
+    void reorderedQueryIsServedApproximately() {
+        SearchResultCache cache = cache();
+        cache.store(CONTEXT, "spring webflux timeout", 5, response("spring webflux timeout", 5));
+
+        SearchResultCache.Match match = cache.lookup(CONTEXT, "timeout in Spring WebFlux", 5, true);
+
+        assertNotNull(match);
+        assertTrue(match.approximate());
+        assertEquals(1.0, match.similarity());
+        assertEquals("spring webflux timeout", match.query());
+        assertNull(cache.lookup(CONTEXT, "timeout in Spring WebFlux", 5, false));
+        assertEquals(1, cache.getStats().approximateHits());
+    }
+
+    @Test
+    void exactQueryIsServedWhateverItsCaseAndSpacing() {
+        SearchResultCache cache = cache();
+        cache.store(CONTEXT, "spring webflux timeout", 5, response("spring webflux timeout", 5));
+
+        SearchResultCache.Match match = cache.lookup(CONTEXT, "  Spring   WebFlux TIMEOUT ", 5, false);
+
+        assertNotNull(match);
+        assertFalse(match.approximate());
+        assertEquals(1, cache.getStats().exactHits());
+    }
+
+    @Test
+    void otherContextsAndLargerRequestsAreNotServed() {
+        SearchResultCache cache = cache();
+        cache.store(CONTEXT, "spring webflux timeout", 5, response("spring webflux timeout", 5));
+
+        assertNull(cache.lookup(SearchResultCache.context("fanout", null, List.of("brave")),
+            "spring webflux timeout", 5, true));
+        assertNull(cache.lookup(SearchResultCache.context("fallback", "w", null), "spring webflux timeout", 5, true));
+        assertNull(cache.lookup(CONTEXT, "spring webflux timeout", 10, true));
+    }
+
+    @Test
+    void exhaustedResultsCoverLargerRequests() {
+        SearchResultCache cache = cache();
+        cache.store(CONTEXT, "netty leak", 10, response("netty leak", 3, true));
+        // As many results, but cut short (a follow-up page failed): more may exist
+        cache.store(CONTEXT, "reactor leak", 10, response("reactor leak", 3, false));
+
+        assertNotNull(cache.lookup(CONTEXT, "netty leak", 20, false));
+        assertNull(cache.lookup(CONTEXT, "reactor leak", 20, false));
+        assertNotNull(cache.lookup(CONTEXT, "reactor leak", 10, false));
+    }
+
+    @Test
+    void everyEntryWithinTheDistanceIsFound() {
+        for (double threshold : new double[] {0.9, 0.8}) {
+            properties.getQueryCache().setSimilarityThreshold(threshold);
+            int maxDistance = (int) Math.floor((1.0 - threshold) * 64 + 1e-9);
+            SearchResultCache cache = cache();
+            Random random = new Random(42);
+
+            Map<String, Long> stored = new LinkedHashMap<>();
+            for (int i = 0; i < 300; i++) {
+                String query = randomQuery(random);
+                cache.store(CONTEXT, query, 5, response(query, 5));
+                stored.put(query, SearchResultCache.simHash(SearchResultCache.terms(query)));
+            }
+
+            int nearMatches = 0;
+            List<String> queries = new ArrayList<>(stored.keySet());
+            for (int i = 0; i < 1000; i++) {
+                String query = i % 2 == 0 ? randomQuery(random) : variant(queries.get(random.nextInt(queries.size())), random);
+                long fingerprint = SearchResultCache.simHash(SearchResultCache.terms(query));
+                int closest = stored.values().stream()
+                    .mapToInt(candidate -> Long.bitCount(candidate ^ fingerprint)).min().orElseThrow();
+
+                SearchResultCache.Match match = cache.lookup(CONTEXT, query, 5, true);
+
+                if (closest <= maxDistance) {
+                    assertNotNull(match, "\"" + query + "\" has an entry " + closest + " bits away");
+                    assertEquals(1.0 - closest / 64.0, match.similarity(), 1e-9);
+                    if (closest > 0) {
+                        nearMatches++;
+                    }
+                } else {
+                    assertNull(match, "\"" + query + "\" is " + closest + " bits from every entry");
+                }
+            }
+            assertTrue(nearMatches > 10, "only " + nearMatches + " near matches at threshold " + threshold);
+        }
+    }
+
+    private SearchResultCache cache() {
+        properties.getQueryCache().setMaxEntries(10_000);
+        return new SearchResultCache(properties, new InMemoryStateStore(100), new ObjectMapper());
+    }
+
+    private static String randomQuery(Random random) {
+        List<String> words = new ArrayList<>(VOCABULARY);
+        Collections.shuffle(words, random);
+        return String.join(" ", words.subList(0, 4 + random.nextInt(5)));
+    }
+
+    /**
+     * The query with one term added, dropped or replaced
+     */
+    private static String variant(String query, Random random) {
+        List<String> words = new ArrayList<>(List.of(query.split(" ")));
+        String other = VOCABULARY.get(random.nextInt(VOCABULARY.size()));
+        switch (random.nextInt(3)) {
+            case 0 -> words.add(other);
+            case 1 -> words.remove(random.nextInt(words.size()));
+            default -> words.set(random.nextInt(words.size()), other);
+        }
+        return String.join(" ", words);
+    }
+
+    private static SearchResponse response(String query, int results) {
+        return response(query, results, false);
+    }
+
+    private static SearchResponse response(String query, int results, boolean exhausted) {
+        List<SearchResult> list = new ArrayList<>();
+        for (int i = 0; i < results; i++) {
+            list.add(new SearchResult("Result " + i, "https://example.org/" + i, List.of(), "Summary", null));
+        }
+        return new SearchResponse(query, results, "DuckDuckGo", List.of("DuckDuckGo"), list, exhausted);
+    }
+}
@@ -0,0 +1,137 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.model.SearchResponse;
+import com.xtivia.mcp.websearch.model.SearchResult;
+import com.xtivia.mcp.websearch.provider.BraveProvider;
+import com.xtivia.mcp.websearch.provider.DuckDuckGoProvider;
+import com.xtivia.mcp.websearch.provider.SearchProvider;
+import com.xtivia.mcp.websearch.state.InMemoryStateStore;
+
+class SearchServiceTest {
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final InMemoryStateStore stateStore = new InMemoryStateStore(100);
+
+    @Test
+    void memoryPressureFailsOverWithoutSuspendingDuckDuckGo() {
+        StubDuckDuckGo duckDuckGo = new StubDuckDuckGo();
+        duckDuckGo.failure = new MemoryGovernor.BudgetExhaustedException(MemoryGovernor.BODY, 4096);
+        StubBrave brave = new StubBrave(results("brave", 3));
+
+        SearchResponse response = service(duckDuckGo, brave).search("java", "java", 3, null, CallContext.unbounded());
+
+        assertEquals("Brave", response.searchProvider());
+        assertEquals(0, stateStore.suspendedFor("duckduckgo"));
+    }
+
+    @Test
+    void providerFailureFailsOverAndSuspendsDuckDuckGo() {
+        StubDuckDuckGo duckDuckGo = new StubDuckDuckGo();
+        duckDuckGo.failure = new RuntimeException("DuckDuckGo search failed: HTTP 500");
+        StubBrave brave = new StubBrave(results("brave", 3));
+
+        SearchResponse response = service(duckDuckGo, brave).search("java", "java", 3, null, CallContext.unbounded());
+
+        assertEquals("Brave", response.searchProvider());
+        assertTrue(stateStore.suspendedFor("duckduckgo") > 0);
+    }
+
+    @Test
+    void fanOutRanksResultsByReciprocalRankFusion() {
+        StubDuckDuckGo duckDuckGo = new StubDuckDuckGo();
+        duckDuckGo.results = List.of(result("a"), result("b"), result("c"));
+        StubBrave brave = new StubBrave(List.of(
+            result("c"), new SearchResult("a again", "https://shared.example/a?utm_source=brave", null, null, ""),
+            result("x")));
+
+        SearchResponse response = service(duckDuckGo, brave).fanOut("java", "java", 10, null, null,
+            CallContext.unbounded());
+
+        // a: 1/61 + 1/62, c: 1/63 + 1/61, b: 1/62, x: 1/63
+        assertEquals(List.of("https://shared.example/a", "https://shared.example/c",
+                "https://shared.example/b", "https://shared.example/x"),
+            response.results().stream().map(SearchResult::url).toList());
+        // The duplicate keeps the copy ranked highest
+        assertEquals("a", response.results().get(0).title());
+        assertEquals(List.of("DuckDuckGo", "Brave"), response.providers());
+    }
+
+    @Test
+    void fanOutKeepsTheBestFusedResults() {
+        StubDuckDuckGo duckDuckGo = new StubDuckDuckGo();
+        duckDuckGo.results = List.of(result("a"), result("b"), result("c"));
+        StubBrave brave = new StubBrave(List.of(result("c"), result("a"), result("x")));
+
+        SearchResponse response = service(duckDuckGo, brave).fanOut("java", "java", 2, null, null,
+            CallContext.unbounded());
+
+        assertEquals(List.of("https://shared.example/a", "https://shared.example/c"),
+            response.results().stream().map(SearchResult::url).toList());
+        assertFalse(response.exhausted());
+    }
+
+    private SearchService service(StubDuckDuckGo duckDuckGo, StubBrave brave) {
+        return new SearchService(duckDuckGo, brave, List.of(duckDuckGo, brave), properties,
+            new UrlCanonicalizer(properties), new NegativeCache(properties), stateStore);
+    }
+
+    private static SearchResult result(String name) {
+        return new SearchResult(name, "https://shared.example/" + name, null, null, "");
+    }
+
+    private static List<SearchResult> results(String site, int count) {
+        List<SearchResult> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(new SearchResult(site + " " + i, "https://" + site + ".example/" + i, null, null, ""));
+        }
+        return results;
+    }
+
+    private class StubDuckDuckGo extends DuckDuckGoProvider {
+
+        private List<SearchResult> results = List.of();
+        private RuntimeException failure;
+
+        StubDuckDuckGo() {
+            super(null, null, properties, null);
+        }
+
+        @Override
+        public SearchProvider.Results search(String query, int maxResults, String dateFilter,
+                                             CallContext context, Consumer<SearchResult> onResult) {
+            if (failure != null) {
+                throw failure;
+            }
+            results.forEach(onResult);
+            return new SearchProvider.Results(results, results.size() < maxResults);
+        }
+    }
+
+    private class StubBrave extends BraveProvider {
+
+        private final List<SearchResult> results;
+
+        StubBrave(List<SearchResult> results) {
+            super(null, null, properties, null);
+            this.results = results;
+        }
+
+        @Override
+        public SearchProvider.Results search(String query, int maxResults, String dateFilter,
+                                             CallContext context, Consumer<SearchResult> onResult) {
+            results.forEach(onResult);
+            return new SearchProvider.Results(results, results.size() < maxResults);
+        }
+    }
+}
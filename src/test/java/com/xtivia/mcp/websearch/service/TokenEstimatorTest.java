@@ -0,0 +1,41 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class TokenEstimatorTest {
+
+    @Test
+    void shortWordsTakeTheirLeadingSpace() {
+        assertEquals(4, TokenEstimator.estimate("the quick brown fox"));
+    }
+
+    @Test
+    void longWordsTakeATokenPerSixLetters() {
+        // 20 letters: one token plus three more
+        assertEquals(4, TokenEstimator.estimate("internationalization"));
+    }
+
+    @Test
+    void digitsGoInGroupsOfThree() {
+        assertEquals(3, TokenEstimator.estimate("1234567"));
+    }
+
+    @Test
+    void punctuationAndLineBreaksAreTokensOfTheirOwn() {
+        assertEquals(4, TokenEstimator.estimate("a, b."));
+        assertEquals(3, TokenEstimator.estimate("a\n\n\nb"));
+        assertEquals(3, TokenEstimator.estimate("{\n  }"));
+    }
+
+    @Test
+    void ideographsCountOneTokenEach() {
+        assertEquals(3, TokenEstimator.estimate("日本語"));
+    }
+
+    @Test
+    void emptyTextHasNoTokens() {
+        assertEquals(0, TokenEstimator.estimate(""));
+    }
+}
@@ -0,0 +1,67 @@
+package com.xtivia.mcp.websearch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+class UrlCanonicalizerTest {
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer(properties);
+
+    @Test
+    void schemeHostPortAndFragmentAreNormalized() {
+        assertEquals("https://example.org/Docs/Page", canonicalizer.canonicalize("  HTTPS://Example.ORG:443/Docs/Page#intro "));
+        assertEquals("http://example.org/", canonicalizer.canonicalize("http://example.org:80"));
+        assertEquals("http://example.org:8080/a", canonicalizer.canonicalize("http://example.org:8080/a"));
+    }
+
+    @Test
+    void percentEncodingIsUpperCased() {
+        assertEquals("https://example.org/caf%C3%A9?q=a%2Fb", canonicalizer.canonicalize("https://example.org/caf%c3%a9?q=a%2fb"));
+    }
+
+    @Test
+    void trackingParametersAreRemovedAndOthersKeptInOrder() {
+        assertEquals("https://example.org/a?id=7&page=2",
+            canonicalizer.canonicalize("https://example.org/a?utm_source=x&id=7&GCLID=abc&page=2&UTM_Medium=y"));
+        assertEquals("https://example.org/a", canonicalizer.canonicalize("https://example.org/a?fbclid=1&_ga=2"));
+    }
+
+    @Test
+    void trackingParametersComeFromTheConfiguration() {
+        properties.setTrackingParameters(List.of("session*"));
+
+        assertEquals("https://example.org/a?utm_source=x",
+            canonicalizer.canonicalize("https://example.org/a?utm_source=x&sessionid=1"));
+    }
+
+    @Test
+    void duckDuckGoRedirectsAreUnwrapped() {
+        assertEquals("https://example.org/page?id=1",
+            canonicalizer.canonicalize("//duckduckgo.com/l/?uddg=https%3A%2F%2FExample.org%2Fpage%3Fid%3D1%26utm_source%3Dddg&rut=abc"));
+        assertEquals("https://example.org/",
+            canonicalizer.canonicalize("/l/?uddg=https%3A%2F%2Fexample.org"));
+    }
+
+    @Test
+    void unparseableUrlsAreOnlyTrimmed() {
+        assertEquals("not a url", canonicalizer.canonicalize(" not a url "));
+        assertEquals("mailto:someone@example.org", canonicalizer.canonicalize("mailto:someone@example.org"));
+        assertNull(canonicalizer.canonicalize(null));
+    }
+
+    @Test
+    void identityKeyIgnoresSchemeWwwAndTrailingSlash() {
+        String key = canonicalizer.identityKey("https://www.example.org/docs/");
+
+        assertEquals("example.org/docs", key);
+        assertEquals(key, canonicalizer.identityKey("http://example.org/docs?utm_campaign=launch"));
+        assertEquals("example.org/docs?v=2", canonicalizer.identityKey("https://www.example.org/docs/?v=2"));
+    }
+}
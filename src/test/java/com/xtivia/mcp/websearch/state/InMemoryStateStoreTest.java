@@ -0,0 +1,134 @@
+package com.xtivia.mcp.websearch.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class InMemoryStateStoreTest {
+
+    /**
+     * Delays are measured against the clock, which moves on between calls
+     */
+    private static final long SLACK_MS = 200;
+
+    private final InMemoryStateStore store = new InMemoryStateStore(100);
+
+    @Test
+    void requestsAreSpacedByTheMinimumInterval() {
+        StateStore.RateLimit limit = new StateStore.RateLimit(1000, 100, 60000);
+
+        StateStore.Reservation first = store.reserve("brave", limit, 10000);
+        StateStore.Reservation second = store.reserve("brave", limit, 10000);
+        StateStore.Reservation third = store.reserve("brave", limit, 10000);
+
+        assertTrue(first.granted());
+        assertEquals(0, first.delayMillis());
+        assertTrue(second.granted());
+        assertDelay(1000, second);
+        assertTrue(third.granted());
+        assertDelay(2000, third);
+    }
+
+    @Test
+    void slotBeyondTheMaximumWaitIsNotTaken() {
+        StateStore.RateLimit limit = new StateStore.RateLimit(1000, 100, 60000);
+        store.reserve("brave", limit, 10000);
+
+        StateStore.Reservation rejected = store.reserve("brave", limit, 500);
+        StateStore.Reservation next = store.reserve("brave", limit, 10000);
+
+        assertFalse(rejected.granted());
+        assertDelay(1000, rejected);
+        // The rejected reservation left the slot to the next caller
+        assertTrue(next.granted());
+        assertDelay(1000, next);
+    }
+
+    @Test
+    void fullWindowDelaysUntilTheOldestRequestLeavesIt() {
+        StateStore.RateLimit limit = new StateStore.RateLimit(0, 2, 10000);
+
+        assertEquals(0, store.reserve("brave", limit, 60000).delayMillis());
+        assertEquals(0, store.reserve("brave", limit, 60000).delayMillis());
+        StateStore.Reservation third = store.reserve("brave", limit, 60000);
+
+        assertTrue(third.granted());
+        // Window plus one second of margin after the oldest request
+        assertDelay(11000, third);
+    }
+
+    @Test
+    void budgetsAreIndependent() {
+        StateStore.RateLimit limit = new StateStore.RateLimit(5000, 100, 60000);
+        store.reserve("brave", limit, 10000);
+
+        StateStore.Reservation other = store.reserve("duckduckgo", limit, 10000);
+
+        assertTrue(other.granted());
+        assertEquals(0, other.delayMillis());
+    }
+
+    @Test
+    void consecutiveSuspensionsDoubleUpToTheMaximum() {
+        assertEquals(1000, store.suspend("brave", 1000, 4));
+        assertEquals(2000, store.suspend("brave", 1000, 4));
+        assertEquals(4000, store.suspend("brave", 1000, 4));
+        assertEquals(4000, store.suspend("brave", 1000, 4));
+
+        long remaining = store.suspendedFor("brave");
+        assertTrue(remaining > 4000 - SLACK_MS && remaining <= 4000, "remaining " + remaining);
+        assertEquals(0, store.suspendedFor("duckduckgo"));
+    }
+
+    @Test
+    void resetStartsOverAtTheBaseDurationButKeepsTheCurrentSuspension() {
+        store.suspend("brave", 1000, 8);
+        store.suspend("brave", 1000, 8);
+
+        store.resetSuspensions("brave");
+
+        assertTrue(store.suspendedFor("brave") > 0);
+        assertEquals(1000, store.suspend("brave", 1000, 8));
+    }
+
+    @Test
+    void suspensionRunsOut() throws InterruptedException {
+        store.suspend("brave", 50, 1);
+
+        Thread.sleep(100);
+
+        assertEquals(0, store.suspendedFor("brave"));
+    }
+
+    @Test
+    void leastRecentlyUsedValueIsEvicted() {
+        InMemoryStateStore small = new InMemoryStateStore(2);
+        small.put("a", "1", 60000);
+        small.put("b", "2", 60000);
+        small.get("a");
+        small.put("c", "3", 60000);
+
+        assertEquals("1", small.get("a"));
+        assertNull(small.get("b"));
+        assertEquals("3", small.get("c"));
+    }
+
+    @Test
+    void valuesExpire() throws InterruptedException {
+        store.put("short", "1", 50);
+        store.put("long", "2", 60000);
+
+        Thread.sleep(100);
+
+        assertNull(store.get("short"));
+        assertEquals("2", store.get("long"));
+    }
+
+    private static void assertDelay(long expected, StateStore.Reservation reservation) {
+        long delay = reservation.delayMillis();
+        assertTrue(delay > expected - SLACK_MS && delay <= expected, "delay " + delay + ", expected about " + expected);
+    }
+}
@@ -0,0 +1,326 @@
+package com.xtivia.mcp.websearch.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+
+class RedisStateStoreTest {
+
+    private static final StateStore.RateLimit LIMIT = new StateStore.RateLimit(1000, 100, 60000);
+
+    private RespServer server;
+    private RedisStateStore store;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void commandsAreEncodedAsBulkStringsWithByteLengths() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        RedisStateStore.writeCommand(out, List.of("SET", "k", "é"));
+
+        assertEquals("*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$2\r\né\r\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void everyReplyTypeIsDecoded() throws IOException {
+        InputStream in = input("+OK\r\n-ERR bad\r\n:42\r\n$6\r\nh\r\nllo\r\n$-1\r\n*2\r\n:1\r\n*1\r\n$1\r\nx\r\n*-1\r\n");
+
+        assertEquals("OK", RedisStateStore.readReply(in));
+        Object error = RedisStateStore.readReply(in);
+        assertInstanceOf(RedisStateStore.RedisException.class, error);
+        assertEquals("ERR bad", ((RedisStateStore.RedisException) error).getMessage());
+        assertEquals(42L, RedisStateStore.readReply(in));
+        assertEquals("h\r\nllo", RedisStateStore.readReply(in));
+        assertNull(RedisStateStore.readReply(in));
+        assertEquals(List.of(1L, List.of("x")), RedisStateStore.readReply(in));
+        assertNull(RedisStateStore.readReply(in));
+        assertThrows(EOFException.class, () -> RedisStateStore.readReply(in));
+    }
+
+    @Test
+    void truncatedOrUnknownRepliesAreRejected() {
+        assertThrows(EOFException.class, () -> RedisStateStore.readReply(input("$5\r\nhel")));
+        assertThrows(EOFException.class, () -> RedisStateStore.readReply(input(":12")));
+        assertThrows(IOException.class, () -> RedisStateStore.readReply(input("?what\r\n")));
+    }
+
+    @Test
+    void scriptSourceIsSentOnlyWhenTheServerDoesNotKnowIt() throws IOException {
+        Set<String> scripts = ConcurrentHashMap.newKeySet();
+        server = new RespServer(command -> switch (command.get(0)) {
+            case "EVALSHA" -> scripts.contains(command.get(1)) ?
+                "*2\r\n:1\r\n:250\r\n" : "-NOSCRIPT No matching script. Please use EVAL.\r\n";
+            case "EVAL" -> {
+                scripts.add(sha1(command.get(1)));
+                yield "*2\r\n:1\r\n:250\r\n";
+            }
+            default -> "-ERR unexpected\r\n";
+        });
+        store = new RedisStateStore(properties(server.port()));
+
+        StateStore.Reservation first = store.reserve("brave", LIMIT, 10000);
+        StateStore.Reservation second = store.reserve("brave", LIMIT, 10000);
+
+        assertEquals(new StateStore.Reservation(true, 250), first);
+        assertEquals(new StateStore.Reservation(true, 250), second);
+        List<List<String>> commands = server.commands();
+        assertEquals(List.of("EVALSHA", "EVAL", "EVALSHA"), commands.stream().map(command -> command.get(0)).toList());
+        assertTrue(commands.get(1).get(1).contains("ZREMRANGEBYSCORE"));
+        assertEquals(List.of("2", "test:{budget:brave}:last", "test:{budget:brave}:slots", "1000", "100", "60000", "10000"),
+            commands.get(0).subList(2, 9));
+        assertEquals(1, server.connections());
+
+        StateStore.Stats stats = store.getStats();
+        assertTrue(stats.available());
+        assertEquals(2, stats.operations());
+        assertEquals(0, stats.failures());
+        assertEquals(0, stats.fallbackOperations());
+    }
+
+    @Test
+    void suspensionsAndCachedValuesUseTheServer() throws IOException {
+        server = new RespServer(command -> switch (command.get(0)) {
+            case "EVALSHA" -> ":4000\r\n";
+            case "GET" -> "$5\r\nvalue\r\n";
+            case "SET", "HDEL" -> "+OK\r\n";
+            default -> "-ERR unexpected\r\n";
+        });
+        store = new RedisStateStore(properties(server.port()));
+
+        assertEquals(4000, store.suspend("brave", 1000, 8));
+        store.resetSuspensions("brave");
+        store.put("query", "value", 0);
+        assertEquals("value", store.get("query"));
+
+        List<List<String>> commands = server.commands();
+        assertEquals(List.of("1", "test:{suspension:brave}", "1000", "8"), commands.get(0).subList(2, 6));
+        assertEquals(List.of("HDEL", "test:{suspension:brave}", "count"), commands.get(1));
+        // Redis rejects a zero expiry, so the TTL is at least a millisecond
+        assertEquals(List.of("SET", "test:cache:query", "value", "PX", "1"), commands.get(2));
+        assertEquals(List.of("GET", "test:cache:query"), commands.get(3));
+    }
+
+    @Test
+    void connectionAuthenticatesAndSelectsTheDatabase() throws IOException {
+        server = new RespServer(command -> command.get(0).equals("GET") ? "$-1\r\n" : "+OK\r\n");
+        WebSearchProperties.StateStoreProperties properties = properties(server.port());
+        properties.getRedis().setUsername("replica");
+        properties.getRedis().setPassword("secret");
+        properties.getRedis().setDatabase(2);
+        store = new RedisStateStore(properties);
+
+        assertNull(store.get("query"));
+
+        assertEquals(List.of(
+            List.of("AUTH", "replica", "secret"),
+            List.of("SELECT", "2"),
+            List.of("GET", "test:cache:query")), server.commands());
+    }
+
+    @Test
+    void rejectedAuthenticationFallsBackToLocalState() throws IOException {
+        server = new RespServer(command -> "-WRONGPASS invalid username-password pair\r\n");
+        WebSearchProperties.StateStoreProperties properties = properties(server.port());
+        properties.getRedis().setPassword("wrong");
+        store = new RedisStateStore(properties);
+
+        store.put("query", "value", 60000);
+
+        assertEquals(1, store.getStats().failures());
+        assertEquals(1, server.commands().size());
+    }
+
+    @Test
+    void unreachableServerFallsBackToLocalState() throws IOException {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        store = new RedisStateStore(properties(port));
+
+        StateStore.Reservation first = store.reserve("brave", LIMIT, 10000);
+        StateStore.Reservation second = store.reserve("brave", LIMIT, 10000);
+
+        // Both served by the same local budget, so the second is spaced after the first
+        assertEquals(new StateStore.Reservation(true, 0), first);
+        assertTrue(second.granted());
+        assertTrue(second.delayMillis() > 800, "delay " + second.delayMillis());
+
+        // Redis is not tried again within the retry period
+        StateStore.Stats stats = store.getStats();
+        assertFalse(stats.available());
+        assertEquals(0, stats.operations());
+        assertEquals(1, stats.failures());
+        assertEquals(2, stats.fallbackOperations());
+    }
+
+    @Test
+    void unansweredCommandTimesOutAndTheNextCallReconnects() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        server = new RespServer(command -> calls.incrementAndGet() == 1 ? null : ":0\r\n");
+        WebSearchProperties.StateStoreProperties properties = properties(server.port());
+        properties.getRedis().setCommandTimeoutMillis(200);
+        properties.getRedis().setRetrySeconds(0);
+        store = new RedisStateStore(properties);
+
+        assertEquals(1000, store.suspend("brave", 1000, 8));
+        assertEquals(0, store.suspendedFor("brave"));
+
+        assertEquals(2, server.connections());
+        StateStore.Stats stats = store.getStats();
+        assertEquals(1, stats.operations());
+        assertEquals(1, stats.failures());
+        assertEquals(1, stats.fallbackOperations());
+    }
+
+    @Test
+    void errorReplyFallsBackToLocalStateUntilTheServerIsTriedAgain() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        server = new RespServer(command -> calls.incrementAndGet() == 1 ? "-ERR out of memory\r\n" : "$3\r\nhit\r\n");
+        WebSearchProperties.StateStoreProperties properties = properties(server.port());
+        properties.getRedis().setRetrySeconds(0);
+        store = new RedisStateStore(properties);
+
+        assertNull(store.get("query"));
+        assertEquals("hit", store.get("query"));
+
+        // An error reply leaves the connection usable
+        assertEquals(1, server.connections());
+        StateStore.Stats stats = store.getStats();
+        assertEquals(1, stats.operations());
+        assertEquals(1, stats.failures());
+        assertEquals(1, stats.fallbackOperations());
+    }
+
+    private static WebSearchProperties.StateStoreProperties properties(int port) {
+        WebSearchProperties.StateStoreProperties properties = new WebSearchProperties.StateStoreProperties();
+        properties.setKeyPrefix("test:");
+        properties.getRedis().setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        properties.getRedis().setPort(port);
+        return properties;
+    }
+
+    private static InputStream input(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(String source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Minimal stand-in for a Redis server: records every command and answers
+     * with the raw RESP reply the responder gives (none when it gives null)
+     */
+    private static final class RespServer implements AutoCloseable {
+
+        private final ServerSocket socket;
+        private final Function<List<String>, String> responder;
+        private final List<List<String>> commands = new CopyOnWriteArrayList<>();
+        private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+        RespServer(Function<List<String>, String> responder) throws IOException {
+            this.socket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            this.responder = responder;
+            Thread acceptor = new Thread(this::accept, "resp-stub");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        List<List<String>> commands() {
+            return List.copyOf(commands);
+        }
+
+        int connections() {
+            return clients.size();
+        }
+
+        private void accept() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    clients.add(client);
+                    Thread handler = new Thread(() -> serve(client), "resp-stub-client");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket client) {
+            try (client) {
+                InputStream in = new BufferedInputStream(client.getInputStream());
+                OutputStream out = client.getOutputStream();
+                while (true) {
+                    List<String> command = ((List<?>) RedisStateStore.readReply(in)).stream()
+                        .map(String.class::cast)
+                        .toList();
+                    commands.add(command);
+                    String reply = responder.apply(command);
+                    if (reply != null) {
+                        out.write(reply.getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // Client went away
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            for (Socket client : clients) {
+                client.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.xtivia.mcp.websearch.tool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.service.CallTracker;
+
+class WebSearchToolTest {
+
+    private final WebSearchProperties properties = new WebSearchProperties();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void unknownModeIsRejectedBeforeSearching() throws Exception {
+        // No search collaborators: the request must fail before it reaches them
+        WebSearchTool tool = new WebSearchTool(null, null, new CallTracker(properties), null, null, null, null,
+            properties, objectMapper);
+
+        String json = tool.apply(new WebSearchTool.SearchRequest("java", 5, null, "parallel", List.of("Brave"),
+            null, null, null, null));
+
+        assertEquals("Search failed on all providers: Unknown mode 'parallel': use fallback or fanout",
+            objectMapper.readTree(json).path("error").asText());
+    }
+}
@@ -0,0 +1,117 @@
+package com.xtivia.mcp.websearch.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xtivia.mcp.websearch.config.WebSearchProperties;
+import com.xtivia.mcp.websearch.service.CallContext;
+
+class StdioTransportTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebSearchProperties properties = new WebSearchProperties();
+
+    /**
+     * Client side of stdin
+     */
+    private PipedOutputStream client;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            // Ends the reader thread
+            client.close();
+        }
+    }
+
+    @Test
+    void responsesComeBackOneLineEach() throws IOException {
+        TestTransport transport = new TestTransport();
+        PipedInputStream serverOutput = new PipedInputStream(64 * 1024);
+        transport.start(connectClient(), new PipedOutputStream(serverOutput));
+        BufferedReader responses = new BufferedReader(new InputStreamReader(serverOutput, StandardCharsets.UTF_8));
+
+        send(1);
+        send(2);
+
+        Set<Integer> ids = new HashSet<>();
+        ids.add(objectMapper.readTree(responses.readLine()).path("id").asInt());
+        ids.add(objectMapper.readTree(responses.readLine()).path("id").asInt());
+        assertEquals(Set.of(1, 2), ids);
+    }
+
+    @Test
+    void callsDoNotWaitForAWriterThatFailed() throws Exception {
+        properties.getStdio().setMaxInFlight(4);
+        properties.getStdio().setWriteQueueCapacity(1);
+        TestTransport transport = new TestTransport();
+        PipedInputStream serverOutput = new PipedInputStream();
+        PipedOutputStream output = new PipedOutputStream(serverOutput);
+        // The client went away: every write fails
+        serverOutput.close();
+        transport.start(connectClient(), output);
+
+        for (int id = 1; id <= 4; id++) {
+            send(id);
+        }
+
+        // Shutdown waits for every call to give back its slot, for at most five seconds
+        assertTrue(transport.exited.await(3, TimeUnit.SECONDS), "calls still waiting to enqueue");
+    }
+
+    private PipedInputStream connectClient() throws IOException {
+        PipedInputStream input = new PipedInputStream();
+        client = new PipedOutputStream(input);
+        return input;
+    }
+
+    private void send(int id) throws IOException {
+        client.write(("{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"ping\"}\n").getBytes(StandardCharsets.UTF_8));
+        client.flush();
+    }
+
+    private class TestTransport extends StdioTransport {
+
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        TestTransport() {
+            super(new EchoHandler(), objectMapper, properties, null);
+        }
+
+        @Override
+        void exit() {
+            exited.countDown();
+        }
+    }
+
+    /**
+     * Answers every request with an empty result
+     */
+    private class EchoHandler extends McpRequestHandler {
+
+        EchoHandler() {
+            super(null, null, null, null, objectMapper);
+        }
+
+        @Override
+        public String handle(JsonNode request, CallContext exchange) {
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + request.path("id") + ",\"result\":{}}";
+        }
+    }
+}